@@ -41,6 +41,11 @@ dependencies {
     compile(kotlinStdlib())
     compile(project(":compiler:frontend"))
     compile(project(":compiler:cli"))
+    compile(project(":daemon-common"))
+    compile(project(":daemon-common-new"))
+    compile(project(":kotlinx-metadata"))
+    compile(project(":kotlinx-metadata-jvm"))
+    compile(project(":kotlin-reflect"))
     compile(intellijCoreDep()) { includeJars("intellij-core") }
     compile(jpsStandalone()) { includeJars("jps-model") }
     Platform[192].orHigher {
@@ -73,6 +78,8 @@ benchmark {
             param("size", 1000)
 
             include("CommonCallsBenchmark")
+            include("SimpleDataFlowBenchmark")
+            include("ComplexDataFlowBenchmark")
             //include("InferenceBaselineCallsBenchmark")
         }
 
@@ -89,6 +96,7 @@ benchmark {
             include("InferenceForInApplicableCandidate")
             include("InferenceFromArgumentCallsBenchmark")
             include("InferenceFromReturnTypeCallsBenchmark")
+            include("InferenceNestedCallsBenchmark")
         }
     }
     targets {
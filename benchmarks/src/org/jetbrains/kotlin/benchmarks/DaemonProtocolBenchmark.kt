@@ -0,0 +1,219 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.benchmarks
+
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation
+import org.jetbrains.kotlin.daemon.common.LoopbackNetworkInterface
+import org.jetbrains.kotlin.daemon.common.ReportCategory
+import org.jetbrains.kotlin.daemon.common.ReportSeverity
+import org.jetbrains.kotlin.daemon.common.experimental.CompilerCallbackServicesFacadeServerSide
+import org.jetbrains.kotlin.daemon.common.experimental.CompilerServicesFacadeBaseServerSide
+import org.jetbrains.kotlin.daemon.common.experimental.socketInfrastructure.BinaryProtocol
+import org.jetbrains.kotlin.incremental.components.LookupInfo
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
+import org.openjdk.jmh.annotations.*
+import java.io.*
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.rmi.Remote
+import java.rmi.RemoteException
+import java.rmi.server.UnicastRemoteObject
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+/**
+ * Compares the round trip of the objects sent from the compile daemon to its client over a loopback connection:
+ *   a call of an RMI stub, frames encoded with Java serialization as the socket daemon used to do in `nextObject()`,
+ *   and frames encoded with [BinaryProtocol].
+ *
+ * A round trip ends when the receiving side has decoded all arguments of the call and has acknowledged them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+open class DaemonProtocolBenchmark {
+    @Param("message", "lookups", "output")
+    private var payload: String = "message"
+
+    private lateinit var arguments: List<Any?>
+
+    private lateinit var callbacks: Callbacks
+    private lateinit var rmiStub: Callbacks
+    private lateinit var javaSerializationConnection: FrameConnection
+    private lateinit var binaryProtocolConnection: FrameConnection
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        arguments = when (payload) {
+            "message" -> listOf(
+                CompilerServicesFacadeBaseServerSide.ReportMessage(
+                    ReportCategory.COMPILER_MESSAGE.code, ReportSeverity.WARNING.code,
+                    "Parameter 'argument' is never used, could be renamed to _",
+                    CompilerMessageLocation.create("/project/src/foo/File1.kt", 42, 17, "    list.forEach { argument -> println() }")
+                ).withId(1)
+            )
+            "lookups" -> listOf(CompilerCallbackServicesFacadeServerSide.LookupTracker_recordMessage(createLookups()).withId(-1))
+            "output" -> listOf("/project/build/classes/kotlin/KotlinVersion.class", readClassFile(KotlinVersion::class.java))
+            else -> error("Unknown payload $payload")
+        }
+
+        callbacks = CallbacksImpl()
+        rmiStub = UnicastRemoteObject.exportObject(
+            callbacks, 0, LoopbackNetworkInterface.clientLoopbackSocketFactory, LoopbackNetworkInterface.serverLoopbackSocketFactory
+        ) as Callbacks
+        javaSerializationConnection = FrameConnection(arguments.size, ::encodeWithJavaSerialization, ::decodeWithJavaSerialization)
+        binaryProtocolConnection = FrameConnection(arguments.size, ::encodeWithBinaryProtocol, ::decodeWithBinaryProtocol)
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        javaSerializationConnection.close()
+        binaryProtocolConnection.close()
+        UnicastRemoteObject.unexportObject(callbacks, true)
+    }
+
+    @Benchmark
+    fun rmi() {
+        when (payload) {
+            "message" -> (arguments[0] as CompilerServicesFacadeBaseServerSide.ReportMessage).run {
+                rmiStub.report(category, severity, message, attachment)
+            }
+            "lookups" -> rmiStub.lookupTracker_record((arguments[0] as CompilerCallbackServicesFacadeServerSide.LookupTracker_recordMessage).lookups)
+            "output" -> rmiStub.outputFile(arguments[0] as String, arguments[1] as ByteArray)
+        }
+    }
+
+    @Benchmark
+    fun javaSerialization() {
+        javaSerializationConnection.roundTrip(arguments)
+    }
+
+    @Benchmark
+    fun binaryProtocol() {
+        binaryProtocolConnection.roundTrip(arguments)
+    }
+
+    // Signatures of the RMI callbacks of the daemon, see CompilerServicesFacadeBase and CompilerCallbackServicesFacade
+    interface Callbacks : Remote {
+        @Throws(RemoteException::class)
+        fun report(category: Int, severity: Int, message: String?, attachment: Serializable?)
+
+        @Throws(RemoteException::class)
+        fun lookupTracker_record(lookups: Collection<LookupInfo>)
+
+        @Throws(RemoteException::class)
+        fun outputFile(path: String, content: ByteArray)
+    }
+
+    private class CallbacksImpl : Callbacks {
+        override fun report(category: Int, severity: Int, message: String?, attachment: Serializable?) {}
+
+        override fun lookupTracker_record(lookups: Collection<LookupInfo>) {}
+
+        override fun outputFile(path: String, content: ByteArray) {}
+    }
+
+    /**
+     * Loopback connection which sends every object as a frame of its length and its bytes, like ByteWriteChannelWrapper.writeObject.
+     *   The receiving thread decodes the frames and acknowledges every [framesPerCall] frames with one byte.
+     */
+    private class FrameConnection(
+        private val framesPerCall: Int,
+        private val encode: (Any?, ByteArrayOutputStream) -> Int,
+        decode: (Int, ByteArray) -> Any?
+    ) : Closeable {
+        private val serverSocket = ServerSocket(0, 1, InetAddress.getLoopbackAddress())
+        private val receiver = thread(isDaemon = true, name = "Daemon protocol benchmark receiver") {
+            serverSocket.accept().use { socket ->
+                val input = DataInputStream(BufferedInputStream(socket.getInputStream()))
+                val output = socket.getOutputStream()
+                var frames = 0
+                while (true) {
+                    val length = try {
+                        input.readInt()
+                    } catch (e: EOFException) {
+                        break
+                    }
+                    val bytes = ByteArray(Math.abs(length))
+                    input.readFully(bytes)
+                    decode(length, bytes)
+                    if (++frames % framesPerCall == 0) {
+                        output.write(ACK)
+                        output.flush()
+                    }
+                }
+            }
+        }
+
+        private val socket = Socket(serverSocket.inetAddress, serverSocket.localPort).apply { tcpNoDelay = true }
+        private val input = socket.getInputStream()
+        private val output = DataOutputStream(BufferedOutputStream(socket.getOutputStream()))
+        private val buffer = ByteArrayOutputStream()
+
+        fun roundTrip(objects: List<Any?>) {
+            for (obj in objects) {
+                buffer.reset()
+                val length = encode(obj, buffer)
+                output.writeInt(length)
+                buffer.writeTo(output)
+                output.flush()
+            }
+            check(input.read() == ACK) { "Connection closed by the receiver" }
+        }
+
+        override fun close() {
+            socket.close()
+            receiver.join()
+            serverSocket.close()
+        }
+    }
+
+    companion object {
+        private const val ACK = 1
+        private const val LOOKUPS_PER_BATCH = 1000
+
+        // The socket daemon used to send strings as their bytes with a negative length, and all other objects with Java serialization
+        private fun encodeWithJavaSerialization(obj: Any?, output: ByteArrayOutputStream): Int =
+            if (obj is String) {
+                output.write(obj.toByteArray())
+                -output.size()
+            } else {
+                ObjectOutputStream(output).use { it.writeObject(obj) }
+                output.size()
+            }
+
+        private fun decodeWithJavaSerialization(length: Int, bytes: ByteArray): Any? =
+            if (length < 0) String(bytes)
+            else ObjectInputStream(ByteArrayInputStream(bytes)).use { it.readObject() }
+
+        private fun encodeWithBinaryProtocol(obj: Any?, output: ByteArrayOutputStream): Int {
+            DataOutputStream(output).apply {
+                BinaryProtocol.write(obj, this)
+                flush()
+            }
+            return output.size()
+        }
+
+        private fun decodeWithBinaryProtocol(@Suppress("UNUSED_PARAMETER") length: Int, bytes: ByteArray): Any? =
+            BinaryProtocol.read(DataInputStream(ByteArrayInputStream(bytes)))
+
+        private fun createLookups(): Collection<LookupInfo> =
+            (0 until LOOKUPS_PER_BATCH).mapTo(LinkedHashSet()) { i ->
+                LookupInfo(
+                    "/project/src/foo/File${i % 50}.kt",
+                    Position.NO_POSITION,
+                    "foo.bar.Scope${i % 20}",
+                    if (i % 3 == 0) ScopeKind.PACKAGE else ScopeKind.CLASSIFIER,
+                    "name${i % 300}"
+                )
+            }
+
+        private fun readClassFile(klass: Class<*>): ByteArray =
+            klass.getResourceAsStream("/" + klass.name.replace('.', '/') + ".class").use { it.readBytes() }
+    }
+}
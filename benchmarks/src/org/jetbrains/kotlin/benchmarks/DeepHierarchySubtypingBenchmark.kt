@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.benchmarks
+
+import org.jetbrains.kotlin.descriptors.ClassDescriptor
+import org.jetbrains.kotlin.incremental.components.NoLookupLocation
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.name.Name
+import org.jetbrains.kotlin.types.KotlinType
+import org.jetbrains.kotlin.types.checker.KotlinTypeRefiner
+import org.jetbrains.kotlin.types.checker.NewKotlinTypeChecker
+import org.jetbrains.kotlin.types.checker.NewKotlinTypeCheckerImpl
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Checks subtyping of classes at the bottom of a deep hierarchy against its top, which requires walking all supertypes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+open class DeepHierarchySubtypingBenchmark : AbstractSimpleFileBenchmark() {
+
+    @Param("1", "100", "1000", "3000")
+    private var size: Int = 0
+
+    @Param("50")
+    private var depth: Int = 0
+
+    // A checker with a supertypes cache lives as long as a resolution session, here as long as the trial
+    private val cachingTypeChecker = NewKotlinTypeCheckerImpl(KotlinTypeRefiner.Default)
+    private var subtypingChecks: List<Pair<KotlinType, KotlinType>>? = null
+
+    @Benchmark
+    fun benchmark(bh: Blackhole) {
+        analyzeGreenFile(bh)
+    }
+
+    @Benchmark
+    fun subtypingWithCache(bh: Blackhole) {
+        checkSubtyping(cachingTypeChecker, bh)
+    }
+
+    @Benchmark
+    fun subtypingWithoutCache(bh: Blackhole) {
+        checkSubtyping(NewKotlinTypeChecker.Default, bh)
+    }
+
+    @TearDown(Level.Trial)
+    fun reportSupertypesCache() {
+        val cache = cachingTypeChecker.supertypesCache ?: return
+        if (cache.hitCount + cache.missCount > 0) {
+            println("$cache, hit rate = ${"%.3f".format(cache.hitCount.toDouble() / (cache.hitCount + cache.missCount))}")
+        }
+    }
+
+    private fun checkSubtyping(typeChecker: NewKotlinTypeChecker, bh: Blackhole) {
+        // Only the frontend produces descriptors
+        if (isIR) return
+
+        val checks = subtypingChecks ?: createSubtypingChecks().also { subtypingChecks = it }
+        repeat(size) {
+            for ((subtype, supertype) in checks) {
+                bh.consume(typeChecker.isSubtypeOf(subtype, supertype))
+            }
+        }
+    }
+
+    private fun createSubtypingChecks(): List<Pair<KotlinType, KotlinType>> {
+        val scope = analyzeFileFrontend().moduleDescriptor.getPackage(FqName.ROOT).memberScope
+        fun classifier(name: String) =
+            scope.getContributedClassifier(Name.identifier(name), NoLookupLocation.FROM_BACKEND) as ClassDescriptor
+
+        val bottom = classifier("C$depth").defaultType
+        val top = classifier("C0")
+        return listOf(
+            bottom to top.defaultType,
+            bottom to top.typeConstructor.supertypes.first(),
+            bottom to classifier("Marker").defaultType
+        )
+    }
+
+    override fun buildText() =
+        """
+        |interface Base<T>
+        |interface Marker
+        |open class C0 : Base<String>
+        |${(1..depth).joinToString("\n") { "open class C$it : C${it - 1}(), Marker" }}
+        |fun takeBase(b: Base<String>) {}
+        |fun takeMarker(m: Marker) {}
+        |fun bar(c: C$depth) {
+        |${(1..size).joinToString("\n") { "    val x$it: C0 = c\n    takeBase(c)\n    takeMarker(c)" }}
+        |}
+        """.trimMargin()
+}
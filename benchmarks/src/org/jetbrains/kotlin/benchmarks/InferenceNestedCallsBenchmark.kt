@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.benchmarks
+
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Nested generic calls and lambdas which are inferred in a single constraint system,
+ *   so every new constraint is incorporated against a growing number of related constraints
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+open class InferenceNestedCallsBenchmark : AbstractInferenceBenchmark() {
+
+    @Param("10", "30", "60")
+    private var size: Int = 0
+
+    @Benchmark
+    fun benchmark(bh: Blackhole) {
+        analyzeGreenFile(bh)
+    }
+
+    override fun buildText() =
+        """
+        |class Box<T>(val value: T)
+        |fun <K, V> entry(key: K, value: V): Pair<K, V> = Pair(key, value)
+        |fun <T> box(value: T): Box<T> = Box(value)
+        |inline fun <T, R> T.let2(block: (T) -> R): R = block(this)
+        |fun bar(v: Int): Any {
+        |    val nested = ${"box(entry(\"\", ".repeat(size)}v${"))".repeat(size)}
+        |    val lambdas = v${".let2 { box(it)".repeat(size)}${" }".repeat(size)}
+        |    return nested to lambdas
+        |}
+        """.trimMargin()
+}
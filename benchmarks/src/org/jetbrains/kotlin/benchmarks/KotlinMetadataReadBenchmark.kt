@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.benchmarks
+
+import kotlinx.metadata.jvm.KotlinClassHeader
+import kotlinx.metadata.jvm.KotlinClassMetadata
+import kotlinx.metadata.jvm.KotlinClassMetadataDecoder
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares reading names and flags of all members of all classes of the standard library
+ *   with [KotlinClassMetadata.Class.toKmClass] and with the reusable [KotlinClassMetadataDecoder].
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+open class KotlinMetadataReadBenchmark {
+    private val stdlibJar = File(KotlinVersion::class.java.protectionDomain.codeSource.location.toURI())
+
+    private lateinit var headers: List<KotlinClassHeader>
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        headers = mutableListOf<KotlinClassHeader>().apply {
+            KotlinClassMetadataDecoder.forEachClassInJar(stdlibJar) { entryName, _ ->
+                val className = entryName.removeSuffix(".class").replace('/', '.')
+                val metadata = Class.forName(className, false, javaClass.classLoader).getAnnotation(Metadata::class.java)
+                add(metadata.run { KotlinClassHeader(kind, metadataVersion, bytecodeVersion, data1, data2, extraString, packageName, extraInt) })
+            }
+        }
+    }
+
+    @Benchmark
+    fun toKmClass(bh: Blackhole) {
+        for (header in headers) {
+            val klass = (KotlinClassMetadata.read(header) as KotlinClassMetadata.Class).toKmClass()
+            for (function in klass.functions) {
+                bh.consume(function.flags)
+                bh.consume(function.name)
+            }
+            for (property in klass.properties) {
+                bh.consume(property.flags)
+                bh.consume(property.name)
+            }
+        }
+    }
+
+    @Benchmark
+    fun decoder(bh: Blackhole) {
+        val decoder = KotlinClassMetadataDecoder()
+        for (header in headers) {
+            decoder.read(header)
+            decoder.forEachFunction { flags, name ->
+                bh.consume(flags)
+                bh.consume(name)
+            }
+            decoder.forEachProperty { flags, name ->
+                bh.consume(flags)
+                bh.consume(name)
+            }
+        }
+    }
+
+    @Benchmark
+    fun decoderWholeJar(bh: Blackhole) {
+        KotlinClassMetadataDecoder.forEachClassInJar(stdlibJar) { _, decoder ->
+            decoder.forEachFunction { flags, name ->
+                bh.consume(flags)
+                bh.consume(name)
+            }
+            decoder.forEachProperty { flags, name ->
+                bh.consume(flags)
+                bh.consume(name)
+            }
+        }
+    }
+}
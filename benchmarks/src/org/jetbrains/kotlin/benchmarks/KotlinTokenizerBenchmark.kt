@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.benchmarks
+
+import org.jetbrains.kotlin.lexer.KotlinLexer
+import org.jetbrains.kotlin.lexer.KotlinTokenBuffer
+import org.jetbrains.kotlin.lexer.KotlinTokenizer
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares tokenizing [size] small files with [KotlinLexer] and with [KotlinTokenizer], serially and in parallel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+open class KotlinTokenizerBenchmark {
+    @Param("100", "1000")
+    private var size: Int = 0
+
+    private lateinit var files: List<String>
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        files = (1..size).map { buildText(it) }
+    }
+
+    private fun buildText(index: Int): String =
+        """
+        |package test$index
+        |
+        |/** Documentation for [Foo$index] */
+        |class Foo$index(val x: Int, private val name: String = "foo") : Comparable<Foo$index> {
+        |    override fun compareTo(other: Foo$index): Int = x - other.x // compare by x
+        |
+        |    fun render(items: List<Int>): String {
+        |        /* block comment */
+        |        val result = StringBuilder()
+        |        for (item in items) {
+        |            if (item % 2 == 0 && item > 0x1F) result.append("even ${'$'}item of ${'$'}{name.length}\n")
+        |            else result.append('c').append(1.5e3).append(${"\"\"\""}raw ${'$'}x${"\"\"\""})
+        |        }
+        |        return result.toString()
+        |    }
+        |}
+        """.trimMargin()
+
+    @Benchmark
+    fun kotlinLexer(bh: Blackhole) {
+        val lexer = KotlinLexer()
+        for (text in files) {
+            lexer.start(text)
+            while (lexer.tokenType != null) {
+                bh.consume(lexer.tokenType)
+                bh.consume(lexer.tokenStart)
+                bh.consume(lexer.tokenEnd)
+                lexer.advance()
+            }
+        }
+    }
+
+    @Benchmark
+    fun tokenizer(bh: Blackhole) {
+        val tokenizer = KotlinTokenizer()
+        val buffer = KotlinTokenBuffer()
+        for (text in files) {
+            tokenizer.tokenize(text, buffer)
+            bh.consume(buffer.rawData)
+            bh.consume(buffer.tokenCount)
+        }
+    }
+
+    @Benchmark
+    fun tokenizerParallel(): Int {
+        val tokenizers = ThreadLocal.withInitial { KotlinTokenizer() to KotlinTokenBuffer() }
+        return files.parallelStream().mapToInt { text ->
+            val (tokenizer, buffer) = tokenizers.get()
+            tokenizer.tokenize(text, buffer)
+            buffer.tokenCount
+        }.sum()
+    }
+}
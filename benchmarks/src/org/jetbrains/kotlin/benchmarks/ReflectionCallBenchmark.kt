@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.benchmarks
+
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+import kotlin.reflect.KFunction
+import kotlin.reflect.KParameter
+import kotlin.reflect.full.memberFunctions
+import kotlin.reflect.full.primaryConstructor
+import kotlin.reflect.jvm.javaMethod
+
+/**
+ * Measures the overhead of calling functions and constructors through kotlin-reflect compared to plain Java reflection,
+ *   including [KFunction.callBy] with and without default arguments.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+open class ReflectionCallBenchmark {
+    class Point(val x: Int, val y: Int = 0, val label: String = "") {
+        fun translate(dx: Int, dy: Int): Point = Point(x + dx, y + dy, label)
+    }
+
+    private val point = Point(1, 2)
+
+    private val constructor = Point::class.primaryConstructor!!
+    private val translate = Point::class.memberFunctions.single { it.name == "translate" }
+    private val translateMethod = translate.javaMethod!!
+
+    private lateinit var allConstructorArguments: Map<KParameter, Any?>
+    private lateinit var requiredConstructorArguments: Map<KParameter, Any?>
+    private lateinit var translateArguments: Map<KParameter, Any?>
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        val (x, y, label) = constructor.parameters
+        allConstructorArguments = mapOf(x to 1, y to 2, label to "point")
+        requiredConstructorArguments = mapOf(x to 1)
+        val (instance, dx, dy) = translate.parameters
+        translateArguments = mapOf(instance to point, dx to 1, dy to 2)
+    }
+
+    @Benchmark
+    fun javaMethodInvoke(): Any? = translateMethod.invoke(point, 1, 2)
+
+    @Benchmark
+    fun call(): Any? = translate.call(point, 1, 2)
+
+    @Benchmark
+    fun callBy(): Any? = translate.callBy(translateArguments)
+
+    @Benchmark
+    fun constructorCall(): Any? = constructor.call(1, 2, "point")
+
+    @Benchmark
+    fun constructorCallByAllArguments(): Any? = constructor.callBy(allConstructorArguments)
+
+    @Benchmark
+    fun constructorCallByWithDefaults(): Any? = constructor.callBy(requiredConstructorArguments)
+}
@@ -22,6 +22,7 @@ import org.jetbrains.kotlin.fileClasses.JvmFileClassUtil
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.progress.ProgressIndicatorAndCompilationCanceledStatus
 import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.utils.CompilerTracer
 
 interface CodegenFactory {
     fun generateModule(state: GenerationState, files: Collection<KtFile>)
@@ -75,7 +76,9 @@ object DefaultCodegenFactory : CodegenFactory {
             MultifileClassCodegenImpl(state, files, fqName)
 
     private fun generateMultifileClass(state: GenerationState, multifileClassFqName: FqName, files: Collection<KtFile>) {
-        state.factory.forMultifileClass(multifileClassFqName, files).generate()
+        CompilerTracer.span("CodegenMultifileClass", multifileClassFqName.asString()) {
+            state.factory.forMultifileClass(multifileClassFqName, files).generate()
+        }
     }
 
     fun generatePackage(
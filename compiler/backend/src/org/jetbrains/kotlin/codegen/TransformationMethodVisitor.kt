@@ -65,11 +65,29 @@ abstract class TransformationMethodVisitor(
 
         super.visitEnd()
 
+        transformAndWrite(methodNode)
+    }
+
+    /**
+     * Transforms the method node and writes it to the delegate. Subclasses may postpone this, see [transform] and [write].
+     */
+    protected open fun transformAndWrite(methodNode: MethodNode) {
+        transform()
+        write()
+    }
+
+    protected fun transform() {
         try {
             if (shouldBeTransformed(methodNode)) {
                 performTransformations(methodNode)
             }
+        } catch (t: Throwable) {
+            throw CompilationException("Couldn't transform method node:\n" + methodNode.nodeText, t, null)
+        }
+    }
 
+    protected fun write() {
+        try {
             methodNode.accept(EndIgnoringMethodVisitorDecorator(Opcodes.API_VERSION, delegate))
 
 
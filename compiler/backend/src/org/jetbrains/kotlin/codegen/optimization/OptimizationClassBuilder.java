@@ -24,13 +24,19 @@ import org.jetbrains.kotlin.codegen.state.GenerationState;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 
+import java.util.concurrent.ExecutorService;
+
 public class OptimizationClassBuilder extends DelegatingClassBuilder {
     private final ClassBuilder delegate;
     private final GenerationState generationState;
+    private final ParallelMethodTransformer parallelTransformer;
 
     public OptimizationClassBuilder(@NotNull ClassBuilder delegate, @NotNull GenerationState generationState) {
         this.delegate = delegate;
         this.generationState = generationState;
+
+        ExecutorService executor = generationState.getOptimizationExecutor();
+        this.parallelTransformer = executor != null ? new ParallelMethodTransformer(executor) : null;
     }
 
     @NotNull
@@ -51,7 +57,15 @@ public class OptimizationClassBuilder extends DelegatingClassBuilder {
     ) {
         return new OptimizationMethodVisitor(
                 super.newMethod(origin, access, name, desc, signature, exceptions),
-                generationState, access, name, desc, signature, exceptions
+                generationState, access, name, desc, signature, exceptions, parallelTransformer
         );
     }
+
+    @Override
+    public void done() {
+        if (parallelTransformer != null) {
+            parallelTransformer.writeAll();
+        }
+        super.done();
+    }
 }
@@ -20,11 +20,14 @@ import org.jetbrains.kotlin.codegen.TransformationMethodVisitor
 import org.jetbrains.kotlin.codegen.optimization.boxing.PopBackwardPropagationTransformer
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantBoxingMethodTransformer
 import org.jetbrains.kotlin.codegen.optimization.boxing.StackPeepholeOptimizationsTransformer
+import org.jetbrains.kotlin.codegen.optimization.common.asSequence
 import org.jetbrains.kotlin.codegen.optimization.common.prepareForEmitting
 import org.jetbrains.kotlin.codegen.optimization.nullCheck.RedundantNullCheckMethodTransformer
 import org.jetbrains.kotlin.codegen.optimization.transformer.CompositeMethodTransformer
 import org.jetbrains.kotlin.codegen.state.GenerationState
+import org.jetbrains.kotlin.codegen.state.KotlinTypeMapper
 import org.jetbrains.org.objectweb.asm.MethodVisitor
+import org.jetbrains.org.objectweb.asm.tree.MethodInsnNode
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
 
 class OptimizationMethodVisitor(
@@ -34,7 +37,8 @@ class OptimizationMethodVisitor(
     name: String,
     desc: String,
     signature: String?,
-    exceptions: Array<String>?
+    exceptions: Array<String>?,
+    private val parallelTransformer: ParallelMethodTransformer? = null
 ) : TransformationMethodVisitor(delegate, access, name, desc, signature, exceptions) {
     private val constructorCallNormalizationTransformer =
         UninitializedStoresMethodTransformer(generationState.constructorCallNormalizationMode)
@@ -71,6 +75,16 @@ class OptimizationMethodVisitor(
         methodNode.prepareForEmitting()
     }
 
+    override fun transformAndWrite(methodNode: MethodNode) {
+        if (parallelTransformer == null) {
+            super.transformAndWrite(methodNode)
+            return
+        }
+
+        // Unboxing of inline classes maps them via the backend's symbol table, which may only be used by the codegen thread
+        parallelTransformer.submit(inPlace = methodNode.hasInlineClassBoxing(), transform = { transform() }, write = { write() })
+    }
+
     companion object {
         private val MEMORY_LIMIT_BY_METHOD_MB = 50
 
@@ -79,6 +93,11 @@ class OptimizationMethodVisitor(
             return totalFramesSizeMb < MEMORY_LIMIT_BY_METHOD_MB
         }
 
+        private fun MethodNode.hasInlineClassBoxing(): Boolean =
+            instructions.asSequence().any {
+                it is MethodInsnNode && (it.name == KotlinTypeMapper.BOX_JVM_METHOD_NAME || it.name == KotlinTypeMapper.UNBOX_JVM_METHOD_NAME)
+            }
+
         fun canBeOptimizedUsingSourceInterpreter(node: MethodNode): Boolean {
             val frameSize = node.maxLocals + node.maxStack
             val methodSize = node.instructions.size().toLong()
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+
+/**
+ * Transforms methods of a single class on [executor] and writes them to the class in the order in which they were generated,
+ *   so that the resulting class file does not depend on scheduling.
+ *
+ * Not thread-safe: [submit] and [writeAll] are called by the thread which generates the class.
+ */
+class ParallelMethodTransformer(private val executor: ExecutorService) {
+    private class PendingMethod(val transformation: Future<*>?, val write: () -> Unit)
+
+    private val pending = ArrayList<PendingMethod>()
+
+    /**
+     * Schedules [transform] on the pool, or runs it right away if [inPlace] is true. [write] is postponed until [writeAll].
+     */
+    fun submit(inPlace: Boolean, transform: () -> Unit, write: () -> Unit) {
+        if (inPlace) {
+            transform()
+            pending.add(PendingMethod(null, write))
+        } else {
+            pending.add(PendingMethod(executor.submit(Runnable { transform() }), write))
+        }
+    }
+
+    /**
+     * Waits for all transformations and writes the methods in the order of [submit] calls.
+     */
+    fun writeAll() {
+        try {
+            for (method in pending) {
+                try {
+                    method.transformation?.get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+                method.write()
+            }
+        } finally {
+            pending.forEach { it.transformation?.cancel(false) }
+            pending.clear()
+        }
+    }
+}
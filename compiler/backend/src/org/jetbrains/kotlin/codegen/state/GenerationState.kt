@@ -49,6 +49,8 @@ import org.jetbrains.kotlin.types.KotlinType
 import org.jetbrains.org.objectweb.asm.Type
 import org.jetbrains.org.objectweb.asm.commons.Method
 import java.io.File
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
 class GenerationState private constructor(
     val project: Project,
@@ -272,6 +274,21 @@ class GenerationState private constructor(
 
     val disableOptimization = configuration.get(JVMConfigurationKeys.DISABLE_OPTIMIZATION, false)
 
+    private val optimizationThreads =
+        if (isIrBackend) configuration.get(JVMConfigurationKeys.OPTIMIZATION_THREADS, 1) else 1
+
+    private val optimizationExecutorValue = lazy {
+        Executors.newFixedThreadPool(optimizationThreads) { runnable ->
+            Thread(runnable, "Kotlin bytecode optimization").apply { isDaemon = true }
+        }
+    }
+
+    /**
+     * The pool on which methods are optimized, or null if methods are optimized right after they are generated.
+     */
+    val optimizationExecutor: ExecutorService?
+        get() = if (optimizationThreads > 1) optimizationExecutorValue.value else null
+
     val metadataVersion =
         configuration.get(CommonConfigurationKeys.METADATA_VERSION)
             ?: if (languageVersionSettings.languageVersion >= LanguageVersion.LATEST_STABLE) JvmMetadataVersion.INSTANCE
@@ -337,6 +354,9 @@ class GenerationState private constructor(
 
     fun destroy() {
         interceptedBuilderFactory.close()
+        if (optimizationExecutorValue.isInitialized()) {
+            optimizationExecutorValue.value.shutdownNow()
+        }
     }
 
     private fun shouldOnlyCollectSignatures(origin: JvmDeclarationOrigin) =
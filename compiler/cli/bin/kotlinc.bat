@@ -55,9 +55,13 @@ if "%_KOTLIN_RUNNER%"=="1" (
     set _ADDITIONAL_CLASSPATH=;%_KOTLIN_HOME%\lib\%_KOTLIN_TOOL%
   )
 
-  "%_JAVACMD%" %JAVA_OPTS% -noverify -cp "%_KOTLIN_HOME%\lib\kotlin-preloader.jar" ^
-    org.jetbrains.kotlin.preloading.Preloader -cp "%_KOTLIN_HOME%\lib\kotlin-compiler.jar%_ADDITIONAL_CLASSPATH%" ^
-    %_KOTLIN_COMPILER% %KOTLIN_OPTS%
+  if not "%KOTLIN_CDS_ARCHIVE%"=="" (
+    call :run_with_cds_archive
+  ) else (
+    "%_JAVACMD%" %JAVA_OPTS% -noverify -cp "%_KOTLIN_HOME%\lib\kotlin-preloader.jar" ^
+      org.jetbrains.kotlin.preloading.Preloader -cp "%_KOTLIN_HOME%\lib\kotlin-compiler.jar%_ADDITIONAL_CLASSPATH%" ^
+      %_KOTLIN_COMPILER% %KOTLIN_OPTS%
+  )
 )
 
 exit /b %ERRORLEVEL%
@@ -66,6 +70,25 @@ goto end
 rem ##########################################################################
 rem # subroutines
 
+rem Class data sharing (JDK 13+): the archive of the compiler classes is created at the exit of the first run
+rem and is used by the next ones; it is created again when the compiler is newer than the archive
+:run_with_cds_archive
+  if exist "%KOTLIN_CDS_ARCHIVE%" (
+    rem xcopy /D /L only lists the compiler jar if it is newer than the archive, and copies nothing
+    xcopy /D /L /Y "%_KOTLIN_HOME%\lib\kotlin-compiler.jar" "%KOTLIN_CDS_ARCHIVE%" | find /i "kotlin-compiler.jar" >nul && del "%KOTLIN_CDS_ARCHIVE%"
+  )
+  if exist "%KOTLIN_CDS_ARCHIVE%" (
+    set _CDS_OPTS=-XX:SharedArchiveFile="%KOTLIN_CDS_ARCHIVE%" -Xshare:auto
+  ) else (
+    set _CDS_OPTS=-XX:ArchiveClassesAtExit="%KOTLIN_CDS_ARCHIVE%"
+  )
+  set _COMPILER_CLASSPATH=%_KOTLIN_HOME%\lib\kotlin-compiler.jar%_ADDITIONAL_CLASSPATH%
+  "%_JAVACMD%" %JAVA_OPTS% -XX:+IgnoreUnrecognizedVMOptions %_CDS_OPTS% ^
+    -cp "%_KOTLIN_HOME%\lib\kotlin-preloader.jar;%_COMPILER_CLASSPATH%" ^
+    org.jetbrains.kotlin.preloading.Preloader -direct -cp "%_COMPILER_CLASSPATH%" ^
+    %_KOTLIN_COMPILER% %KOTLIN_OPTS%
+goto :eof
+
 :set_home
   set _BIN_DIR=
   for %%i in (%~sf0) do set _BIN_DIR=%_BIN_DIR%%%~dpsi
@@ -201,6 +201,27 @@ abstract class CommonCompilerArguments : CommonToolArguments() {
     )
     var dumpPerf: String? by NullableStringFreezableVar(null)
 
+    @Argument(
+        value = "-Xdump-trace",
+        valueDescription = "<path>",
+        description = "Dump a trace of compiler phases, files and resolve steps in the Chrome trace event format to the specified file"
+    )
+    var dumpTrace: String? by NullableStringFreezableVar(null)
+
+    @Argument(
+        value = "-Xparsing-threads",
+        valueDescription = "<count>",
+        description = "Parse source files on the given number of threads before the analysis"
+    )
+    var parsingThreads: String? by NullableStringFreezableVar(null)
+
+    @Argument(
+        value = "-Xlowering-threads",
+        valueDescription = "<count>",
+        description = "Run the file lowerings of the IR backend that don't depend on other files on the given number of threads"
+    )
+    var loweringThreads: String? by NullableStringFreezableVar(null)
+
     @Argument(
         value = "-Xmetadata-version",
         description = "Change metadata version of the generated binary files"
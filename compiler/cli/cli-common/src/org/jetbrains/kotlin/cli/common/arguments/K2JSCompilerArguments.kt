@@ -125,6 +125,13 @@ class K2JSCompilerArguments : CommonCompilerArguments() {
     @Argument(value = "-Xir-dce-print-reachability-info", description = "Print declarations' reachability info to stdout during performing DCE")
     var irDcePrintReachabilityInfo: Boolean by FreezableVar(false)
 
+    @Argument(
+        value = "-Xir-codegen-threads",
+        valueDescription = "<count>",
+        description = "Translate IR files to JS on the given number of threads"
+    )
+    var irCodegenThreads: String? by NullableStringFreezableVar(null)
+
     @Argument(value = "-Xir-only", description = "Disables pre-IR backend")
     var irOnly: Boolean by FreezableVar(false)
 
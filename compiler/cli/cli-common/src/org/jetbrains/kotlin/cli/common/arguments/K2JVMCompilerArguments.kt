@@ -139,6 +139,13 @@ class K2JVMCompilerArguments : CommonCompilerArguments() {
     @Argument(value = "-Xno-optimize", description = "Disable optimizations")
     var noOptimize: Boolean by FreezableVar(false)
 
+    @Argument(
+        value = "-Xoptimization-threads",
+        valueDescription = "<count>",
+        description = "Optimize the bytecode of methods on the given number of threads, works only with the IR backend"
+    )
+    var optimizationThreads: String? by NullableStringFreezableVar(null)
+
     @Argument(
         value = "-Xnormalize-constructor-calls",
         valueDescription = "{disable|enable}",
@@ -167,6 +174,12 @@ class K2JVMCompilerArguments : CommonCompilerArguments() {
     )
     var buildFile: String? by NullableStringFreezableVar(null)
 
+    @Argument(
+        value = "-Xuse-classpath-snapshots",
+        description = "Find changes of the classpath in incremental compilation by comparing ABI snapshots of its jars and directories"
+    )
+    var useClasspathSnapshots: Boolean by FreezableVar(false)
+
     @Argument(value = "-Xmultifile-parts-inherit", description = "Compile multifile classes as a hierarchy of parts and facade")
     var inheritMultifileParts: Boolean by FreezableVar(false)
 
@@ -322,6 +322,7 @@ class K2JsIrCompiler : CLICompiler<K2JSCompilerArguments>() {
         }
 
         configuration.put(JSConfigurationKeys.PRINT_REACHABILITY_INFO, arguments.irDcePrintReachabilityInfo)
+        configuration.putThreadCount(JSConfigurationKeys.IR_CODEGEN_THREADS, arguments.irCodegenThreads, "-Xir-codegen-threads")
     }
 
     override fun executableScriptFileName(): String {
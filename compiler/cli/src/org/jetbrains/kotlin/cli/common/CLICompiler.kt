@@ -60,6 +60,9 @@ abstract class CLICompiler<A : CommonCompilerArguments> : CLITool<A>() {
         if (arguments.reportPerf || arguments.dumpPerf != null) {
             performanceManager.enableCollectingPerformanceStatistics()
         }
+        if (arguments.dumpTrace != null) {
+            performanceManager.enableTracing()
+        }
 
         val configuration = CompilerConfiguration()
 
@@ -95,6 +98,10 @@ abstract class CLICompiler<A : CommonCompilerArguments> : CLITool<A>() {
                     performanceManager.dumpPerformanceReport(File(arguments.dumpPerf!!))
                 }
 
+                if (arguments.dumpTrace != null) {
+                    performanceManager.dumpTrace(File(arguments.dumpTrace!!))
+                }
+
                 return if (collector.hasErrors()) COMPILATION_ERROR else code
             } catch (e: CompilationCanceledException) {
                 collector.reportCompilationCancelled(e)
@@ -116,6 +123,7 @@ abstract class CLICompiler<A : CommonCompilerArguments> : CLITool<A>() {
             MessageCollectorUtil.reportException(collector, t)
             return INTERNAL_ERROR
         } finally {
+            performanceManager.stopTracing()
             collector.flush()
         }
     }
@@ -6,6 +6,8 @@
 package org.jetbrains.kotlin.cli.common
 
 import org.jetbrains.kotlin.util.PerformanceCounter
+import org.jetbrains.kotlin.utils.CompilerTracer
+import org.jetbrains.kotlin.utils.TraceSession
 import java.io.File
 import java.lang.management.ManagementFactory
 import java.util.concurrent.TimeUnit
@@ -17,6 +19,7 @@ abstract class CommonCompilerPerformanceManager(private val presentableName: Str
     private var initStartNanos = PerformanceCounter.currentTime()
     private var analysisStart: Long = 0
     private var generationStart: Long = 0
+    private var traceSession: TraceSession? = null
 
     fun getMeasurementResults(): List<PerformanceMeasurement> = measurements
 
@@ -25,16 +28,29 @@ abstract class CommonCompilerPerformanceManager(private val presentableName: Str
         PerformanceCounter.setTimeCounterEnabled(true)
     }
 
+    fun enableTracing() {
+        // A session started by the caller of the compiler, e.g. for a whole incremental build, is dumped by the caller
+        if (!CompilerTracer.isEnabled) {
+            traceSession = CompilerTracer.start()
+        }
+    }
+
+    fun stopTracing() {
+        traceSession?.let(CompilerTracer::stop)
+    }
+
     open fun notifyCompilerInitialized() {
         if (!isEnabled) return
         recordInitializationTime()
     }
 
     open fun notifyCompilationFinished() {
+        stopTracing()
         if (!isEnabled) return
         recordGcTime()
         recordJitCompilationTime()
         recordPerfCountersMeasurements()
+        recordSpanMeasurements()
     }
 
     open fun notifyAnalysisStarted() {
@@ -59,6 +75,11 @@ abstract class CommonCompilerPerformanceManager(private val presentableName: Str
         destination.writeBytes(createPerformanceReport())
     }
 
+    fun dumpTrace(destination: File) {
+        val session = traceSession ?: return
+        destination.bufferedWriter().use { session.writeChromeTrace(it) }
+    }
+
     private fun recordGcTime() {
         if (!isEnabled) return
 
@@ -83,6 +104,13 @@ abstract class CommonCompilerPerformanceManager(private val presentableName: Str
         PerformanceCounter.report { s -> measurements += PerformanceCounterMeasurement(s) }
     }
 
+    private fun recordSpanMeasurements() {
+        val session = traceSession ?: return
+        for (span in session.summary()) {
+            measurements += SpanMeasurement(span.name, span.count, TimeUnit.NANOSECONDS.toMillis(span.nanos), span.allocatedBytes)
+        }
+    }
+
     private fun createPerformanceReport(): ByteArray = buildString {
         appendln("$presentableName performance report")
         measurements.map { it.render() }.sorted().forEach { appendln(it) }
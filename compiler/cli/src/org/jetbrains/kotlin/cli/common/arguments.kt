@@ -26,6 +26,8 @@ fun <A : CommonCompilerArguments> CompilerConfiguration.setupCommonArguments(
     put(CommonConfigurationKeys.EXPECT_ACTUAL_LINKER, arguments.expectActualLinker)
     putIfNotNull(CLIConfigurationKeys.INTELLIJ_PLUGIN_ROOT, arguments.intellijPluginRoot)
     put(CommonConfigurationKeys.REPORT_OUTPUT_FILES, arguments.reportOutputFiles)
+    putThreadCount(CommonConfigurationKeys.PARSING_THREADS, arguments.parsingThreads, "-Xparsing-threads")
+    putThreadCount(CommonConfigurationKeys.LOWERING_THREADS, arguments.loweringThreads, "-Xlowering-threads")
 
     val metadataVersionString = arguments.metadataVersion
     if (metadataVersionString != null) {
@@ -43,6 +45,19 @@ fun <A : CommonCompilerArguments> CompilerConfiguration.setupCommonArguments(
     setupLanguageVersionSettings(arguments)
 }
 
+fun CompilerConfiguration.putThreadCount(key: CompilerConfigurationKey<Int>, value: String?, argumentName: String) {
+    if (value == null) return
+
+    val threads = value.toIntOrNull()
+    if (threads == null || threads < 1) {
+        getNotNull(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY).report(
+            CompilerMessageSeverity.ERROR, "Invalid number of threads for $argumentName: $value", null
+        )
+    } else {
+        put(key, threads)
+    }
+}
+
 fun <A : CommonCompilerArguments> CompilerConfiguration.setupLanguageVersionSettings(arguments: A) {
     languageVersionSettings = arguments.toLanguageVersionSettings(getNotNull(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY))
 }
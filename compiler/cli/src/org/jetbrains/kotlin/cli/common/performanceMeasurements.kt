@@ -48,3 +48,12 @@ class GarbageCollectionMeasurement(private val garbageCollectionKind: String, pr
 class PerformanceCounterMeasurement(private val counterReport: String) : PerformanceMeasurement {
     override fun render(): String = counterReport
 }
+
+
+class SpanMeasurement(private val name: String, private val count: Int, private val milliseconds: Long, private val allocatedBytes: Long) :
+    PerformanceMeasurement {
+    override fun render(): String {
+        val allocated = if (allocatedBytes >= 0) ", ${allocatedBytes / 1024} KB allocated" else ""
+        return "SPAN: $name: $count times in $milliseconds ms$allocated"
+    }
+}
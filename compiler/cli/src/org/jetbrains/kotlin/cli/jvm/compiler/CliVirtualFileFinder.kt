@@ -26,7 +26,11 @@ import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.name.Name
 import org.jetbrains.kotlin.serialization.deserialization.MetadataPackageFragment
 import org.jetbrains.kotlin.serialization.deserialization.builtins.BuiltInSerializerProtocol
+import org.jetbrains.kotlin.serialization.deserialization.builtins.BuiltInsPackageData
+import java.io.ByteArrayInputStream
 import java.io.InputStream
+import java.nio.ByteBuffer
+import java.security.MessageDigest
 
 class CliVirtualFileFinder(
     private val index: JvmDependenciesIndex,
@@ -53,16 +57,52 @@ class CliVirtualFileFinder(
         return found
     }
 
-    override fun findBuiltInsData(packageFqName: FqName): InputStream? {
+    override fun findBuiltInsData(packageFqName: FqName): InputStream? =
+        findBuiltInsFile(packageFqName)?.inputStream
+
+    override fun findBuiltInsPackageData(packageFqName: FqName): BuiltInsPackageData? {
+        val file = findBuiltInsFile(packageFqName) ?: return null
+        // Built-ins files are small, reading them is cheap compared to parsing. The timestamp of a jar entry is not reliable
+        //   (it has 2 seconds resolution and reproducible builds write a constant one), so the key is based on the content
+        val bytes = file.contentsToByteArray()
+        val key = BuiltInsFileKey(file.path, bytes.size, contentHash(bytes))
+        synchronized(builtInsDataCache) {
+            builtInsDataCache[key]?.let { return it }
+        }
+
+        val data = BuiltInsPackageData.read(ByteArrayInputStream(bytes))
+        synchronized(builtInsDataCache) {
+            builtInsDataCache[key] = data
+        }
+        return data
+    }
+
+    private fun findBuiltInsFile(packageFqName: FqName): VirtualFile? {
         // "<builtins-metadata>" is just a made-up name
         // JvmDependenciesIndex requires the ClassId of the class which we're searching for, to cache the last request+result
         val classId = ClassId(packageFqName, Name.special("<builtins-metadata>"))
 
-        return findBinaryClass(classId, BuiltInSerializerProtocol.getBuiltInsFileName(packageFqName))?.inputStream
+        return findBinaryClass(classId, BuiltInSerializerProtocol.getBuiltInsFileName(packageFqName))
     }
 
     private fun findBinaryClass(classId: ClassId, fileName: String): VirtualFile? =
         index.findClass(classId, acceptedRootTypes = JavaRoot.OnlyBinary) { dir, _ ->
             dir.findChild(fileName)?.takeIf(VirtualFile::isValid)
         }?.takeIf { it in scope }
+
+    private data class BuiltInsFileKey(val path: String, val length: Int, val contentHash: Long)
+
+    private fun contentHash(bytes: ByteArray): Long =
+        ByteBuffer.wrap(MessageDigest.getInstance("SHA-1").digest(bytes)).long
+
+    companion object {
+        private const val MAX_CACHED_BUILT_INS_FILES = 64
+
+        // Every compilation in the daemon reads the same built-ins of the standard library. Their data is immutable,
+        //   so it is shared by the compilations of the process, while descriptors are still created per module
+        private val builtInsDataCache = object : LinkedHashMap<BuiltInsFileKey, BuiltInsPackageData>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<BuiltInsFileKey, BuiltInsPackageData>?): Boolean =
+                size > MAX_CACHED_BUILT_INS_FILES
+        }
+    }
 }
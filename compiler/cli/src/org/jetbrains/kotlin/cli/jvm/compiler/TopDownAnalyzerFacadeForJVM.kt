@@ -75,6 +75,7 @@ import org.jetbrains.kotlin.resolve.lazy.declarations.DeclarationProviderFactory
 import org.jetbrains.kotlin.resolve.lazy.declarations.FileBasedDeclarationProviderFactory
 import org.jetbrains.kotlin.storage.LockBasedStorageManager
 import org.jetbrains.kotlin.storage.StorageManager
+import org.jetbrains.kotlin.utils.CompilerTracer
 import java.util.*
 import kotlin.reflect.KFunction1
 
@@ -91,10 +92,12 @@ object TopDownAnalyzerFacadeForJVM {
         sourceModuleSearchScope: GlobalSearchScope = newModuleSearchScope(project, files),
         klibList: List<KotlinLibrary> = emptyList()
     ): AnalysisResult {
-        val container = createContainer(
-            project, files, trace, configuration, packagePartProvider, declarationProviderFactory, CompilerEnvironment,
-            sourceModuleSearchScope, klibList
-        )
+        val container = CompilerTracer.span("CreateContainer") {
+            createContainer(
+                project, files, trace, configuration, packagePartProvider, declarationProviderFactory, CompilerEnvironment,
+                sourceModuleSearchScope, klibList
+            )
+        }
 
         val module = container.get<ModuleDescriptor>()
         val moduleContext = container.get<ModuleContext>()
@@ -119,9 +122,11 @@ object TopDownAnalyzerFacadeForJVM {
             }
         }
 
-        container.get<LazyTopDownAnalyzer>().analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, files)
+        CompilerTracer.span("AnalyzeDeclarations") {
+            container.get<LazyTopDownAnalyzer>().analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations, files)
+        }
 
-        invokeExtensionsOnAnalysisComplete()?.let { return it }
+        CompilerTracer.span("AnalysisCompleted") { invokeExtensionsOnAnalysisComplete() }?.let { return it }
 
         return AnalysisResult.success(trace.bindingContext, module)
     }
@@ -5,6 +5,7 @@
 
 package org.jetbrains.kotlin.cli.jvm.compiler
 
+import com.intellij.lang.ASTNode
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.vfs.StandardFileSystems
@@ -15,13 +16,18 @@ import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys
 import org.jetbrains.kotlin.cli.common.config.KotlinSourceRoot
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
 import org.jetbrains.kotlin.config.CompilerConfiguration
 import org.jetbrains.kotlin.config.JVMConfigurationKeys
 import org.jetbrains.kotlin.extensions.PreprocessedFileCreator
 import org.jetbrains.kotlin.idea.KotlinFileType
 import org.jetbrains.kotlin.psi.KtFile
 import org.jetbrains.kotlin.resolve.multiplatform.isCommonSource
+import org.jetbrains.kotlin.utils.CompilerTracer
 import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
 
 fun CompilerConfiguration.report(severity: CompilerMessageSeverity, message: String, location: CompilerMessageLocation? = null) {
     get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY)?.report(severity, message, location)
@@ -78,5 +84,52 @@ fun createSourceFilesFromSourceRoots(
         }
     }
 
+    val parsingThreads = configuration.get(CommonConfigurationKeys.PARSING_THREADS, 1)
+    if (parsingThreads > 1 && result.size > 1) {
+        CompilerTracer.span("Parse") {
+            parseInParallel(result, parsingThreads)
+        }
+    }
+
     return result
-}
\ No newline at end of file
+}
+
+/**
+ * Reads and parses [files] on [threads] threads, so that the analysis gets fully built trees instead of parsing the files
+ *   one by one on the first access. Only the lazy elements of different files are parsed concurrently, each under its own lock.
+ */
+private fun parseInParallel(files: List<KtFile>, threads: Int) {
+    val executor = Executors.newFixedThreadPool(minOf(threads, files.size))
+    try {
+        val tasks = files.map { file ->
+            executor.submit(Callable { CompilerTracer.span("ParseFile", file.name) { ensureParsed(file) } })
+        }
+        for (task in tasks) {
+            try {
+                task.get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+        }
+    } finally {
+        executor.shutdownNow()
+    }
+}
+
+private fun ensureParsed(file: KtFile) {
+    // Lazy nodes, i.e. the file itself and the blocks of function bodies, are parsed when their children are requested
+    val root = file.node
+    var node: ASTNode? = root.firstChildNode
+    while (node != null) {
+        node = node.firstChildNode ?: nextSkippingChildren(node, root)
+    }
+}
+
+private fun nextSkippingChildren(node: ASTNode, root: ASTNode): ASTNode? {
+    var current = node
+    while (current !== root) {
+        current.treeNext?.let { return it }
+        current = current.treeParent ?: return null
+    }
+    return null
+}
@@ -47,6 +47,12 @@ object CommonConfigurationKeys {
 
     @JvmField
     val EXPECT_ACTUAL_LINKER = CompilerConfigurationKey.create<Boolean>("Experimental expext/actual linker")
+
+    @JvmField
+    val LOWERING_THREADS = CompilerConfigurationKey.create<Int>("number of threads used to lower files concurrently")
+
+    @JvmField
+    val PARSING_THREADS = CompilerConfigurationKey.create<Int>("number of threads used to parse source files eagerly")
 }
 
 var CompilerConfiguration.languageVersionSettings: LanguageVersionSettings
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.daemon.common.experimental.socketInfrastructure
+
+import org.jetbrains.kotlin.daemon.common.experimental.CompilerCallbackServicesFacadeServerSide
+import org.jetbrains.kotlin.daemon.common.experimental.CompilerServicesFacadeBaseServerSide
+import org.jetbrains.kotlin.incremental.components.LookupInfo
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
+import java.io.*
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Encoding of the objects sent by [ByteWriteChannelWrapper.writeObject] and read by [ByteReadChannelWrapper.nextObject].
+ *
+ * An encoded object starts with a tag byte. Strings, primitives, byte arrays, message replies, compiler messages and batches of lookups
+ *   are written field by field; any other object falls back to Java serialization.
+ *   Lookups are written with a table of the distinct strings of the batch, so a file path or a scope is sent only once.
+ */
+object BinaryProtocol {
+    private const val NULL = 0
+    private const val JAVA_SERIALIZED = 1
+    private const val STRING = 2
+    private const val BOOLEAN = 3
+    private const val INT = 4
+    private const val LONG = 5
+    private const val BYTE_ARRAY = 6
+    private const val UNIT = 7
+    private const val MESSAGE_REPLY = 8
+    private const val REPORT_MESSAGE = 9
+    private const val LOOKUPS_MESSAGE = 10
+
+    private val scopeKinds = ScopeKind.values()
+
+    fun write(obj: Any?, output: DataOutputStream) {
+        when (obj) {
+            null -> output.writeByte(NULL)
+            is String -> {
+                output.writeByte(STRING)
+                writeString(obj, output)
+            }
+            is Boolean -> {
+                output.writeByte(BOOLEAN)
+                output.writeBoolean(obj)
+            }
+            is Int -> {
+                output.writeByte(INT)
+                output.writeInt(obj)
+            }
+            is Long -> {
+                output.writeByte(LONG)
+                output.writeLong(obj)
+            }
+            is ByteArray -> {
+                output.writeByte(BYTE_ARRAY)
+                output.writeInt(obj.size)
+                output.write(obj)
+            }
+            is Unit -> output.writeByte(UNIT)
+            is DefaultAuthorizableClient.MessageReply<*> -> {
+                output.writeByte(MESSAGE_REPLY)
+                output.writeInt(obj.messageId)
+                write(obj.reply, output)
+            }
+            is CompilerServicesFacadeBaseServerSide.ReportMessage -> {
+                output.writeByte(REPORT_MESSAGE)
+                writeMessageId(obj, output)
+                output.writeInt(obj.category)
+                output.writeInt(obj.severity)
+                write(obj.message, output)
+                write(obj.attachment, output)
+            }
+            is CompilerCallbackServicesFacadeServerSide.LookupTracker_recordMessage -> {
+                output.writeByte(LOOKUPS_MESSAGE)
+                writeMessageId(obj, output)
+                writeLookups(obj.lookups, output)
+            }
+            else -> {
+                // ObjectInputStream may read ahead, so a serialized object is always the last field of a frame
+                output.writeByte(JAVA_SERIALIZED)
+                ObjectOutputStream(output).apply {
+                    writeObject(obj)
+                    flush()
+                }
+            }
+        }
+    }
+
+    fun read(input: DataInputStream): Any? =
+        when (val tag = input.readByte().toInt()) {
+            NULL -> null
+            STRING -> readString(input)
+            BOOLEAN -> input.readBoolean()
+            INT -> input.readInt()
+            LONG -> input.readLong()
+            BYTE_ARRAY -> ByteArray(input.readInt()).also { input.readFully(it) }
+            UNIT -> Unit
+            MESSAGE_REPLY -> DefaultAuthorizableClient.MessageReply<Any>(input.readInt(), read(input))
+            REPORT_MESSAGE -> {
+                val messageId = readMessageId(input)
+                CompilerServicesFacadeBaseServerSide.ReportMessage(
+                    input.readInt(), input.readInt(), read(input) as String?, read(input) as Serializable?
+                ).also { it.messageId = messageId }
+            }
+            LOOKUPS_MESSAGE -> {
+                val messageId = readMessageId(input)
+                CompilerCallbackServicesFacadeServerSide.LookupTracker_recordMessage(readLookups(input)).also { it.messageId = messageId }
+            }
+            JAVA_SERIALIZED -> ObjectInputStream(input).readObject()
+            else -> throw IOException("Unknown object tag $tag")
+        }
+
+    private fun writeMessageId(message: Server.AnyMessage<*>, output: DataOutputStream) {
+        val messageId = message.messageId
+        output.writeBoolean(messageId != null)
+        if (messageId != null) output.writeInt(messageId)
+    }
+
+    private fun readMessageId(input: DataInputStream): Int? =
+        if (input.readBoolean()) input.readInt() else null
+
+    // DataOutput.writeUTF is limited to 64 KB, compiler messages with stack traces may be longer
+    private fun writeString(string: String, output: DataOutputStream) {
+        val bytes = string.toByteArray(Charsets.UTF_8)
+        writeVarInt(bytes.size, output)
+        output.write(bytes)
+    }
+
+    private fun readString(input: DataInputStream): String {
+        val bytes = ByteArray(readVarInt(input))
+        input.readFully(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    private fun writeLookups(lookups: Collection<LookupInfo>, output: DataOutputStream) {
+        val stringIds = LinkedHashMap<String, Int>()
+        fun id(string: String) = stringIds.getOrPut(string) { stringIds.size }
+
+        val records = IntArray(lookups.size * LOOKUP_FIELDS)
+        var offset = 0
+        for (lookup in lookups) {
+            records[offset++] = id(lookup.filePath)
+            records[offset++] = lookup.position.line
+            records[offset++] = lookup.position.column
+            records[offset++] = id(lookup.scopeFqName)
+            records[offset++] = lookup.scopeKind.ordinal
+            records[offset++] = id(lookup.name)
+        }
+
+        writeVarInt(stringIds.size, output)
+        stringIds.keys.forEach { writeString(it, output) }
+        writeVarInt(lookups.size, output)
+        // Positions are -1 when they are not tracked
+        records.forEach { writeVarInt(it + 1, output) }
+    }
+
+    private fun readLookups(input: DataInputStream): Collection<LookupInfo> {
+        val strings = Array(readVarInt(input)) { readString(input) }
+        val size = readVarInt(input)
+        val result = ArrayList<LookupInfo>(size)
+        repeat(size) {
+            val filePath = strings[readVarInt(input) - 1]
+            val position = Position(readVarInt(input) - 1, readVarInt(input) - 1)
+            val scopeFqName = strings[readVarInt(input) - 1]
+            val scopeKind = scopeKinds[readVarInt(input) - 1]
+            val name = strings[readVarInt(input) - 1]
+            result.add(LookupInfo(filePath, position, scopeFqName, scopeKind, name))
+        }
+        return result
+    }
+
+    private const val LOOKUP_FIELDS = 6
+
+    private fun writeVarInt(value: Int, output: DataOutputStream) {
+        var rest = value
+        while (rest and 0x7F.inv() != 0) {
+            output.writeByte((rest and 0x7F) or 0x80)
+            rest = rest ushr 7
+        }
+        output.writeByte(rest)
+    }
+
+    private fun readVarInt(input: DataInputStream): Int {
+        var result = 0
+        var shift = 0
+        while (true) {
+            val byte = input.readByte().toInt()
+            result = result or ((byte and 0x7F) shl shift)
+            if (byte and 0x80 == 0) return result
+            shift += 7
+        }
+    }
+}
+
+/**
+ * Output buffer of a frame. The buffer is returned to [FrameBufferPool] after the frame is written to the socket.
+ */
+internal class FrameBuffer : ByteArrayOutputStream(INITIAL_SIZE) {
+    val bytes: ByteArray get() = buf
+    val size: Int get() = count
+
+    /**
+     * Starts a new frame, leaving space for its length.
+     */
+    fun startFrame() {
+        reset()
+        write(EMPTY_LENGTH, 0, EMPTY_LENGTH.size)
+    }
+
+    fun finishFrame() {
+        val length = count - EMPTY_LENGTH.size
+        buf[0] = (length ushr 24).toByte()
+        buf[1] = (length ushr 16).toByte()
+        buf[2] = (length ushr 8).toByte()
+        buf[3] = length.toByte()
+    }
+
+    companion object {
+        const val INITIAL_SIZE = 8 * 1024
+        private val EMPTY_LENGTH = ByteArray(4)
+    }
+}
+
+internal object FrameBufferPool {
+    private const val MAX_POOLED_BUFFERS = 16
+    // Buffers grown by a huge message are not kept in the pool
+    private const val MAX_POOLED_BUFFER_SIZE = 1024 * 1024
+
+    private val buffers = ConcurrentLinkedQueue<FrameBuffer>()
+    private val pooledCount = AtomicInteger()
+
+    fun acquire(): FrameBuffer =
+        buffers.poll()?.also { pooledCount.decrementAndGet() } ?: FrameBuffer()
+
+    fun release(buffer: FrameBuffer) {
+        if (buffer.bytes.size > MAX_POOLED_BUFFER_SIZE) return
+        if (pooledCount.incrementAndGet() > MAX_POOLED_BUFFERS) {
+            pooledCount.decrementAndGet()
+            return
+        }
+        buffers.offer(buffer)
+    }
+}
@@ -88,25 +88,13 @@ class ByteReadChannelWrapper(readChannel: ByteReadChannel, private val log: Logg
     } ?: DEFAULT_BYTE_ARRAY
 
     private suspend fun getObject(length: Int, readPacket: suspend (Int) -> ByteArray?): Any? =
-        if (length >= 0) {
-            readPacket(length)?.let { bytes ->
-                ObjectInputStream(
-                    ByteArrayInputStream(bytes)
-                ).use {
-                    it.readObject()
-                }
-            }
-        } else { // optimize for long strings!
-            readPacket(-length)?.let { bytes ->
-                String(
-                    ByteArrayInputStream(
-                        bytes
-                    ).readBytes()
-                )
+        readPacket(length)?.let { bytes ->
+            DataInputStream(ByteArrayInputStream(bytes)).use {
+                BinaryProtocol.read(it)
             }
         }
 
-    /** first reads <t>length</t> token (4 bytes), then reads <t>length</t> bytes and returns deserialized object */
+    /** first reads <t>length</t> token (4 bytes), then reads <t>length</t> bytes and returns the object decoded by [BinaryProtocol] */
     suspend fun nextObject(): Any? {
         val obj = CompletableDeferred<Any?>()
         readActor.send(SerObjectQuery(obj))
@@ -131,12 +119,14 @@ class ByteWriteChannelWrapper(writeChannel: ByteWriteChannel, private val log: L
         override fun toByteArray() = lengthBytes + bytes
     }
 
+    private class Frame(val buffer: FrameBuffer) : WriteActorQuery
+
     private class CloseMessage : WriteActorQuery
 
-    private suspend fun tryWrite(b: ByteArray, writeChannel: ByteWriteChannel) {
+    private suspend fun tryWrite(b: ByteArray, writeChannel: ByteWriteChannel, length: Int = b.size) {
         if (!writeChannel.isClosedForWrite) {
             try {
-                writeChannel.writeFully(b)
+                writeChannel.writeFully(b, 0, length)
             } catch (e: Exception) {
                 log.fine("failed to print message, ${e.message}")
             }
@@ -155,17 +145,30 @@ class ByteWriteChannelWrapper(writeChannel: ByteWriteChannel, private val log: L
                     }
                     is ByteData -> {
                         tryWrite(message.toByteArray(), writeChannel)
-                        if (!writeChannel.isClosedForWrite) {
-                            try {
-                                writeChannel.flush()
-                            } catch (e: Exception) {
-                                log.fine("failed to flush byte write chanel")
-                            }
+                        tryFlush(writeChannel)
+                    }
+                    is Frame -> {
+                        try {
+                            tryWrite(message.buffer.bytes, writeChannel, message.buffer.size)
+                        } finally {
+                            FrameBufferPool.release(message.buffer)
                         }
+                        tryFlush(writeChannel)
                     }
                 }
             } else {
                 log.fine("${log.name} write chanel closed")
+                if (message is Frame) FrameBufferPool.release(message.buffer)
+            }
+        }
+    }
+
+    private suspend fun tryFlush(writeChannel: ByteWriteChannel) {
+        if (!writeChannel.isClosedForWrite) {
+            try {
+                writeChannel.flush()
+            } catch (e: Exception) {
+                log.fine("failed to flush byte write chanel")
             }
         }
     }
@@ -179,27 +182,27 @@ class ByteWriteChannelWrapper(writeChannel: ByteWriteChannel, private val log: L
         )
     }
 
-    private suspend fun writeObjectImpl(obj: Any?) =
-        ByteArrayOutputStream().use { bos ->
-            ObjectOutputStream(bos).use { objOut ->
-                objOut.writeObject(obj)
-                objOut.flush()
-                val bytes = bos.toByteArray()
-                writeBytesAndLength(bytes.size, bytes)
-            }
-        }
-
-    private suspend fun writeString(s: String) = writeBytesAndLength(-s.length, s.toByteArray())
-
     fun getLengthBytes(length: Int) =
         ByteBuffer
             .allocate(4)
             .putInt(length)
             .array()
 
+    /** writes <t>length</t> token (4 bytes) and the object encoded by [BinaryProtocol] into a pooled buffer */
     suspend fun writeObject(obj: Any?) {
-        if (obj is String) writeString(obj)
-        else writeObjectImpl(obj)
+        val buffer = FrameBufferPool.acquire()
+        try {
+            buffer.startFrame()
+            DataOutputStream(buffer).apply {
+                BinaryProtocol.write(obj, this)
+                flush()
+            }
+            buffer.finishFrame()
+        } catch (e: Throwable) {
+            FrameBufferPool.release(buffer)
+            throw e
+        }
+        writeActor.send(Frame(buffer))
     }
 
     suspend fun close() = writeActor.send(CloseMessage())
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.daemon
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.incremental.components.LookupInfo
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
+import java.util.*
+import kotlin.concurrent.thread
+
+class LookupBatcherTest : TestCase() {
+    fun testDeduplicationAcrossBatches() {
+        val batches = Collections.synchronizedList(ArrayList<Collection<LookupInfo>>())
+        val batcher = LookupBatcher(requiresPosition = false, batchSize = 10) { batches.add(it) }
+
+        repeat(3) {
+            for (i in 0 until 25) {
+                batcher.record("/src/File${i % 5}.kt", Position(i, i), "foo.Scope", ScopeKind.CLASSIFIER, "name$i")
+            }
+        }
+        batcher.flush()
+
+        val lookups = batches.flatten()
+        assertEquals(25, lookups.size)
+        assertEquals(25, lookups.toSet().size)
+        assertTrue(lookups.all { it.position == Position.NO_POSITION })
+    }
+
+    fun testScopeKindsAreDroppedWithPositions() {
+        val lookups = Collections.synchronizedList(ArrayList<LookupInfo>())
+        val batcher = LookupBatcher(requiresPosition = false, batchSize = 10) { lookups.addAll(it) }
+
+        for (kind in ScopeKind.values()) {
+            batcher.record("/src/File.kt", Position(1, 1), "foo", kind, "bar")
+        }
+        batcher.flush()
+
+        assertEquals(listOf(LookupInfo("/src/File.kt", Position.NO_POSITION, "foo", ScopeKind.CLASSIFIER, "bar")), lookups)
+    }
+
+    fun testManyDistinctLookups() {
+        val lookups = Collections.synchronizedList(ArrayList<LookupInfo>())
+        val batcher = LookupBatcher(requiresPosition = true, batchSize = 1000) { lookups.addAll(it) }
+
+        // Enough lookups to grow the set of sent lookups several times, each one is recorded twice
+        repeat(2) {
+            for (i in 0 until 20_000) {
+                batcher.record("/src/File${i % 100}.kt", Position(i % 1000, i % 80), "foo.Scope${i % 30}", ScopeKind.PACKAGE, "name${i % 700}")
+            }
+        }
+        batcher.flush()
+
+        assertEquals(20_000, lookups.size)
+        assertEquals(20_000, lookups.toSet().size)
+    }
+
+    fun testPositionsAndThreads() {
+        val lookups = Collections.synchronizedList(ArrayList<LookupInfo>())
+        val batcher = LookupBatcher(requiresPosition = true, batchSize = 100) { lookups.addAll(it) }
+
+        val expected = HashSet<LookupInfo>()
+        val threads = (0 until 4).map { t ->
+            val threadLookups = (0 until 1000).map { i ->
+                LookupInfo("/src/File$t.kt", Position(i / 80, i % 80), "foo.Scope${i % 7}", ScopeKind.values()[i % 2], "name${i % 13}")
+            }
+            expected.addAll(threadLookups)
+            thread {
+                for (lookup in threadLookups) {
+                    batcher.record(lookup.filePath, lookup.position, lookup.scopeFqName, lookup.scopeKind, lookup.name)
+                }
+            }
+        }
+        threads.forEach { it.join() }
+        batcher.flush()
+
+        assertEquals(expected.size, lookups.size)
+        assertEquals(expected, lookups.toSet())
+    }
+
+    fun testSendErrorIsRethrown() {
+        val batcher = LookupBatcher(requiresPosition = false, batchSize = 1) { throw IllegalStateException("send failed") }
+        batcher.record("/src/File.kt", Position.NO_POSITION, "foo", ScopeKind.PACKAGE, "bar")
+        try {
+            batcher.flush()
+            fail("Exception expected")
+        } catch (e: IllegalStateException) {
+            assertEquals("send failed", e.message)
+        }
+    }
+}
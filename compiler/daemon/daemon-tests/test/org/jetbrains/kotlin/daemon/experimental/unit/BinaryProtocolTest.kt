@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.daemon.experimental.unit
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.daemon.common.experimental.CompilerCallbackServicesFacadeServerSide
+import org.jetbrains.kotlin.daemon.common.experimental.CompilerServicesFacadeBaseServerSide
+import org.jetbrains.kotlin.daemon.common.experimental.socketInfrastructure.BinaryProtocol
+import org.jetbrains.kotlin.daemon.common.experimental.socketInfrastructure.DefaultAuthorizableClient
+import org.jetbrains.kotlin.incremental.components.LookupInfo
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
+import java.io.*
+
+class BinaryProtocolTest : TestCase() {
+    fun testPrimitives() {
+        for (value in listOf(null, "", "text with non-ASCII: é中", true, 42, -1L, Unit)) {
+            assertEquals(value, roundTrip(value))
+        }
+        assertEquals(listOf<Byte>(1, 2, 3), (roundTrip(byteArrayOf(1, 2, 3)) as ByteArray).toList())
+    }
+
+    fun testMessageReply() {
+        val reply = roundTrip(DefaultAuthorizableClient.MessageReply(5, arrayListOf("a", "b"))) as DefaultAuthorizableClient.MessageReply<*>
+        assertEquals(5, reply.messageId)
+        assertEquals(listOf("a", "b"), reply.reply)
+    }
+
+    fun testReportMessage() {
+        val message = CompilerServicesFacadeBaseServerSide.ReportMessage(1, 2, "message", "attachment").withId(7)
+        val result = roundTrip(message) as CompilerServicesFacadeBaseServerSide.ReportMessage
+        assertEquals(7, result.messageId)
+        assertEquals(1, result.category)
+        assertEquals(2, result.severity)
+        assertEquals("message", result.message)
+        assertEquals("attachment", result.attachment)
+    }
+
+    fun testLookups() {
+        val lookups = createLookups(1000)
+        val message = CompilerCallbackServicesFacadeServerSide.LookupTracker_recordMessage(lookups).withId(-1)
+        val result = roundTrip(message) as CompilerCallbackServicesFacadeServerSide.LookupTracker_recordMessage
+        assertEquals(-1, result.messageId)
+        assertEquals(lookups.toList(), result.lookups.toList())
+    }
+
+    /**
+     * A batch shares the strings of its lookups, so it must be smaller than the same lookups sent one by one,
+     *   and than Java serialization, which is used by the RMI daemon and was used by the socket one.
+     */
+    fun testLookupsEncodingSize() {
+        val lookups = createLookups(10_000)
+        val message = CompilerCallbackServicesFacadeServerSide.LookupTracker_recordMessage(lookups).withId(-1)
+        val bytes = encode(message)
+
+        val result = decode(bytes) as CompilerCallbackServicesFacadeServerSide.LookupTracker_recordMessage
+        assertEquals(lookups.toList(), result.lookups.toList())
+
+        val perLookupSize = lookups.sumBy { lookup ->
+            encode(CompilerCallbackServicesFacadeServerSide.LookupTracker_recordMessage(listOf(lookup)).withId(-1)).size
+        }
+        assertTrue("Batch of ${bytes.size} bytes is not smaller than single lookups of $perLookupSize bytes", bytes.size < perLookupSize)
+
+        val serializedSize = ByteArrayOutputStream().also { ObjectOutputStream(it).use { out -> out.writeObject(message) } }.size()
+        assertTrue("Batch of ${bytes.size} bytes is not smaller than Java serialization of $serializedSize bytes", bytes.size < serializedSize)
+    }
+
+    private fun createLookups(count: Int): Collection<LookupInfo> =
+        (0 until count).mapTo(LinkedHashSet()) { i ->
+            LookupInfo(
+                "/project/src/foo/File${i % 500}.kt",
+                if (i % 2 == 0) Position(i % 1000, i % 80) else Position.NO_POSITION,
+                "foo.bar.Scope${i % 50}",
+                ScopeKind.values()[i % ScopeKind.values().size],
+                "name${i % 2000}"
+            )
+        }
+
+    private fun roundTrip(value: Any?): Any? = decode(encode(value))
+
+    private fun encode(value: Any?): ByteArray =
+        ByteArrayOutputStream().also { DataOutputStream(it).use { out -> BinaryProtocol.write(value, out) } }.toByteArray()
+
+    private fun decode(bytes: ByteArray): Any? = BinaryProtocol.read(DataInputStream(ByteArrayInputStream(bytes)))
+}
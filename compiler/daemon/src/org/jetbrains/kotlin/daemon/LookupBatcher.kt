@@ -0,0 +1,248 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.daemon
+
+import org.jetbrains.kotlin.incremental.components.LookupInfo
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.logging.Logger
+
+/**
+ * Collects the lookups recorded during a compilation on the daemon and passes them to [send] in batches.
+ *
+ * A lookup is written to an int buffer of the recording thread as ids of its strings, its scope kind and its position.
+ *   Unless [requiresPosition], positions are dropped and all lookups are sent with the [ScopeKind.CLASSIFIER] kind, as the lookup
+ *   tracker clients did before: the lookup storage uses neither of them, and lookups which differ only in them are sent once.
+ *   A full buffer is sent on a separate thread while the compilation continues; lookups already sent during the compilation
+ *   are not sent again. [flush] sends the rest and waits until all batches are sent.
+ */
+class LookupBatcher(
+    private val requiresPosition: Boolean,
+    private val batchSize: Int = DEFAULT_BATCH_SIZE,
+    private val send: (Collection<LookupInfo>) -> Unit
+) {
+    private val strings = StringTable()
+    private val buffers = ConcurrentLinkedQueue<LookupBuffer>()
+    private val threadBuffer = ThreadLocal.withInitial { LookupBuffer(batchSize).also { buffers.add(it) } }
+
+    private var executor: ExecutorService? = null
+
+    // Accessed only from the executor thread, or after it is terminated
+    private var sentLookups = LookupSet()
+    private var recordedCount = 0L
+    private var batchCount = 0
+    @Volatile
+    private var sendError: Throwable? = null
+
+    fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
+        val buffer = threadBuffer.get()
+        val fileId = strings.id(filePath)
+        val scopeId = strings.id(scopeFqName)
+        val nameId = strings.id(name)
+        val line = if (requiresPosition) position.line else Position.NO_POSITION.line
+        val column = if (requiresPosition) position.column else Position.NO_POSITION.column
+        val kind = if (requiresPosition) scopeKind.ordinal else ScopeKind.CLASSIFIER.ordinal
+
+        val fullRecords = synchronized(buffer) {
+            buffer.add(fileId, line, column, scopeId, kind, nameId)
+        }
+        if (fullRecords != null) {
+            submit(fullRecords, batchSize)
+        }
+    }
+
+    /**
+     * Sends the lookups which are not sent yet. Rethrows the first exception thrown by [send].
+     */
+    fun flush() {
+        val remaining = buffers.map { buffer -> synchronized(buffer) { buffer.takeRecords() } }
+        val executor = synchronized(this) { executor.also { executor = null } }
+
+        if (executor != null) {
+            executor.shutdown()
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // waiting for the batches of the compilation
+            }
+        }
+        sendError?.let { throw it }
+
+        for ((records, size) in remaining) {
+            if (size > 0) sendBatch(records, size)
+        }
+        sendError?.let { throw it }
+
+        if (recordedCount > 0) {
+            log.info("Lookups: $recordedCount recorded, ${sentLookups.size} sent in $batchCount batches")
+        }
+        sentLookups = LookupSet()
+    }
+
+    private fun submit(records: IntArray, size: Int) {
+        val executor = synchronized(this) {
+            executor ?: Executors.newSingleThreadExecutor { runnable ->
+                Thread(runnable, "Lookup tracker batches").apply { isDaemon = true }
+            }.also { executor = it }
+        }
+        executor.execute { sendBatch(records, size) }
+    }
+
+    private fun sendBatch(records: IntArray, size: Int) {
+        if (sendError != null) return
+
+        recordedCount += size
+        val batch = ArrayList<LookupInfo>()
+        val batchStrings = HashMap<Int, String>()
+        fun string(id: Int) = batchStrings.getOrPut(id) { strings[id] }
+
+        var offset = 0
+        repeat(size) {
+            if (sentLookups.add(records, offset)) {
+                val position = if (requiresPosition) Position(records[offset + 1], records[offset + 2]) else Position.NO_POSITION
+                val scopeKind = scopeKinds[records[offset + 4]]
+                batch.add(LookupInfo(string(records[offset]), position, string(records[offset + 3]), scopeKind, string(records[offset + 5])))
+            }
+            offset += LOOKUP_FIELDS
+        }
+        if (batch.isEmpty()) return
+
+        try {
+            send(batch)
+        } catch (e: Throwable) {
+            sendError = e
+            return
+        }
+        batchCount++
+    }
+
+    /**
+     * Set of lookups kept as their records in one int array, so that checking a lookup does not allocate.
+     *   The hash table is open-addressed and holds the index of a lookup plus one, 0 marks a free slot.
+     */
+    private class LookupSet {
+        private var records = IntArray(INITIAL_BUFFER_SIZE * LOOKUP_FIELDS)
+        private var table = IntArray(INITIAL_BUFFER_SIZE * 2)
+
+        var size = 0
+            private set
+
+        /**
+         * Adds the lookup stored at [offset] of [source], returns false if the set already contains it.
+         */
+        fun add(source: IntArray, offset: Int): Boolean {
+            val mask = table.size - 1
+            var slot = hash(source, offset) and mask
+            while (table[slot] != 0) {
+                if (recordEquals(table[slot] - 1, source, offset)) return false
+                slot = (slot + 1) and mask
+            }
+
+            if ((size + 1) * LOOKUP_FIELDS > records.size) {
+                records = records.copyOf(records.size * 2)
+            }
+            System.arraycopy(source, offset, records, size * LOOKUP_FIELDS, LOOKUP_FIELDS)
+            table[slot] = ++size
+            // Keeping at least half of the slots free keeps the probe sequences short
+            if (size * 2 > table.size) {
+                rehash(table.size * 2)
+            }
+            return true
+        }
+
+        private fun rehash(newSize: Int) {
+            table = IntArray(newSize)
+            val mask = newSize - 1
+            for (index in 0 until size) {
+                var slot = hash(records, index * LOOKUP_FIELDS) and mask
+                while (table[slot] != 0) {
+                    slot = (slot + 1) and mask
+                }
+                table[slot] = index + 1
+            }
+        }
+
+        private fun recordEquals(index: Int, source: IntArray, offset: Int): Boolean {
+            val start = index * LOOKUP_FIELDS
+            for (i in 0 until LOOKUP_FIELDS) {
+                if (records[start + i] != source[offset + i]) return false
+            }
+            return true
+        }
+
+        private fun hash(source: IntArray, offset: Int): Int {
+            var result = 0
+            for (i in 0 until LOOKUP_FIELDS) {
+                result = result * 31 + source[offset + i]
+            }
+            // The ids are small consecutive numbers, the multiplication spreads them over the high bits
+            result *= -0x61c88647
+            return result xor (result ushr 16)
+        }
+    }
+
+    private class LookupBuffer(private val batchSize: Int) {
+        private var records = IntArray(INITIAL_BUFFER_SIZE * LOOKUP_FIELDS)
+        private var size = 0
+
+        /**
+         * Returns the records of the buffer if it became full, the buffer starts over in that case.
+         */
+        fun add(file: Int, line: Int, column: Int, scope: Int, kind: Int, name: Int): IntArray? {
+            var offset = size * LOOKUP_FIELDS
+            if (offset == records.size) {
+                records = records.copyOf(minOf(records.size * 2, batchSize * LOOKUP_FIELDS))
+            }
+            records[offset++] = file
+            records[offset++] = line
+            records[offset++] = column
+            records[offset++] = scope
+            records[offset++] = kind
+            records[offset] = name
+            size++
+
+            if (size < batchSize) return null
+            return records.also {
+                records = IntArray(batchSize * LOOKUP_FIELDS)
+                size = 0
+            }
+        }
+
+        fun takeRecords(): Pair<IntArray, Int> =
+            Pair(records, size).also {
+                records = IntArray(INITIAL_BUFFER_SIZE * LOOKUP_FIELDS)
+                size = 0
+            }
+    }
+
+    private class StringTable {
+        private val ids = ConcurrentHashMap<String, Int>()
+        private val strings = ArrayList<String>()
+
+        fun id(string: String): Int =
+            ids[string] ?: synchronized(this) {
+                ids.getOrPut(string) {
+                    strings.add(string)
+                    strings.size - 1
+                }
+            }
+
+        operator fun get(id: Int): String = synchronized(this) { strings[id] }
+    }
+
+    companion object {
+        const val DEFAULT_BATCH_SIZE = 64 * 1024
+
+        private const val INITIAL_BUFFER_SIZE = 1024
+        private const val LOOKUP_FIELDS = 6
+
+        private val scopeKinds = ScopeKind.values()
+        private val log by lazy { Logger.getLogger("compiler") }
+    }
+}
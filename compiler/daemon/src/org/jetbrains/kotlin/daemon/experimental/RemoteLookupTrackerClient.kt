@@ -5,12 +5,11 @@
 
 package org.jetbrains.kotlin.daemon.experimental
 
-import com.intellij.util.containers.StringInterner
 import kotlinx.coroutines.runBlocking
 import org.jetbrains.kotlin.daemon.EventManager
+import org.jetbrains.kotlin.daemon.LookupBatcher
 import org.jetbrains.kotlin.daemon.common.*
 import org.jetbrains.kotlin.daemon.common.experimental.CompilerCallbackServicesFacadeClientSide
-import org.jetbrains.kotlin.incremental.components.LookupInfo
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.incremental.components.Position
 import org.jetbrains.kotlin.incremental.components.ScopeKind
@@ -23,19 +22,16 @@ class RemoteLookupTrackerClient(
 ) : LookupTracker {
     private val isDoNothing = runBlocking { profiler.withMeasure(this) { facade.lookupTracker_isDoNothing() } }
 
-    private val lookups = hashSetOf<LookupInfo>()
-    private val interner = StringInterner()
-
     override val requiresPosition: Boolean = runBlocking { profiler.withMeasure(this) { facade.lookupTracker_requiresPosition() } }
 
+    private val batcher = LookupBatcher(requiresPosition) { lookups ->
+        profiler.withMeasureBlocking(this) { facade.lookupTracker_record(lookups) }
+    }
+
     override fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
         if (isDoNothing) return
 
-        val internedFilePath = interner.intern(filePath)
-        val internedScopeFqName = interner.intern(scopeFqName)
-        val internedName = interner.intern(name)
-
-        lookups.add(LookupInfo(internedFilePath, position, internedScopeFqName, scopeKind, internedName))
+        batcher.record(filePath, position, scopeFqName, scopeKind, name)
     }
 
     init {
@@ -45,12 +41,8 @@ class RemoteLookupTrackerClient(
     }
 
     private fun flush() {
-        if (isDoNothing || lookups.isEmpty()) return
-
-        profiler.withMeasureBlocking(this) {
-            facade.lookupTracker_record(lookups)
-        }
+        if (isDoNothing) return
 
-        lookups.clear()
+        batcher.flush()
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.fir.resolve.dfa
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.fir.symbols.impl.FirPropertySymbol
+import org.jetbrains.kotlin.fir.types.ConeClassErrorType
+import org.jetbrains.kotlin.name.Name
+import kotlin.random.Random
+
+class PersistentVariableMapTest : TestCase() {
+    fun testRandomOperations() {
+        val random = Random(42)
+        // Small indices share the upper levels of the trie, arbitrary ones go down to the last level
+        val variables = List(500) { i -> variable(if (i % 5 == 0) random.nextInt() else random.nextInt(1000)) }
+
+        var map = PersistentVariableMap.empty<String>()
+        val expected = HashMap<RealVariable, String>()
+        repeat(20_000) { step ->
+            val variable = variables[random.nextInt(variables.size)]
+            if (random.nextInt(3) == 0) {
+                map = map.remove(variable)
+                expected.remove(variable)
+            } else {
+                map = map.put(variable, "value$step")
+                expected[variable] = "value$step"
+            }
+
+            assertEquals(expected.size, map.size)
+            assertEquals(expected[variable], map[variable])
+        }
+
+        assertMapEquals(expected, map)
+    }
+
+    fun testCollisions() {
+        val sameIndex = List(5) { variable(7) }
+        // Same lowest fragment as the colliding variables, but a different index
+        val sameFragment = List(3) { i -> variable(7 + ((i + 1) shl 5)) }
+        val all = sameIndex + sameFragment
+
+        var map = PersistentVariableMap.empty<Int>()
+        val expected = HashMap<RealVariable, Int>()
+        for ((i, variable) in all.withIndex()) {
+            map = map.put(variable, i)
+            expected[variable] = i
+            assertMapEquals(expected, map)
+        }
+
+        map = map.put(sameIndex[2], 42)
+        expected[sameIndex[2]] = 42
+        assertMapEquals(expected, map)
+
+        for (variable in listOf(sameIndex[1], sameFragment[0], sameIndex[4], sameIndex[0], sameFragment[2], sameIndex[3])) {
+            map = map.remove(variable)
+            expected.remove(variable)
+            assertMapEquals(expected, map)
+        }
+
+        assertNull(map[variable(7)])
+        assertSame(map, map.remove(variable(7)))
+    }
+
+    fun testOlderVersionsAreUnchanged() {
+        val random = Random(239)
+        val variables = List(100) { variable(random.nextInt(200)) }
+
+        val versions = ArrayList<Pair<PersistentVariableMap<Int>, Map<RealVariable, Int>>>()
+        var map = PersistentVariableMap.empty<Int>()
+        val expected = HashMap<RealVariable, Int>()
+        repeat(1000) { step ->
+            val variable = variables[random.nextInt(variables.size)]
+            if (random.nextBoolean()) {
+                map = map.put(variable, step)
+                expected[variable] = step
+            } else {
+                map = map - variable
+                expected.remove(variable)
+            }
+            versions += map to HashMap(expected)
+        }
+
+        for ((version, expectedVersion) in versions) {
+            assertMapEquals(expectedVersion, version)
+        }
+    }
+
+    fun testPutSameValueReturnsSameMap() {
+        val variable = variable(1)
+        val value = "value"
+        val map = PersistentVariableMap.empty<String>().put(variable, value)
+        assertSame(map, map.put(variable, value))
+    }
+
+    private fun <V : Any> assertMapEquals(expected: Map<RealVariable, V>, actual: PersistentVariableMap<V>) {
+        assertEquals(expected.size, actual.size)
+        for ((variable, value) in expected) {
+            assertEquals(value, actual[variable])
+        }
+
+        val iterated = actual.entries.map { it.key }
+        assertEquals(expected.size, iterated.size)
+        assertEquals(expected.keys, iterated.toSet())
+    }
+
+    private fun variable(index: Int): RealVariable =
+        RealVariable(Identifier(FirPropertySymbol(Name.identifier("v$index")), null, null), false, null, ERROR_TYPE, index)
+
+    companion object {
+        private val ERROR_TYPE = ConeClassErrorType("test")
+    }
+}
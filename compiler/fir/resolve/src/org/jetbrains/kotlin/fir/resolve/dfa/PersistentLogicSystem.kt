@@ -18,6 +18,8 @@ data class PersistentTypeStatement(
     override val exactNotType: PersistentSet<ConeKotlinType>
 ) : TypeStatement() {
     override operator fun plus(other: TypeStatement): PersistentTypeStatement {
+        // Most of merges on the same variable add nothing new, so reuse the existing statement
+        if (exactType.containsAll(other.exactType) && exactNotType.containsAll(other.exactNotType)) return this
         return PersistentTypeStatement(
             variable,
             exactType + other.exactType,
@@ -33,7 +35,7 @@ data class PersistentTypeStatement(
     }
 }
 
-typealias PersistentApprovedTypeStatements = PersistentMap<RealVariable, PersistentTypeStatement>
+typealias PersistentApprovedTypeStatements = PersistentVariableMap<PersistentTypeStatement>
 typealias PersistentImplications = PersistentMap<DataFlowVariable, PersistentList<Implication>>
 
 class PersistentFlow : Flow {
@@ -41,7 +43,7 @@ class PersistentFlow : Flow {
     var approvedTypeStatements: PersistentApprovedTypeStatements
     var logicStatements: PersistentImplications
     val level: Int
-    var approvedTypeStatementsDiff: PersistentApprovedTypeStatements = persistentHashMapOf()
+    var approvedTypeStatementsDiff: PersistentApprovedTypeStatements = PersistentVariableMap.empty()
     var updatedAliasDiff: PersistentSet<RealVariable> = persistentSetOf()
 
     /*
@@ -66,7 +68,7 @@ class PersistentFlow : Flow {
 
     constructor() {
         previousFlow = null
-        approvedTypeStatements = persistentHashMapOf()
+        approvedTypeStatements = PersistentVariableMap.empty()
         logicStatements = persistentHashMapOf()
         level = 1
 
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.fir.resolve.dfa
+
+/**
+ * Persistent hash array mapped trie specialized for [RealVariable] keys.
+ *
+ * Real variables are compared by identity and already carry a unique int index, so the index is used
+ *   as a hash directly: there is no boxing, no call to [RealVariable.hashCode] and no [equals] dispatch
+ *   on lookups. Updates copy only the path from the root to the changed entry, all other nodes are
+ *   shared between the original map and the updated one.
+ *
+ * Variables with the same index (possible after [VariableStorage.reset]) are kept in a collision node.
+ */
+class PersistentVariableMap<out V : Any> private constructor(
+    private val root: Any?,
+    override val size: Int
+) : AbstractMap<RealVariable, V>() {
+    companion object {
+        private val EMPTY = PersistentVariableMap<Nothing>(null, 0)
+
+        fun <V : Any> empty(): PersistentVariableMap<V> = EMPTY
+
+        private const val BITS_PER_LEVEL = 5
+        private const val LEVEL_MASK = (1 shl BITS_PER_LEVEL) - 1
+        private const val MAX_SHIFT = 30
+    }
+
+    private class Entry<out V>(override val key: RealVariable, override val value: V) : Map.Entry<RealVariable, V>
+
+    /*
+     * Each element of [content] is either an [Entry] or a child node ([BitmapNode] or [CollisionNode])
+     */
+    private class BitmapNode(val bitmap: Int, val content: Array<Any>)
+
+    private class CollisionNode(val entries: Array<Entry<*>>)
+
+    override fun isEmpty(): Boolean = size == 0
+
+    override fun containsKey(key: RealVariable): Boolean = get(key) != null
+
+    override fun get(key: RealVariable): V? {
+        val hash = key.variableIndex
+        var node = root ?: return null
+        var shift = 0
+        while (true) {
+            when (node) {
+                is Entry<*> -> {
+                    @Suppress("UNCHECKED_CAST")
+                    return if (node.key === key) node.value as V else null
+                }
+                is CollisionNode -> {
+                    @Suppress("UNCHECKED_CAST")
+                    return node.entries.firstOrNull { it.key === key }?.value as V?
+                }
+                is BitmapNode -> {
+                    val bit = bitFor(hash, shift)
+                    if (node.bitmap and bit == 0) return null
+                    node = node.content[indexOf(node.bitmap, bit)]
+                    shift += BITS_PER_LEVEL
+                }
+                else -> throw IllegalStateException("Unexpected node: $node")
+            }
+        }
+    }
+
+    fun put(key: RealVariable, value: @UnsafeVariance V): PersistentVariableMap<V> {
+        val existing = get(key)
+        if (existing === value) return this
+        val newEntry = Entry(key, value)
+        val newRoot = if (root == null) newEntry else put(root, newEntry, 0)
+        return PersistentVariableMap(newRoot, if (existing == null) size + 1 else size)
+    }
+
+    fun remove(key: RealVariable): PersistentVariableMap<V> {
+        if (get(key) == null) return this
+        if (size == 1) return empty()
+        return PersistentVariableMap(remove(root!!, key, 0), size - 1)
+    }
+
+    operator fun minus(key: RealVariable): PersistentVariableMap<V> = remove(key)
+
+    // ------------------------------- Trie operations -------------------------------
+
+    private fun fragmentOf(hash: Int, shift: Int): Int = (hash ushr shift) and LEVEL_MASK
+
+    private fun bitFor(hash: Int, shift: Int): Int = 1 shl fragmentOf(hash, shift)
+
+    private fun indexOf(bitmap: Int, bit: Int): Int = Integer.bitCount(bitmap and (bit - 1))
+
+    private fun put(node: Any, newEntry: Entry<*>, shift: Int): Any {
+        return when (node) {
+            is Entry<*> -> when {
+                node.key === newEntry.key -> newEntry
+                else -> merge(node, newEntry, shift)
+            }
+            is CollisionNode -> {
+                val index = node.entries.indexOfFirst { it.key === newEntry.key }
+                val newEntries = if (index >= 0) {
+                    node.entries.copyOf().also { it[index] = newEntry }
+                } else {
+                    @Suppress("UNCHECKED_CAST")
+                    (node.entries.copyOf(node.entries.size + 1) as Array<Entry<*>>).also { it[node.entries.size] = newEntry }
+                }
+                CollisionNode(newEntries)
+            }
+            is BitmapNode -> {
+                val bit = bitFor(newEntry.key.variableIndex, shift)
+                val index = indexOf(node.bitmap, bit)
+                if (node.bitmap and bit == 0) {
+                    val newContent = arrayOfNulls<Any>(node.content.size + 1)
+                    System.arraycopy(node.content, 0, newContent, 0, index)
+                    newContent[index] = newEntry
+                    System.arraycopy(node.content, index, newContent, index + 1, node.content.size - index)
+                    @Suppress("UNCHECKED_CAST")
+                    BitmapNode(node.bitmap or bit, newContent as Array<Any>)
+                } else {
+                    val newContent = node.content.copyOf()
+                    newContent[index] = put(node.content[index], newEntry, shift + BITS_PER_LEVEL)
+                    BitmapNode(node.bitmap, newContent)
+                }
+            }
+            else -> throw IllegalStateException("Unexpected node: $node")
+        }
+    }
+
+    private fun merge(first: Entry<*>, second: Entry<*>, shift: Int): Any {
+        // All bits of the index are consumed, so both variables have the same index
+        if (shift > MAX_SHIFT) {
+            return CollisionNode(arrayOf(first, second))
+        }
+        val firstFragment = fragmentOf(first.key.variableIndex, shift)
+        val secondFragment = fragmentOf(second.key.variableIndex, shift)
+        val bitmap = (1 shl firstFragment) or (1 shl secondFragment)
+        return when {
+            firstFragment == secondFragment -> BitmapNode(bitmap, arrayOf(merge(first, second, shift + BITS_PER_LEVEL)))
+            firstFragment < secondFragment -> BitmapNode(bitmap, arrayOf(first, second))
+            else -> BitmapNode(bitmap, arrayOf(second, first))
+        }
+    }
+
+    /**
+     * Returns null if node became empty, or single [Entry] if only one entry left, so it can be inlined into parent
+     */
+    private fun remove(node: Any, key: RealVariable, shift: Int): Any? {
+        return when (node) {
+            is Entry<*> -> if (node.key === key) null else node
+            is CollisionNode -> {
+                val newEntries = node.entries.filter { it.key !== key }
+                when (newEntries.size) {
+                    node.entries.size -> node
+                    1 -> newEntries.single()
+                    else -> CollisionNode(newEntries.toTypedArray())
+                }
+            }
+            is BitmapNode -> {
+                val bit = bitFor(key.variableIndex, shift)
+                if (node.bitmap and bit == 0) return node
+                val index = indexOf(node.bitmap, bit)
+                val child = node.content[index]
+                val newChild = remove(child, key, shift + BITS_PER_LEVEL)
+                when {
+                    newChild === child -> node
+                    newChild != null -> {
+                        if (newChild is Entry<*> && node.content.size == 1) return newChild
+                        val newContent = node.content.copyOf()
+                        newContent[index] = newChild
+                        BitmapNode(node.bitmap, newContent)
+                    }
+                    node.content.size == 1 -> null
+                    else -> {
+                        val newContent = arrayOfNulls<Any>(node.content.size - 1)
+                        System.arraycopy(node.content, 0, newContent, 0, index)
+                        System.arraycopy(node.content, index + 1, newContent, index, node.content.size - index - 1)
+                        val singleEntry = newContent.singleOrNull() as? Entry<*>
+                        @Suppress("UNCHECKED_CAST")
+                        singleEntry ?: BitmapNode(node.bitmap and bit.inv(), newContent as Array<Any>)
+                    }
+                }
+            }
+            else -> throw IllegalStateException("Unexpected node: $node")
+        }
+    }
+
+    // ------------------------------- Iteration -------------------------------
+
+    override val entries: Set<Map.Entry<RealVariable, V>>
+        get() = object : AbstractSet<Map.Entry<RealVariable, V>>() {
+            override val size: Int
+                get() = this@PersistentVariableMap.size
+
+            override fun iterator(): Iterator<Map.Entry<RealVariable, V>> = EntryIterator(root)
+        }
+
+    private class EntryIterator<V>(root: Any?) : Iterator<Map.Entry<RealVariable, V>> {
+        private val stack = ArrayList<Any>()
+
+        init {
+            if (root != null) stack += root
+        }
+
+        override fun hasNext(): Boolean = stack.isNotEmpty()
+
+        override fun next(): Map.Entry<RealVariable, V> {
+            while (true) {
+                if (stack.isEmpty()) throw NoSuchElementException()
+                when (val node = stack.removeAt(stack.size - 1)) {
+                    is Entry<*> -> {
+                        @Suppress("UNCHECKED_CAST")
+                        return node as Entry<V>
+                    }
+                    is CollisionNode -> for (i in node.entries.indices.reversed()) stack += node.entries[i]
+                    is BitmapNode -> for (i in node.content.indices.reversed()) stack += node.content[i]
+                }
+            }
+        }
+    }
+}
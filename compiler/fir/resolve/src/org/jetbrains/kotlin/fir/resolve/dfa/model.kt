@@ -28,11 +28,11 @@ data class Identifier(
     }
 }
 
-sealed class DataFlowVariable(private val variableIndexForDebug: Int) {
+sealed class DataFlowVariable(val variableIndex: Int) {
     abstract val isStable: Boolean
 
     final override fun toString(): String {
-        return "d$variableIndexForDebug"
+        return "d$variableIndex"
     }
 }
 
@@ -41,8 +41,8 @@ class RealVariable(
     val isThisReference: Boolean,
     val explicitReceiverVariable: DataFlowVariable?,
     val originalType: ConeKotlinType,
-    variableIndexForDebug: Int
-) : DataFlowVariable(variableIndexForDebug) {
+    variableIndex: Int
+) : DataFlowVariable(variableIndex) {
     override val isStable: Boolean by lazy {
         when (val symbol = identifier.symbol) {
             is FirPropertySymbol -> {
@@ -74,7 +74,7 @@ class RealVariable(
     }
 }
 
-class SyntheticVariable(val fir: FirElement, variableIndexForDebug: Int) : DataFlowVariable(variableIndexForDebug) {
+class SyntheticVariable(val fir: FirElement, variableIndex: Int) : DataFlowVariable(variableIndex) {
     override val isStable: Boolean get() = true
 
     override fun equals(other: Any?): Boolean {
@@ -9,22 +9,29 @@ import org.jetbrains.kotlin.fir.FirSession
 import org.jetbrains.kotlin.fir.declarations.FirFile
 import org.jetbrains.kotlin.fir.declarations.FirResolvePhase
 import org.jetbrains.kotlin.fir.resolve.ScopeSession
+import org.jetbrains.kotlin.utils.CompilerTracer
 
 class FirTotalResolveProcessor(session: FirSession) {
     val scopeSession: ScopeSession = ScopeSession()
 
     private val processors: List<FirResolveProcessor> = createAllResolveProcessors(session, scopeSession)
 
+    private val processorNames: List<String> = processors.map { it::class.java.simpleName }
+
     fun process(files: List<FirFile>) {
-        for (processor in processors) {
-            when (processor) {
-                is FirTransformerBasedResolveProcessor -> {
-                    for (file in files) {
-                        processor.processFile(file)
+        for ((processor, processorName) in processors.zip(processorNames)) {
+            CompilerTracer.span(processorName) {
+                when (processor) {
+                    is FirTransformerBasedResolveProcessor -> {
+                        for (file in files) {
+                            CompilerTracer.span("FirFile", file.name) {
+                                processor.processFile(file)
+                            }
+                        }
+                    }
+                    is FirGlobalResolveProcessor -> {
+                        processor.process()
                     }
-                }
-                is FirGlobalResolveProcessor -> {
-                    processor.process()
                 }
             }
         }
@@ -136,6 +136,11 @@ public abstract class FileBasedKotlinClass implements KotlinJvmBinaryClass {
         return classVersion;
     }
 
+    @NotNull
+    InnerClassesInfo getInnerClasses() {
+        return innerClasses;
+    }
+
     @NotNull
     @Override
     public KotlinClassHeader getClassHeader() {
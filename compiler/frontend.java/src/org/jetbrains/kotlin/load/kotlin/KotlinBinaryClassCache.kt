@@ -23,8 +23,12 @@ import com.intellij.openapi.components.ServiceManager
 import com.intellij.openapi.util.Computable
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.PsiJavaModule
+import java.io.IOException
 
-class KotlinBinaryClassCache : Disposable {
+/**
+ * Caches the last class file read on each thread, in front of the [headerCache] shared between compilations.
+ */
+class KotlinBinaryClassCache(val headerCache: KotlinClassHeaderCache = KotlinClassHeaderCache.shared) : Disposable {
     private class RequestCache {
         internal var virtualFile: VirtualFile? = null
         internal var modificationStamp: Long = 0
@@ -55,6 +59,25 @@ class KotlinBinaryClassCache : Disposable {
         cache.remove()
     }
 
+    private fun readKotlinBinaryClassOrClassFileContent(file: VirtualFile, fileContent: ByteArray?): KotlinClassFinder.Result? {
+        val cachedHeader = headerCache.get(file)
+        if (cachedHeader != null) {
+            val kotlinClass = VirtualFileKotlinClass.create(file, cachedHeader)
+            if (kotlinClass != null) return KotlinClassFinder.Result.KotlinClass(kotlinClass)
+
+            // Not a Kotlin class, but the content is still needed to read it as a Java class
+            val content = try {
+                fileContent ?: file.contentsToByteArray(false)
+            } catch (e: IOException) {
+                null
+            }
+            return if (content != null && content.isNotEmpty()) KotlinClassFinder.Result.ClassFileContent(content) else null
+        }
+
+        @Suppress("DEPRECATION")
+        return VirtualFileKotlinClass.create(file, fileContent)?.also { headerCache.put(file, it) }
+    }
+
     companion object {
         fun getKotlinBinaryClassOrClassFileContent(
             file: VirtualFile, fileContent: ByteArray? = null
@@ -71,8 +94,7 @@ class KotlinBinaryClassCache : Disposable {
             }
 
             val aClass = ApplicationManager.getApplication().runReadAction(Computable {
-                @Suppress("DEPRECATION")
-                VirtualFileKotlinClass.create(file, fileContent)
+                service.readKotlinBinaryClassOrClassFileContent(file, fileContent)
             })
 
             return requestCache.cache(file, aClass)
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.load.kotlin
+
+import com.intellij.openapi.components.ServiceManager
+import com.intellij.openapi.util.Key
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.openapi.vfs.VirtualFile
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader
+import org.jetbrains.kotlin.name.ClassId
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Concurrent cache of parsed headers of class files, so that a class file is read with ASM only once to find its `@Metadata`.
+ *
+ * Entries are keyed by the path of the jar together with a hash of its central directory, which holds the CRCs of all entries,
+ *   and by the path, size and timestamp of the entry as seen by the [VirtualFile] whose content is parsed; plain class files are
+ *   keyed by their path, size and modification time. A rebuilt jar produces new keys, so the cache can outlive a single compilation:
+ *   the instance from [shared] is kept for the lifetime of the process and is reused by all compilations in the daemon.
+ *
+ * The hash of a jar is computed once per jar root and is stored in its user data, so a lookup doesn't touch the disk.
+ *   A root is backed by one opened archive, a rebuilt jar is opened with a new root.
+ *
+ * As in the racy-clean check of git, files modified within the timestamp resolution of the current time are not cached:
+ *   they may be rewritten again without a new timestamp. Jars are therefore only hashed when they are older, and when they
+ *   are not modified while being hashed.
+ *
+ * The cache is bounded by the approximate size of the cached headers in bytes (mostly the `d1` and `d2` string tables).
+ *   When the bound is exceeded, arbitrary entries are evicted until the cache is a quarter below the bound.
+ */
+class KotlinClassHeaderCache(private val maxWeight: Long = DEFAULT_MAX_WEIGHT) {
+    /**
+     * Header of a class file. [classHeader] is null for class files which are not compiled Kotlin classes.
+     */
+    class Entry internal constructor(
+        val classId: ClassId?,
+        val classVersion: Int,
+        val classHeader: KotlinClassHeader?,
+        internal val innerClasses: FileBasedKotlinClass.InnerClassesInfo?,
+        internal val weight: Int
+    )
+
+    // For a jar, containerStamp is the hash of its central directory, for a class file its modification time
+    private data class CacheKey(
+        val containerPath: String,
+        val containerStamp: Long,
+        val entryPath: String,
+        val length: Long,
+        val timeStamp: Long
+    )
+
+    private val entries = ConcurrentHashMap<CacheKey, Entry>()
+    private val totalWeight = AtomicLong()
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    val hitCount: Long get() = hits.get()
+    val missCount: Long get() = misses.get()
+    val weight: Long get() = totalWeight.get()
+    val size: Int get() = entries.size
+
+    /**
+     * Returns the cached header of [file], or null if it is not cached or [file] is not stored in a local file system or a jar.
+     */
+    fun get(file: VirtualFile): Entry? {
+        val key = createKey(file) ?: return null
+        val entry = entries[key]
+        if (entry != null) hits.incrementAndGet() else misses.incrementAndGet()
+        return entry
+    }
+
+    fun put(file: VirtualFile, result: KotlinClassFinder.Result) {
+        val key = createKey(file) ?: return
+        val entry = when (result) {
+            is KotlinClassFinder.Result.KotlinClass -> {
+                val kotlinClass = result.kotlinJvmBinaryClass as? FileBasedKotlinClass ?: return
+                val header = kotlinClass.classHeader
+                Entry(kotlinClass.classId, kotlinClass.classVersion, header, kotlinClass.innerClasses, weight(key, header))
+            }
+            is KotlinClassFinder.Result.ClassFileContent -> Entry(null, 0, null, null, weight(key, null))
+        }
+
+        val previous = entries.put(key, entry)
+        if (totalWeight.addAndGet(entry.weight.toLong() - (previous?.weight ?: 0)) > maxWeight) {
+            evict()
+        }
+    }
+
+    fun clear() {
+        entries.clear()
+        totalWeight.set(0)
+        hits.set(0)
+        misses.set(0)
+    }
+
+    private fun evict() {
+        val iterator = entries.entries.iterator()
+        while (totalWeight.get() > maxWeight / 4 * 3 && iterator.hasNext()) {
+            val (key, entry) = iterator.next()
+            // Another thread may be evicting the same entry, only the one which removes it updates the weight
+            if (entries.remove(key, entry)) {
+                totalWeight.addAndGet(-entry.weight.toLong())
+            }
+        }
+    }
+
+    private fun createKey(file: VirtualFile): CacheKey? =
+        when (file.fileSystem.protocol) {
+            StandardFileSystems.JAR_PROTOCOL -> {
+                val path = file.path
+                val separator = path.indexOf(StandardFileSystems.JAR_SEPARATOR)
+                if (separator < 0) null
+                else {
+                    val jarPath = path.substring(0, separator)
+                    val entryPath = path.substring(separator + StandardFileSystems.JAR_SEPARATOR.length)
+                    val hash = jarHash(VfsUtilCore.getRootFile(file), jarPath)
+                    if (hash == null) null else CacheKey(jarPath, hash, entryPath, file.length, file.timeStamp)
+                }
+            }
+            StandardFileSystems.FILE_PROTOCOL -> {
+                val timeStamp = file.timeStamp
+                if (isRacy(timeStamp)) null else CacheKey(file.path, timeStamp, "", file.length, timeStamp)
+            }
+            else -> null
+        }
+
+    private fun jarHash(root: VirtualFile, jarPath: String): Long? {
+        root.getUserData(JAR_HASH)?.let { return it }
+
+        val jar = File(jarPath)
+        val length = jar.length()
+        val timeStamp = jar.lastModified()
+        if (isRacy(timeStamp)) return null
+        val hash = try {
+            centralDirectoryHash(jar)
+        } catch (e: IOException) {
+            null
+        } ?: return null
+        if (jar.length() != length || jar.lastModified() != timeStamp) return null
+
+        root.putUserData(JAR_HASH, hash)
+        return hash
+    }
+
+    private fun isRacy(timeStamp: Long): Boolean =
+        timeStamp >= System.currentTimeMillis() - MAX_TIMESTAMP_RESOLUTION_MS
+
+    private fun weight(key: CacheKey, header: KotlinClassHeader?): Int {
+        var result = ENTRY_OVERHEAD + 2 * (key.containerPath.length + key.entryPath.length)
+        if (header != null) {
+            header.data?.forEach { result += 2 * it.length }
+            header.strings?.forEach { result += 2 * it.length }
+            header.incompatibleData?.forEach { result += 2 * it.length }
+        }
+        return result
+    }
+
+    override fun toString(): String =
+        "KotlinClassHeaderCache(size = $size, weight = $weight, hits = $hitCount, misses = $missCount)"
+
+    companion object {
+        const val DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024
+
+        private const val ENTRY_OVERHEAD = 256
+        // FAT stores timestamps with 2 seconds resolution, ext3 and HFS+ with 1 second
+        private const val MAX_TIMESTAMP_RESOLUTION_MS = 2000L
+
+        private const val END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50
+        private const val END_OF_CENTRAL_DIRECTORY_SIZE = 22
+        private const val MAX_ZIP_COMMENT_SIZE = 0xFFFF
+
+        private val JAR_HASH = Key.create<Long>("KotlinClassHeaderCache.JAR_HASH")
+
+        /**
+         * First 8 bytes of the SHA-1 of the central directory of a zip [file], which contains the CRC and the size of each entry.
+         *   Returns null for files which are not zip files or use zip64 extensions.
+         */
+        internal fun centralDirectoryHash(file: File): Long? =
+            RandomAccessFile(file, "r").use { input ->
+                val length = input.length()
+                val tail = ByteArray(minOf(length, (END_OF_CENTRAL_DIRECTORY_SIZE + MAX_ZIP_COMMENT_SIZE).toLong()).toInt())
+                input.seek(length - tail.size)
+                input.readFully(tail)
+
+                val buffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN)
+                var end = tail.size - END_OF_CENTRAL_DIRECTORY_SIZE
+                while (end >= 0 && buffer.getInt(end) != END_OF_CENTRAL_DIRECTORY_SIGNATURE) end--
+                if (end < 0) return null
+
+                val directorySize = buffer.getInt(end + 12).toLong() and 0xFFFFFFFFL
+                val directoryOffset = buffer.getInt(end + 16).toLong() and 0xFFFFFFFFL
+                if (directoryOffset == 0xFFFFFFFFL || directoryOffset + directorySize > length) return null
+
+                val digest = MessageDigest.getInstance("SHA-1")
+                val chunk = ByteArray(64 * 1024)
+                input.seek(directoryOffset)
+                var remaining = directorySize
+                while (remaining > 0) {
+                    val read = input.read(chunk, 0, minOf(remaining, chunk.size.toLong()).toInt())
+                    if (read < 0) return null
+                    digest.update(chunk, 0, read)
+                    remaining -= read
+                }
+                ByteBuffer.wrap(digest.digest()).long
+            }
+
+        @JvmStatic
+        val shared = KotlinClassHeaderCache()
+
+        @JvmStatic
+        fun getInstance(): KotlinClassHeaderCache =
+            ServiceManager.getService(KotlinBinaryClassCache::class.java).headerCache
+    }
+}
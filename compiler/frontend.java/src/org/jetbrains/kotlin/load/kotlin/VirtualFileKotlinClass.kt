@@ -82,6 +82,13 @@ class VirtualFileKotlinClass private constructor(
             }
         }
 
+        internal fun create(file: VirtualFile, entry: KotlinClassHeaderCache.Entry): VirtualFileKotlinClass? {
+            val classId = entry.classId ?: return null
+            val classHeader = entry.classHeader ?: return null
+            val innerClasses = entry.innerClasses ?: return null
+            return VirtualFileKotlinClass(file, classId, entry.classVersion, classHeader, innerClasses)
+        }
+
         private fun renderFileReadingErrorMessage(file: VirtualFile): String =
                 "Could not read file: ${file.path}; size in bytes: ${file.length}; file type: ${file.fileType.name}"
     }
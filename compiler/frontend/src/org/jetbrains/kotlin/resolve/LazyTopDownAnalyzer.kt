@@ -33,6 +33,7 @@ import org.jetbrains.kotlin.resolve.checkers.checkClassifierUsages
 import org.jetbrains.kotlin.resolve.deprecation.DeprecationResolver
 import org.jetbrains.kotlin.resolve.lazy.*
 import org.jetbrains.kotlin.resolve.lazy.descriptors.LazyClassDescriptor
+import org.jetbrains.kotlin.utils.CompilerTracer
 import java.util.*
 
 class LazyTopDownAnalyzer(
@@ -201,35 +202,41 @@ class LazyTopDownAnalyzer(
             declaration.accept(visitor)
         }
 
-        createFunctionDescriptors(c, functions)
+        CompilerTracer.span("CreateDescriptors") {
+            createFunctionDescriptors(c, functions)
 
-        createPropertyDescriptors(c, topLevelFqNames, properties)
+            createPropertyDescriptors(c, topLevelFqNames, properties)
 
-        createPropertiesFromDestructuringDeclarations(c, topLevelFqNames, destructuringDeclarations)
+            createPropertiesFromDestructuringDeclarations(c, topLevelFqNames, destructuringDeclarations)
 
-        createTypeAliasDescriptors(c, topLevelFqNames, typeAliases)
+            createTypeAliasDescriptors(c, topLevelFqNames, typeAliases)
+        }
 
-        resolveAllHeadersInClasses(c)
+        CompilerTracer.span("ResolveClassHeaders") { resolveAllHeadersInClasses(c) }
 
-        declarationResolver.checkRedeclarationsInPackages(topLevelDescriptorProvider, topLevelFqNames)
-        declarationResolver.checkRedeclarations(c)
+        CompilerTracer.span("CheckDeclarations") {
+            declarationResolver.checkRedeclarationsInPackages(topLevelDescriptorProvider, topLevelFqNames)
+            declarationResolver.checkRedeclarations(c)
 
-        overrideResolver.check(c)
+            overrideResolver.check(c)
 
-        varianceChecker.check(c)
+            varianceChecker.check(c)
 
-        declarationResolver.resolveAnnotationsOnFiles(c, fileScopeProvider)
+            declarationResolver.resolveAnnotationsOnFiles(c, fileScopeProvider)
 
-        overloadResolver.checkOverloads(c)
+            overloadResolver.checkOverloads(c)
+        }
 
-        bodyResolver.resolveBodies(c)
+        CompilerTracer.span("ResolveBodies") { bodyResolver.resolveBodies(c) }
 
-        resolveImportsInAllFiles(c)
+        CompilerTracer.span("ResolveImports") { resolveImportsInAllFiles(c) }
 
-        checkClassifierUsages(
-            declarations, classifierUsageCheckers,
-            ClassifierUsageCheckerContext(trace, languageVersionSettings, deprecationResolver, moduleDescriptor)
-        )
+        CompilerTracer.span("CheckClassifierUsages") {
+            checkClassifierUsages(
+                declarations, classifierUsageCheckers,
+                ClassifierUsageCheckerContext(trace, languageVersionSettings, deprecationResolver, moduleDescriptor)
+            )
+        }
 
         return c
     }
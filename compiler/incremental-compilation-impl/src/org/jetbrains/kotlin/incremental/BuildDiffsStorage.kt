@@ -16,16 +16,27 @@
 
 package org.jetbrains.kotlin.incremental
 
+import com.intellij.util.io.DataInputOutputUtil
 import org.jetbrains.annotations.TestOnly
 import org.jetbrains.kotlin.name.FqName
-import java.io.File
-import java.io.IOException
-import java.io.ObjectInputStream
-import java.io.ObjectOutputStream
+import java.io.*
 
 data class BuildDifference(val ts: Long, val isIncremental: Boolean, val dirtyData: DirtyData)
 
-// todo: storage format can be optimized by compressing fq-names
+/**
+ * Builds of a module newer than a build of a dependent module, see [BuildDiffsStorage.readDiffsAfter].
+ */
+class BuildDiffsAfter(val hasEarlierBuilds: Boolean, val buildDiffs: List<BuildDifference>)
+
+/**
+ * Build history of a module, which is read by dependent modules to find the changes since their last build.
+ *
+ * The file starts with [MAGIC] and [CURRENT_VERSION], followed by a segment per build. A segment header contains the timestamp of
+ *   the build, whether it was incremental and the size of its dirty data, so readers find the builds they need by the headers
+ *   and skip the dirty data of the others. A segment is appended after every build; when there are more than
+ *   [MAX_SEGMENTS] segments, the file is rewritten with the last [MAX_DIFFS_ENTRIES] of them.
+ *   The names of the dirty data of a segment are written once in the table of strings of the segment.
+ */
 data class BuildDiffsStorage(val buildDiffs: List<BuildDifference>) {
     companion object {
         fun readFromFile(file: File, reporter: ICReporter?): BuildDiffsStorage? {
@@ -33,46 +44,77 @@ data class BuildDiffsStorage(val buildDiffs: List<BuildDifference>) {
             return diffs?.let { BuildDiffsStorage(it) }
         }
 
-        fun readDiffsFromFile(file: File, reporter: ICReporter?): MutableList<BuildDifference>? {
-            fun reportFail(reason: String) {
-                reporter?.report { "Could not read diff from file $file: $reason" }
-            }
+        fun readDiffsFromFile(file: File, reporter: ICReporter?): MutableList<BuildDifference>? =
+            readDiffsAfter(file, Long.MIN_VALUE, reporter)?.buildDiffs?.toMutableList()
 
+        /**
+         * Reads the builds with timestamps greater than [lastBuildTS].
+         */
+        fun readDiffsAfter(file: File, lastBuildTS: Long, reporter: ICReporter?): BuildDiffsAfter? {
             if (!file.exists()) return null
 
             try {
-                ObjectInputStream(file.inputStream().buffered()).use { input ->
-                    val version = input.readInt()
-                    if (version != CURRENT_VERSION) {
-                        reportFail("incompatible version $version, actual version is $CURRENT_VERSION")
-                        return null
+                RandomAccessFile(file, "r").use { input ->
+                    val segments = readSegmentHeaders(input) { reason -> reporter.reportFail(file, reason) } ?: return null
+                    val newSegments = segments.filter { it.ts > lastBuildTS }
+                    val diffs = newSegments.sortedBy { it.ts }.map { segment ->
+                        val dirtyData = if (segment.isIncremental) {
+                            input.seek(segment.payloadOffset)
+                            val payload = ByteArray(segment.payloadSize)
+                            input.readFully(payload)
+                            DataInputStream(ByteArrayInputStream(payload)).readDirtyData()
+                        } else DirtyData()
+                        BuildDifference(segment.ts, segment.isIncremental, dirtyData)
                     }
-
-                    val size = input.readInt()
-                    val result = ArrayList<BuildDifference>(size)
-                    repeat(size) {
-                        result.add(input.readBuildDifference())
-                    }
-                    return result
+                    return BuildDiffsAfter(newSegments.size < segments.size, diffs)
                 }
             } catch (e: IOException) {
-                reportFail(e.toString())
+                reporter.reportFail(file, e.toString())
             }
 
             return null
         }
 
+        /**
+         * Appends [diff] to the history in [file], which is created or rewritten if it can't be read.
+         */
+        fun appendToFile(file: File, diff: BuildDifference, reporter: ICReporter?) {
+            file.parentFile.mkdirs()
+
+            try {
+                val segments = if (file.exists()) {
+                    RandomAccessFile(file, "r").use { input -> readSegmentHeaders(input) { reason -> reporter.reportFail(file, reason) } }
+                } else null
+
+                if (segments == null || segments.size >= MAX_SEGMENTS) {
+                    val previousDiffs = if (segments != null) readDiffsFromFile(file, reporter).orEmpty() else emptyList()
+                    writeToFile(file, BuildDiffsStorage(previousDiffs + diff), reporter)
+                    return
+                }
+
+                RandomAccessFile(file, "rw").use { output ->
+                    // A segment left incomplete by a failed write is overwritten
+                    val end = segments.lastOrNull()?.let { it.payloadOffset + it.payloadSize } ?: HEADER_SIZE
+                    output.setLength(end)
+                    output.seek(end)
+                    output.write(encodeSegment(diff))
+                }
+            } catch (e: IOException) {
+                reporter?.report { "Could not write diff to file $file: $e" }
+            }
+        }
+
         fun writeToFile(file: File, storage: BuildDiffsStorage, reporter: ICReporter?) {
             file.parentFile.mkdirs()
 
             try {
-                ObjectOutputStream(file.outputStream().buffered()).use { output ->
+                DataOutputStream(file.outputStream().buffered()).use { output ->
+                    output.writeInt(MAGIC)
                     output.writeInt(CURRENT_VERSION)
 
                     val diffsToWrite = storage.buildDiffs.sortedBy { it.ts }.takeLast(MAX_DIFFS_ENTRIES)
-                    output.writeInt(diffsToWrite.size)
                     for (diff in diffsToWrite) {
-                        output.writeBuildDifference(diff)
+                        output.write(encodeSegment(diff))
                     }
                 }
             } catch (e: IOException) {
@@ -80,56 +122,112 @@ data class BuildDiffsStorage(val buildDiffs: List<BuildDifference>) {
             }
         }
 
-        private fun ObjectInputStream.readBuildDifference(): BuildDifference {
-            val ts = readLong()
-            val isIncremental = readBoolean()
-            val dirtyData = readDirtyData()
-            return BuildDifference(ts, isIncremental, dirtyData)
+        private class SegmentHeader(val ts: Long, val isIncremental: Boolean, val payloadOffset: Long, val payloadSize: Int)
+
+        /**
+         * Returns null if the file is not a build history of the current version. An incomplete last segment is ignored.
+         */
+        private fun readSegmentHeaders(input: RandomAccessFile, reportFail: (String) -> Unit): List<SegmentHeader>? {
+            val length = input.length()
+            if (length < HEADER_SIZE || input.readInt() != MAGIC) {
+                reportFail("unknown format")
+                return null
+            }
+            val version = input.readInt()
+            if (version != CURRENT_VERSION) {
+                reportFail("incompatible version $version, actual version is $CURRENT_VERSION")
+                return null
+            }
+
+            val result = ArrayList<SegmentHeader>()
+            var offset = HEADER_SIZE
+            while (offset + SEGMENT_HEADER_SIZE <= length) {
+                input.seek(offset)
+                val ts = input.readLong()
+                val isIncremental = input.readBoolean()
+                val payloadSize = input.readInt()
+                val payloadOffset = offset + SEGMENT_HEADER_SIZE
+                if (payloadSize < 0 || payloadOffset + payloadSize > length) break
+
+                result.add(SegmentHeader(ts, isIncremental, payloadOffset, payloadSize))
+                offset = payloadOffset + payloadSize
+            }
+            return result
         }
 
-        private fun ObjectOutputStream.writeBuildDifference(diff: BuildDifference) {
-            writeLong(diff.ts)
-            writeBoolean(diff.isIncremental)
-            writeDirtyData(diff.dirtyData)
+        private fun encodeSegment(diff: BuildDifference): ByteArray {
+            val payload = ByteArrayOutputStream()
+            if (diff.isIncremental) {
+                DataOutputStream(payload).use { it.writeDirtyData(diff.dirtyData) }
+            }
+
+            val segment = ByteArrayOutputStream(SEGMENT_HEADER_SIZE + payload.size())
+            DataOutputStream(segment).use { output ->
+                output.writeLong(diff.ts)
+                output.writeBoolean(diff.isIncremental)
+                output.writeInt(payload.size())
+                payload.writeTo(output)
+            }
+            return segment.toByteArray()
         }
 
-        private fun ObjectInputStream.readDirtyData(): DirtyData {
-            val lookupSymbolSize = readInt()
+        private fun DataInputStream.readDirtyData(): DirtyData {
+            val strings = Array(DataInputOutputUtil.readINT(this)) { readUTF() }
+
+            val lookupSymbolSize = DataInputOutputUtil.readINT(this)
             val lookupSymbols = ArrayList<LookupSymbol>(lookupSymbolSize)
             repeat(lookupSymbolSize) {
-                val name = readUTF()
-                val scope = readUTF()
+                val name = strings[DataInputOutputUtil.readINT(this)]
+                val scope = strings[DataInputOutputUtil.readINT(this)]
                 lookupSymbols.add(LookupSymbol(name = name, scope = scope))
             }
 
-            val dirtyClassesSize = readInt()
+            val dirtyClassesSize = DataInputOutputUtil.readINT(this)
             val dirtyClassesFqNames = ArrayList<FqName>(dirtyClassesSize)
             repeat(dirtyClassesSize) {
-                val fqNameString = readUTF()
-                dirtyClassesFqNames.add(FqName(fqNameString))
+                dirtyClassesFqNames.add(FqName(strings[DataInputOutputUtil.readINT(this)]))
             }
 
             return DirtyData(lookupSymbols, dirtyClassesFqNames)
         }
 
-        private fun ObjectOutputStream.writeDirtyData(dirtyData: DirtyData) {
-            val lookupSymbols = dirtyData.dirtyLookupSymbols
-            writeInt(lookupSymbols.size)
-            for ((name, scope) in lookupSymbols) {
-                writeUTF(name)
-                writeUTF(scope)
+        private fun DataOutputStream.writeDirtyData(dirtyData: DirtyData) {
+            val stringIds = LinkedHashMap<String, Int>()
+            fun id(string: String) = stringIds.getOrPut(string) { stringIds.size }
+
+            val lookupSymbolIds = dirtyData.dirtyLookupSymbols.map { (name, scope) -> Pair(id(name), id(scope)) }
+            val dirtyClassIds = dirtyData.dirtyClassesFqNames.map { id(it.asString()) }
+
+            DataInputOutputUtil.writeINT(this, stringIds.size)
+            for (string in stringIds.keys) {
+                writeUTF(string)
+            }
+
+            DataInputOutputUtil.writeINT(this, lookupSymbolIds.size)
+            for ((nameId, scopeId) in lookupSymbolIds) {
+                DataInputOutputUtil.writeINT(this, nameId)
+                DataInputOutputUtil.writeINT(this, scopeId)
             }
 
-            val dirtyClassesFqNames = dirtyData.dirtyClassesFqNames
-            writeInt(dirtyClassesFqNames.size)
-            for (fqName in dirtyClassesFqNames) {
-                writeUTF(fqName.asString())
+            DataInputOutputUtil.writeINT(this, dirtyClassIds.size)
+            for (fqNameId in dirtyClassIds) {
+                DataInputOutputUtil.writeINT(this, fqNameId)
             }
         }
 
+        private fun ICReporter?.reportFail(file: File, reason: String) {
+            this?.report { "Could not read diff from file $file: $reason" }
+        }
+
         internal const val MAX_DIFFS_ENTRIES: Int = 10
+        internal const val MAX_SEGMENTS: Int = 2 * MAX_DIFFS_ENTRIES
+
+        // "KBH\u0001", files of the previous format start with the header of an ObjectOutputStream
+        private const val MAGIC = 0x4B424801
+        private const val HEADER_SIZE = 8L
+        private const val SEGMENT_HEADER_SIZE = 13
 
         @set:TestOnly
         var CURRENT_VERSION: Int = 0
     }
-}
\ No newline at end of file
+}
@@ -16,15 +16,12 @@
 
 package org.jetbrains.kotlin.incremental
 
-import com.intellij.psi.PsiClass
-import com.intellij.psi.PsiFile
-import com.intellij.psi.PsiJavaFile
 import java.io.File
 import java.util.*
 
 internal class ChangedJavaFilesProcessor(
     private val reporter: ICReporter,
-    private val psiFileFactory: (File) -> PsiFile?
+    private val javaSourceStructureProvider: JavaSourceStructureProvider
 ) {
     private val allSymbols = HashSet<LookupSymbol>()
 
@@ -44,24 +41,24 @@ internal class ChangedJavaFilesProcessor(
         for (javaFile in modifiedJava) {
             assert(javaFile.extension.equals("java", ignoreCase = true))
 
-            val psiFile = psiFileFactory(javaFile)
-            if (psiFile !is PsiJavaFile) {
-                reporter.report { "Expected PsiJavaFile, got ${psiFile?.javaClass}" }
+            val classes = javaSourceStructureProvider.getClasses(javaFile)
+            if (classes == null) {
+                reporter.report { "Could not read classes of $javaFile" }
                 return ChangesEither.Unknown()
             }
 
-            psiFile.classes.forEach { it.addLookupSymbols(symbols) }
+            classes.forEach { it.addLookupSymbols(symbols) }
         }
         allSymbols.addAll(symbols)
         return ChangesEither.Known(lookupSymbols = symbols)
     }
 
-    private fun PsiClass.addLookupSymbols(symbols: MutableSet<LookupSymbol>) {
-        val fqn = qualifiedName.orEmpty()
+    private fun JavaSourceClass.addLookupSymbols(symbols: MutableSet<LookupSymbol>) {
+        val fqn = classId.asSingleFqName().asString()
 
-        symbols.add(LookupSymbol(name.orEmpty(), if (fqn == name) "" else fqn.removeSuffix("." + name!!)))
-        methods.forEach { symbols.add(LookupSymbol(it.name, fqn)) }
-        fields.forEach { symbols.add(LookupSymbol(it.name.orEmpty(), fqn)) }
+        symbols.add(LookupSymbol(classId.shortClassName.asString(), classId.asSingleFqName().parent().asString()))
+        methodNames.forEach { symbols.add(LookupSymbol(it, fqn)) }
+        fieldNames.forEach { symbols.add(LookupSymbol(it, fqn)) }
         innerClasses.forEach { it.addLookupSymbols(symbols) }
     }
 }
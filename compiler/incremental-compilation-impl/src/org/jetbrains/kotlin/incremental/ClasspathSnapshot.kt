@@ -0,0 +1,542 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import org.jetbrains.kotlin.incremental.storage.ProtoMapValue
+import org.jetbrains.kotlin.inline.inlineFunctionsJvmNames
+import org.jetbrains.kotlin.load.kotlin.FileBasedKotlinClass
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader
+import org.jetbrains.kotlin.metadata.jvm.deserialization.BitEncoding
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.resolve.jvm.JvmClassName
+import org.jetbrains.org.objectweb.asm.*
+import java.io.*
+import java.security.MessageDigest
+import java.util.zip.ZipFile
+
+/**
+ * ABI of the classes of a classpath, used to find the changes of the classpath without build history files of other modules.
+ *
+ * A Kotlin class is described by its `@Metadata` proto and the hashes of its constants and inline function bodies,
+ *   a Java class by hashes of its signature and of its non-private members.
+ *   Method bodies and private members are not a part of the snapshot, so changing them doesn't affect the compiled module.
+ */
+class ClasspathSnapshot(val entries: List<ClasspathEntrySnapshot>) {
+    /**
+     * Classes by their internal names. A class which is present in several entries is taken from the first one, as the compiler does.
+     */
+    val classes: Map<String, ClassSnapshot> by lazy {
+        val result = HashMap<String, ClassSnapshot>()
+        for (entry in entries) {
+            for (classSnapshot in entry.classes) {
+                result.putIfAbsent(classSnapshot.internalName, classSnapshot)
+            }
+        }
+        result
+    }
+
+    /**
+     * Collects the changes of the classpath ABI since [previous].
+     */
+    fun collectChangesSince(previous: ClasspathSnapshot, changesCollector: ChangesCollector) {
+        // Class snapshots of the entries are only read if the classpath has changed
+        if (entries.size == previous.entries.size &&
+            entries.zip(previous.entries).all { (new, old) -> new.path == old.path && new.contentHash == old.contentHash }
+        ) return
+
+        val oldClasses = previous.classes
+        val newClasses = classes
+
+        for (internalName in oldClasses.keys + newClasses.keys) {
+            val oldClass = oldClasses[internalName]
+            val newClass = newClasses[internalName]
+            if (oldClass != null && newClass != null && oldClass.hasSameAbi(newClass)) continue
+
+            collectClassChanges(oldClass, newClass, changesCollector)
+        }
+    }
+
+    companion object {
+        private const val VERSION = 2
+        private const val INDEX_FILE_NAME = "index.bin"
+
+        /**
+         * Snapshots the [classpath]. Entries of [previous] are reused when the jar or directory is unchanged.
+         */
+        fun create(classpath: List<File>, previous: ClasspathSnapshot?): ClasspathSnapshot {
+            val previousEntries = previous?.entries?.associateBy { it.path } ?: emptyMap()
+            return ClasspathSnapshot(classpath.filter(File::exists).map { ClasspathEntrySnapshot.create(it, previousEntries[it.absolutePath]) })
+        }
+
+        /**
+         * Reads the index of the snapshot stored in [dir]. Class snapshots of an entry are read when they are accessed.
+         */
+        fun readFromDirectory(dir: File, reporter: ICReporter?): ClasspathSnapshot? {
+            val indexFile = File(dir, INDEX_FILE_NAME)
+            if (!indexFile.exists()) return null
+
+            try {
+                DataInputStream(indexFile.inputStream().buffered()).use { input ->
+                    val version = input.readInt()
+                    if (version != VERSION) {
+                        reporter?.report { "Could not read classpath snapshot from $dir: incompatible version $version, actual version is $VERSION" }
+                        return null
+                    }
+                    return ClasspathSnapshot(List(input.readInt()) { ClasspathEntrySnapshot.read(input) { classesFile(dir, it) } })
+                }
+            } catch (e: IOException) {
+                reporter?.report { "Could not read classpath snapshot from $dir: $e" }
+            }
+
+            return null
+        }
+
+        /**
+         * Writes [snapshot] to [dir] as an index of the entries and a file of class snapshots per entry, named by its content hash.
+         *   Nothing is written if the entries are the same as the stored ones, and only the class snapshots of new entries are written otherwise.
+         */
+        fun writeToDirectory(dir: File, snapshot: ClasspathSnapshot, reporter: ICReporter?) {
+            val stored = readFromDirectory(dir, reporter = null)
+            if (stored != null && stored.entries.size == snapshot.entries.size &&
+                stored.entries.zip(snapshot.entries).all { (old, new) -> old.isStoredAs(new) }
+            ) return
+
+            dir.mkdirs()
+            try {
+                // The index is written last, so class snapshots of an entry which is not in the stored index may be incomplete
+                val storedHashes = stored?.entries?.mapTo(HashSet()) { it.contentHash } ?: emptySet<Long>()
+                for (entry in snapshot.entries) {
+                    if (entry.contentHash in storedHashes) continue
+
+                    DataOutputStream(classesFile(dir, entry.contentHash).outputStream().buffered()).use { output ->
+                        output.writeInt(entry.classes.size)
+                        entry.classes.forEach { it.write(output) }
+                    }
+                }
+
+                DataOutputStream(File(dir, INDEX_FILE_NAME).outputStream().buffered()).use { output ->
+                    output.writeInt(VERSION)
+                    output.writeInt(snapshot.entries.size)
+                    snapshot.entries.forEach { it.write(output) }
+                }
+
+                val usedFileNames = snapshot.entries.mapTo(HashSet()) { classesFile(dir, it.contentHash).name }
+                dir.listFiles()?.forEach { file ->
+                    if (file.name != INDEX_FILE_NAME && file.name !in usedFileNames) file.delete()
+                }
+            } catch (e: IOException) {
+                reporter?.report { "Could not write classpath snapshot to $dir: $e" }
+            }
+        }
+
+        private fun classesFile(dir: File, contentHash: Long): File =
+            File(dir, java.lang.Long.toHexString(contentHash) + ".bin")
+    }
+}
+
+/**
+ * Snapshot of a jar or a directory of the classpath.
+ *
+ * [length] and [lastModified] of the file (for a directory, of its class files) allow to reuse the snapshot without reading the entry.
+ *   If they differ, for example after a checkout or when the jar comes from a build cache, [contentHash] is compared.
+ *   An entry modified within the timestamp resolution of the snapshot time may change again without a new timestamp,
+ *   its [lastModified] is [RACY_TIMESTAMP] and the next snapshot always compares [contentHash].
+ *
+ * [classes] of a stored snapshot are read on first access, they are only needed if some entry of the classpath has changed.
+ */
+class ClasspathEntrySnapshot private constructor(
+    val path: String,
+    val length: Long,
+    val lastModified: Long,
+    val contentHash: Long,
+    private val loadClasses: () -> List<ClassSnapshot>
+) {
+    constructor(path: String, length: Long, lastModified: Long, contentHash: Long, classes: List<ClassSnapshot>) :
+            this(path, length, lastModified, contentHash, { classes })
+
+    val classes: List<ClassSnapshot> by lazy(loadClasses)
+
+    internal fun isStoredAs(other: ClasspathEntrySnapshot): Boolean =
+        path == other.path && length == other.length && lastModified == other.lastModified && contentHash == other.contentHash
+
+    // Classes are stored separately, see ClasspathSnapshot.writeToDirectory
+    fun write(output: DataOutput) {
+        output.writeUTF(path)
+        output.writeLong(length)
+        output.writeLong(lastModified)
+        output.writeLong(contentHash)
+    }
+
+    companion object {
+        const val RACY_TIMESTAMP = Long.MIN_VALUE
+
+        // FAT stores timestamps with 2 seconds resolution, ext3 and HFS+ with 1 second
+        private const val MAX_TIMESTAMP_RESOLUTION_MS = 2000L
+
+        fun read(input: DataInput, classesFile: (contentHash: Long) -> File): ClasspathEntrySnapshot {
+            val path = input.readUTF()
+            val length = input.readLong()
+            val lastModified = input.readLong()
+            val contentHash = input.readLong()
+            return ClasspathEntrySnapshot(path, length, lastModified, contentHash) {
+                DataInputStream(classesFile(contentHash).inputStream().buffered()).use { classesInput ->
+                    List(classesInput.readInt()) { ClassSnapshot.read(classesInput) }
+                }
+            }
+        }
+
+        fun create(file: File, previous: ClasspathEntrySnapshot?): ClasspathEntrySnapshot {
+            val path = file.absolutePath
+            val classFiles = if (file.isDirectory) file.walk().filter { it.isFile && it.isClassFile() }.sortedBy { it.path }.toList() else null
+            val length = classFiles?.sumByLong { it.length() } ?: file.length()
+            val lastModified = classFiles?.map { it.lastModified() }?.max() ?: file.lastModified()
+
+            if (previous != null && previous.lastModified != RACY_TIMESTAMP &&
+                previous.length == length && previous.lastModified == lastModified
+            ) return previous
+
+            val contentHash = if (classFiles != null) contentHash(classFiles, file) else contentHash(file)
+            if (previous != null && previous.contentHash == contentHash) {
+                return ClasspathEntrySnapshot(path, length, nonRacy(lastModified), contentHash, previous.loadClasses)
+            }
+
+            val classes = ArrayList<ClassSnapshot>()
+            if (classFiles != null) {
+                classFiles.mapNotNullTo(classes) { ClassSnapshot.create(it.readBytes()) }
+            } else {
+                ZipFile(file).use { zip ->
+                    for (entry in zip.entries()) {
+                        if (entry.isDirectory || !entry.name.endsWith(".class") || entry.name.startsWith("META-INF/")) continue
+                        ClassSnapshot.create(zip.getInputStream(entry).use { it.readBytes() })?.let { classes.add(it) }
+                    }
+                }
+            }
+
+            return ClasspathEntrySnapshot(path, length, nonRacy(lastModified), contentHash, classes)
+        }
+
+        private fun nonRacy(lastModified: Long): Long =
+            if (lastModified >= System.currentTimeMillis() - MAX_TIMESTAMP_RESOLUTION_MS) RACY_TIMESTAMP else lastModified
+
+        private fun File.isClassFile() = extension.equals("class", ignoreCase = true) && name != "module-info.class"
+
+        private fun contentHash(jar: File): Long {
+            val digest = MessageDigest.getInstance("MD5")
+            jar.inputStream().use { input ->
+                val buffer = ByteArray(64 * 1024)
+                while (true) {
+                    val read = input.read(buffer)
+                    if (read < 0) break
+                    digest.update(buffer, 0, read)
+                }
+            }
+            return digest.digest().toLong()
+        }
+
+        private fun contentHash(classFiles: List<File>, root: File): Long {
+            val digest = MessageDigest.getInstance("MD5")
+            for (classFile in classFiles) {
+                digest.update(classFile.relativeTo(root).path.toByteArray())
+                digest.update(classFile.readBytes())
+            }
+            return digest.digest().toLong()
+        }
+
+        private inline fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long = fold(0L) { sum, element -> sum + selector(element) }
+    }
+}
+
+sealed class ClassSnapshot {
+    abstract val internalName: String
+
+    /**
+     * Hashes of the members by their names.
+     *   For a Kotlin class these are its constants and inline functions, other members are compared using [KotlinClassSnapshot.proto].
+     */
+    abstract val memberHashes: Map<String, Long>
+
+    abstract fun write(output: DataOutput)
+
+    companion object {
+        internal const val KOTLIN_CLASS = 0
+        internal const val JAVA_CLASS = 1
+
+        fun read(input: DataInput): ClassSnapshot =
+            when (val kind = input.readByte().toInt()) {
+                KOTLIN_CLASS -> KotlinClassSnapshot(
+                    input.readUTF(),
+                    FqName(input.readUTF()),
+                    FqName(input.readUTF()),
+                    ProtoMapValue(
+                        input.readBoolean(),
+                        ByteArray(input.readInt()).also { input.readFully(it) },
+                        Array(input.readInt()) { input.readUTF() }
+                    ),
+                    input.readMemberHashes()
+                )
+                JAVA_CLASS -> JavaClassSnapshot(input.readUTF(), input.readLong(), input.readMemberHashes())
+                else -> throw IOException("Unknown class snapshot kind $kind")
+            }
+
+        /**
+         * Returns null for classes which can't be referenced from sources: local and synthetic classes, multifile class facades.
+         */
+        fun create(bytes: ByteArray): ClassSnapshot? {
+            val kotlinClass = FileBasedKotlinClass.create(bytes) { classId, _, classHeader, _ -> classId to classHeader }
+            if (kotlinClass != null) {
+                val (classId, header) = kotlinClass
+                if (classId.isLocal) return null
+
+                val className = JvmClassName.byClassId(classId)
+                val data = header.data
+                val strings = header.strings
+                if (data != null && strings != null) {
+                    when (header.kind) {
+                        KotlinClassHeader.Kind.CLASS, KotlinClassHeader.Kind.FILE_FACADE, KotlinClassHeader.Kind.MULTIFILE_CLASS_PART -> {
+                            val isClass = header.kind == KotlinClassHeader.Kind.CLASS
+                            return KotlinClassSnapshot(
+                                className.internalName,
+                                if (isClass) className.fqNameForClassNameWithoutDollars else className.packageFqName,
+                                className.packageFqName,
+                                ProtoMapValue(!isClass, BitEncoding.decodeBytes(data), strings),
+                                kotlinMemberHashes(bytes, inlineFunctionsJvmNames(header))
+                            )
+                        }
+                        KotlinClassHeader.Kind.MULTIFILE_CLASS, KotlinClassHeader.Kind.SYNTHETIC_CLASS -> return null
+                        KotlinClassHeader.Kind.UNKNOWN -> {
+                        }
+                    }
+                }
+            }
+
+            return javaClassSnapshot(bytes)
+        }
+
+        private fun DataInput.readMemberHashes(): Map<String, Long> {
+            val size = readInt()
+            val result = HashMap<String, Long>(size)
+            repeat(size) {
+                result[readUTF()] = readLong()
+            }
+            return result
+        }
+    }
+}
+
+class KotlinClassSnapshot(
+    override val internalName: String,
+    val scopeFqName: FqName,
+    val packageFqName: FqName,
+    val proto: ProtoMapValue,
+    override val memberHashes: Map<String, Long>
+) : ClassSnapshot() {
+    override fun write(output: DataOutput) {
+        output.writeByte(KOTLIN_CLASS)
+        output.writeUTF(internalName)
+        output.writeUTF(scopeFqName.asString())
+        output.writeUTF(packageFqName.asString())
+        output.writeBoolean(proto.isPackageFacade)
+        output.writeInt(proto.bytes.size)
+        output.write(proto.bytes)
+        output.writeInt(proto.strings.size)
+        proto.strings.forEach { output.writeUTF(it) }
+        output.writeMemberHashes(memberHashes)
+    }
+}
+
+class JavaClassSnapshot(
+    override val internalName: String,
+    val signatureHash: Long,
+    override val memberHashes: Map<String, Long>
+) : ClassSnapshot() {
+    val fqName: FqName get() = JvmClassName.byInternalName(internalName).fqNameForClassNameWithoutDollars
+
+    override fun write(output: DataOutput) {
+        output.writeByte(JAVA_CLASS)
+        output.writeUTF(internalName)
+        output.writeLong(signatureHash)
+        output.writeMemberHashes(memberHashes)
+    }
+}
+
+private fun DataOutput.writeMemberHashes(memberHashes: Map<String, Long>) {
+    writeInt(memberHashes.size)
+    for ((name, hash) in memberHashes) {
+        writeUTF(name)
+        writeLong(hash)
+    }
+}
+
+private fun ClassSnapshot.hasSameAbi(other: ClassSnapshot): Boolean =
+    when (this) {
+        is KotlinClassSnapshot -> other is KotlinClassSnapshot &&
+                scopeFqName == other.scopeFqName &&
+                proto.isPackageFacade == other.proto.isPackageFacade &&
+                proto.bytes.contentEquals(other.proto.bytes) &&
+                proto.strings.contentEquals(other.proto.strings) &&
+                memberHashes == other.memberHashes
+        is JavaClassSnapshot -> other is JavaClassSnapshot && signatureHash == other.signatureHash && memberHashes == other.memberHashes
+    }
+
+private fun collectClassChanges(oldClass: ClassSnapshot?, newClass: ClassSnapshot?, changesCollector: ChangesCollector) {
+    if (oldClass is KotlinClassSnapshot || newClass is KotlinClassSnapshot) {
+        val oldKotlinClass = oldClass as? KotlinClassSnapshot
+        val newKotlinClass = newClass as? KotlinClassSnapshot
+        changesCollector.collectProtoChanges(
+            oldKotlinClass?.let { it.proto.toProtoData(it.packageFqName) },
+            newKotlinClass?.let { it.proto.toProtoData(it.packageFqName) }
+        )
+        if (oldKotlinClass != null && newKotlinClass != null && oldKotlinClass.scopeFqName == newKotlinClass.scopeFqName) {
+            collectMemberChanges(newKotlinClass.scopeFqName, oldKotlinClass.memberHashes, newKotlinClass.memberHashes, changesCollector)
+        } else {
+            oldKotlinClass?.let { collectMemberChanges(it.scopeFqName, it.memberHashes, emptyMap(), changesCollector) }
+            newKotlinClass?.let { collectMemberChanges(it.scopeFqName, emptyMap(), it.memberHashes, changesCollector) }
+        }
+    }
+
+    // A class which turned from Java to Kotlin or back is handled both ways: as a removed class of one kind and an added one of another
+    val oldJavaClass = oldClass as? JavaClassSnapshot
+    val newJavaClass = newClass as? JavaClassSnapshot
+    if (oldJavaClass != null && newJavaClass != null) {
+        if (oldJavaClass.signatureHash != newJavaClass.signatureHash) {
+            changesCollector.collectSignature(newJavaClass.fqName, areSubclassesAffected = true)
+        }
+        collectMemberChanges(newJavaClass.fqName, oldJavaClass.memberHashes, newJavaClass.memberHashes, changesCollector)
+    } else {
+        (oldJavaClass ?: newJavaClass)?.let { changesCollector.collectSignature(it.fqName, areSubclassesAffected = true) }
+    }
+}
+
+private fun collectMemberChanges(scope: FqName, oldHashes: Map<String, Long>, newHashes: Map<String, Long>, changesCollector: ChangesCollector) {
+    for (name in oldHashes.keys + newHashes.keys) {
+        changesCollector.collectMemberIfValueWasChanged(scope, name, oldHashes[name], newHashes[name])
+    }
+}
+
+/**
+ * Hashes of the constants and inline function bodies of a Kotlin class by their names.
+ */
+private fun kotlinMemberHashes(bytes: ByteArray, inlineFunctions: Set<String>): Map<String, Long> {
+    val hashes = MemberHashes()
+    ClassReader(bytes).accept(object : ClassVisitor(Opcodes.API_VERSION) {
+        override fun visitField(access: Int, name: String, desc: String, signature: String?, value: Any?): FieldVisitor? {
+            val staticFinal = Opcodes.ACC_STATIC or Opcodes.ACC_FINAL or Opcodes.ACC_PRIVATE
+            if (value != null && access and staticFinal == Opcodes.ACC_STATIC or Opcodes.ACC_FINAL) {
+                hashes.add(name, "$desc=$value")
+            }
+            return null
+        }
+
+        override fun visitMethod(access: Int, name: String, desc: String, signature: String?, exceptions: Array<out String>?): MethodVisitor? {
+            if (name + desc !in inlineFunctions) return null
+
+            val bodyWriter = ClassWriter(0)
+            bodyWriter.visit(Opcodes.V1_8, 0, "dummy", null, "java/lang/Object", null)
+            return object : MethodVisitor(Opcodes.API_VERSION, bodyWriter.visitMethod(0, name, desc, null, exceptions)) {
+                override fun visitEnd() {
+                    super.visitEnd()
+                    hashes.add(name, bodyWriter.toByteArray())
+                }
+            }
+        }
+    }, ClassReader.SKIP_FRAMES)
+    return hashes.result
+}
+
+private fun javaClassSnapshot(bytes: ByteArray): JavaClassSnapshot? {
+    var internalName: String? = null
+    var isSynthetic = false
+    val signature = StringBuilder()
+    val hashes = MemberHashes()
+
+    fun annotationRecorder(target: StringBuilder) = { desc: String -> target.append(" @").append(desc) }
+
+    ClassReader(bytes).accept(object : ClassVisitor(Opcodes.API_VERSION) {
+        override fun visit(
+            version: Int, access: Int, name: String, genericSignature: String?, superName: String?, interfaces: Array<out String>?
+        ) {
+            internalName = name
+            isSynthetic = access and Opcodes.ACC_SYNTHETIC != 0
+            signature.append(access and Opcodes.ACC_SUPER.inv()).append(' ').append(genericSignature).append(' ').append(superName)
+            interfaces?.forEach { signature.append(' ').append(it) }
+        }
+
+        override fun visitAnnotation(desc: String, visible: Boolean): AnnotationVisitor? {
+            annotationRecorder(signature)(desc)
+            return null
+        }
+
+        override fun visitField(access: Int, name: String, desc: String, genericSignature: String?, value: Any?): FieldVisitor? {
+            if (access and (Opcodes.ACC_PRIVATE or Opcodes.ACC_SYNTHETIC) != 0) return null
+
+            val member = StringBuilder().append(access).append(' ').append(desc).append(' ').append(genericSignature).append('=').append(value)
+            val recordAnnotation = annotationRecorder(member)
+            return object : FieldVisitor(Opcodes.API_VERSION) {
+                override fun visitAnnotation(desc: String, visible: Boolean): AnnotationVisitor? {
+                    recordAnnotation(desc)
+                    return null
+                }
+
+                override fun visitEnd() {
+                    hashes.add(name, member.toString())
+                }
+            }
+        }
+
+        override fun visitMethod(
+            access: Int, name: String, desc: String, genericSignature: String?, exceptions: Array<out String>?
+        ): MethodVisitor? {
+            if (access and (Opcodes.ACC_PRIVATE or Opcodes.ACC_SYNTHETIC) != 0) return null
+
+            val member = StringBuilder().append(access).append(' ').append(desc).append(' ').append(genericSignature)
+            exceptions?.forEach { member.append(' ').append(it) }
+            val recordAnnotation = annotationRecorder(member)
+            return object : MethodVisitor(Opcodes.API_VERSION) {
+                override fun visitAnnotation(desc: String, visible: Boolean): AnnotationVisitor? {
+                    recordAnnotation(desc)
+                    return null
+                }
+
+                override fun visitParameterAnnotation(parameter: Int, desc: String, visible: Boolean): AnnotationVisitor? {
+                    member.append(" #").append(parameter)
+                    recordAnnotation(desc)
+                    return null
+                }
+
+                override fun visitEnd() {
+                    hashes.add(name, member.toString())
+                }
+            }
+        }
+    }, ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+
+    val name = internalName ?: return null
+    if (isSynthetic) return null
+    return JavaClassSnapshot(name, signature.toString().toByteArray().md5(), hashes.result)
+}
+
+/**
+ * Combines hashes of all members with the same name (overloads, a constant and an inline function) into one value.
+ */
+private class MemberHashes {
+    val result = HashMap<String, Long>()
+
+    fun add(name: String, member: String) = add(name, member.toByteArray())
+
+    fun add(name: String, member: ByteArray) {
+        val hash = member.md5()
+        // Members are visited in the order of the class file, a commutative combination keeps the result independent of it
+        result[name] = (result[name] ?: 0L) + hash * 31 + 17
+    }
+}
+
+private fun ByteArray.toLong(): Long {
+    var result = 0L
+    for (i in 0 until 8) {
+        result = result or ((this[i].toLong() and 0xFFL) shl (8 * i))
+    }
+    return result
+}
@@ -33,8 +33,12 @@ import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.incremental.parsing.classesFqNames
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.progress.CompilationCanceledStatus
+import org.jetbrains.kotlin.utils.CompilerTracer
+import org.jetbrains.kotlin.utils.TraceSession
 import java.io.File
+import java.io.IOException
 import java.util.*
+import java.util.concurrent.TimeUnit
 
 abstract class IncrementalCompilerRunner<
         Args : CommonCompilerArguments,
@@ -65,6 +69,26 @@ abstract class IncrementalCompilerRunner<
         // when [providedChangedFiles] is not null, changes are provided by external system (e.g. Gradle)
         // otherwise we track source files changes ourselves.
         providedChangedFiles: ChangedFiles?
+    ): ExitCode {
+        // The trace covers the whole build, the compiler doesn't start its own session in this case
+        val traceSession = if (args.dumpTrace != null && !CompilerTracer.isEnabled) CompilerTracer.start() else null
+        try {
+            return CompilerTracer.span("IncrementalCompilation") {
+                doCompile(allSourceFiles, args, messageCollector, providedChangedFiles)
+            }
+        } finally {
+            if (traceSession != null) {
+                CompilerTracer.stop(traceSession)
+                dumpTrace(traceSession, File(args.dumpTrace!!))
+            }
+        }
+    }
+
+    private fun doCompile(
+        allSourceFiles: List<File>,
+        args: Args,
+        messageCollector: MessageCollector,
+        providedChangedFiles: ChangedFiles?
     ): ExitCode {
         assert(isICEnabled()) { "Incremental compilation is not enabled" }
         var caches = createCacheManager(args)
@@ -82,8 +106,9 @@ abstract class IncrementalCompilerRunner<
         }
 
         return try {
-            val changedFiles = providedChangedFiles ?: caches.inputsCache.sourceSnapshotMap.compareAndUpdate(allSourceFiles)
-            val compilationMode = sourcesToCompile(caches, changedFiles, args)
+            val changedFiles = providedChangedFiles
+                ?: CompilerTracer.span("SnapshotSources") { caches.inputsCache.sourceSnapshotMap.compareAndUpdate(allSourceFiles) }
+            val compilationMode = CompilerTracer.span("CalculateSourcesToCompile") { sourcesToCompile(caches, changedFiles, args) }
 
             val exitCode = when (compilationMode) {
                 is CompilationMode.Incremental -> {
@@ -103,6 +128,21 @@ abstract class IncrementalCompilerRunner<
         }
     }
 
+    private fun dumpTrace(session: TraceSession, destination: File) {
+        try {
+            destination.bufferedWriter().use { session.writeChromeTrace(it) }
+        } catch (e: IOException) {
+            reporter.report { "Could not write the trace to $destination: $e" }
+            return
+        }
+        reporter.reportVerbose {
+            session.summary().joinToString("\n", prefix = "Trace summary:\n") { span ->
+                val allocated = if (span.allocatedBytes >= 0) ", ${span.allocatedBytes / 1024} KB allocated" else ""
+                "  ${span.name}: ${span.count} times in ${TimeUnit.NANOSECONDS.toMillis(span.nanos)} ms$allocated"
+            }
+        }
+    }
+
     private fun clearLocalStateOnRebuild(args: Args) {
         val destinationDir = destinationDir(args)
 
@@ -164,6 +204,7 @@ abstract class IncrementalCompilerRunner<
     )
 
     protected open fun preBuildHook(args: Args, compilationMode: CompilationMode) {}
+    protected open fun postBuildHook(args: Args, exitCode: ExitCode) {}
     protected open fun additionalDirtyFiles(caches: CacheManager, generatedFiles: List<GeneratedFile>, services: Services): Iterable<File> =
         emptyList()
 
@@ -237,7 +278,9 @@ abstract class IncrementalCompilerRunner<
             val temporaryMessageCollector = TemporaryMessageCollector(messageCollector)
             val messageCollectorAdapter = MessageCollectorToOutputItemsCollectorAdapter(temporaryMessageCollector, outputItemsCollector)
 
-            exitCode = runCompiler(sourcesToCompile.toSet(), args, caches, services, messageCollectorAdapter)
+            exitCode = CompilerTracer.span("CompileIteration", "${sourcesToCompile.size} files") {
+                runCompiler(sourcesToCompile.toSet(), args, caches, services, messageCollectorAdapter)
+            }
 
             val generatedFiles = outputItemsCollector.outputs.map(SimpleOutputItem::toGeneratedFile)
             if (compilationMode is CompilationMode.Incremental) {
@@ -258,28 +301,40 @@ abstract class IncrementalCompilerRunner<
 
             dirtySourcesSinceLastTimeFile.delete()
 
-            caches.platformCache.updateComplementaryFiles(dirtySources, expectActualTracker)
-            caches.inputsCache.registerOutputForSourceFiles(generatedFiles)
-            caches.lookupCache.update(lookupTracker, sourcesToCompile, removedKotlinSources)
             val changesCollector = ChangesCollector()
-            updateCaches(services, caches, generatedFiles, changesCollector)
+            CompilerTracer.span("UpdateCaches") {
+                caches.platformCache.updateComplementaryFiles(dirtySources, expectActualTracker)
+                caches.inputsCache.registerOutputForSourceFiles(generatedFiles)
+                caches.lookupCache.update(lookupTracker, sourcesToCompile, removedKotlinSources)
+                updateCaches(services, caches, generatedFiles, changesCollector)
+            }
 
             if (compilationMode is CompilationMode.Rebuild) break
 
-            val (dirtyLookupSymbols, dirtyClassFqNames) = changesCollector.getDirtyData(listOf(caches.platformCache), reporter)
-            val compiledInThisIterationSet = sourcesToCompile.toHashSet()
-
-            with(dirtySources) {
-                clear()
-                addAll(mapLookupSymbolsToFiles(caches.lookupCache, dirtyLookupSymbols, reporter, excludes = compiledInThisIterationSet))
-                addAll(
-                    mapClassesFqNamesToFiles(
-                        listOf(caches.platformCache),
-                        dirtyClassFqNames,
-                        reporter,
-                        excludes = compiledInThisIterationSet
+            val (dirtyLookupSymbols, dirtyClassFqNames) = CompilerTracer.span("FindDirtyFiles") {
+                val dirtyData = changesCollector.getDirtyData(listOf(caches.platformCache), reporter)
+                val compiledInThisIterationSet = sourcesToCompile.toHashSet()
+
+                with(dirtySources) {
+                    clear()
+                    addAll(
+                        mapLookupSymbolsToFiles(
+                            caches.lookupCache,
+                            dirtyData.dirtyLookupSymbols,
+                            reporter,
+                            excludes = compiledInThisIterationSet
+                        )
                     )
-                )
+                    addAll(
+                        mapClassesFqNamesToFiles(
+                            listOf(caches.platformCache),
+                            dirtyData.dirtyClassesFqNames,
+                            reporter,
+                            excludes = compiledInThisIterationSet
+                        )
+                    )
+                }
+                dirtyData
             }
 
             buildDirtyLookupSymbols.addAll(dirtyLookupSymbols)
@@ -289,12 +344,13 @@ abstract class IncrementalCompilerRunner<
         if (exitCode == ExitCode.OK) {
             BuildInfo.write(currentBuildInfo, lastBuildInfoFile)
         }
+        postBuildHook(args, exitCode)
         if (exitCode == ExitCode.OK && compilationMode is CompilationMode.Incremental) {
             buildDirtyLookupSymbols.addAll(additionalDirtyLookupSymbols())
         }
 
         val dirtyData = DirtyData(buildDirtyLookupSymbols, buildDirtyFqNames)
-        processChangesAfterBuild(compilationMode, currentBuildInfo, dirtyData)
+        CompilerTracer.span("WriteBuildHistory") { processChangesAfterBuild(compilationMode, currentBuildInfo, dirtyData) }
 
         return exitCode
     }
@@ -330,7 +386,6 @@ abstract class IncrementalCompilerRunner<
         currentBuildInfo: BuildInfo,
         dirtyData: DirtyData
     ) {
-        val prevDiffs = BuildDiffsStorage.readFromFile(buildHistoryFile, reporter)?.buildDiffs ?: emptyList()
         val newDiff = if (compilationMode is CompilationMode.Incremental) {
             BuildDifference(currentBuildInfo.startTS, true, dirtyData)
         } else {
@@ -338,12 +393,13 @@ abstract class IncrementalCompilerRunner<
             BuildDifference(currentBuildInfo.startTS, false, emptyDirtyData)
         }
 
-        BuildDiffsStorage.writeToFile(buildHistoryFile, BuildDiffsStorage(prevDiffs + newDiff), reporter)
+        BuildDiffsStorage.appendToFile(buildHistoryFile, newDiff, reporter)
     }
 
     companion object {
         const val DIRTY_SOURCES_FILE_NAME = "dirty-sources.txt"
         const val LAST_BUILD_INFO_FILE_NAME = "last-build.bin"
+        const val CLASSPATH_SNAPSHOT_DIR_NAME = "classpath-snapshot"
     }
 
     private object EmptyCompilationCanceledStatus : CompilationCanceledStatus {
@@ -29,6 +29,7 @@ import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.incremental.js.*
 import org.jetbrains.kotlin.incremental.multiproject.EmptyModulesApiHistory
 import org.jetbrains.kotlin.incremental.multiproject.ModulesApiHistory
+import org.jetbrains.kotlin.incremental.snapshots.findSourceFiles
 import org.jetbrains.kotlin.library.metadata.KlibMetadataSerializerProtocol
 import org.jetbrains.kotlin.serialization.js.JsSerializerProtocol
 import java.io.File
@@ -41,8 +42,7 @@ fun makeJsIncrementally(
     reporter: ICReporter = EmptyICReporter,
     scopeExpansion: CompileScopeExpansionMode = CompileScopeExpansionMode.NEVER
 ) {
-    val allKotlinFiles = sourceRoots.asSequence().flatMap { it.walk() }
-        .filter { it.isFile && it.extension.equals("kt", ignoreCase = true) }.toList()
+    val allKotlinFiles = findSourceFiles(sourceRoots, listOf("kt"))
     val buildHistoryFile = File(cachesDir, "build-history.bin")
 
     withJsIC {
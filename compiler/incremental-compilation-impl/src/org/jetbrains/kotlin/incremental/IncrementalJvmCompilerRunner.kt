@@ -18,10 +18,8 @@ package org.jetbrains.kotlin.incremental
 
 import com.intellij.lang.java.JavaLanguage
 import com.intellij.openapi.util.Disposer
-import com.intellij.psi.PsiClass
 import com.intellij.psi.PsiFile
 import com.intellij.psi.PsiFileFactory
-import com.intellij.psi.PsiJavaFile
 import org.jetbrains.kotlin.build.DEFAULT_KOTLIN_SOURCE_FILES_EXTENSIONS
 import org.jetbrains.kotlin.build.GeneratedFile
 import org.jetbrains.kotlin.build.GeneratedJvmClass
@@ -38,14 +36,15 @@ import org.jetbrains.kotlin.incremental.components.ExpectActualTracker
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.incremental.multiproject.EmptyModulesApiHistory
 import org.jetbrains.kotlin.incremental.multiproject.ModulesApiHistory
+import org.jetbrains.kotlin.incremental.snapshots.findSourceFiles
 import org.jetbrains.kotlin.load.java.JavaClassesTracker
 import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader
 import org.jetbrains.kotlin.load.kotlin.incremental.components.IncrementalCompilationComponents
 import org.jetbrains.kotlin.modules.TargetId
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
-import org.jetbrains.kotlin.name.Name
 import java.io.File
+import java.io.IOException
 
 fun makeIncrementally(
     cachesDir: File,
@@ -56,9 +55,7 @@ fun makeIncrementally(
 ) {
     val kotlinExtensions = DEFAULT_KOTLIN_SOURCE_FILES_EXTENSIONS
     val allExtensions = kotlinExtensions + "java"
-    val rootsWalk = sourceRoots.asSequence().flatMap { it.walk() }
-    val files = rootsWalk.filter(File::isFile)
-    val sourceFiles = files.filter { it.extension.toLowerCase() in allExtensions }.toList()
+    val sourceFiles = findSourceFiles(sourceRoots, allExtensions)
     val buildHistoryFile = File(cachesDir, "build-history.bin")
     args.javaSourceRoots = sourceRoots.map { it.absolutePath }.toTypedArray()
 
@@ -125,6 +122,9 @@ class IncrementalJvmCompilerRunner(
 
     private var dirtyClasspathChanges: Collection<FqName> = emptySet()
 
+    private val classpathSnapshotDir = File(workingDir, CLASSPATH_SNAPSHOT_DIR_NAME)
+    private var currentClasspathSnapshot: ClasspathSnapshot? = null
+
     private val psiFileFactory: PsiFileFactory by lazy {
         val rootDisposable = Disposer.newDisposable()
         val configuration = CompilerConfiguration()
@@ -135,9 +135,11 @@ class IncrementalJvmCompilerRunner(
 
     private val changedUntrackedJavaClasses = mutableSetOf<ClassId>()
 
+    private val javaSourceStructureProvider = JavaSourceStructureProvider { it.psiFile() }
+
     private var javaFilesProcessor =
         if (!usePreciseJavaTracking)
-            ChangedJavaFilesProcessor(reporter) { it.psiFile() }
+            ChangedJavaFilesProcessor(reporter, javaSourceStructureProvider)
         else
             null
 
@@ -152,7 +154,10 @@ class IncrementalJvmCompilerRunner(
         val lastBuildInfo = BuildInfo.read(lastBuildInfoFile) ?: return CompilationMode.Rebuild { "No information on previous build" }
         reporter.reportVerbose { "Last Kotlin Build info -- $lastBuildInfo" }
 
-        val classpathChanges = getClasspathChanges(args.classpathAsList, changedFiles, lastBuildInfo, modulesApiHistory, reporter)
+        val classpathChanges =
+            // With -Xuse-classpath-snapshots, build history files of other modules from modulesApiHistory are not read
+            if (args.useClasspathSnapshots) getClasspathSnapshotChanges(args.classpathAsList, caches)
+            else getClasspathChanges(args.classpathAsList, changedFiles, lastBuildInfo, modulesApiHistory, reporter)
 
         @Suppress("UNUSED_VARIABLE") // for sealed when
         val unused = when (classpathChanges) {
@@ -201,21 +206,13 @@ class IncrementalJvmCompilerRunner(
                     return false
                 }
 
-                val psiFile = javaFile.psiFile()
-                if (psiFile !is PsiJavaFile) {
-                    reporter.report { "[Precise Java tracking] Expected PsiJavaFile, got ${psiFile?.javaClass}" }
+                val classes = javaSourceStructureProvider.getClasses(javaFile)
+                if (classes == null) {
+                    reporter.report { "[Precise Java tracking] Could not read classes of $javaFile" }
                     return false
                 }
 
-                for (psiClass in psiFile.classes) {
-                    val qualifiedName = psiClass.qualifiedName
-                    if (qualifiedName == null) {
-                        reporter.report { "[Precise Java tracking] Class with unknown qualified name in $javaFile" }
-                        return false
-                    }
-
-                    processChangedUntrackedJavaClass(psiClass, ClassId.topLevel(FqName(qualifiedName)))
-                }
+                classes.forEach(::processChangedUntrackedJavaClass)
             }
         }
 
@@ -226,12 +223,9 @@ class IncrementalJvmCompilerRunner(
     private fun File.psiFile(): PsiFile? =
         psiFileFactory.createFileFromText(nameWithoutExtension, JavaLanguage.INSTANCE, readText())
 
-    private fun processChangedUntrackedJavaClass(psiClass: PsiClass, classId: ClassId) {
-        changedUntrackedJavaClasses.add(classId)
-        for (innerClass in psiClass.innerClasses) {
-            val name = innerClass.name ?: continue
-            processChangedUntrackedJavaClass(innerClass, classId.createNestedClassId(Name.identifier(name)))
-        }
+    private fun processChangedUntrackedJavaClass(javaClass: JavaSourceClass) {
+        changedUntrackedJavaClasses.add(javaClass.classId)
+        javaClass.innerClasses.forEach(::processChangedUntrackedJavaClass)
     }
 
     private fun processLookupSymbolsForAndroidLayouts(changedFiles: ChangedFiles.Known): Collection<LookupSymbol> {
@@ -245,6 +239,33 @@ class IncrementalJvmCompilerRunner(
         return result
     }
 
+    private fun getClasspathSnapshotChanges(classpath: List<File>, caches: IncrementalJvmCachesManager): ChangesEither {
+        val previousSnapshot = ClasspathSnapshot.readFromDirectory(classpathSnapshotDir, reporter)
+        val currentSnapshot = ClasspathSnapshot.create(classpath, previousSnapshot)
+        currentClasspathSnapshot = currentSnapshot
+
+        if (previousSnapshot == null) return ChangesEither.Unknown("No classpath snapshot of previous build")
+
+        val changesCollector = ChangesCollector()
+        try {
+            currentSnapshot.collectChangesSince(previousSnapshot, changesCollector)
+        } catch (e: IOException) {
+            return ChangesEither.Unknown("Could not read classpath snapshot of previous build: $e")
+        }
+        val dirtyData = changesCollector.getDirtyData(listOf(caches.platformCache), reporter)
+        return ChangesEither.Known(dirtyData.dirtyLookupSymbols, dirtyData.dirtyClassesFqNames)
+    }
+
+    override fun postBuildHook(args: K2JVMCompilerArguments, exitCode: ExitCode) {
+        if (!args.useClasspathSnapshots || exitCode != ExitCode.OK) return
+
+        // The destination directory is added to the classpath of an incremental build by preBuildHook
+        val snapshot = currentClasspathSnapshot
+            ?: ClasspathSnapshot.create(args.classpathAsList - args.destinationAsFile, ClasspathSnapshot.readFromDirectory(classpathSnapshotDir, reporter))
+        ClasspathSnapshot.writeToDirectory(classpathSnapshotDir, snapshot, reporter)
+        currentClasspathSnapshot = null
+    }
+
     override fun preBuildHook(args: K2JVMCompilerArguments, compilationMode: CompilationMode) {
         if (compilationMode is CompilationMode.Incremental) {
             val destinationDir = args.destinationAsFile
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import com.intellij.lang.java.lexer.JavaLexer
+import com.intellij.pom.java.LanguageLevel
+import com.intellij.psi.PsiClass
+import com.intellij.psi.PsiFile
+import com.intellij.psi.PsiJavaFile
+import com.intellij.psi.impl.source.tree.ElementType
+import com.intellij.psi.tree.IElementType
+import org.jetbrains.kotlin.incremental.snapshots.xxHash64
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.name.Name
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * A class declared in a Java source file, with the names of its methods (including constructors) and fields (including enum entries).
+ */
+internal class JavaSourceClass(
+    val classId: ClassId,
+    val methodNames: List<String>,
+    val fieldNames: List<String>,
+    val innerClasses: List<JavaSourceClass>
+)
+
+/**
+ * Reads the classes declared in Java source files for detecting changes of untracked Java sources.
+ *
+ * Files are read with [JavaSourceStructureReader] using only the Java lexer. A PSI file is created by [psiFileFactory] only for files
+ *   the reader can't handle, so that the PSI environment is not created at all in most builds.
+ *   Results are cached by the content hash of a file for the lifetime of the process.
+ */
+internal class JavaSourceStructureProvider(private val psiFileFactory: (File) -> PsiFile?) {
+    /**
+     * Returns null if the classes of [file] could not be read.
+     */
+    fun getClasses(file: File): List<JavaSourceClass>? {
+        val bytes = file.readBytes()
+        val key = ContentKey(bytes.size, xxHash64(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)))
+        synchronized(cache) {
+            cache[key]?.let { return it }
+        }
+
+        val classes = JavaSourceStructureReader(String(bytes)).read()
+            ?: (psiFileFactory(file) as? PsiJavaFile)?.let(::classesFromPsi)
+            ?: return null
+
+        synchronized(cache) {
+            cache[key] = classes
+        }
+        return classes
+    }
+
+    private fun classesFromPsi(psiFile: PsiJavaFile): List<JavaSourceClass>? {
+        fun PsiClass.toJavaSourceClass(classId: ClassId): JavaSourceClass? =
+            JavaSourceClass(
+                classId,
+                methods.map { it.name },
+                fields.map { it.name },
+                innerClasses.map { innerClass ->
+                    val name = innerClass.name ?: return null
+                    innerClass.toJavaSourceClass(classId.createNestedClassId(Name.identifier(name))) ?: return null
+                }
+            )
+
+        return psiFile.classes.map { psiClass ->
+            val qualifiedName = psiClass.qualifiedName ?: return null
+            psiClass.toJavaSourceClass(ClassId.topLevel(FqName(qualifiedName))) ?: return null
+        }
+    }
+
+    private data class ContentKey(val length: Int, val hash: Long)
+
+    companion object {
+        private const val MAX_CACHED_FILES = 4096
+
+        private val cache = object : LinkedHashMap<ContentKey, List<JavaSourceClass>>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<ContentKey, List<JavaSourceClass>>?): Boolean =
+                size > MAX_CACHED_FILES
+        }
+    }
+}
+
+/**
+ * Uses the Java lexer to find the classes declared in a Java file and the names of their members.
+ *
+ * Bodies of methods, initializers and field initializers are skipped by balancing brackets, so local and anonymous classes are ignored
+ *   as in PSI. [read] returns null for sources the reader doesn't understand (records, unbalanced brackets, module declarations).
+ */
+internal class JavaSourceStructureReader(text: CharSequence) {
+    private val lexer = JavaLexer(LanguageLevel.JDK_1_9).apply {
+        start(text)
+        skipWhitespaceAndComments()
+    }
+
+    private class UnexpectedSourceException : Exception()
+
+    private fun JavaLexer.skipWhitespaceAndComments() {
+        while (tokenType in ElementType.JAVA_COMMENT_OR_WHITESPACE_BIT_SET) {
+            advance()
+        }
+    }
+
+    private fun at(type: IElementType): Boolean = lexer.tokenType == type
+
+    private fun end(): Boolean = lexer.tokenType == null
+
+    private fun advance() {
+        if (end()) throw UnexpectedSourceException()
+        lexer.advance()
+        lexer.skipWhitespaceAndComments()
+    }
+
+    private fun tokenText(): String = lexer.tokenText
+
+    fun read(): List<JavaSourceClass>? =
+        try {
+            readFile()
+        } catch (e: UnexpectedSourceException) {
+            null
+        }
+
+    private fun readFile(): List<JavaSourceClass> {
+        var packageFqName = FqName.ROOT
+        val result = ArrayList<JavaSourceClass>(1)
+
+        while (!end()) {
+            when {
+                at(ElementType.PACKAGE_KEYWORD) -> {
+                    val packageName = StringBuilder()
+                    while (!at(ElementType.SEMICOLON)) {
+                        advance()
+                        if (at(ElementType.IDENTIFIER) || at(ElementType.DOT)) {
+                            packageName.append(tokenText())
+                        }
+                    }
+                    packageFqName = FqName(packageName.toString())
+                    advance()
+                }
+                at(ElementType.IMPORT_KEYWORD) -> {
+                    skipUntil(ElementType.SEMICOLON)
+                    advance()
+                }
+                at(ElementType.AT) -> if (skipAnnotation()) result.add(readClass { ClassId(packageFqName, it) })
+                at(ElementType.IDENTIFIER) && tokenText() in UNSUPPORTED_DECLARATIONS -> throw UnexpectedSourceException()
+                lexer.tokenType in CLASS_KEYWORDS -> result.add(readClass { ClassId(packageFqName, it) })
+                at(ElementType.LBRACE) || at(ElementType.LPARENTH) -> throw UnexpectedSourceException()
+                else -> advance()
+            }
+        }
+
+        return result
+    }
+
+    /**
+     * Skips the annotation at `@`. Returns true if it is an annotation class declaration instead, leaving the lexer at its keyword.
+     */
+    private fun skipAnnotation(): Boolean {
+        advance()
+        if (at(ElementType.INTERFACE_KEYWORD)) return true
+
+        while (at(ElementType.IDENTIFIER) || at(ElementType.DOT)) {
+            advance()
+        }
+        if (at(ElementType.LPARENTH)) {
+            skipBalanced()
+        }
+        return false
+    }
+
+    /**
+     * Reads the class declaration at its keyword.
+     */
+    private fun readClass(classIdByName: (Name) -> ClassId): JavaSourceClass {
+        val isEnum = at(ElementType.ENUM_KEYWORD)
+        advance()
+        if (!at(ElementType.IDENTIFIER)) throw UnexpectedSourceException()
+        val classId = classIdByName(Name.identifier(tokenText()))
+        skipUntil(ElementType.LBRACE)
+        advance()
+
+        val methodNames = ArrayList<String>()
+        val fieldNames = ArrayList<String>()
+        val innerClasses = ArrayList<JavaSourceClass>()
+
+        if (isEnum) {
+            readEnumEntries(fieldNames)
+        }
+        while (!at(ElementType.RBRACE)) {
+            readMember(methodNames, fieldNames) { innerClasses.add(readClass { classId.createNestedClassId(it) }) }
+        }
+        advance()
+
+        return JavaSourceClass(classId, methodNames, fieldNames, innerClasses)
+    }
+
+    private fun readEnumEntries(fieldNames: MutableList<String>) {
+        while (!at(ElementType.SEMICOLON) && !at(ElementType.RBRACE)) {
+            when {
+                at(ElementType.AT) -> if (skipAnnotation()) throw UnexpectedSourceException()
+                at(ElementType.IDENTIFIER) -> {
+                    fieldNames.add(tokenText())
+                    advance()
+                    if (at(ElementType.LPARENTH)) skipBalanced()
+                    if (at(ElementType.LBRACE)) skipBalanced()
+                }
+                at(ElementType.COMMA) -> advance()
+                else -> throw UnexpectedSourceException()
+            }
+        }
+        if (at(ElementType.SEMICOLON)) advance()
+    }
+
+    /**
+     * Reads a member declaration of a class body up to its end.
+     */
+    private inline fun readMember(methodNames: MutableList<String>, fieldNames: MutableList<String>, readNestedClass: () -> Unit) {
+        var lastIdentifier: String? = null
+        var typeArgumentsDepth = 0
+
+        loop@ while (true) {
+            val tokenType = lexer.tokenType
+            when {
+                tokenType == null -> throw UnexpectedSourceException()
+                tokenType == ElementType.AT -> {
+                    if (skipAnnotation()) {
+                        readNestedClass()
+                        return
+                    }
+                    continue@loop
+                }
+                tokenType in CLASS_KEYWORDS -> {
+                    readNestedClass()
+                    return
+                }
+                tokenType == ElementType.IDENTIFIER -> {
+                    if (lastIdentifier == null && tokenText() in UNSUPPORTED_DECLARATIONS) throw UnexpectedSourceException()
+                    lastIdentifier = tokenText()
+                }
+                tokenType == ElementType.LT -> typeArgumentsDepth++
+                tokenType == ElementType.GT -> typeArgumentsDepth--
+                typeArgumentsDepth > 0 -> {
+                }
+                tokenType == ElementType.LPARENTH -> {
+                    methodNames.add(lastIdentifier ?: throw UnexpectedSourceException())
+                    skipBalanced()
+                    // throws clause, annotation method default value
+                    while (!at(ElementType.SEMICOLON) && !at(ElementType.LBRACE)) {
+                        when {
+                            at(ElementType.LPARENTH) -> skipBalanced()
+                            at(ElementType.RBRACE) -> throw UnexpectedSourceException()
+                            else -> advance()
+                        }
+                    }
+                    if (at(ElementType.LBRACE)) skipBalanced() else advance()
+                    return
+                }
+                tokenType == ElementType.LBRACE -> {
+                    // initializer
+                    if (lastIdentifier != null) throw UnexpectedSourceException()
+                    skipBalanced()
+                    return
+                }
+                tokenType == ElementType.EQ -> {
+                    fieldNames.add(lastIdentifier ?: throw UnexpectedSourceException())
+                    lastIdentifier = null
+                    skipInitializer()
+                    if (at(ElementType.COMMA)) advance()
+                    continue@loop
+                }
+                tokenType == ElementType.COMMA -> {
+                    fieldNames.add(lastIdentifier ?: throw UnexpectedSourceException())
+                    lastIdentifier = null
+                }
+                tokenType == ElementType.SEMICOLON -> {
+                    lastIdentifier?.let { fieldNames.add(it) }
+                    advance()
+                    return
+                }
+            }
+            advance()
+        }
+    }
+
+    /**
+     * Skips a field initializer up to the comma or the semicolon which ends it.
+     *
+     * Commas inside type arguments, as in `new HashMap<A, B>()`, don't end the initializer. The lexer can't tell type arguments
+     *   from comparisons, so a `<` followed by a token which can't appear in type arguments makes the source unsupported.
+     */
+    private fun skipInitializer() {
+        var typeArgumentsDepth = 0
+        advance()
+        while (typeArgumentsDepth > 0 || !at(ElementType.COMMA) && !at(ElementType.SEMICOLON)) {
+            val tokenType = lexer.tokenType
+            when {
+                tokenType in OPENING_BRACKETS -> skipBalanced()
+                tokenType in CLOSING_BRACKETS -> throw UnexpectedSourceException()
+                tokenType == ElementType.LT -> {
+                    typeArgumentsDepth++
+                    advance()
+                }
+                tokenType == ElementType.GT -> {
+                    // shift and comparison operators outside of type arguments
+                    if (typeArgumentsDepth > 0) typeArgumentsDepth--
+                    advance()
+                }
+                typeArgumentsDepth > 0 && tokenType !in TYPE_ARGUMENT_TOKENS -> throw UnexpectedSourceException()
+                else -> advance()
+            }
+        }
+    }
+
+    /**
+     * Skips the bracketed block at an opening bracket.
+     */
+    private fun skipBalanced() {
+        var depth = 0
+        do {
+            when (lexer.tokenType) {
+                in OPENING_BRACKETS -> depth++
+                in CLOSING_BRACKETS -> depth--
+            }
+            advance()
+        } while (depth > 0)
+    }
+
+    private fun skipUntil(type: IElementType) {
+        while (!at(type)) {
+            advance()
+        }
+    }
+
+    companion object {
+        private val CLASS_KEYWORDS = setOf(ElementType.CLASS_KEYWORD, ElementType.INTERFACE_KEYWORD, ElementType.ENUM_KEYWORD)
+        private val OPENING_BRACKETS = setOf(ElementType.LBRACE, ElementType.LPARENTH, ElementType.LBRACKET)
+        private val CLOSING_BRACKETS = setOf(ElementType.RBRACE, ElementType.RPARENTH, ElementType.RBRACKET)
+        private val TYPE_ARGUMENT_TOKENS = setOf(
+            ElementType.IDENTIFIER, ElementType.DOT, ElementType.COMMA, ElementType.QUEST, ElementType.AND, ElementType.AT,
+            ElementType.EXTENDS_KEYWORD, ElementType.SUPER_KEYWORD
+        ) + ElementType.PRIMITIVE_TYPE_BIT_SET.types
+
+        // Restricted identifiers which the lexer of Java 9 doesn't know
+        private val UNSUPPORTED_DECLARATIONS = setOf("record", "module", "open")
+    }
+}
@@ -17,12 +17,15 @@
 package org.jetbrains.kotlin.incremental.snapshots
 
 import java.io.File
-import java.util.*
 
+/**
+ * [lastModified] is used only to skip hashing of untouched files, snapshots with different timestamps are equal.
+ */
 class FileSnapshot(
     val file: File,
     val length: Long,
-    val hash: ByteArray
+    val lastModified: Long,
+    val hash: Long
 ) {
     init {
         assert(!file.isDirectory)
@@ -36,7 +39,7 @@ class FileSnapshot(
 
         if (file != other.file) return false
         if (length != other.length) return false
-        if (!Arrays.equals(hash, other.hash)) return false
+        if (hash != other.hash) return false
 
         return true
     }
@@ -44,11 +47,18 @@ class FileSnapshot(
     override fun hashCode(): Int {
         var result = file.hashCode()
         result = 31 * result + length.hashCode()
-        result = 31 * result + Arrays.hashCode(hash)
+        result = 31 * result + hash.hashCode()
         return result
     }
 
     override fun toString(): String {
-        return "FileSnapshot(file=$file, length=$length, hash=${Arrays.toString(hash)})"
+        return "FileSnapshot(file=$file, length=$length, hash=$hash)"
+    }
+
+    companion object {
+        /**
+         * [lastModified] of a snapshot taken right after the file was modified, the file is hashed again the next time.
+         */
+        const val RACY_TIMESTAMP = Long.MIN_VALUE
     }
 }
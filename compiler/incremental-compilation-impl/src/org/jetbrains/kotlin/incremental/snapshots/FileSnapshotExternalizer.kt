@@ -22,19 +22,24 @@ import java.io.DataOutput
 import java.io.File
 
 object FileSnapshotExternalizer : DataExternalizer<FileSnapshot> {
+    /**
+     * Version of the format of a snapshot. [FileSnapshotMap] drops the snapshots written in another format.
+     *   Version 2: the content hash is a 64-bit xxHash instead of an MD5 byte array.
+     */
+    const val FORMAT_VERSION = 2
+
     override fun save(out: DataOutput, value: FileSnapshot) {
         out.writeUTF(value.file.canonicalPath)
         out.writeLong(value.length)
-        out.writeInt(value.hash.size)
-        out.write(value.hash)
+        out.writeLong(value.lastModified)
+        out.writeLong(value.hash)
     }
 
     override fun read(input: DataInput): FileSnapshot {
         val file = File(input.readUTF())
         val length = input.readLong()
-        val hashSize = input.readInt()
-        val hash = ByteArray(hashSize)
-        input.readFully(hash)
-        return FileSnapshot(file, length, hash)
+        val lastModified = input.readLong()
+        val hash = input.readLong()
+        return FileSnapshot(file, length, lastModified, hash)
     }
 }
\ No newline at end of file
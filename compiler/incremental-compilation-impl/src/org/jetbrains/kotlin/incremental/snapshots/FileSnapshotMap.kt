@@ -16,13 +16,20 @@
 
 package org.jetbrains.kotlin.incremental.snapshots
 
+import com.intellij.util.io.IOUtil
 import org.jetbrains.kotlin.incremental.ChangedFiles
 import org.jetbrains.kotlin.incremental.storage.BasicStringMap
 import org.jetbrains.kotlin.incremental.storage.PathStringDescriptor
 import java.io.File
 import java.util.*
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
-class FileSnapshotMap(storageFile: File) : BasicStringMap<FileSnapshot>(storageFile, PathStringDescriptor, FileSnapshotExternalizer) {
+class FileSnapshotMap(
+    storageFile: File,
+    private val threads: Int = Runtime.getRuntime().availableProcessors()
+) : BasicStringMap<FileSnapshot>(resetIfFormatChanged(storageFile), PathStringDescriptor, FileSnapshotExternalizer) {
     override fun dumpValue(value: FileSnapshot): String =
         value.toString()
 
@@ -31,7 +38,7 @@ class FileSnapshotMap(storageFile: File) : BasicStringMap<FileSnapshot>(storageF
         val newOrModified = ArrayList<File>()
         val removed = ArrayList<File>()
 
-        val newPaths = newFiles.mapTo(HashSet()) { it.canonicalPath }
+        val newPaths = newFiles.mapTo(LinkedHashSet()) { it.canonicalPath }
         for (oldPath in storage.keys) {
             if (oldPath !in newPaths) {
                 storage.remove(oldPath)
@@ -39,17 +46,65 @@ class FileSnapshotMap(storageFile: File) : BasicStringMap<FileSnapshot>(storageF
             }
         }
 
-        for (path in newPaths) {
-            val file = File(path)
-            val oldSnapshot = storage[path]
-            val newSnapshot = snapshotProvider[file]
+        val paths = newPaths.toList()
+        val oldSnapshots = paths.map { storage[it] }
+        val newSnapshots = snapshot(paths, oldSnapshots, snapshotProvider)
+
+        // Only changed snapshots are written back, so a build without changes doesn't touch the storage
+        for (i in paths.indices) {
+            val oldSnapshot = oldSnapshots[i]
+            val newSnapshot = newSnapshots[i]
+            if (oldSnapshot === newSnapshot) continue
 
             if (oldSnapshot == null || oldSnapshot != newSnapshot) {
-                newOrModified.add(file)
-                storage[path] = newSnapshot
+                newOrModified.add(newSnapshot.file)
             }
+            storage[paths[i]] = newSnapshot
         }
 
         return ChangedFiles.Known(newOrModified, removed)
     }
-}
\ No newline at end of file
+
+    private fun snapshot(paths: List<String>, oldSnapshots: List<FileSnapshot?>, snapshotProvider: FileSnapshotProvider): List<FileSnapshot> {
+        if (threads <= 1 || paths.size < MIN_FILES_PER_THREAD * 2) {
+            return paths.mapIndexed { i, path -> snapshotProvider.get(File(path), oldSnapshots[i]) }
+        }
+
+        val chunkSize = maxOf(MIN_FILES_PER_THREAD, (paths.size + threads - 1) / threads)
+        val chunks = paths.indices.chunked(chunkSize)
+        val executor = Executors.newFixedThreadPool(minOf(threads, chunks.size))
+        try {
+            val futures: List<Future<List<FileSnapshot>>> = chunks.map { chunk ->
+                executor.submit<List<FileSnapshot>> {
+                    chunk.map { i -> snapshotProvider.get(File(paths[i]), oldSnapshots[i]) }
+                }
+            }
+            return futures.flatMap {
+                try {
+                    it.get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    companion object {
+        private const val MIN_FILES_PER_THREAD = 256
+        private const val FORMAT_VERSION_FILE_SUFFIX = ".format-version"
+
+        // Snapshots written in another format can't be read, so the storage is deleted and all files are reported as new
+        private fun resetIfFormatChanged(storageFile: File): File {
+            val versionFile = File(storageFile.parentFile, storageFile.name + FORMAT_VERSION_FILE_SUFFIX)
+            val version = if (versionFile.exists()) versionFile.readText().trim().toIntOrNull() else null
+            if (version != FileSnapshotExternalizer.FORMAT_VERSION) {
+                IOUtil.deleteAllFilesStartingWith(storageFile)
+                versionFile.parentFile.mkdirs()
+                versionFile.writeText(FileSnapshotExternalizer.FORMAT_VERSION.toString())
+            }
+            return storageFile
+        }
+    }
+}
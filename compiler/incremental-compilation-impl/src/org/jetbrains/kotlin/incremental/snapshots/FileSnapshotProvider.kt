@@ -20,12 +20,32 @@ import java.io.File
 
 interface FileSnapshotProvider {
     operator fun get(file: File): FileSnapshot
+
+    /**
+     * Returns [previous] if the length and the timestamp of [file] haven't changed, otherwise a new snapshot.
+     * Snapshots of racily modified files (see [FileSnapshot.RACY_TIMESTAMP]) are never reused.
+     */
+    fun get(file: File, previous: FileSnapshot?): FileSnapshot =
+        if (previous != null && previous.lastModified != FileSnapshot.RACY_TIMESTAMP &&
+            previous.length == file.length() && previous.lastModified == file.lastModified()
+        ) previous
+        else get(file)
 }
 
 class SimpleFileSnapshotProviderImpl : FileSnapshotProvider {
     override fun get(file: File): FileSnapshot {
         val length = file.length()
-        val hash = file.md5
-        return FileSnapshot(file, length, hash)
+        val lastModified = file.lastModified()
+        val hash = file.contentHash()
+        // Like the racy-clean check of git: a file modified within the timestamp resolution of the snapshot time
+        //   may be modified again without changing its timestamp, so its timestamp can't prove that it is unchanged
+        val snapshotTime = System.currentTimeMillis()
+        val isRacy = lastModified >= snapshotTime - MAX_TIMESTAMP_RESOLUTION_MS
+        return FileSnapshot(file, length, if (isRacy) FileSnapshot.RACY_TIMESTAMP else lastModified, hash)
+    }
+
+    companion object {
+        // FAT stores timestamps with 2 seconds resolution, ext3 and HFS+ with 1 second
+        private const val MAX_TIMESTAMP_RESOLUTION_MS = 2000L
     }
 }
\ No newline at end of file
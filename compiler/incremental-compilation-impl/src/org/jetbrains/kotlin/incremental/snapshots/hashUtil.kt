@@ -17,20 +17,128 @@
 package org.jetbrains.kotlin.incremental.snapshots
 
 import java.io.File
-import java.security.MessageDigest
-
-internal val File.md5: ByteArray
-    get() {
-        val messageDigest = MessageDigest.getInstance("MD5")
-        val buffer = ByteArray(4048)
-        inputStream().use { input ->
-            while (true) {
-                val len = input.read(buffer)
-                if (len < 0) {
-                    break
-                }
-                messageDigest.update(buffer, 0, len)
-            }
+import java.io.FileInputStream
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+private const val READ_BUFFER_SIZE = 64 * 1024
+
+// Snapshots are computed on several threads, each one reads files through its own buffer
+private val readBuffers = ThreadLocal.withInitial { ByteBuffer.allocateDirect(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN) }
+
+/**
+ * 64-bit xxHash of the file content. The file is read in chunks through a direct buffer reused by the current thread,
+ *   files are not memory-mapped because a mapped file stays locked on Windows until the mapping is garbage collected.
+ */
+internal fun File.contentHash(): Long =
+    FileInputStream(this).channel.use { channel ->
+        val buffer = readBuffers.get()
+        buffer.clear()
+        val state = XxHash64State()
+        while (channel.read(buffer) >= 0) {
+            buffer.flip()
+            state.update(buffer)
+            // less than a stripe is left, so the buffer is never full
+            buffer.compact()
+        }
+        buffer.flip()
+        state.digest(buffer)
+    }
+
+private const val PRIME64_1 = -0x61c8864e7a143579L
+private const val PRIME64_2 = -0x3d4d51c2d82b14b1L
+private const val PRIME64_3 = 0x165667b19e3779f9L
+private const val PRIME64_4 = -0x7a1435883d4d519dL
+private const val PRIME64_5 = 0x27d4eb2f165667c5L
+
+private const val STRIPE_SIZE = 32
+
+/**
+ * xxHash64 with seed 0 of the remaining bytes of a little-endian [buffer].
+ */
+internal fun xxHash64(buffer: ByteBuffer): Long {
+    val bytes = buffer.duplicate().order(buffer.order())
+    return XxHash64State().run {
+        update(bytes)
+        digest(bytes)
+    }
+}
+
+/**
+ * State of xxHash64 with seed 0 over a sequence of little-endian buffers.
+ */
+private class XxHash64State {
+    private var v1 = PRIME64_1 + PRIME64_2
+    private var v2 = PRIME64_2
+    private var v3 = 0L
+    private var v4 = -PRIME64_1
+    private var stripesLength = 0L
+
+    /**
+     * Consumes all whole stripes of the remaining bytes of [buffer], the rest is left in the buffer.
+     */
+    fun update(buffer: ByteBuffer) {
+        val start = buffer.position()
+        var position = start
+        val limit = buffer.limit() - STRIPE_SIZE
+        while (position <= limit) {
+            v1 = round(v1, buffer.getLong(position))
+            v2 = round(v2, buffer.getLong(position + 8))
+            v3 = round(v3, buffer.getLong(position + 16))
+            v4 = round(v4, buffer.getLong(position + 24))
+            position += STRIPE_SIZE
         }
-        return messageDigest.digest()
+        stripesLength += position - start
+        buffer.position(position)
     }
+
+    /**
+     * Hash of the consumed stripes followed by the remaining bytes of [tail], which must be shorter than a stripe.
+     */
+    fun digest(tail: ByteBuffer): Long {
+        var position = tail.position()
+        val end = tail.limit()
+        var hash: Long
+
+        if (stripesLength > 0) {
+            hash = java.lang.Long.rotateLeft(v1, 1) + java.lang.Long.rotateLeft(v2, 7) +
+                    java.lang.Long.rotateLeft(v3, 12) + java.lang.Long.rotateLeft(v4, 18)
+            hash = mergeRound(hash, v1)
+            hash = mergeRound(hash, v2)
+            hash = mergeRound(hash, v3)
+            hash = mergeRound(hash, v4)
+        } else {
+            hash = PRIME64_5
+        }
+
+        hash += stripesLength + (end - position)
+
+        while (position + 8 <= end) {
+            hash = hash xor round(0, tail.getLong(position))
+            hash = java.lang.Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4
+            position += 8
+        }
+        if (position + 4 <= end) {
+            hash = hash xor ((tail.getInt(position).toLong() and 0xFFFFFFFFL) * PRIME64_1)
+            hash = java.lang.Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3
+            position += 4
+        }
+        while (position < end) {
+            hash = hash xor ((tail.get(position).toLong() and 0xFFL) * PRIME64_5)
+            hash = java.lang.Long.rotateLeft(hash, 11) * PRIME64_1
+            position++
+        }
+
+        hash = hash xor (hash ushr 33)
+        hash *= PRIME64_2
+        hash = hash xor (hash ushr 29)
+        hash *= PRIME64_3
+        return hash xor (hash ushr 32)
+    }
+}
+
+private fun round(accumulator: Long, input: Long): Long =
+    java.lang.Long.rotateLeft(accumulator + input * PRIME64_2, 31) * PRIME64_1
+
+private fun mergeRound(accumulator: Long, value: Long): Long =
+    (accumulator xor round(0, value)) * PRIME64_1 + PRIME64_4
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental.snapshots
+
+import java.io.File
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
+
+/**
+ * Files with [extensions] (in lower case) under [sourceRoots]. Directories are listed in parallel;
+ *   the files of a directory precede the files of its subdirectories, in the order of [File.listFiles].
+ */
+fun findSourceFiles(sourceRoots: Iterable<File>, extensions: Collection<String>): List<File> {
+    val tasks = sourceRoots.map { ListSourceFilesTask(it, extensions) }
+    return ForkJoinPool.commonPool().invoke(object : RecursiveTask<List<File>>() {
+        override fun compute(): List<File> {
+            invokeAll(tasks)
+            return tasks.flatMap { it.join() }
+        }
+    })
+}
+
+private class ListSourceFilesTask(private val file: File, private val extensions: Collection<String>) : RecursiveTask<List<File>>() {
+    override fun compute(): List<File> {
+        val children = file.listFiles() ?: return if (file.isFile && file.extension.toLowerCase() in extensions) listOf(file) else emptyList()
+
+        val result = ArrayList<File>()
+        val subdirectories = ArrayList<ListSourceFilesTask>()
+        for (child in children) {
+            if (child.isDirectory) {
+                subdirectories.add(ListSourceFilesTask(child, extensions))
+            } else if (child.extension.toLowerCase() in extensions) {
+                result.add(child)
+            }
+        }
+
+        invokeAll(subdirectories)
+        subdirectories.flatMapTo(result) { it.join() }
+        return result
+    }
+}
@@ -22,6 +22,8 @@ import org.junit.Assert
 import org.junit.Before
 import org.junit.Test
 import java.io.File
+import java.io.ObjectOutputStream
+import java.io.RandomAccessFile
 import java.util.*
 
 class BuildDiffsStorageTest {
@@ -93,6 +95,80 @@ class BuildDiffsStorageTest {
         }
     }
 
+    @Test
+    fun appendMany() {
+        val generated = (1L..(BuildDiffsStorage.MAX_SEGMENTS + 5)).map { ts -> getDiff(ts, isIncremental = ts % 7 != 0L) }
+        for ((i, diff) in generated.withIndex()) {
+            BuildDiffsStorage.appendToFile(storageFile, diff, reporter = null)
+
+            val diffsDeserialized = BuildDiffsStorage.readFromFile(storageFile, reporter = null)!!.buildDiffs
+            // The file is compacted to the last MAX_DIFFS_ENTRIES builds when the build after MAX_SEGMENTS is appended
+            val expectedSize =
+                if (i < BuildDiffsStorage.MAX_SEGMENTS) i + 1
+                else i - BuildDiffsStorage.MAX_SEGMENTS + BuildDiffsStorage.MAX_DIFFS_ENTRIES
+            Assert.assertEquals(generated.subList(0, i + 1).takeLast(expectedSize), diffsDeserialized)
+        }
+    }
+
+    @Test
+    fun readDiffsAfter() {
+        val generated = (1L..5L).map { ts -> getDiff(ts, isIncremental = true) }
+        generated.forEach { BuildDiffsStorage.appendToFile(storageFile, it, reporter = null) }
+
+        val after3 = BuildDiffsStorage.readDiffsAfter(storageFile, 3, reporter = null)!!
+        Assert.assertTrue(after3.hasEarlierBuilds)
+        Assert.assertEquals(generated.drop(3), after3.buildDiffs)
+
+        val afterAll = BuildDiffsStorage.readDiffsAfter(storageFile, 5, reporter = null)!!
+        Assert.assertTrue(afterAll.hasEarlierBuilds)
+        Assert.assertEquals(emptyList<BuildDifference>(), afterAll.buildDiffs)
+
+        val beforeAll = BuildDiffsStorage.readDiffsAfter(storageFile, 0, reporter = null)!!
+        Assert.assertFalse(beforeAll.hasEarlierBuilds)
+        Assert.assertEquals(generated, beforeAll.buildDiffs)
+    }
+
+    @Test
+    fun incompleteSegmentIsOverwritten() {
+        BuildDiffsStorage.appendToFile(storageFile, getDiff(1, isIncremental = true), reporter = null)
+        val validLength = storageFile.length()
+        BuildDiffsStorage.appendToFile(storageFile, getDiff(2, isIncremental = true), reporter = null)
+        RandomAccessFile(storageFile, "rw").use { it.setLength(storageFile.length() - 3) }
+
+        Assert.assertEquals(
+            listOf(getDiff(1, isIncremental = true)),
+            BuildDiffsStorage.readFromFile(storageFile, reporter = null)!!.buildDiffs
+        )
+
+        BuildDiffsStorage.appendToFile(storageFile, getDiff(3, isIncremental = true), reporter = null)
+        Assert.assertTrue(storageFile.length() > validLength)
+        Assert.assertEquals(
+            listOf(getDiff(1, isIncremental = true), getDiff(3, isIncremental = true)),
+            BuildDiffsStorage.readFromFile(storageFile, reporter = null)!!.buildDiffs
+        )
+    }
+
+    @Test
+    fun previousFormat() {
+        ObjectOutputStream(storageFile.outputStream()).use { output ->
+            output.writeInt(BuildDiffsStorage.CURRENT_VERSION)
+            output.writeInt(0)
+        }
+        Assert.assertEquals(null, BuildDiffsStorage.readFromFile(storageFile, reporter = null))
+
+        val diff = getDiff(1, isIncremental = true)
+        BuildDiffsStorage.appendToFile(storageFile, diff, reporter = null)
+        Assert.assertEquals(listOf(diff), BuildDiffsStorage.readFromFile(storageFile, reporter = null)!!.buildDiffs)
+    }
+
+    private fun getDiff(ts: Long, isIncremental: Boolean): BuildDifference {
+        if (!isIncremental) return BuildDifference(ts, false, DirtyData())
+
+        val lookupSymbols = (0 until ts.toInt()).map { LookupSymbol("name$it", "foo.Bar${it % 3}") }
+        val fqNames = (0 until ts.toInt() % 3).map { FqName("foo.Bar$it") }
+        return BuildDifference(ts, true, DirtyData(lookupSymbols, fqNames))
+    }
+
     private fun getRandomDiff(): BuildDifference {
         val ts = random.nextLong()
         val lookupSymbols = listOf(LookupSymbol("foo", "bar"))
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import com.intellij.openapi.util.io.FileUtil
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.test.MockLibraryUtil
+import org.jetbrains.org.objectweb.asm.ClassWriter
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+
+class ClasspathSnapshotTest {
+    private lateinit var workingDir: File
+    private lateinit var classesDir: File
+
+    @Before
+    fun setUp() {
+        workingDir = FileUtil.createTempDirectory("ClasspathSnapshotTest", null)
+        classesDir = File(workingDir, "classes").apply { mkdirs() }
+    }
+
+    @After
+    fun tearDown() {
+        workingDir.deleteRecursively()
+    }
+
+    @Test
+    fun testMethodBodyChangeIsIgnored() {
+        writeJavaClass("foo/A", methods = listOf("bar" to "()V"), bodyConstant = 1)
+        val previous = ClasspathSnapshot.create(listOf(classesDir), null)
+
+        writeJavaClass("foo/A", methods = listOf("bar" to "()V"), bodyConstant = 2)
+        val current = ClasspathSnapshot.create(listOf(classesDir), previous)
+
+        Assert.assertNotEquals(previous.entries.single().contentHash, current.entries.single().contentHash)
+        Assert.assertEquals(emptyList<ChangeInfo>(), changes(previous, current))
+    }
+
+    @Test
+    fun testRecentlyModifiedEntryIsReadAgain() {
+        val classFile = writeJavaClass("foo/A", methods = listOf("bar" to "()V"))
+        val lastModified = classFile.lastModified()
+        val previous = ClasspathSnapshot.create(listOf(classesDir), null)
+        Assert.assertEquals(ClasspathEntrySnapshot.RACY_TIMESTAMP, previous.entries.single().lastModified)
+
+        // Same length and timestamp, as after a rewrite within the timestamp resolution
+        writeJavaClass("foo/A", methods = listOf("baz" to "()V"))
+        classFile.setLastModified(lastModified)
+        val current = ClasspathSnapshot.create(listOf(classesDir), previous)
+
+        val change = changes(previous, current).single() as ChangeInfo.MembersChanged
+        Assert.assertEquals(setOf("bar", "baz"), change.names.toSet())
+    }
+
+    @Test
+    fun testOldEntryIsNotReadAgain() {
+        val classFile = writeJavaClass("foo/A", methods = listOf("bar" to "()V"))
+        classFile.setLastModified(OLD_TIMESTAMP)
+        val previous = ClasspathSnapshot.create(listOf(classesDir), null)
+        Assert.assertEquals(OLD_TIMESTAMP, previous.entries.single().lastModified)
+
+        val current = ClasspathSnapshot.create(listOf(classesDir), previous)
+        Assert.assertSame(previous.entries.single(), current.entries.single())
+    }
+
+    @Test
+    fun testChangedMethod() {
+        writeJavaClass("foo/A", methods = listOf("bar" to "()V", "baz" to "()V"))
+        val previous = ClasspathSnapshot.create(listOf(classesDir), null)
+
+        writeJavaClass("foo/A", methods = listOf("bar" to "(I)V", "baz" to "()V"))
+        val current = ClasspathSnapshot.create(listOf(classesDir), previous)
+
+        val changes = changes(previous, current)
+        Assert.assertEquals(1, changes.size)
+        val change = changes.single() as ChangeInfo.MembersChanged
+        Assert.assertEquals(FqName("foo.A"), change.fqName)
+        Assert.assertEquals(setOf("bar"), change.names.toSet())
+    }
+
+    @Test
+    fun testAddedClass() {
+        writeJavaClass("foo/A")
+        val previous = ClasspathSnapshot.create(listOf(classesDir), null)
+
+        writeJavaClass("foo/B\$Inner")
+        val current = ClasspathSnapshot.create(listOf(classesDir), previous)
+
+        val change = changes(previous, current).single() as ChangeInfo.SignatureChanged
+        Assert.assertEquals(FqName("foo.B.Inner"), change.fqName)
+        Assert.assertTrue(change.areSubclassesAffected)
+    }
+
+    @Test
+    fun testKotlinMemberSignatureChange() {
+        compileKotlin("class A {\n    fun bar() {}\n    fun baz() {}\n}")
+        val previous = ClasspathSnapshot.create(listOf(classesDir), null)
+
+        compileKotlin("class A {\n    fun bar(x: Int) {}\n    fun baz() {}\n}")
+        val current = ClasspathSnapshot.create(listOf(classesDir), previous)
+
+        val change = changes(previous, current).filterIsInstance<ChangeInfo.MembersChanged>().single()
+        Assert.assertEquals(FqName("foo.A"), change.fqName)
+        Assert.assertEquals(setOf("bar"), change.names.toSet())
+    }
+
+    @Test
+    fun testKotlinPrivateMemberAndBodyChangesAreIgnored() {
+        compileKotlin("class A {\n    fun bar() = baz()\n    private fun baz() = 1\n}")
+        val previous = ClasspathSnapshot.create(listOf(classesDir), null)
+
+        compileKotlin("class A {\n    fun bar() = baz() + 1\n    private fun baz() = 2\n}")
+        val current = ClasspathSnapshot.create(listOf(classesDir), previous)
+
+        Assert.assertNotEquals(previous.entries.single().contentHash, current.entries.single().contentHash)
+        Assert.assertEquals(emptyList<ChangeInfo>(), changes(previous, current))
+    }
+
+    @Test
+    fun testKotlinInlineBodyChange() {
+        compileKotlin("class A {\n    inline fun bar() = 1\n    fun baz() = 1\n}")
+        val previous = ClasspathSnapshot.create(listOf(classesDir), null)
+
+        compileKotlin("class A {\n    inline fun bar() = 2\n    fun baz() = 2\n}")
+        val current = ClasspathSnapshot.create(listOf(classesDir), previous)
+
+        // The body of an inline function is copied to the call sites, unlike the body of baz
+        val change = changes(previous, current).filterIsInstance<ChangeInfo.MembersChanged>().single()
+        Assert.assertEquals(FqName("foo.A"), change.fqName)
+        Assert.assertEquals(setOf("bar"), change.names.toSet())
+    }
+
+    @Test
+    fun testWriteRead() {
+        writeJavaClass("foo/A", methods = listOf("bar" to "()V"))
+        val snapshot = ClasspathSnapshot.create(listOf(classesDir), null)
+
+        val snapshotDir = File(workingDir, "snapshot")
+        ClasspathSnapshot.writeToDirectory(snapshotDir, snapshot, reporter = null)
+        val deserialized = ClasspathSnapshot.readFromDirectory(snapshotDir, reporter = null)!!
+
+        Assert.assertEquals(snapshot.entries.map { it.path }, deserialized.entries.map { it.path })
+        Assert.assertEquals(snapshot.classes.keys, deserialized.classes.keys)
+        Assert.assertEquals(emptyList<ChangeInfo>(), changes(snapshot, deserialized))
+    }
+
+    @Test
+    fun testOnlyChangedEntriesAreWritten() {
+        val otherClassesDir = File(workingDir, "other").apply { mkdirs() }
+        writeJavaClass("foo/A", methods = listOf("bar" to "()V")).setLastModified(OLD_TIMESTAMP)
+        writeJavaClass("foo/B", methods = listOf("bar" to "()V"), dir = otherClassesDir).setLastModified(OLD_TIMESTAMP)
+        val classpath = listOf(classesDir, otherClassesDir)
+
+        val snapshotDir = File(workingDir, "snapshot")
+        ClasspathSnapshot.writeToDirectory(snapshotDir, ClasspathSnapshot.create(classpath, null), reporter = null)
+        val storedFiles = snapshotDir.listFiles()!!.onEach { it.setLastModified(OLD_TIMESTAMP) }.map { it.name }.toSet()
+        Assert.assertEquals(3, storedFiles.size)
+
+        val unchanged = ClasspathSnapshot.create(classpath, ClasspathSnapshot.readFromDirectory(snapshotDir, reporter = null))
+        ClasspathSnapshot.writeToDirectory(snapshotDir, unchanged, reporter = null)
+        Assert.assertTrue(snapshotDir.listFiles()!!.all { it.lastModified() == OLD_TIMESTAMP })
+
+        writeJavaClass("foo/A", methods = listOf("baz" to "()V")).setLastModified(OLD_TIMESTAMP + 2000)
+        val previous = ClasspathSnapshot.readFromDirectory(snapshotDir, reporter = null)!!
+        val changed = ClasspathSnapshot.create(classpath, previous)
+        val change = changes(previous, changed).single() as ChangeInfo.MembersChanged
+        Assert.assertEquals(FqName("foo.A"), change.fqName)
+        Assert.assertEquals(setOf("bar", "baz"), change.names.toSet())
+
+        // The index and the classes of the changed entry are written again, the classes of the other entry are kept
+        ClasspathSnapshot.writeToDirectory(snapshotDir, changed, reporter = null)
+        val files = snapshotDir.listFiles()!!
+        Assert.assertEquals(3, files.size)
+        Assert.assertEquals(1, files.count { it.name in storedFiles && it.lastModified() == OLD_TIMESTAMP })
+
+        val stored = ClasspathSnapshot.readFromDirectory(snapshotDir, reporter = null)!!
+        Assert.assertEquals(setOf("foo/A", "foo/B"), stored.classes.keys)
+        Assert.assertEquals(changed.classes.getValue("foo/A").memberHashes, stored.classes.getValue("foo/A").memberHashes)
+    }
+
+    private fun changes(previous: ClasspathSnapshot, current: ClasspathSnapshot): List<ChangeInfo> {
+        val changesCollector = ChangesCollector()
+        current.collectChangesSince(previous, changesCollector)
+        return changesCollector.changes()
+    }
+
+    private fun compileKotlin(classSource: String) {
+        val sourceFile = File(workingDir, "src/A.kt")
+        sourceFile.parentFile.mkdirs()
+        sourceFile.writeText("package foo\n\n$classSource\n")
+        MockLibraryUtil.compileKotlin(sourceFile.path, classesDir)
+    }
+
+    private fun writeJavaClass(
+        internalName: String, methods: List<Pair<String, String>> = emptyList(), bodyConstant: Int = 0, dir: File = classesDir
+    ): File {
+        val writer = ClassWriter(ClassWriter.COMPUTE_MAXS)
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC or Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null)
+        for ((name, desc) in methods) {
+            writer.visitMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, name, desc, null, null).apply {
+                visitCode()
+                visitLdcInsn(bodyConstant)
+                visitInsn(Opcodes.POP)
+                visitInsn(Opcodes.RETURN)
+                visitMaxs(0, 0)
+                visitEnd()
+            }
+        }
+        writer.visitEnd()
+
+        val classFile = File(dir, "$internalName.class")
+        classFile.parentFile.mkdirs()
+        classFile.writeBytes(writer.toByteArray())
+        return classFile
+    }
+
+    companion object {
+        private const val OLD_TIMESTAMP = 1_000_000_000_000L
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import org.junit.Assert
+import org.junit.Test
+
+class JavaSourceStructureReaderTest {
+    @Test
+    fun testClassMembers() {
+        val classes = read(
+            """
+            package foo.bar;
+
+            import java.util.*;
+
+            /** Doc with { unbalanced braces */
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public class A<T extends Comparable<T>> extends B implements C {
+                private static final int X = 1, Y = compute(new Object() { int z() { return 2; } });
+                Map<String, List<T>> map = new HashMap<>();
+                int[] array = { 1, 2 }, other[];
+                static { System.out.println("}"); }
+
+                public A() {}
+
+                @Deprecated(since = "1")
+                <R> R convert(Function<T, R> f) throws Exception { return f.apply(null); }
+
+                abstract void run();
+
+                enum E { ONE, TWO(2) { void m() {} }; int value; }
+
+                @interface Ann { String value() default "}"; int[] numbers() default { 1 }; }
+
+                interface I { void i(); }
+            }
+
+            class Other {}
+            """
+        )
+
+        Assert.assertEquals(
+            """
+            foo.bar.A methods=[A, convert, run] fields=[X, Y, map, array, other]
+              foo.bar.A.E methods=[] fields=[ONE, TWO, value]
+              foo.bar.A.Ann methods=[value, numbers] fields=[]
+              foo.bar.A.I methods=[i] fields=[]
+            foo.bar.Other methods=[] fields=[]
+            """.trimIndent(),
+            classes!!.joinToString("\n") { it.render("") }
+        )
+    }
+
+    @Test
+    fun testDefaultPackage() {
+        val classes = read("public interface I { int X = 0; }")
+        Assert.assertEquals("I methods=[] fields=[X]", classes!!.single().render(""))
+    }
+
+    @Test
+    fun testTypeArgumentsInFieldInitializers() {
+        val classes = read(
+            """
+            class A {
+                Map<A, B> m = new HashMap<A, B>(), n;
+                Map<A, Map<B, C>> o = Collections.<A, Map<B, C>>emptyMap(), p = null;
+                int shift = 1 >> 2, q;
+            }
+            """
+        )
+        Assert.assertEquals("A methods=[] fields=[m, n, o, p, shift, q]", classes!!.single().render(""))
+    }
+
+    @Test
+    fun testComparisonInFieldInitializer() {
+        // Ambiguous with type arguments for the lexer, so left to PSI
+        Assert.assertNull(read("class A { boolean x = a < b, y = c > d; }"))
+    }
+
+    @Test
+    fun testUnsupportedSources() {
+        Assert.assertNull(read("package foo; public record R(int x) {}"))
+        Assert.assertNull(read("module foo { requires bar; }"))
+        Assert.assertNull(read("package foo; class A { void f() { }"))
+    }
+
+    private fun read(text: String): List<JavaSourceClass>? = JavaSourceStructureReader(text).read()
+
+    private fun JavaSourceClass.render(indent: String): String =
+        (listOf("$indent${classId.asSingleFqName()} methods=$methodNames fields=$fieldNames") +
+                innerClasses.map { it.render("$indent  ") }).joinToString("\n")
+}
@@ -8,19 +8,24 @@ package org.jetbrains.kotlin.incremental.snapshots
 import org.jetbrains.kotlin.TestWithWorkingDir
 import org.junit.After
 import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
 import org.junit.Before
 import org.junit.Test
 import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
 import kotlin.properties.Delegates
+import kotlin.random.Random
 
 class FileSnapshotMapTest : TestWithWorkingDir() {
+    private var snapshotMapFile: File by Delegates.notNull()
     private var snapshotMap: FileSnapshotMap by Delegates.notNull()
 
     @Before
     override fun setUp() {
         super.setUp()
         val caches = File(workingDir, "caches").apply { mkdirs() }
-        val snapshotMapFile = File(caches, "snapshots.tab")
+        snapshotMapFile = File(caches, "snapshots.tab")
         snapshotMap = FileSnapshotMap(snapshotMapFile)
     }
 
@@ -71,6 +76,86 @@ class FileSnapshotMapTest : TestWithWorkingDir() {
         )
     }
 
+    @Test
+    fun testTouchedFile() {
+        val src = File(workingDir, "src").apply { mkdirs() }
+        val touchedTxt = File(src, "touched.txt").apply { writeText("touched") }
+        snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+
+        touchedTxt.setLastModified(touchedTxt.lastModified() - 10_000)
+        val diff = snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+        assertArrayEquals("diff.newOrModified", diff.modified.toSortedPaths(), emptyArray<String>())
+    }
+
+    @Test
+    fun testOldFileIsNotHashedAgain() {
+        val src = File(workingDir, "src").apply { mkdirs() }
+        val oldTxt = File(src, "old.txt").apply { writeText("old") }
+        val lastModified = oldTxt.lastModified() - 10_000
+        oldTxt.setLastModified(lastModified)
+        snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+
+        // The timestamp and the length are the same, so the snapshot is reused without reading the file
+        oldTxt.writeText("new")
+        oldTxt.setLastModified(lastModified)
+        val diff = snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+        assertArrayEquals("diff.newOrModified", diff.modified.toSortedPaths(), emptyArray<String>())
+    }
+
+    @Test
+    fun testManyFiles() {
+        val src = File(workingDir, "src").apply { mkdirs() }
+        val files = (0 until 1000).map { File(src, "file$it.txt").apply { writeText("file$it") } }
+        snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+
+        val changed = files.filterIndexed { i, _ -> i % 100 == 0 }
+        changed.forEach { it.writeText(it.readText() + "!") }
+        val diff = snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+        assertArrayEquals("diff.newOrModified", diff.modified.toSortedPaths(), changed.toSortedPaths())
+    }
+
+    @Test
+    fun testSnapshotsInOtherFormatAreDropped() {
+        val src = File(workingDir, "src").apply { mkdirs() }
+        val files = listOf("a", "b").map { File(src, "$it.txt").apply { writeText(it) } }
+        snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+        snapshotMap.flush(false)
+        snapshotMap.close()
+
+        snapshotMap = FileSnapshotMap(snapshotMapFile)
+        val unchangedDiff = snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+        assertArrayEquals("unchangedDiff.newOrModified", unchangedDiff.modified.toSortedPaths(), emptyArray<String>())
+        snapshotMap.flush(false)
+        snapshotMap.close()
+
+        File(snapshotMapFile.parentFile, snapshotMapFile.name + ".format-version").writeText("1")
+        snapshotMap = FileSnapshotMap(snapshotMapFile)
+        val diff = snapshotMap.compareAndUpdate(src.filesWithExt("txt"))
+        assertArrayEquals("diff.newOrModified", diff.modified.toSortedPaths(), files.toSortedPaths())
+    }
+
+    @Test
+    fun testContentHashOfLargeFile() {
+        // Larger than the read buffer and not a multiple of the stripe size
+        val bytes = Random(42).let { random -> ByteArray(200_001) { random.nextInt().toByte() } }
+        val file = File(workingDir, "large.bin").apply { writeBytes(bytes) }
+
+        assertEquals(xxHash64(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)), file.contentHash())
+
+        val small = bytes.copyOf(100)
+        file.writeBytes(small)
+        assertEquals(xxHash64(ByteBuffer.wrap(small).order(ByteOrder.LITTLE_ENDIAN)), file.contentHash())
+    }
+
+    @Test
+    fun testXxHash64() {
+        fun hash(text: String) = xxHash64(ByteBuffer.wrap(text.toByteArray()).order(ByteOrder.LITTLE_ENDIAN))
+
+        assertEquals(-0x10b924c8ae271667L, hash(""))
+        assertEquals(0x44bc2cf5ad770999L, hash("abc"))
+        assertEquals(-0x6d0f21a5775c3f6cL, hash("x".repeat(100)))
+    }
+
     private fun Iterable<File>.toSortedPaths(): Array<String> =
         map { it.canonicalPath }.sorted().toTypedArray()
 
@@ -6,6 +6,8 @@
 package org.jetbrains.kotlin.backend.common.phaser
 
 import org.jetbrains.kotlin.backend.common.CommonBackendContext
+import org.jetbrains.kotlin.utils.CompilerTracer
+import java.lang.management.ManagementFactory
 import kotlin.system.measureTimeMillis
 
 class PhaserState<Data>(
@@ -102,7 +104,7 @@ abstract class AbstractNamedPhaseWrapper<in Context : CommonBackendContext, Inpu
         context.inVerbosePhase = this in phaseConfig.verbose
 
         runBefore(phaseConfig, phaserState, context, input)
-        val output = runBody(phaseConfig, phaserState, context, input)
+        val output = CompilerTracer.span(name) { runBody(phaseConfig, phaserState, context, input) }
         runAfter(phaseConfig, phaserState, context, output)
 
         phaserState.alreadyDone.add(this)
@@ -146,13 +148,16 @@ abstract class AbstractNamedPhaseWrapper<in Context : CommonBackendContext, Inpu
 
     private fun runAndProfile(phaseConfig: PhaseConfig, phaserState: PhaserState<Input>, context: Context, source: Input): Output {
         var result: Output? = null
+        val allocatedBefore = currentThreadAllocatedBytes()
         val msec = measureTimeMillis {
             result = phaserState.downlevel(nlevels) {
                 lower.invoke(phaseConfig, phaserState, context, source)
             }
         }
+        // Phases run concurrently are profiled on their own threads, so only the allocations of the current thread are counted
+        val allocated = if (allocatedBefore >= 0) ", ${(currentThreadAllocatedBytes() - allocatedBefore) / 1024} KB allocated" else ""
         // TODO: use a proper logger
-        println("${"\t".repeat(phaserState.depth)}$description: $msec msec")
+        println("${"\t".repeat(phaserState.depth)}$description: $msec msec$allocated")
         return result!!
     }
 
@@ -179,3 +184,12 @@ class SameTypeNamedPhaseWrapper<in Context : CommonBackendContext, Data>(
 ) : AbstractNamedPhaseWrapper<Context, Data, Data>(
     name, description, prerequisite, lower, preconditions, postconditions, stickyPostconditions, actions, actions, nlevels
 ), SameTypeCompilerPhase<Context, Data>
+
+private val threadMXBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+
+// Returns -1 if the JVM doesn't measure allocations of threads
+private fun currentThreadAllocatedBytes(): Long {
+    val bean = threadMXBean ?: return -1
+    if (!bean.isThreadAllocatedMemorySupported || !bean.isThreadAllocatedMemoryEnabled) return -1
+    return bean.getThreadAllocatedBytes(Thread.currentThread().id)
+}
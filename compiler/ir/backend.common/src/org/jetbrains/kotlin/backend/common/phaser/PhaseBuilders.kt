@@ -9,9 +9,14 @@ import org.jetbrains.kotlin.backend.common.CodegenUtil
 import org.jetbrains.kotlin.backend.common.CommonBackendContext
 import org.jetbrains.kotlin.backend.common.FileLoweringPass
 import org.jetbrains.kotlin.backend.common.lower
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
 import org.jetbrains.kotlin.ir.IrElement
 import org.jetbrains.kotlin.ir.declarations.IrFile
 import org.jetbrains.kotlin.ir.declarations.IrModuleFragment
+import org.jetbrains.kotlin.utils.CompilerTracer
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
 
 // Phase composition.
 private class CompositePhase<Context : CommonBackendContext, Input, Output>(
@@ -151,6 +156,14 @@ fun <Context : CommonBackendContext> namedOpUnitPhase(
     }
 )
 
+/**
+ * Runs [lower] for every file of the module.
+ *
+ * If [concurrent] is true, the files are lowered on [CommonConfigurationKeys.LOWERING_THREADS] threads. This is only allowed when
+ *   every phase of [lower] changes nothing but its own file and reads only immutable state of the context.
+ *
+ * Phases of every file are counted from the same [PhaserState.phaseCount], the following module phases continue after them.
+ */
 fun <Context : CommonBackendContext> performByIrFile(
     name: String = "PerformByIrFile",
     description: String = "Perform phases by IrFile",
@@ -159,6 +172,7 @@ fun <Context : CommonBackendContext> performByIrFile(
     postconditions: Set<Checker<IrModuleFragment>> = emptySet(),
     stickyPostconditions: Set<Checker<IrModuleFragment>> = emptySet(),
     actions: Set<Action<IrModuleFragment, Context>> = setOf(defaultDumper),
+    concurrent: Boolean = false,
     lower: CompilerPhase<Context, IrFile, IrFile>
 ) = namedIrModulePhase(
     name, description, prerequisite,
@@ -174,13 +188,25 @@ fun <Context : CommonBackendContext> performByIrFile(
             context: Context,
             input: IrModuleFragment
         ): IrModuleFragment {
+            val threads = if (concurrent) context.configuration.get(CommonConfigurationKeys.LOWERING_THREADS, 1) else 1
+            if (threads > 1 && input.files.size > 1) {
+                lowerFilesConcurrently(threads, lower, phaseConfig, phaserState, context, input.files)
+                return input
+            }
+
+            var phaseCount = phaserState.phaseCount
             for (irFile in input.files) {
+                val fileState = phaserState.changeType<IrModuleFragment, IrFile>()
                 try {
-                    lower.invoke(phaseConfig, phaserState.changeType(), context, irFile)
+                    CompilerTracer.span("IrFile", irFile.fileEntry.name) {
+                        lower.invoke(phaseConfig, fileState, context, irFile)
+                    }
                 } catch (e: Throwable) {
                     CodegenUtil.reportBackendException(e, "IR lowering", irFile.fileEntry.name)
                 }
+                phaseCount = maxOf(phaseCount, fileState.phaseCount)
             }
+            phaserState.phaseCount = phaseCount
 
             // TODO: no guarantee that module identity is preserved by `lower`
             return input
@@ -190,6 +216,48 @@ fun <Context : CommonBackendContext> performByIrFile(
     }
 )
 
+private fun <Context : CommonBackendContext> lowerFilesConcurrently(
+    threads: Int,
+    lower: CompilerPhase<Context, IrFile, IrFile>,
+    phaseConfig: PhaseConfig,
+    phaserState: PhaserState<IrModuleFragment>,
+    context: Context,
+    files: List<IrFile>
+) {
+    val executor = Executors.newFixedThreadPool(minOf(threads, files.size))
+    try {
+        val tasks = files.map { irFile ->
+            // Every file gets its own copy of the phaser state, the phases done are merged back below
+            val fileState = PhaserState<IrFile>(phaserState.alreadyDone.toMutableSet(), phaserState.depth, phaserState.phaseCount)
+            executor.submit(Callable {
+                try {
+                    CompilerTracer.span("IrFile", irFile.fileEntry.name) {
+                        lower.invoke(phaseConfig, fileState, context, irFile)
+                    }
+                } catch (e: Throwable) {
+                    CodegenUtil.reportBackendException(e, "IR lowering", irFile.fileEntry.name)
+                }
+                fileState
+            })
+        }
+
+        // Failures are reported in the file order, as if the files were lowered one by one
+        var phaseCount = phaserState.phaseCount
+        for (task in tasks) {
+            val fileState = try {
+                task.get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+            phaserState.alreadyDone.addAll(fileState.alreadyDone)
+            phaseCount = maxOf(phaseCount, fileState.phaseCount)
+        }
+        phaserState.phaseCount = phaseCount
+    } finally {
+        executor.shutdownNow()
+    }
+}
+
 fun <Context : CommonBackendContext> makeIrFilePhase(
     lowering: (Context) -> FileLoweringPass,
     name: String,
@@ -15,14 +15,15 @@ import org.jetbrains.kotlin.ir.backend.js.export.ExportedModule
 import org.jetbrains.kotlin.ir.backend.js.export.toTypeScript
 import org.jetbrains.kotlin.ir.backend.js.lower.StaticMembersLowering
 import org.jetbrains.kotlin.ir.backend.js.utils.*
-import org.jetbrains.kotlin.ir.declarations.IrDeclarationWithName
-import org.jetbrains.kotlin.ir.declarations.IrModuleFragment
-import org.jetbrains.kotlin.ir.declarations.IrSimpleFunction
-import org.jetbrains.kotlin.ir.declarations.path
+import org.jetbrains.kotlin.ir.declarations.*
 import org.jetbrains.kotlin.ir.symbols.IrClassSymbol
+import org.jetbrains.kotlin.ir.util.constructedClass
 import org.jetbrains.kotlin.js.backend.ast.*
 import org.jetbrains.kotlin.js.config.JSConfigurationKeys
 import org.jetbrains.kotlin.utils.DFS
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
 
 class IrModuleToJsTransformer(
     private val backendContext: JsIrBackendContext,
@@ -34,6 +35,7 @@ class IrModuleToJsTransformer(
     val moduleName = backendContext.configuration[CommonConfigurationKeys.MODULE_NAME]!!
     private val moduleKind = backendContext.configuration[JSConfigurationKeys.MODULE_KIND]!!
     private val generateRegionComments = backendContext.configuration.getBoolean(JSConfigurationKeys.GENERATE_REGION_COMMENTS)
+    private val codegenThreads = backendContext.configuration.get(JSConfigurationKeys.IR_CODEGEN_THREADS, 1)
 
     fun generateModule(module: IrModuleFragment, fullJs: Boolean = true, dceJs: Boolean = false): CompilerResult {
         val additionalPackages = with(backendContext) {
@@ -136,8 +138,10 @@ class IrModuleToJsTransformer(
         val generateFilePaths = backendContext.configuration.getBoolean(JSConfigurationKeys.GENERATE_COMMENTS_WITH_FILE_PATH)
         val pathPrefixMap = backendContext.configuration.getMap(JSConfigurationKeys.FILE_PATHS_PREFIX_MAP)
 
-        module.files.forEach {
-            val fileStatements = it.accept(IrFileToJsTransformer(), context).statements
+        val fileBlocks = generateFileBlocks(module.files, context)
+
+        module.files.forEachIndexed { index, it ->
+            val fileStatements = fileBlocks[index].statements
             if (fileStatements.isNotEmpty()) {
                 var startComment = ""
 
@@ -179,6 +183,51 @@ class IrModuleToJsTransformer(
         return statements
     }
 
+    private fun generateFileBlocks(files: List<IrFile>, context: JsGenerationContext): List<JsBlock> {
+        if (codegenThreads <= 1 || files.size <= 1) {
+            return files.map { it.accept(IrFileToJsTransformer(), context) }
+        }
+
+        // Names are fixed by NameTables before this point, only associated object keys are assigned on demand.
+        // Reserve them up front in the same order as the sequential generation does, so the output doesn't depend on scheduling.
+        files.forEach { reserveAssociatedObjectKeys(it.declarations, context) }
+
+        val executor = Executors.newFixedThreadPool(minOf(codegenThreads, files.size))
+        try {
+            val tasks = files.map { file ->
+                val fileContext = JsGenerationContext(currentFunction = null, staticContext = context.staticContext.fork())
+                executor.submit(Callable { file.accept(IrFileToJsTransformer(), fileContext) to fileContext.staticContext })
+            }
+
+            // Class models and initializers are merged in the file order, exactly as if the files were translated one by one
+            return tasks.map { task ->
+                val (block, fileStaticContext) = try {
+                    task.get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+                context.staticContext.mergeFrom(fileStaticContext)
+                block
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private fun reserveAssociatedObjectKeys(declarations: List<IrDeclaration>, namer: IrNamer) {
+        for (declaration in declarations) {
+            when (declaration) {
+                is IrScript -> reserveAssociatedObjectKeys(declaration.declarations, namer)
+                is IrClass -> {
+                    // Nested classes are generated before the metadata of the outer class, see JsClassGenerator
+                    reserveAssociatedObjectKeys(declaration.declarations, namer)
+                    namer.getAssociatedObjectKey(declaration)
+                    declaration.annotations.forEach { namer.getAssociatedObjectKey(it.symbol.owner.constructedClass) }
+                }
+            }
+        }
+    }
+
     private fun generateMainArguments(mainFunction: IrSimpleFunction, rootContext: JsGenerationContext): List<JsExpression> {
         val mainArguments = this.mainArguments!!
         val mainArgumentsArray =
@@ -79,7 +79,9 @@ class IrNamerImpl(private val newNameTables: NameTables) : IrNamer {
     override fun getAssociatedObjectKey(irClass: IrClass): Int? {
         if (irClass.isAssociatedObjectAnnotatedAnnotation) {
 
-            return associatedObjectKeyMap.getOrPut(irClass) { associatedObjectKeyMap.size }
+            return synchronized(associatedObjectKeyMap) {
+                associatedObjectKeyMap.getOrPut(irClass) { associatedObjectKeyMap.size }
+            }
         }
         return null
     }
@@ -13,16 +13,28 @@ import org.jetbrains.kotlin.ir.symbols.IrClassSymbol
 import org.jetbrains.kotlin.js.backend.ast.JsGlobalBlock
 
 
-class JsStaticContext(
+class JsStaticContext private constructor(
     val backendContext: JsIrBackendContext,
-    private val irNamer: IrNamer
+    private val irNamer: IrNamer,
+    val intrinsics: JsIntrinsicTransformers
 ) : IrNamer by irNamer {
 
-    val intrinsics = JsIntrinsicTransformers(backendContext)
+    constructor(backendContext: JsIrBackendContext, irNamer: IrNamer) :
+            this(backendContext, irNamer, JsIntrinsicTransformers(backendContext))
+
     val classModels = mutableMapOf<IrClassSymbol, JsIrClassModel>()
     val coroutineImplDeclaration = backendContext.ir.symbols.coroutineImpl.owner
     val doResumeFunctionSymbol = coroutineImplDeclaration.declarations
         .filterIsInstance<IrSimpleFunction>().single { it.name.asString() == "doResume" }.symbol
 
     val initializerBlock = JsGlobalBlock()
-}
\ No newline at end of file
+
+    // Shares the namer and intrinsics, but collects class models and initializers separately,
+    // so that a file can be translated on its own thread and merged back in a deterministic order
+    fun fork(): JsStaticContext = JsStaticContext(backendContext, irNamer, intrinsics)
+
+    fun mergeFrom(other: JsStaticContext) {
+        classModels += other.classModels
+        initializerBlock.statements += other.initializerBlock.statements
+    }
+}
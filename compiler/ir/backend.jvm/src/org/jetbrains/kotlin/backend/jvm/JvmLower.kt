@@ -270,13 +270,18 @@ private val kotlinNothingValueExceptionPhase = makeIrFilePhase<CommonBackendCont
     description = "Throw proper exception for calls returning value of type 'kotlin.Nothing'"
 )
 
+// Phases which only change their own file and don't use the shared mutable state of JvmBackendContext (including the symbol table),
+// so they can be run for several files concurrently.
 @Suppress("Reformat")
-private val jvmFilePhases =
+private val jvmFileLocalPhases =
         typeAliasAnnotationMethodsPhase then
         stripTypeAliasDeclarationsPhase then
         provisionalFunctionExpressionPhase then
 
-        jvmOverloadsAnnotationPhase then
+        jvmOverloadsAnnotationPhase
+
+@Suppress("Reformat")
+private val jvmFilePhases =
         mainMethodGenerationPhase then
 
         inventNamesForLocalClassesPhase then
@@ -379,6 +384,7 @@ val jvmPhases = namedIrModulePhase(
             processOptionalAnnotationsPhase then
             expectDeclarationsRemovingPhase then
             fileClassPhase then
+            performByIrFile(name = "PerformByIrFileConcurrently", lower = jvmFileLocalPhases, concurrent = true) then
             performByIrFile(lower = jvmFilePhases) then
             generateMultifileFacadesPhase then
             resolveInlineCallsPhase then
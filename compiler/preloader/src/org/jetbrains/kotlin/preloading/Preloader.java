@@ -59,7 +59,9 @@ public class Preloader {
         ClassLoader classLoader = createClassLoader(options);
 
         final Handler handler = getHandler(options, classLoader);
-        ClassLoader preloaded = ClassPreloadingUtils.preloadClasses(options.classpath, options.estimate, classLoader, null, handler);
+        ClassLoader preloaded = canLoadDirectly(options, classLoader)
+                                ? classLoader
+                                : ClassPreloadingUtils.preloadClasses(options.classpath, options.estimate, classLoader, null, handler);
 
         Class<?> mainClass = preloaded.loadClass(options.mainClass);
         Method mainMethod = mainClass.getMethod("main", String[].class);
@@ -113,6 +115,34 @@ public class Preloader {
         return new URLClassLoader(classpath, parent);
     }
 
+    /**
+     * Classes defined from memory by the preloader can't be stored in a class data sharing archive of the JVM (AppCDS).
+     * In the direct mode, if the classpath is already on the JVM class path, the classes are loaded by the application class loader,
+     * so that the startup of the compiler is shortened by an archive created with -XX:ArchiveClassesAtExit (JDK 13+)
+     * and used with -XX:SharedArchiveFile.
+     */
+    private static boolean canLoadDirectly(Options options, ClassLoader classLoader) {
+        if (!options.direct) return false;
+
+        if (classLoader != Preloader.class.getClassLoader()) {
+            // Instrumenters, and tools.jar added for -Xuse-javac, are loaded by a class loader of the preloader
+            System.err.println("warning: " + options.instrumenters + " are not on the JVM class path, classes are preloaded");
+            return false;
+        }
+
+        Set<File> jvmClasspath = new HashSet<File>();
+        for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            jvmClasspath.add(new File(path).getAbsoluteFile());
+        }
+        for (File file : options.classpath) {
+            if (!jvmClasspath.contains(file.getAbsoluteFile())) {
+                System.err.println("warning: " + file + " is not on the JVM class path, classes are preloaded");
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static File getJdkToolsJar() {
         try {
             String javaHomePath = System.getProperty("java.home");
@@ -141,6 +171,7 @@ public class Preloader {
     private static Options parseOptions(String[] args) throws Exception {
         List<File> classpath = Collections.emptyList();
         boolean measure = false;
+        boolean direct = false;
         List<File> instrumenters = new ArrayList<File>();
         int estimate = DEFAULT_CLASS_NUMBER_ESTIMATE;
         String mainClass = null;
@@ -169,6 +200,9 @@ public class Preloader {
             else if ("-measure".equals(arg)) {
                 measure = true;
             }
+            else if ("-direct".equals(arg)) {
+                direct = true;
+            }
             else {
                 mainClass = arg;
                 arguments.addAll(Arrays.asList(args).subList(i + 1, args.length));
@@ -178,7 +212,7 @@ public class Preloader {
 
         if (mainClass == null) throw new PreloaderException("no main class name provided");
 
-        return new Options(classpath, measure, instrumenters, estimate, mainClass, arguments);
+        return new Options(classpath, measure, direct, instrumenters, estimate, mainClass, arguments);
     }
 
     private static List<File> parseClassPath(String classpath) {
@@ -246,6 +280,8 @@ public class Preloader {
         out.println("where possible options include:");
         out.println("  -classpath (-cp) <paths>    Paths where to find class files");
         out.println("  -measure                    Record and output the total time taken by the program and number of loaded classes");
+        out.println("  -direct                     Load classes with the JVM class loader if the classpath is on the JVM class path,");
+        out.println("                              so that they can be stored in a class data sharing archive");
         out.println("  -instrument <paths>         Paths where the instrumenter will be looked up by java.util.ServiceLoader");
         out.println("                              (the class must implement " + Instrumenter.class.getCanonicalName() + " interface)");
         out.println("  -estimate <number>          Class number estimate (" + DEFAULT_CLASS_NUMBER_ESTIMATE + " by default)");
@@ -255,6 +291,7 @@ public class Preloader {
     private static class Options {
         public final List<File> classpath;
         public final boolean measure;
+        public final boolean direct;
         public final List<File> instrumenters;
         public final int estimate;
         public final String mainClass;
@@ -263,6 +300,7 @@ public class Preloader {
         private Options(
                 List<File> classpath,
                 boolean measure,
+                boolean direct,
                 List<File> instrumenters,
                 int estimate,
                 String mainClass,
@@ -270,6 +308,7 @@ public class Preloader {
         ) {
             this.classpath = classpath;
             this.measure = measure;
+            this.direct = direct;
             this.instrumenters = instrumenters;
             this.estimate = estimate;
             this.mainClass = mainClass;
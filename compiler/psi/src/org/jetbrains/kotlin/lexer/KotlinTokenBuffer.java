@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.lexer;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer of tokens produced by {@link KotlinTokenizer}.
+ *
+ * Every token takes three consecutive ints: the index of its {@link IElementType}, its start offset and its end offset.
+ * The buffer keeps its capacity when cleared, so it can be reused for many files without allocations.
+ */
+public final class KotlinTokenBuffer {
+    private static final int INTS_PER_TOKEN = 3;
+
+    private int[] data;
+    private int size;
+
+    public KotlinTokenBuffer() {
+        this(1024);
+    }
+
+    public KotlinTokenBuffer(int initialTokenCapacity) {
+        data = new int[Math.max(initialTokenCapacity, 1) * INTS_PER_TOKEN];
+    }
+
+    public int getTokenCount() {
+        return size / INTS_PER_TOKEN;
+    }
+
+    /**
+     * Returns the index of the token type, see {@link IElementType#getIndex()}
+     */
+    public int getTokenType(int tokenIndex) {
+        return data[tokenIndex * INTS_PER_TOKEN];
+    }
+
+    public int getTokenStart(int tokenIndex) {
+        return data[tokenIndex * INTS_PER_TOKEN + 1];
+    }
+
+    public int getTokenEnd(int tokenIndex) {
+        return data[tokenIndex * INTS_PER_TOKEN + 2];
+    }
+
+    @NotNull
+    public IElementType getElementType(int tokenIndex) {
+        return IElementType.find((short) getTokenType(tokenIndex));
+    }
+
+    /**
+     * Returns the underlying array, which holds {@link #getTokenCount()} tokens as (type, start, end) triples.
+     * The array is only valid until the next modification of the buffer.
+     */
+    @NotNull
+    public int[] getRawData() {
+        return data;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    void add(int type, int start, int end) {
+        if (size + INTS_PER_TOKEN > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size] = type;
+        data[size + 1] = start;
+        data[size + 2] = end;
+        size += INTS_PER_TOKEN;
+    }
+}
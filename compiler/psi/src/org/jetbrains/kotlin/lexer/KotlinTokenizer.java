@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.lexer;
+
+import com.intellij.psi.tree.IElementType;
+import com.intellij.util.text.CharArrayCharSequence;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits Kotlin source text into the same tokens as {@link KotlinLexer}, but without the {@link com.intellij.lexer.Lexer}
+ * machinery: tokens are written into a {@link KotlinTokenBuffer} and no objects are created per token.
+ *
+ * A tokenizer keeps the lexer state between calls and must not be shared between threads.
+ * To tokenize files in parallel, use one tokenizer and one buffer per thread: the lexer tables are immutable and shared.
+ */
+public final class KotlinTokenizer {
+    private _JetLexer lexer = new _JetLexer((Reader) null);
+
+    public void tokenize(@NotNull char[] text, int start, int end, @NotNull KotlinTokenBuffer buffer) {
+        tokenize(new CharArrayCharSequence(text), start, end, buffer);
+    }
+
+    public void tokenize(@NotNull CharSequence text, @NotNull KotlinTokenBuffer buffer) {
+        tokenize(text, 0, text.length(), buffer);
+    }
+
+    /**
+     * Replaces the content of {@code buffer} with the tokens of {@code text} between {@code start} and {@code end}.
+     * Offsets of the tokens are relative to the beginning of {@code text}.
+     */
+    public void tokenize(@NotNull CharSequence text, int start, int end, @NotNull KotlinTokenBuffer buffer) {
+        buffer.clear();
+        // Unterminated string templates leave states on the lexer stack, which is not cleared by reset
+        if (lexer.yystate() != _JetLexer.YYINITIAL) {
+            lexer = new _JetLexer((Reader) null);
+        }
+        lexer.reset(text, start, end, _JetLexer.YYINITIAL);
+        try {
+            IElementType type;
+            while ((type = lexer.advance()) != null) {
+                buffer.add(type.getIndex(), lexer.getTokenStart(), lexer.getTokenEnd());
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
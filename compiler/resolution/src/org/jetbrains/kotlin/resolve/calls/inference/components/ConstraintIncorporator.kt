@@ -28,6 +28,9 @@ class ConstraintIncorporator(
 
         fun getConstraintsForVariable(typeVariable: TypeVariableMarker): Collection<Constraint>
 
+        // constraints of the variable without those of [kind], in the same order as in [getConstraintsForVariable]
+        fun getConstraintsForVariableExcept(typeVariable: TypeVariableMarker, kind: ConstraintKind): Collection<Constraint>
+
         fun addNewIncorporatedConstraint(
             lowerType: KotlinTypeMarker,
             upperType: KotlinTypeMarker,
@@ -42,8 +45,7 @@ class ConstraintIncorporator(
     fun incorporate(c: Context, typeVariable: TypeVariableMarker, constraint: Constraint) {
         // we shouldn't incorporate recursive constraint -- It is too dangerous
         with(c) {
-            val freshTypeConstructor = typeVariable.freshTypeConstructor()
-            if (constraint.type.contains { it.typeConstructor() == freshTypeConstructor }) return
+            if (typeVariable.freshTypeConstructor() in nestedTypeConstructors(constraint)) return
         }
 
         c.directWithVariable(typeVariable, constraint)
@@ -61,19 +63,15 @@ class ConstraintIncorporator(
 
         // \alpha <: constraint.type
         if (constraint.kind != ConstraintKind.LOWER) {
-            getConstraintsForVariable(typeVariable).forEach {
-                if (it.kind != ConstraintKind.UPPER) {
-                    addNewIncorporatedConstraint(it.type, constraint.type, shouldBeTypeVariableFlexible, it.isNullabilityConstraint)
-                }
+            getConstraintsForVariableExcept(typeVariable, ConstraintKind.UPPER).forEach {
+                addNewIncorporatedConstraint(it.type, constraint.type, shouldBeTypeVariableFlexible, it.isNullabilityConstraint)
             }
         }
 
         // constraint.type <: \alpha
         if (constraint.kind != ConstraintKind.UPPER) {
-            getConstraintsForVariable(typeVariable).forEach {
-                if (it.kind != ConstraintKind.LOWER) {
-                    addNewIncorporatedConstraint(constraint.type, it.type, shouldBeTypeVariableFlexible)
-                }
+            getConstraintsForVariableExcept(typeVariable, ConstraintKind.LOWER).forEach {
+                addNewIncorporatedConstraint(constraint.type, it.type, shouldBeTypeVariableFlexible)
             }
         }
     }
@@ -84,9 +82,8 @@ class ConstraintIncorporator(
         constraint: Constraint
     ) {
         val otherInMyConstraint = SmartSet.create<TypeVariableMarker>()
-        constraint.type.contains {
-            otherInMyConstraint.addIfNotNull(this.getTypeVariable(it.typeConstructor()))
-            false
+        for (typeConstructor in nestedTypeConstructors(constraint)) {
+            otherInMyConstraint.addIfNotNull(this.getTypeVariable(typeConstructor))
         }
 
         for (otherTypeVariable in otherInMyConstraint) {
@@ -106,7 +103,7 @@ class ConstraintIncorporator(
         val freshTypeConstructor = typeVariable.freshTypeConstructor()
         for (typeVariableWithConstraint in this@insideOtherConstraint.allTypeVariablesWithConstraints) {
             val constraintsWhichConstraintMyVariable = typeVariableWithConstraint.constraints.filter {
-                it.type.contains { it.typeConstructor() == freshTypeConstructor }
+                freshTypeConstructor in nestedTypeConstructors(it)
             }
             constraintsWhichConstraintMyVariable.forEach {
                 generateNewConstraint(typeVariableWithConstraint.typeVariable, it, typeVariable, constraint)
@@ -114,6 +111,22 @@ class ConstraintIncorporator(
         }
     }
 
+    /*
+     * Every new constraint is checked against all constraints of the related type variables, so instead of traversing
+     *   the same constraint types again and again, their type constructors are collected once and kept in the constraint
+     */
+    private fun Context.nestedTypeConstructors(constraint: Constraint): Set<TypeConstructorMarker> {
+        constraint.nestedTypeConstructors?.let { return it }
+
+        val result = SmartSet.create<TypeConstructorMarker>()
+        constraint.type.contains {
+            result.add(it.typeConstructor())
+            false
+        }
+        constraint.nestedTypeConstructors = result
+        return result
+    }
+
     private fun Context.approximateIfNeededAndAddNewConstraint(
         baseConstraint: Constraint,
         type: KotlinTypeMarker,
@@ -40,6 +40,7 @@ class ConstraintInjector(
         val allTypeVariables: Map<TypeConstructorMarker, TypeVariableMarker>
 
         var maxTypeDepthFromInitialConstraints: Int
+        var incorporationCount: Int
         val notFixedTypeVariables: MutableMap<TypeConstructorMarker, MutableVariableWithConstraints>
         val fixedTypeVariables: MutableMap<TypeConstructorMarker, KotlinTypeMarker>
 
@@ -71,12 +72,18 @@ class ConstraintInjector(
         incorporatePosition: IncorporationConstraintPosition
     ) {
         var possibleNewConstraints: MutableList<Pair<TypeVariableMarker, Constraint>>? = null
+        // Incorporation generates the same constraint from different pairs of constraints over and over, e.g. for every step
+        //   of a chain of type variables, so each constraint enters the worklist only once. A repeated one would be rejected by
+        //   addConstraint anyway, as the first one is already in the storage or has been skipped for the same reason
+        val seenConstraints = HashSet<WorklistItem>()
 
         val typeCheckerContext = TypeCheckerContext(c, incorporatePosition, lowerType, upperType) { typeVar, constraint ->
-            if (possibleNewConstraints == null) {
-                possibleNewConstraints = SmartList()
+            if (seenConstraints.add(WorklistItem(typeVar, constraint, constraint.isNullabilityConstraint))) {
+                if (possibleNewConstraints == null) {
+                    possibleNewConstraints = SmartList()
+                }
+                possibleNewConstraints!!.add(typeVar to constraint)
             }
-            possibleNewConstraints!!.add(typeVar to constraint)
         }
         typeCheckerContext.runIsSubtypeOf(lowerType, upperType)
         var constraintsFromIsSubtype = true
@@ -94,6 +101,7 @@ class ConstraintInjector(
                 // it is important, that we add constraint here(not inside TypeCheckerContext), because inside incorporation we read constraints
                 constraints.addConstraint(constraint)?.let {
                     if (!constraint.isNullabilityConstraint) {
+                        c.incorporationCount++
                         constraintIncorporator.incorporate(typeCheckerContext, typeVariable, it)
                     }
                 }
@@ -113,6 +121,9 @@ class ConstraintInjector(
         }
     }
 
+    // Constraint ignores derivedFrom in equals, which doesn't matter for addConstraint, but nullability constraints are kept apart
+    private data class WorklistItem(val typeVariable: TypeVariableMarker, val constraint: Constraint, val isNullabilityConstraint: Boolean)
+
     private fun updateAllowedTypeDepth(c: Context, initialType: KotlinTypeMarker) = with(c) {
         c.maxTypeDepthFromInitialConstraints = max(c.maxTypeDepthFromInitialConstraints, initialType.typeDepth())
     }
@@ -326,6 +337,10 @@ class ConstraintInjector(
             c.notFixedTypeVariables[typeVariable.freshTypeConstructor()]?.constraints
                 ?: fixedTypeVariable(typeVariable)
 
+        override fun getConstraintsForVariableExcept(typeVariable: TypeVariableMarker, kind: ConstraintKind) =
+            c.notFixedTypeVariables[typeVariable.freshTypeConstructor()]?.constraintsExcept(kind)
+                ?: fixedTypeVariable(typeVariable)
+
         fun fixedTypeVariable(variable: TypeVariableMarker): Nothing {
             error(
                 "Type variable $variable should not be fixed!\n" +
@@ -41,6 +41,9 @@ interface ConstraintStorage {
     val fixedTypeVariables: Map<TypeConstructorMarker, KotlinTypeMarker>
     val postponedTypeVariables: List<TypeVariableMarker>
 
+    // Number of constraints incorporated into this system and the systems merged into it, for diagnostics of inference performance
+    val incorporationCount: Int
+
     object Empty : ConstraintStorage {
         override val allTypeVariables: Map<TypeConstructorMarker, TypeVariableMarker> get() = emptyMap()
         override val notFixedTypeVariables: Map<TypeConstructorMarker, VariableWithConstraints> get() = emptyMap()
@@ -50,6 +53,7 @@ interface ConstraintStorage {
         override val hasContradiction: Boolean get() = false
         override val fixedTypeVariables: Map<TypeConstructorMarker, KotlinTypeMarker> get() = emptyMap()
         override val postponedTypeVariables: List<TypeVariableMarker> get() = emptyList()
+        override val incorporationCount: Int get() = 0
     }
 }
 
@@ -78,6 +82,9 @@ class Constraint(
     val isNullabilityConstraint: Boolean,
     val inputTypePositionBeforeIncorporation: OnlyInputTypeConstraintPosition? = null
 ) {
+    // Type constructors of [type] and all types nested in it, computed on demand by ConstraintIncorporator
+    internal var nestedTypeConstructors: Set<TypeConstructorMarker>? = null
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (other?.javaClass != javaClass) return false
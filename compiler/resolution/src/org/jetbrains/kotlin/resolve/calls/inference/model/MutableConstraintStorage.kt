@@ -14,6 +14,7 @@ import org.jetbrains.kotlin.types.model.KotlinTypeMarker
 import org.jetbrains.kotlin.types.model.TypeConstructorMarker
 import org.jetbrains.kotlin.types.model.TypeVariableMarker
 import org.jetbrains.kotlin.types.typeUtil.unCapture
+import org.jetbrains.kotlin.utils.SmartList
 
 
 class MutableVariableWithConstraints private constructor(
@@ -43,10 +44,51 @@ class MutableVariableWithConstraints private constructor(
 
     private var simplifiedConstraints: ArrayList<Constraint>? = mutableConstraints
 
+    // [constraints] grouped by type hash code, built only for variables with many constraints
+    private var constraintsByTypeHashCode: HashMap<Int, SmartList<Constraint>>? = null
+
+    // [constraints] without lower and without upper constraints respectively, in the same order, built on demand
+    private var upperAndEqualityConstraints: ArrayList<Constraint>? = null
+    private var lowerAndEqualityConstraints: ArrayList<Constraint>? = null
+
+    // Incorporation needs the constraints of one side of the variable only, so they are kept apart instead of filtering all constraints
+    fun constraintsExcept(kind: ConstraintKind): List<Constraint> =
+        when (kind) {
+            ConstraintKind.LOWER -> upperAndEqualityConstraints
+                ?: constraints.filterTo(ArrayList()) { !it.kind.isLower() }.also { upperAndEqualityConstraints = it }
+            ConstraintKind.UPPER -> lowerAndEqualityConstraints
+                ?: constraints.filterTo(ArrayList()) { !it.kind.isUpper() }.also { lowerAndEqualityConstraints = it }
+            ConstraintKind.EQUALITY -> constraints.filter { !it.kind.isEqual() }
+        }
+
+    private fun constraintsWithSameTypeHashCode(constraint: Constraint): List<Constraint> {
+        val constraints = constraints
+        if (constraints.size < MIN_CONSTRAINTS_TO_INDEX) return constraints
+
+        val index = constraintsByTypeHashCode ?: HashMap<Int, SmartList<Constraint>>().also { index ->
+            for (previousConstraint in constraints) {
+                index.getOrPut(previousConstraint.typeHashCode) { SmartList() }.add(previousConstraint)
+            }
+            constraintsByTypeHashCode = index
+        }
+        return index[constraint.typeHashCode] ?: emptyList()
+    }
+
+    private fun invalidateSimplifiedConstraints() {
+        simplifiedConstraints = null
+        dropIndices()
+    }
+
+    private fun dropIndices() {
+        constraintsByTypeHashCode = null
+        upperAndEqualityConstraints = null
+        lowerAndEqualityConstraints = null
+    }
+
     // return new actual constraint, if this constraint is new
     fun addConstraint(constraint: Constraint): Constraint? {
 
-        for (previousConstraint in constraints) {
+        for (previousConstraint in constraintsWithSameTypeHashCode(constraint)) {
             if (previousConstraint.typeHashCode == constraint.typeHashCode
                 && previousConstraint.type == constraint.type
                 && previousConstraint.isNullabilityConstraint == constraint.isNullabilityConstraint
@@ -67,7 +109,7 @@ class MutableVariableWithConstraints private constructor(
                         isNullabilityConstraint = false
                     )
                     mutableConstraints.add(actualConstraint)
-                    simplifiedConstraints = null
+                    invalidateSimplifiedConstraints()
                     return actualConstraint
                 }
             }
@@ -77,6 +119,9 @@ class MutableVariableWithConstraints private constructor(
         if (simplifiedConstraints != null && simplifiedConstraints !== mutableConstraints) {
             simplifiedConstraints!!.add(constraint)
         }
+        constraintsByTypeHashCode?.getOrPut(constraint.typeHashCode) { SmartList() }?.add(constraint)
+        if (!constraint.kind.isLower()) upperAndEqualityConstraints?.add(constraint)
+        if (!constraint.kind.isUpper()) lowerAndEqualityConstraints?.add(constraint)
         return constraint
     }
 
@@ -84,6 +129,7 @@ class MutableVariableWithConstraints private constructor(
     // shouldRemove should give true only for tail elements
     internal fun removeLastConstraints(shouldRemove: (Constraint) -> Boolean) {
         mutableConstraints.trimToSize(mutableConstraints.indexOfLast { !shouldRemove(it) } + 1)
+        dropIndices()
         if (simplifiedConstraints !== mutableConstraints) {
             simplifiedConstraints = null
         }
@@ -92,6 +138,7 @@ class MutableVariableWithConstraints private constructor(
     // This method should be used only when constraint system has state COMPLETION
     internal fun removeConstrains(shouldRemove: (Constraint) -> Boolean) {
         mutableConstraints.removeAll(shouldRemove)
+        dropIndices()
         if (simplifiedConstraints !== mutableConstraints) {
             simplifiedConstraints = null
         }
@@ -128,6 +175,10 @@ class MutableVariableWithConstraints private constructor(
     override fun toString(): String {
         return "Constraints for $typeVariable"
     }
+
+    private companion object {
+        const val MIN_CONSTRAINTS_TO_INDEX = 16
+    }
 }
 
 
@@ -140,4 +191,5 @@ internal class MutableConstraintStorage : ConstraintStorage {
     override val hasContradiction: Boolean get() = errors.any { !it.candidateApplicability.isSuccess }
     override val fixedTypeVariables: MutableMap<TypeConstructorMarker, KotlinTypeMarker> = LinkedHashMap()
     override val postponedTypeVariables: ArrayList<TypeVariableMarker> = ArrayList()
+    override var incorporationCount: Int = 0
 }
@@ -214,6 +214,7 @@ class NewConstraintSystemImpl(
         storage.errors.addAll(otherSystem.errors)
         storage.fixedTypeVariables.putAll(otherSystem.fixedTypeVariables)
         storage.postponedTypeVariables.addAll(otherSystem.postponedTypeVariables)
+        storage.incorporationCount += otherSystem.incorporationCount
     }
 
     // ResultTypeResolver.Context, ConstraintSystemBuilder
@@ -265,6 +266,13 @@ class NewConstraintSystemImpl(
             storage.maxTypeDepthFromInitialConstraints = value
         }
 
+    override var incorporationCount: Int
+        get() = storage.incorporationCount
+        set(value) {
+            checkState(State.BUILDING, State.COMPLETION, State.TRANSACTION)
+            storage.incorporationCount = value
+        }
+
     override fun addInitialConstraint(initialConstraint: InitialConstraint) {
         checkState(State.BUILDING, State.COMPLETION, State.TRANSACTION)
         storage.initialConstraints.add(initialConstraint)
@@ -0,0 +1,5 @@
+fun foo1() {
+    bar1()
+}
+
+fun bar1() {}}
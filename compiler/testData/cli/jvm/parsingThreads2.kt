@@ -0,0 +1,5 @@
+fun foo2() {
+    bar2()
+}
+
+fun bar2() {}}
@@ -0,0 +1,5 @@
+fun foo3() {
+    bar3()
+}
+
+fun bar3() {}}
@@ -595,6 +595,16 @@ public class CliTestGenerated extends AbstractCliTest {
             runTest("compiler/testData/cli/jvm/nonexistingArgfile.args");
         }
 
+        @TestMetadata("parsingThreads.args")
+        public void testParsingThreads() throws Exception {
+            runTest("compiler/testData/cli/jvm/parsingThreads.args");
+        }
+
+        @TestMetadata("parsingThreadsInvalid.args")
+        public void testParsingThreadsInvalid() throws Exception {
+            runTest("compiler/testData/cli/jvm/parsingThreadsInvalid.args");
+        }
+
         @TestMetadata("pluginSimple.args")
         public void testPluginSimple() throws Exception {
             runTest("compiler/testData/cli/jvm/pluginSimple.args");
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen.ir
+
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.codegen.GenerationUtils
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
+import org.jetbrains.kotlin.config.CompilerConfigurationKey
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+
+class IrMultiThreadedCodegenTest : KtUsefulTestCase() {
+    fun testConcurrentLowering() {
+        assertSameOutput(CommonConfigurationKeys.LOWERING_THREADS)
+    }
+
+    fun testConcurrentOptimization() {
+        assertSameOutput(JVMConfigurationKeys.OPTIMIZATION_THREADS)
+    }
+
+    private fun assertSameOutput(threadsKey: CompilerConfigurationKey<Int>) {
+        val expected = compile(threadsKey, 1)
+        val actual = compile(threadsKey, 4)
+
+        assertEquals(expected.keys, actual.keys)
+        for ((path, bytes) in expected) {
+            assertTrue("Class file differs: $path", bytes.contentEquals(actual.getValue(path)))
+        }
+    }
+
+    private fun compile(threadsKey: CompilerConfigurationKey<Int>, threads: Int): Map<String, ByteArray> {
+        val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.NO_KOTLIN_REFLECT, TestJdkKind.MOCK_JDK)
+        configuration.put(JVMConfigurationKeys.IR, true)
+        configuration.put(threadsKey, threads)
+
+        val environment = KotlinCoreEnvironment.createForTests(testRootDisposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+        val files = (1..FILE_COUNT).map { i -> KotlinTestUtils.createFile("file$i.kt", source(i), environment.project) }
+
+        return GenerationUtils.compileFiles(files, environment).factory.asList().associate { it.relativePath to it.asByteArray() }
+    }
+
+    private fun source(i: Int): String =
+        """
+            package test$i
+
+            typealias Transform$i = (Int) -> Int
+
+            class Holder$i @JvmOverloads constructor(val value: Int = $i, val name: String = "holder$i") {
+                @JvmOverloads
+                fun apply(transform: Transform$i = fun(x: Int): Int { return x + $i }, times: Int = 1): Int {
+                    var result = value
+                    repeat(times) { result = transform(result) }
+                    return result
+                }
+            }
+
+            fun box$i(): String {
+                val holder = Holder$i()
+                val result = holder.apply({ it * 2 }) + holder.apply(fun(x: Int) = x - 1, 2)
+                return if (result > 0) "OK" else "Fail: " + holder.name
+            }
+        """.trimIndent()
+
+    companion object {
+        private const val FILE_COUNT = 8
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.lexer.kotlin
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.lexer.KotlinLexer
+import org.jetbrains.kotlin.lexer.KotlinTokenBuffer
+import org.jetbrains.kotlin.lexer.KotlinTokenizer
+import org.jetbrains.kotlin.lexer.KtTokens
+import java.io.File
+
+class KotlinTokenizerTest : TestCase() {
+    private fun lexerTokens(text: String): List<String> {
+        val lexer = KotlinLexer()
+        lexer.start(text)
+        return generateSequence {
+            lexer.tokenType?.let { "$it[${lexer.tokenStart}, ${lexer.tokenEnd}]" }.also { lexer.advance() }
+        }.toList()
+    }
+
+    private fun tokenizerTokens(tokenizer: KotlinTokenizer, buffer: KotlinTokenBuffer, text: String): List<String> {
+        tokenizer.tokenize(text, buffer)
+        return (0 until buffer.tokenCount).map { "${buffer.getElementType(it)}[${buffer.getTokenStart(it)}, ${buffer.getTokenEnd(it)}]" }
+    }
+
+    fun testSameTokensAsKotlinLexer() {
+        val tokenizer = KotlinTokenizer()
+        val buffer = KotlinTokenBuffer(1)
+        val files = File("compiler/testData/psi").walk().filter { it.isFile && it.extension == "kt" }.toList()
+        assertTrue(files.isNotEmpty())
+        for (file in files) {
+            val text = file.readText()
+            assertEquals(file.path, lexerTokens(text), tokenizerTokens(tokenizer, buffer, text))
+        }
+    }
+
+    fun testReuseAfterUnterminatedTemplate() {
+        val tokenizer = KotlinTokenizer()
+        val buffer = KotlinTokenBuffer()
+        tokenizer.tokenize("val s = \"\${foo(\"\${", buffer)
+        assertEquals(lexerTokens("fun f() = 1"), tokenizerTokens(tokenizer, buffer, "fun f() = 1"))
+        assertEquals(KtTokens.FUN_KEYWORD, buffer.getElementType(0))
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.load.kotlin
+
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.impl.jar.CoreJarFileSystem
+import com.intellij.openapi.vfs.local.CoreLocalFileSystem
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir
+import java.io.File
+import java.util.jar.JarOutputStream
+import java.util.zip.ZipEntry
+
+class KotlinClassHeaderCacheTest : TestCaseWithTmpdir() {
+    private val classFileContent = KotlinClassFinder.Result.ClassFileContent(ByteArray(0))
+
+    fun testRacyClassFileIsNotCached() {
+        val classFile = File(tmpdir, "A.class").apply { writeText("A") }
+        val file = CoreLocalFileSystem().findFileByIoFile(classFile)!!
+        val cache = KotlinClassHeaderCache()
+
+        // Modified just now, it may be modified again without a new timestamp
+        cache.put(file, classFileContent)
+        assertEquals(0, cache.size)
+        assertNull(cache.get(file))
+
+        classFile.setLastModified(OLD_TIMESTAMP)
+        cache.put(file, classFileContent)
+        assertEquals(1, cache.size)
+        assertNotNull(cache.get(file))
+    }
+
+    fun testRacyJarIsNotCached() {
+        val jar = writeJar(mapOf(ENTRY to "A"))
+        val file = findEntry(jar, ENTRY)
+        val cache = KotlinClassHeaderCache()
+
+        cache.put(file, classFileContent)
+        assertEquals(0, cache.size)
+
+        jar.setLastModified(OLD_TIMESTAMP)
+        cache.put(file, classFileContent)
+        assertEquals(1, cache.size)
+        assertNotNull(cache.get(file))
+    }
+
+    fun testJarIsKeyedByCentralDirectory() {
+        val jar = writeJar(mapOf(ENTRY to "first"))
+        jar.setLastModified(OLD_TIMESTAMP)
+        val cache = KotlinClassHeaderCache()
+        cache.put(findEntry(jar, ENTRY), classFileContent)
+
+        // The same content with a new timestamp has the same central directory
+        writeJar(mapOf(ENTRY to "first"))
+        jar.setLastModified(OLD_TIMESTAMP + 10_000)
+        assertNotNull(cache.get(findEntry(jar, ENTRY)))
+
+        // Another content of the same size keeps the length and the timestamps of the jar and its entry, but not the CRC of the entry
+        writeJar(mapOf(ENTRY to "other"))
+        jar.setLastModified(OLD_TIMESTAMP + 10_000)
+        assertNull(cache.get(findEntry(jar, ENTRY)))
+    }
+
+    fun testJarIsHashedOncePerRoot() {
+        val jar = writeJar(mapOf(ENTRY to "first"))
+        jar.setLastModified(OLD_TIMESTAMP)
+        val file = findEntry(jar, ENTRY)
+        val cache = KotlinClassHeaderCache()
+        cache.put(file, classFileContent)
+
+        // The root keeps the opened archive, so the jar on disk is not looked at again
+        writeJar(mapOf(ENTRY to "other"))
+        jar.setLastModified(OLD_TIMESTAMP)
+        assertNotNull(cache.get(file))
+        assertNull(cache.get(findEntry(jar, ENTRY)))
+        assertEquals(1, cache.hitCount)
+        assertEquals(1, cache.missCount)
+    }
+
+    fun testEntriesAreEvictedByWeight() {
+        val entries = (0 until 100).map { "a/A$it.class" }
+        val jar = writeJar(entries.associateWith { it })
+        jar.setLastModified(OLD_TIMESTAMP)
+        val jarFileSystem = CoreJarFileSystem()
+        val cache = KotlinClassHeaderCache(MAX_WEIGHT)
+
+        for (entry in entries) {
+            cache.put(jarFileSystem.findFileByPath(jar.path + "!/" + entry)!!, classFileContent)
+            assertTrue("Weight ${cache.weight} exceeds $MAX_WEIGHT", cache.weight <= MAX_WEIGHT)
+        }
+        assertTrue(cache.size in 1 until entries.size)
+        assertNotNull(cache.get(jarFileSystem.findFileByPath(jar.path + "!/" + entries.last())!!))
+
+        cache.clear()
+        assertEquals(0, cache.size)
+        assertEquals(0L, cache.weight)
+    }
+
+    private fun writeJar(entries: Map<String, String>): File {
+        val jar = File(tmpdir, "lib.jar")
+        JarOutputStream(jar.outputStream()).use { output ->
+            for ((path, content) in entries) {
+                output.putNextEntry(ZipEntry(path).apply { time = OLD_TIMESTAMP })
+                output.write(content.toByteArray())
+                output.closeEntry()
+            }
+        }
+        return jar
+    }
+
+    // A new file system opens the jar again, as a new compilation does
+    private fun findEntry(jar: File, entry: String): VirtualFile =
+        CoreJarFileSystem().findFileByPath(jar.path + "!/" + entry)!!
+
+    companion object {
+        private const val ENTRY = "a/A.class"
+        private const val OLD_TIMESTAMP = 1_500_000_000_000L
+        private const val MAX_WEIGHT = 4096L
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.resolve.constraintSystem
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.builtins.DefaultBuiltIns
+import org.jetbrains.kotlin.resolve.calls.components.ClassicTypeSystemContextForCS
+import org.jetbrains.kotlin.resolve.calls.inference.components.ConstraintIncorporator
+import org.jetbrains.kotlin.resolve.calls.inference.components.ConstraintInjector
+import org.jetbrains.kotlin.resolve.calls.inference.components.TrivialConstraintTypeInferenceOracle
+import org.jetbrains.kotlin.resolve.calls.inference.model.*
+import org.jetbrains.kotlin.types.KotlinType
+import org.jetbrains.kotlin.types.TypeApproximator
+import org.jetbrains.kotlin.types.checker.KotlinTypeRefiner
+
+class IncorporationTest : TestCase() {
+    private val builtIns = DefaultBuiltIns.Instance
+
+    fun testDuplicateConstraintIsNotIncorporatedAgain() {
+        val system = createSystem()
+        val variable = TypeVariableForLambdaReturnType(builtIns, "T")
+        system.registerVariable(variable)
+
+        system.addSubtypeConstraint(builtIns.intType, variable.defaultType, POSITION)
+        assertEquals(1, system.incorporationCount)
+
+        system.addSubtypeConstraint(builtIns.intType, variable.defaultType, POSITION)
+        assertEquals(1, system.incorporationCount)
+
+        system.addSubtypeConstraint(variable.defaultType, builtIns.anyType, POSITION)
+        assertEquals(2, system.incorporationCount)
+        assertEquals(2, system.notFixedTypeVariables.getValue(variable.freshTypeConstructor).constraints.size)
+    }
+
+    fun testChainOfTypeVariables() {
+        val system = createSystem()
+        val variables = List(CHAIN_SIZE) { TypeVariableForLambdaReturnType(builtIns, "T$it") }
+        variables.forEach(system::registerVariable)
+
+        system.addSubtypeConstraint(builtIns.intType, variables.first().defaultType, POSITION)
+        for ((lower, upper) in variables.zipWithNext()) {
+            system.addSubtypeConstraint(lower.defaultType, upper.defaultType, POSITION)
+        }
+
+        // Incorporation closes the chain: Int <: Ti for every i, and Ti <: Tj, Tj :> Ti for every i < j.
+        //   The same constraints are derived through every intermediate variable, but each one is incorporated once
+        assertEquals(CHAIN_SIZE * CHAIN_SIZE, system.incorporationCount)
+        assertEquals(system.incorporationCount, system.notFixedTypeVariables.values.sumBy { it.constraints.size })
+    }
+
+    fun testIncorporationCountOfMergedSystem() {
+        val inner = createSystem()
+        val variable = TypeVariableForLambdaReturnType(builtIns, "T")
+        inner.registerVariable(variable)
+        inner.addSubtypeConstraint(builtIns.intType, variable.defaultType, POSITION)
+
+        val outer = createSystem()
+        outer.addOtherSystem(inner.asReadOnlyStorage())
+        outer.addSubtypeConstraint(variable.defaultType, builtIns.anyType, POSITION)
+        assertEquals(2, outer.incorporationCount)
+    }
+
+    fun testConstraintsByKind() {
+        val variable = MutableVariableWithConstraints(TypeVariableForLambdaReturnType(builtIns, "T"))
+        fun assertIndexed() {
+            for (kind in ConstraintKind.values()) {
+                assertEquals(variable.constraints.filter { it.kind != kind }, variable.constraintsExcept(kind))
+            }
+        }
+
+        assertIndexed()
+        variable.addConstraint(constraint(ConstraintKind.LOWER, builtIns.intType))
+        variable.addConstraint(constraint(ConstraintKind.UPPER, builtIns.anyType))
+        assertIndexed()
+        variable.addConstraint(constraint(ConstraintKind.LOWER, builtIns.stringType))
+        assertIndexed()
+        // Upper and lower constraints with the same type are simplified to an equality one
+        variable.addConstraint(constraint(ConstraintKind.UPPER, builtIns.intType))
+        assertIndexed()
+        variable.addConstraint(constraint(ConstraintKind.UPPER, builtIns.numberType))
+        assertIndexed()
+    }
+
+    private fun constraint(kind: ConstraintKind, type: KotlinType): Constraint =
+        Constraint(
+            kind, type, IncorporationConstraintPosition(POSITION, InitialConstraint(type, type, kind, POSITION)),
+            derivedFrom = emptySet(), isNullabilityConstraint = false
+        )
+
+    private fun createSystem(): NewConstraintSystemImpl {
+        val approximator = TypeApproximator(builtIns)
+        val context = ClassicTypeSystemContextForCS(builtIns)
+        val injector = ConstraintInjector(
+            ConstraintIncorporator(approximator, TrivialConstraintTypeInferenceOracle(context)), approximator, KotlinTypeRefiner.Default
+        )
+        return NewConstraintSystemImpl(injector, context)
+    }
+
+    companion object {
+        private const val CHAIN_SIZE = 10
+
+        @Suppress("DEPRECATION")
+        private val POSITION = SimpleConstraintSystemConstraintPosition
+    }
+}
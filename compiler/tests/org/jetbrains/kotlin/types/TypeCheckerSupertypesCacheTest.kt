@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.types
+
+import junit.framework.TestCase
+import org.jetbrains.kotlin.builtins.DefaultBuiltIns
+import org.jetbrains.kotlin.descriptors.ClassKind
+import org.jetbrains.kotlin.descriptors.Modality
+import org.jetbrains.kotlin.descriptors.SourceElement
+import org.jetbrains.kotlin.descriptors.annotations.Annotations
+import org.jetbrains.kotlin.descriptors.impl.ClassDescriptorImpl
+import org.jetbrains.kotlin.name.Name
+import org.jetbrains.kotlin.resolve.scopes.MemberScope
+import org.jetbrains.kotlin.storage.LockBasedStorageManager
+import org.jetbrains.kotlin.types.checker.KotlinTypeRefiner
+import org.jetbrains.kotlin.types.checker.NewKotlinTypeChecker
+import org.jetbrains.kotlin.types.checker.NewKotlinTypeCheckerImpl
+
+class TypeCheckerSupertypesCacheTest : TestCase() {
+    private val builtIns = DefaultBuiltIns.Instance
+
+    fun testClassTypesWithoutArgumentsAreCached() {
+        val checker = NewKotlinTypeCheckerImpl(KotlinTypeRefiner.Default)
+        val cache = checker.supertypesCache!!
+
+        assertTrue(checker.isSubtypeOf(builtIns.intType, builtIns.numberType))
+        assertEquals(1, cache.size)
+        assertEquals(0, cache.hitCount)
+        assertEquals(1, cache.missCount)
+
+        assertTrue(checker.isSubtypeOf(builtIns.intType, builtIns.numberType))
+        assertEquals(1, cache.size)
+        assertEquals(1, cache.hitCount)
+        assertEquals(1, cache.missCount)
+    }
+
+    fun testTypesWithArgumentsAreNotCached() {
+        val checker = NewKotlinTypeCheckerImpl(KotlinTypeRefiner.Default)
+        val listOfInt = KotlinTypeFactory.simpleNotNullType(Annotations.EMPTY, builtIns.list, listOf(TypeProjectionImpl(builtIns.intType)))
+        val collectionOfInt =
+            KotlinTypeFactory.simpleNotNullType(Annotations.EMPTY, builtIns.collection, listOf(TypeProjectionImpl(builtIns.intType)))
+
+        assertTrue(checker.isSubtypeOf(listOfInt, collectionOfInt))
+        assertEquals(0, checker.supertypesCache!!.size)
+        assertEquals(0, checker.supertypesCache!!.missCount)
+    }
+
+    fun testErrorSupertypesAreNotCached() {
+        val checker = NewKotlinTypeCheckerImpl(KotlinTypeRefiner.Default)
+        val classWithErrorSupertype = ClassDescriptorImpl(
+            builtIns.int.containingDeclaration, Name.identifier("WithErrorSupertype"), Modality.OPEN, ClassKind.CLASS,
+            listOf(ErrorUtils.createErrorType("Unresolved"), builtIns.anyType), SourceElement.NO_SOURCE, false,
+            LockBasedStorageManager.NO_LOCKS
+        ).apply { initialize(MemberScope.Empty, emptySet(), null) }
+
+        checker.isSubtypeOf(classWithErrorSupertype.defaultType, builtIns.numberType)
+        assertEquals(0, checker.supertypesCache!!.size)
+        assertEquals(1, checker.supertypesCache!!.missCount)
+    }
+
+    fun testLeastRecentlyUsedEntriesAreEvicted() {
+        val cache = TypeCheckerSupertypesCache(maxSize = 4)
+        val constructors = listOf(builtIns.int, builtIns.long, builtIns.short, builtIns.byte, builtIns.double, builtIns.float)
+            .map { it.typeConstructor }
+        val superConstructor = builtIns.number.typeConstructor
+
+        for (constructor in constructors.take(4)) {
+            cache.put(constructor, superConstructor, emptyList())
+        }
+        assertNotNull(cache.get(constructors[0], superConstructor))
+
+        for (constructor in constructors.drop(4)) {
+            cache.put(constructor, superConstructor, emptyList())
+            assertTrue(cache.size <= 4)
+        }
+
+        assertNotNull(cache.get(constructors[0], superConstructor))
+        assertNotNull(cache.get(constructors[5], superConstructor))
+        assertNull(cache.get(constructors[1], superConstructor))
+    }
+
+    fun testCacheIsPerTypeChecker() {
+        val first = NewKotlinTypeCheckerImpl(KotlinTypeRefiner.Default)
+        val second = NewKotlinTypeCheckerImpl(KotlinTypeRefiner.Default)
+
+        // Every check creates a new type checker context, they all share the cache of the checker
+        assertTrue(first.isSubtypeOf(builtIns.intType, builtIns.numberType))
+        assertTrue(first.equalTypes(builtIns.intType, builtIns.intType))
+        assertTrue(first.isSubtypeOf(builtIns.intType, builtIns.numberType))
+        assertEquals(1, first.supertypesCache!!.hitCount)
+        assertEquals(0, second.supertypesCache!!.size)
+
+        first.supertypesCache!!.clear()
+        assertEquals(0, first.supertypesCache!!.size)
+        assertEquals(0, first.supertypesCache!!.hitCount)
+        assertTrue(first.isSubtypeOf(builtIns.intType, builtIns.numberType))
+        assertEquals(1, first.supertypesCache!!.missCount)
+
+        assertNull(NewKotlinTypeChecker.Default.supertypesCache)
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.util
+
+import org.jetbrains.kotlin.utils.CompilerTracer
+import org.jetbrains.kotlin.utils.TraceSession
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import kotlin.concurrent.thread
+
+class CompilerTracerTest {
+    @Test
+    fun testDisabled() {
+        Assert.assertFalse(CompilerTracer.isEnabled)
+        Assert.assertEquals(42, CompilerTracer.span("Unused") { 42 })
+        Assert.assertNull(CompilerTracer.beginSpan("Unused", null))
+    }
+
+    @Test
+    fun testNestedSpans() {
+        val session = trace {
+            CompilerTracer.span("Outer") {
+                repeat(3) { i ->
+                    CompilerTracer.span("Inner", "File$i.kt") {}
+                }
+            }
+            thread {
+                CompilerTracer.span("Inner", "Worker.kt") {}
+            }.join()
+        }
+
+        Assert.assertEquals(setOf("Outer" to 1, "Inner" to 4), session.summary().map { it.name to it.count }.toSet())
+        Assert.assertEquals(0, session.droppedEvents)
+    }
+
+    @Test
+    fun testConcurrentSessions() {
+        val started = CountDownLatch(2)
+        val sessions = (0 until 2).map { i ->
+            val result = arrayOfNulls<TraceSession>(1)
+            val thread = thread {
+                result[0] = trace {
+                    started.countDown()
+                    started.await()
+                    CompilerTracer.span("Compilation$i") {
+                        thread { CompilerTracer.span("Worker$i") {} }.join()
+                    }
+                }
+            }
+            thread to result
+        }.map { (thread, result) -> thread.join(); result[0]!! }
+
+        for ((i, session) in sessions.withIndex()) {
+            Assert.assertEquals(setOf("Compilation$i", "Worker$i"), session.summary().map { it.name }.toSet())
+        }
+        Assert.assertFalse(CompilerTracer.isEnabled)
+    }
+
+    @Test
+    fun testSpansAreClosedOnException() {
+        val session = trace {
+            try {
+                CompilerTracer.span("Failing") { throw IllegalStateException() }
+            } catch (e: IllegalStateException) {
+            }
+        }
+
+        Assert.assertEquals(1, session.summary().single().count)
+    }
+
+    @Test
+    fun testFullBuffer() {
+        val session = trace(bufferCapacity = 10) {
+            CompilerTracer.span("Outer") {
+                repeat(20) {
+                    CompilerTracer.span("Inner") {}
+                }
+            }
+        }
+
+        // The begin events of "Outer" and of the first "Inner" spans are overwritten
+        Assert.assertEquals(listOf("Inner" to 4), session.summary().map { it.name to it.count })
+        Assert.assertEquals(32, session.droppedEvents)
+    }
+
+    @Test
+    fun testChromeTrace() {
+        val session = trace {
+            CompilerTracer.span("Phase \"quoted\"", "C:\\File.kt") {}
+        }
+
+        val json = buildString { session.writeChromeTrace(this) }
+        Assert.assertTrue(json, json.startsWith("{\"traceEvents\":["))
+        Assert.assertTrue(json, json.contains("\"name\":\"Phase \\\"quoted\\\"\",\"ph\":\"B\""))
+        Assert.assertTrue(json, json.contains("\"args\":{\"detail\":\"C:\\\\File.kt\"}"))
+        Assert.assertTrue(json, json.contains("\"ph\":\"E\""))
+    }
+
+    private fun trace(bufferCapacity: Int = CompilerTracer.DEFAULT_BUFFER_CAPACITY, block: () -> Unit): TraceSession {
+        val session = CompilerTracer.start(bufferCapacity)
+        try {
+            block()
+        } finally {
+            CompilerTracer.stop(session)
+        }
+        return session
+    }
+}
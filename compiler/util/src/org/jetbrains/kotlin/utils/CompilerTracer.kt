@@ -0,0 +1,241 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.utils
+
+import java.lang.management.ManagementFactory
+import java.util.*
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Records nested spans of the compiler work (phases, files, resolve steps) for a trace of the compilation.
+ *
+ * A [TraceSession] belongs to the thread which started it and to the threads created by that thread while it is active,
+ *   e.g. the thread pools of the compilation, so concurrent compilations in the daemon are traced separately.
+ *
+ * When no session is started in the process, [span] costs a read of a volatile field. Otherwise the start and the end of a span
+ *   are written to a ring buffer of the current thread, without locks or allocations; the oldest events of a thread are
+ *   overwritten if the buffer is full. A session is exported by [TraceSession.writeChromeTrace] and summarized by
+ *   [TraceSession.summary] after the threads recording spans are done.
+ */
+object CompilerTracer {
+    const val DEFAULT_BUFFER_CAPACITY = 1 shl 18
+
+    @Volatile
+    private var activeSessions = 0
+
+    private val currentSession = InheritableThreadLocal<TraceSession?>()
+
+    @PublishedApi
+    internal val session: TraceSession?
+        get() = if (activeSessions == 0) null else currentSession.get()?.takeIf { it.isActive }
+
+    /**
+     * Whether spans of the current thread are recorded.
+     */
+    val isEnabled: Boolean get() = session != null
+
+    /**
+     * Starts a session for the current thread, replacing the session the thread records to, if any.
+     */
+    @Synchronized
+    fun start(bufferCapacity: Int = DEFAULT_BUFFER_CAPACITY): TraceSession {
+        val session = TraceSession(bufferCapacity)
+        currentSession.set(session)
+        activeSessions++
+        return session
+    }
+
+    /**
+     * Stops recording to [session]. Threads which inherited the session don't record to it anymore.
+     */
+    @Synchronized
+    fun stop(session: TraceSession) {
+        if (currentSession.get() === session) {
+            currentSession.remove()
+        }
+        if (session.isActive) {
+            session.isActive = false
+            activeSessions--
+        }
+    }
+
+    /**
+     * Records [block] as a span named [name]. [detail], e.g. the name of a file, is shown as an argument of the span.
+     */
+    inline fun <T> span(name: String, detail: String? = null, block: () -> T): T {
+        val session = session ?: return block()
+        val buffer = session.begin(name, detail)
+        try {
+            return block()
+        } finally {
+            buffer.end()
+        }
+    }
+
+    /**
+     * Starts a span for Java code, which can't use [span]. Returns the token to pass to [endSpan], null if tracing is disabled.
+     */
+    @JvmStatic
+    fun beginSpan(name: String, detail: String?): Any? = session?.begin(name, detail)
+
+    @JvmStatic
+    fun endSpan(token: Any?) {
+        (token as TraceBuffer?)?.end()
+    }
+}
+
+class TraceSession internal constructor(private val bufferCapacity: Int) {
+    @Volatile
+    internal var isActive = true
+
+    private val startNanos = System.nanoTime()
+    private val buffers = ConcurrentLinkedQueue<TraceBuffer>()
+    private val threadBuffer = ThreadLocal.withInitial { TraceBuffer(Thread.currentThread(), bufferCapacity).also { buffers.add(it) } }
+
+    @PublishedApi
+    internal fun begin(name: String, detail: String?): TraceBuffer =
+        threadBuffer.get().also { it.begin(name, detail) }
+
+    /**
+     * Writes the events in the Chrome trace event format, which can be opened in chrome://tracing or Perfetto.
+     */
+    fun writeChromeTrace(output: Appendable) {
+        output.append("{\"traceEvents\":[")
+        var first = true
+        fun event(json: String) {
+            if (!first) output.append(",\n")
+            first = false
+            output.append(json)
+        }
+
+        for (buffer in buffers) {
+            val threadName = jsonString(buffer.threadName)
+            event("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":${buffer.threadId},\"args\":{\"name\":$threadName}}")
+            buffer.forEachEvent { isBegin, nanos, _, name, detail ->
+                val timestamp = String.format(Locale.US, "%.3f", (nanos - startNanos) / 1000.0)
+                val common = "\"ph\":\"${if (isBegin) "B" else "E"}\",\"pid\":1,\"tid\":${buffer.threadId},\"ts\":$timestamp"
+                event(
+                    when {
+                        !isBegin -> "{$common}"
+                        detail == null -> "{\"name\":${jsonString(name!!)},$common}"
+                        else -> "{\"name\":${jsonString(name!!)},$common,\"args\":{\"detail\":${jsonString(detail)}}}"
+                    }
+                )
+            }
+        }
+        output.append("]}\n")
+    }
+
+    /**
+     * Time and allocations of the spans by name, inclusive of nested spans, in the descending order of time.
+     *   Allocations are -1 if the JVM doesn't measure them.
+     */
+    fun summary(): List<SpanSummary> {
+        val result = HashMap<String, SpanSummary>()
+        for (buffer in buffers) {
+            val stack = ArrayList<Triple<String, Long, Long>>()
+            buffer.forEachEvent { isBegin, nanos, allocatedBytes, name, _ ->
+                if (isBegin) {
+                    stack.add(Triple(name!!, nanos, allocatedBytes))
+                } else if (stack.isNotEmpty()) {
+                    // Spans which began before the oldest retained event are skipped
+                    val (spanName, startNanos, startAllocatedBytes) = stack.removeAt(stack.size - 1)
+                    val allocated = if (startAllocatedBytes >= 0) allocatedBytes - startAllocatedBytes else -1
+                    val summary = result.getOrPut(spanName) { SpanSummary(spanName) }
+                    summary.count++
+                    summary.nanos += nanos - startNanos
+                    summary.allocatedBytes = if (allocated >= 0 && summary.allocatedBytes >= 0) summary.allocatedBytes + allocated else -1
+                }
+            }
+        }
+        return result.values.sortedByDescending { it.nanos }
+    }
+
+    /**
+     * The number of events lost because the buffers were full.
+     */
+    val droppedEvents: Long get() = buffers.sumByLong { maxOf(0, it.count - bufferCapacity) }
+
+    private fun jsonString(string: String): String = buildString {
+        append('"')
+        for (c in string) {
+            when {
+                c == '"' || c == '\\' -> append('\\').append(c)
+                c < ' ' -> append("\\u%04x".format(c.toInt()))
+                else -> append(c)
+            }
+        }
+        append('"')
+    }
+
+    private inline fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long {
+        var sum = 0L
+        for (element in this) sum += selector(element)
+        return sum
+    }
+}
+
+class SpanSummary(val name: String) {
+    var count: Int = 0
+        internal set
+    var nanos: Long = 0
+        internal set
+    var allocatedBytes: Long = 0
+        internal set
+}
+
+/**
+ * Events of one thread; only that thread writes to the buffer.
+ */
+@PublishedApi
+internal class TraceBuffer(thread: Thread, private val capacity: Int) {
+    val threadId: Long = thread.id
+    val threadName: String = thread.name
+
+    private val nanos = LongArray(capacity)
+    private val allocatedBytes = LongArray(capacity)
+    // A begin event has a name, an end event has none
+    private val names = arrayOfNulls<String>(capacity)
+    private val details = arrayOfNulls<String>(capacity)
+
+    var count: Long = 0
+        private set
+
+    fun begin(name: String, detail: String?) {
+        val index = (count % capacity).toInt()
+        names[index] = name
+        details[index] = detail
+        allocatedBytes[index] = currentThreadAllocatedBytes()
+        nanos[index] = System.nanoTime()
+        count++
+    }
+
+    fun end() {
+        val time = System.nanoTime()
+        val index = (count % capacity).toInt()
+        names[index] = null
+        details[index] = null
+        allocatedBytes[index] = currentThreadAllocatedBytes()
+        nanos[index] = time
+        count++
+    }
+
+    fun forEachEvent(action: (isBegin: Boolean, nanos: Long, allocatedBytes: Long, name: String?, detail: String?) -> Unit) {
+        for (i in maxOf(0, count - capacity) until count) {
+            val index = (i % capacity).toInt()
+            action(names[index] != null, nanos[index], allocatedBytes[index], names[index], details[index])
+        }
+    }
+
+    private fun currentThreadAllocatedBytes(): Long =
+        if (threadMXBean != null) threadMXBean.getThreadAllocatedBytes(threadId) else -1
+
+    companion object {
+        private val threadMXBean = (ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean)?.takeIf {
+            it.isThreadAllocatedMemorySupported && it.isThreadAllocatedMemoryEnabled
+        }
+    }
+}
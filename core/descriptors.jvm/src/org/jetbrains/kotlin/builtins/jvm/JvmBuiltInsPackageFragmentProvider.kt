@@ -57,7 +57,7 @@ class JvmBuiltInsPackageFragmentProvider(
     }
 
     override fun findPackage(fqName: FqName): DeserializedPackageFragment? =
-        finder.findBuiltInsData(fqName)?.let { inputStream ->
-            BuiltInsPackageFragmentImpl.create(fqName, storageManager, moduleDescriptor, inputStream, isFallback = false)
+        finder.findBuiltInsPackageData(fqName)?.let { data ->
+            BuiltInsPackageFragmentImpl.create(fqName, storageManager, moduleDescriptor, data, isFallback = false)
         }
 }
@@ -66,20 +66,28 @@ interface NewKotlinTypeChecker : KotlinTypeChecker {
     fun transformToNewType(type: UnwrappedType): UnwrappedType
 
     companion object {
-        val Default = NewKotlinTypeCheckerImpl(KotlinTypeRefiner.Default)
+        // Not bound to any resolution session, so supertypes are not cached
+        val Default = NewKotlinTypeCheckerImpl(KotlinTypeRefiner.Default, supertypesCache = null)
     }
 }
 
 
-class NewKotlinTypeCheckerImpl(override val kotlinTypeRefiner: KotlinTypeRefiner) : NewKotlinTypeChecker {
+class NewKotlinTypeCheckerImpl private constructor(
+    override val kotlinTypeRefiner: KotlinTypeRefiner,
+    val supertypesCache: TypeCheckerSupertypesCache?
+) : NewKotlinTypeChecker {
+    // An instance is created per resolution session, so it can cache supertypes of the classes seen in that session
+    constructor(kotlinTypeRefiner: KotlinTypeRefiner) : this(kotlinTypeRefiner, TypeCheckerSupertypesCache())
+
     override val overridingUtil: OverridingUtil = OverridingUtil.createWithTypeRefiner(kotlinTypeRefiner)
 
     override fun isSubtypeOf(subtype: KotlinType, supertype: KotlinType): Boolean =
-        ClassicTypeCheckerContext(true, kotlinTypeRefiner = kotlinTypeRefiner)
+        ClassicTypeCheckerContext(true, kotlinTypeRefiner = kotlinTypeRefiner, supertypesCache = supertypesCache)
             .isSubtypeOf(subtype.unwrap(), supertype.unwrap()) // todo fix flag errorTypeEqualsToAnything
 
     override fun equalTypes(a: KotlinType, b: KotlinType): Boolean =
-        ClassicTypeCheckerContext(false, kotlinTypeRefiner = kotlinTypeRefiner).equalTypes(a.unwrap(), b.unwrap())
+        ClassicTypeCheckerContext(false, kotlinTypeRefiner = kotlinTypeRefiner, supertypesCache = supertypesCache)
+            .equalTypes(a.unwrap(), b.unwrap())
 
     fun ClassicTypeCheckerContext.equalTypes(a: UnwrappedType, b: UnwrappedType): Boolean {
         return AbstractTypeChecker.equalTypes(this as AbstractTypeCheckerContext, a, b)
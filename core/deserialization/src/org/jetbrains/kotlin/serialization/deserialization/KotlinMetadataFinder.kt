@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.serialization.deserialization
 
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.serialization.deserialization.builtins.BuiltInsPackageData
 import java.io.InputStream
 
 interface KotlinMetadataFinder {
@@ -38,4 +39,11 @@ interface KotlinMetadataFinder {
      * @return an [InputStream] which should be used to load the .kotlin_builtins file for package with the given [packageFqName].
      */
     fun findBuiltInsData(packageFqName: FqName): InputStream?
+
+    /**
+     * @return the contents of the .kotlin_builtins file for package with the given [packageFqName].
+     * Finders may return data cached for files which can't change, e.g. files of the same jar read by another compilation.
+     */
+    fun findBuiltInsPackageData(packageFqName: FqName): BuiltInsPackageData? =
+        findBuiltInsData(packageFqName)?.let { BuiltInsPackageData.read(it) }
 }
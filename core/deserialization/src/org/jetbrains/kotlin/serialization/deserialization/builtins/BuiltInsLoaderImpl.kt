@@ -20,10 +20,14 @@ import org.jetbrains.kotlin.resolve.sam.SamConversionResolverImpl
 import org.jetbrains.kotlin.serialization.deserialization.*
 import org.jetbrains.kotlin.storage.StorageManager
 import java.io.InputStream
+import java.util.concurrent.ConcurrentHashMap
 
 class BuiltInsLoaderImpl : BuiltInsLoader {
     private val resourceLoader = BuiltInsResourceLoader()
 
+    // Resources of the class loader don't change, so they are read once for all built-ins modules created by this loader
+    private val packageDataCache = ConcurrentHashMap<FqName, BuiltInsPackageData>()
+
     override fun createPackageFragmentProvider(
         storageManager: StorageManager,
         builtInsModule: ModuleDescriptor,
@@ -32,16 +36,17 @@ class BuiltInsLoaderImpl : BuiltInsLoader {
         additionalClassPartsProvider: AdditionalClassPartsProvider,
         isFallback: Boolean
     ): PackageFragmentProvider {
-        return createBuiltInPackageFragmentProvider(
+        return createPackageFragmentProviderFromData(
             storageManager,
             builtInsModule,
             KotlinBuiltIns.BUILT_INS_PACKAGE_FQ_NAMES,
             classDescriptorFactories,
             platformDependentDeclarationFilter,
             additionalClassPartsProvider,
-            isFallback,
-            resourceLoader::loadResource
-        )
+            isFallback
+        ) { fqName ->
+            packageDataCache.getOrPut(fqName) { loadPackageData(fqName, resourceLoader::loadResource) }
+        }
     }
 
     fun createBuiltInPackageFragmentProvider(
@@ -53,11 +58,32 @@ class BuiltInsLoaderImpl : BuiltInsLoader {
         additionalClassPartsProvider: AdditionalClassPartsProvider = AdditionalClassPartsProvider.None,
         isFallback: Boolean,
         loadResource: (String) -> InputStream?
+    ): PackageFragmentProvider =
+        createPackageFragmentProviderFromData(
+            storageManager, module, packageFqNames, classDescriptorFactories, platformDependentDeclarationFilter,
+            additionalClassPartsProvider, isFallback
+        ) { fqName ->
+            loadPackageData(fqName, loadResource)
+        }
+
+    private fun loadPackageData(fqName: FqName, loadResource: (String) -> InputStream?): BuiltInsPackageData {
+        val resourcePath = BuiltInSerializerProtocol.getBuiltInsFilePath(fqName)
+        val inputStream = loadResource(resourcePath) ?: throw IllegalStateException("Resource not found in classpath: $resourcePath")
+        return BuiltInsPackageData.read(inputStream)
+    }
+
+    private fun createPackageFragmentProviderFromData(
+        storageManager: StorageManager,
+        module: ModuleDescriptor,
+        packageFqNames: Set<FqName>,
+        classDescriptorFactories: Iterable<ClassDescriptorFactory>,
+        platformDependentDeclarationFilter: PlatformDependentDeclarationFilter,
+        additionalClassPartsProvider: AdditionalClassPartsProvider,
+        isFallback: Boolean,
+        loadPackageData: (FqName) -> BuiltInsPackageData
     ): PackageFragmentProvider {
         val packageFragments = packageFqNames.map { fqName ->
-            val resourcePath = BuiltInSerializerProtocol.getBuiltInsFilePath(fqName)
-            val inputStream = loadResource(resourcePath) ?: throw IllegalStateException("Resource not found in classpath: $resourcePath")
-            BuiltInsPackageFragmentImpl.create(fqName, storageManager, module, inputStream, isFallback)
+            BuiltInsPackageFragmentImpl.create(fqName, storageManager, module, loadPackageData(fqName), isFallback)
         }
         val provider = PackageFragmentProviderImpl(packageFragments)
 
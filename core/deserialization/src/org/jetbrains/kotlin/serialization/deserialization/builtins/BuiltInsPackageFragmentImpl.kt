@@ -31,7 +31,27 @@ class BuiltInsPackageFragmentImpl private constructor(
             module: ModuleDescriptor,
             inputStream: InputStream,
             isFallback: Boolean
-        ): BuiltInsPackageFragmentImpl {
+        ): BuiltInsPackageFragmentImpl =
+            create(fqName, storageManager, module, BuiltInsPackageData.read(inputStream), isFallback)
+
+        fun create(
+            fqName: FqName,
+            storageManager: StorageManager,
+            module: ModuleDescriptor,
+            data: BuiltInsPackageData,
+            isFallback: Boolean
+        ): BuiltInsPackageFragmentImpl =
+            BuiltInsPackageFragmentImpl(fqName, storageManager, module, data.proto, data.version, isFallback)
+    }
+}
+
+/**
+ * Contents of a .kotlin_builtins file. The data is immutable, so it can be read once and shared by the package fragments
+ *   of all modules (and all compilations) which load the same file.
+ */
+class BuiltInsPackageData(val proto: ProtoBuf.PackageFragment, val version: BuiltInsBinaryVersion) {
+    companion object {
+        fun read(inputStream: InputStream): BuiltInsPackageData {
             lateinit var version: BuiltInsBinaryVersion
 
             val proto = inputStream.use { stream ->
@@ -49,7 +69,7 @@ class BuiltInsPackageFragmentImpl private constructor(
                 ProtoBuf.PackageFragment.parseFrom(stream, BuiltInSerializerProtocol.extensionRegistry)
             }
 
-            return BuiltInsPackageFragmentImpl(fqName, storageManager, module, proto, version, isFallback)
+            return BuiltInsPackageData(proto, version)
         }
     }
 }
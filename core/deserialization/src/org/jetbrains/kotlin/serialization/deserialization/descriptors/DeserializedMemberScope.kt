@@ -21,7 +21,6 @@ import org.jetbrains.kotlin.incremental.components.LookupLocation
 import org.jetbrains.kotlin.metadata.ProtoBuf
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.Name
-import org.jetbrains.kotlin.protobuf.AbstractMessageLite
 import org.jetbrains.kotlin.protobuf.MessageLite
 import org.jetbrains.kotlin.protobuf.Parser
 import org.jetbrains.kotlin.resolve.MemberComparator
@@ -35,6 +34,7 @@ import org.jetbrains.kotlin.utils.addIfNotNull
 import org.jetbrains.kotlin.utils.compact
 import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
+import java.io.InputStream
 import java.util.*
 
 abstract class DeserializedMemberScope protected constructor(
@@ -45,22 +45,27 @@ abstract class DeserializedMemberScope protected constructor(
     classNames: () -> Collection<Name>
 ) : MemberScopeImpl() {
 
-    private val functionProtosBytes = functionList.groupByName { it.name }.packToByteArray()
+    // The lazy values keep their computations, so the protos are held in these fields and released once the indices are built
+    private var functionProtos: Collection<ProtoBuf.Function>? = functionList
+    private var propertyProtos: Collection<ProtoBuf.Property>? = propertyList
+    private var typeAliasProtos: Collection<ProtoBuf.TypeAlias>? = typeAliasList
 
-    private val propertyProtosBytes = propertyList.groupByName { it.name }.packToByteArray()
+    private val functionIndex by c.storageManager.createLazyValue {
+        functionProtos!!.createNameIndex { it.name }.also { functionProtos = null }
+    }
 
-    private val typeAliasBytes =
-        if (c.components.configuration.typeAliasesAllowed)
-            typeAliasList.groupByName { it.name }.packToByteArray()
-        else
-            emptyMap()
+    private val propertyIndex by c.storageManager.createLazyValue {
+        propertyProtos!!.createNameIndex { it.name }.also { propertyProtos = null }
+    }
 
-    private fun Map<Name, Collection<AbstractMessageLite>>.packToByteArray(): Map<Name, ByteArray> =
-        mapValues { entry ->
-            val byteArrayOutputStream = ByteArrayOutputStream()
-            entry.value.map { proto -> proto.writeDelimitedTo(byteArrayOutputStream) }
-            byteArrayOutputStream.toByteArray()
-        }
+    private val typeAliasIndex by c.storageManager.createLazyValue {
+        val index = if (c.components.configuration.typeAliasesAllowed)
+            typeAliasProtos!!.createNameIndex { it.name }
+        else
+            ProtoNameIndex.EMPTY
+        typeAliasProtos = null
+        index
+    }
 
     private val functions =
         c.storageManager.createMemoizedFunction<Name, Collection<SimpleFunctionDescriptor>> { computeFunctions(it) }
@@ -70,14 +75,14 @@ abstract class DeserializedMemberScope protected constructor(
         c.storageManager.createMemoizedFunctionWithNullableValues<Name, TypeAliasDescriptor> { createTypeAlias(it) }
 
     private val functionNamesLazy by c.storageManager.createLazyValue {
-        functionProtosBytes.keys + getNonDeclaredFunctionNames()
+        functionIndex.names + getNonDeclaredFunctionNames()
     }
 
     private val variableNamesLazy by c.storageManager.createLazyValue {
-        propertyProtosBytes.keys + getNonDeclaredVariableNames()
+        propertyIndex.names + getNonDeclaredVariableNames()
     }
 
-    private val typeAliasNames: Set<Name> get() = typeAliasBytes.keys
+    private val typeAliasNames: Set<Name> get() = typeAliasIndex.names
 
     internal val classNames by c.storageManager.createLazyValue { classNames().toSet() }
 
@@ -89,14 +94,17 @@ abstract class DeserializedMemberScope protected constructor(
         return name !in functionNamesLazy && name !in variableNamesLazy && name !in classNames && name !in typeAliasNames
     }
 
-    private inline fun <M : MessageLite> Collection<M>.groupByName(
-        getNameIndex: (M) -> Int
-    ) = groupBy { c.nameResolver.getName(getNameIndex(it)) }
+    private inline fun <M : MessageLite> Collection<M>.createNameIndex(getNameIndex: (M) -> Int): ProtoNameIndex {
+        if (isEmpty()) return ProtoNameIndex.EMPTY
+        val protos = toList()
+        val names = Array(protos.size) { c.nameResolver.getName(getNameIndex(protos[it])) }
+        return ProtoNameIndex.create(protos, names)
+    }
 
     private fun computeFunctions(name: Name) =
         computeDescriptors(
             name,
-            functionProtosBytes,
+            functionIndex,
             ProtoBuf.Function.PARSER,
             { c.memberDeserializer.loadFunction(it) },
             { computeNonDeclaredFunctions(name, it) }
@@ -104,14 +112,13 @@ abstract class DeserializedMemberScope protected constructor(
 
     private inline fun <M : MessageLite, D : DeclarationDescriptor> computeDescriptors(
         name: Name,
-        bytesByName: Map<Name, ByteArray>,
+        index: ProtoNameIndex,
         parser: Parser<M>,
         factory: (M) -> D,
         computeNonDeclared: (MutableCollection<D>) -> Unit
     ): Collection<D> =
         computeDescriptors(
-            bytesByName[name]?.let {
-                val inputStream = ByteArrayInputStream(it)
+            index.getInputStream(name)?.let { inputStream ->
                 generateSequence {
                     parser.parseDelimitedFrom(inputStream, c.components.extensionRegistryLite)
                 }.toList()
@@ -142,7 +149,7 @@ abstract class DeserializedMemberScope protected constructor(
     private fun computeProperties(name: Name) =
         computeDescriptors(
             name,
-            propertyProtosBytes,
+            propertyIndex,
             ProtoBuf.Property.PARSER,
             { c.memberDeserializer.loadProperty(it) },
             { computeNonDeclaredProperties(name, it) }
@@ -152,11 +159,9 @@ abstract class DeserializedMemberScope protected constructor(
     }
 
     private fun createTypeAlias(name: Name): TypeAliasDescriptor? {
-        val byteArray = typeAliasBytes[name] ?: return null
+        val inputStream = typeAliasIndex.getInputStream(name) ?: return null
         val proto =
-            ProtoBuf.TypeAlias.parseDelimitedFrom(
-                ByteArrayInputStream(byteArray), c.components.extensionRegistryLite
-            ) ?: return null
+            ProtoBuf.TypeAlias.parseDelimitedFrom(inputStream, c.components.extensionRegistryLite) ?: return null
         return c.memberDeserializer.loadTypeAlias(proto)
     }
 
@@ -269,3 +274,73 @@ abstract class DeserializedMemberScope protected constructor(
         p.println("}")
     }
 }
+
+/**
+ * Serialized protos of one kind of members of a [DeserializedMemberScope], grouped by name.
+ *
+ * Groups are sorted by the hash code of the name, so that a group is found with a binary search over [sortedHashes]
+ *   instead of a hash map lookup. Protos of the same name keep their declaration order.
+ * All protos are written into the single [bytes] array, group `i` occupies the range from `offsets[i]` to `offsets[i + 1]`.
+ */
+private class ProtoNameIndex(
+    val names: Set<Name>,
+    private val sortedHashes: IntArray,
+    private val sortedNames: Array<Name>,
+    private val offsets: IntArray,
+    private val bytes: ByteArray
+) {
+    fun getInputStream(name: Name): InputStream? {
+        val group = findGroup(name)
+        if (group < 0) return null
+        return ByteArrayInputStream(bytes, offsets[group], offsets[group + 1] - offsets[group])
+    }
+
+    private fun findGroup(name: Name): Int {
+        val hash = name.hashCode()
+        var low = 0
+        var high = sortedHashes.size
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            if (sortedHashes[middle] < hash) low = middle + 1 else high = middle
+        }
+        var group = low
+        while (group < sortedHashes.size && sortedHashes[group] == hash) {
+            if (sortedNames[group] == name) return group
+            group++
+        }
+        return -1
+    }
+
+    companion object {
+        val EMPTY = ProtoNameIndex(emptySet(), IntArray(0), emptyArray(), IntArray(1), ByteArray(0))
+
+        fun create(protos: List<MessageLite>, names: Array<Name>): ProtoNameIndex {
+            val order = protos.indices.sortedWith(
+                compareBy<Int> { names[it].hashCode() }.thenBy { names[it] }.thenBy { it }
+            )
+
+            val groupNames = ArrayList<Name>()
+            val groupHashes = ArrayList<Int>()
+            val groupOffsets = ArrayList<Int>()
+            val output = ByteArrayOutputStream()
+            for (protoIndex in order) {
+                val name = names[protoIndex]
+                if (groupNames.isEmpty() || groupNames.last() != name) {
+                    groupNames.add(name)
+                    groupHashes.add(name.hashCode())
+                    groupOffsets.add(output.size())
+                }
+                protos[protoIndex].writeDelimitedTo(output)
+            }
+            groupOffsets.add(output.size())
+
+            return ProtoNameIndex(
+                names.toCollection(LinkedHashSet()),
+                groupHashes.toIntArray(),
+                groupNames.toTypedArray(),
+                groupOffsets.toIntArray(),
+                output.toByteArray()
+            )
+        }
+    }
+}
@@ -112,68 +112,102 @@ internal abstract class KCallableImpl<out R> : KCallable<R> {
         return if (isAnnotationConstructor) callAnnotationConstructor(args) else callDefaultMethod(args, null)
     }
 
+    /**
+     * Describes how to fill the arguments of parameters which are absent in [callBy], computed once per callable.
+     * For each parameter, [absentParameterKinds] contains either the index of the bit in the default mask (for optional parameters),
+     * or one of [ABSENT_VARARG] and [ABSENT_REQUIRED].
+     */
+    private class CallByPlan(val parameters: List<KParameter>, val absentParameterKinds: IntArray, val maskCount: Int) {
+        // Arguments passed for absent parameters, computed on the first call where the parameter is absent
+        val absentArguments = arrayOfNulls<Any?>(parameters.size).apply { fill(NOT_COMPUTED) }
+    }
+
+    private val _callByPlan = ReflectProperties.lazySoft {
+        val parameters = parameters
+        val absentParameterKinds = IntArray(parameters.size)
+        var valueParameterIndex = 0
+        for ((i, parameter) in parameters.withIndex()) {
+            absentParameterKinds[i] = when {
+                parameter.isOptional -> valueParameterIndex
+                parameter.isVararg -> ABSENT_VARARG
+                else -> ABSENT_REQUIRED
+            }
+            if (parameter.kind == KParameter.Kind.VALUE) {
+                valueParameterIndex++
+            }
+        }
+        CallByPlan(parameters, absentParameterKinds, maxOf((valueParameterIndex + Integer.SIZE - 1) / Integer.SIZE, 1))
+    }
+
     // See ArgumentGenerator#generate
     internal fun callDefaultMethod(args: Map<KParameter, Any?>, continuationArgument: Continuation<*>?): R {
-        val parameters = parameters
-        val arguments = ArrayList<Any?>(parameters.size)
-        var mask = 0
-        val masks = ArrayList<Int>(1)
-        var index = 0
-        var anyOptional = false
+        val plan = _callByPlan()
+        val parameters = plan.parameters
+        val argumentCount = if (continuationArgument != null) parameters.size + 1 else parameters.size
+        var arguments = arrayOfNulls<Any?>(argumentCount)
+        var masks: IntArray? = null
+
+        for (i in parameters.indices) {
+            val parameter = parameters[i]
+            val value = args[parameter]
+            if (value != null || args.containsKey(parameter)) {
+                arguments[i] = value
+                continue
+            }
 
-        for (parameter in parameters) {
-            if (index != 0 && index % Integer.SIZE == 0) {
-                masks.add(mask)
-                mask = 0
+            val absentKind = plan.absentParameterKinds[i]
+            if (absentKind == ABSENT_REQUIRED) {
+                throw IllegalArgumentException("No argument provided for a required parameter: $parameter")
             }
 
-            when {
-                args.containsKey(parameter) -> {
-                    arguments.add(args[parameter])
-                }
-                parameter.isOptional -> {
-                    // For inline class types, the javaType refers to the underlying type of the inline class,
-                    // but we have to pass null in order to mark the argument as absent for InlineClassAwareCaller.
-                    arguments.add(if (parameter.type.isInlineClassType) null else defaultPrimitiveValue(parameter.type.javaType))
-                    mask = mask or (1 shl (index % Integer.SIZE))
-                    anyOptional = true
-                }
-                parameter.isVararg -> {
-                    arguments.add(defaultEmptyArray(parameter.type))
-                }
-                else -> {
-                    throw IllegalArgumentException("No argument provided for a required parameter: $parameter")
-                }
+            var absentArgument = plan.absentArguments[i]
+            if (absentArgument === NOT_COMPUTED) {
+                absentArgument = computeAbsentArgument(parameter, absentKind)
+                plan.absentArguments[i] = absentArgument
             }
+            arguments[i] = absentArgument
 
-            if (parameter.kind == KParameter.Kind.VALUE) {
-                index++
+            if (absentKind >= 0) {
+                if (masks == null) masks = IntArray(plan.maskCount)
+                masks[absentKind / Integer.SIZE] = masks[absentKind / Integer.SIZE] or (1 shl (absentKind % Integer.SIZE))
             }
         }
 
         if (continuationArgument != null) {
-            arguments.add(continuationArgument)
+            arguments[parameters.size] = continuationArgument
         }
 
-        if (!anyOptional) {
-            return call(*arguments.toTypedArray())
+        if (masks == null) {
+            @Suppress("UNCHECKED_CAST")
+            return reflectionCall {
+                caller.call(arguments) as R
+            }
         }
 
-        masks.add(mask)
-
         val caller = defaultCaller ?: throw KotlinReflectionInternalError("This callable does not support a default call: $descriptor")
 
-        arguments.addAll(masks)
-
-        // DefaultConstructorMarker or MethodHandle
-        arguments.add(null)
+        // The last argument is DefaultConstructorMarker or MethodHandle, which is always null
+        arguments = arguments.copyOf(argumentCount + masks.size + 1)
+        for (i in masks.indices) {
+            arguments[argumentCount + i] = masks[i]
+        }
 
         @Suppress("UNCHECKED_CAST")
         return reflectionCall {
-            caller.call(arguments.toTypedArray()) as R
+            caller.call(arguments) as R
         }
     }
 
+    // Absent arguments are shared between calls, which is fine since default vararg arrays are empty
+    private fun computeAbsentArgument(parameter: KParameter, absentKind: Int): Any? =
+        when {
+            absentKind == ABSENT_VARARG -> defaultEmptyArray(parameter.type)
+            // For inline class types, the javaType refers to the underlying type of the inline class,
+            // but we have to pass null in order to mark the argument as absent for InlineClassAwareCaller.
+            parameter.type.isInlineClassType -> null
+            else -> defaultPrimitiveValue(parameter.type.javaType)
+        }
+
     private fun callAnnotationConstructor(args: Map<KParameter, Any?>): R {
         val arguments = parameters.map { parameter ->
             when {
@@ -216,4 +250,11 @@ internal abstract class KCallableImpl<out R> : KCallable<R> {
 
         return null
     }
+
+    private companion object {
+        const val ABSENT_VARARG = -1
+        const val ABSENT_REQUIRED = -2
+
+        val NOT_COMPUTED = Any()
+    }
 }
@@ -100,6 +100,18 @@ internal sealed class CallerImpl<out M : Member>(
             return if (isVoidMethod) Unit else result
         }
 
+        // Same as `callMethod(instance, args.dropFirst())`, but without copying the arguments twice for the most common arities
+        protected fun callMethodWithoutFirstArgument(instance: Any?, args: Array<*>): Any? {
+            val result = when (args.size) {
+                1 -> member.invoke(instance)
+                2 -> member.invoke(instance, args[1])
+                3 -> member.invoke(instance, args[1], args[2])
+                else -> member.invoke(instance, *args.dropFirst())
+            }
+
+            return if (isVoidMethod) Unit else result
+        }
+
         class Static(method: ReflectMethod) : Method(method) {
             override fun call(args: Array<*>): Any? {
                 checkArguments(args)
@@ -110,7 +122,7 @@ internal sealed class CallerImpl<out M : Member>(
         class Instance(method: ReflectMethod) : Method(method) {
             override fun call(args: Array<*>): Any? {
                 checkArguments(args)
-                return callMethod(args[0], args.dropFirst())
+                return callMethodWithoutFirstArgument(args[0], args)
             }
         }
 
@@ -118,7 +130,7 @@ internal sealed class CallerImpl<out M : Member>(
             override fun call(args: Array<*>): Any? {
                 checkArguments(args)
                 checkObjectInstance(args.firstOrNull())
-                return callMethod(null, args.dropFirst())
+                return callMethodWithoutFirstArgument(null, args)
             }
         }
 
@@ -60,6 +60,13 @@ abstract class AbstractTypeCheckerContext : TypeSystemContext {
         SKIP_LOWER
     }
 
+    /**
+     * Cache of supertypes of class types without arguments shared between checks, or null if supertypes should not be cached.
+     * Only contexts whose type constructors have stable supertypes may return a cache here
+     */
+    open val supertypesCache: TypeCheckerSupertypesCache?
+        get() = null
+
     private var supertypesLocked = false
 
     var supertypesDeque: ArrayDeque<SimpleTypeMarker>? = null
@@ -412,9 +419,21 @@ object AbstractTypeChecker {
                 emptyList()
         }
 
+        // Supertypes of a class type without arguments are the same for all types with its type constructor
+        val cache = supertypesCache?.takeIf {
+            subType.argumentsCount() == 0 && subType.isClassType() && superConstructor.isClassTypeConstructor() &&
+                    !areEqualTypeConstructors(subType.typeConstructor(), superConstructor)
+        }
+        cache?.get(subType.typeConstructor(), superConstructor)?.let { return it }
+
         val result: MutableList<SimpleTypeMarker> = SmartList()
+        // Error types may be a result of a loop in supertypes detected during their computation, so the result is not cached
+        var anyErrorSupertype = false
 
         anySupertype(subType, { false }) {
+            if (it.isError()) {
+                anyErrorSupertype = true
+            }
 
             val current = captureFromArguments(it, CaptureStatus.FOR_SUBTYPING) ?: it
 
@@ -432,6 +451,10 @@ object AbstractTypeChecker {
             }
         }
 
+        if (cache != null && !anyErrorSupertype) {
+            cache.put(subType.typeConstructor(), superConstructor, result)
+        }
+
         return result
     }
 
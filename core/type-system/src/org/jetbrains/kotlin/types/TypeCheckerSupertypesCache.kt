@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.types
+
+import org.jetbrains.kotlin.types.model.SimpleTypeMarker
+import org.jetbrains.kotlin.types.model.TypeConstructorMarker
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Bounded cache of supertypes with a given type constructor for class types without arguments.
+ *
+ * For such types the supertypes found by [AbstractTypeChecker] depend only on the pair of type constructors,
+ *   so they can be shared between all type checker contexts which return this cache from
+ *   [AbstractTypeCheckerContext.supertypesCache]. The owner of the cache must ensure that supertypes of
+ *   the type constructors do not change while the cache is in use, e.g. by creating one cache per resolution session.
+ *
+ * A resolution session is used by several threads in the IDE, so lookups don't take any lock. When the cache grows over [maxSize],
+ *   the least recently used entries are evicted in one go by the thread which has added the last entry, so [size] may exceed
+ *   [maxSize] only while other threads add entries concurrently.
+ */
+class TypeCheckerSupertypesCache(private val maxSize: Int = DEFAULT_MAX_SIZE) {
+    private class Key(val subConstructor: TypeConstructorMarker, val superConstructor: TypeConstructorMarker) {
+        override fun equals(other: Any?): Boolean =
+            other is Key && subConstructor == other.subConstructor && superConstructor == other.superConstructor
+
+        override fun hashCode(): Int = subConstructor.hashCode() * 31 + superConstructor.hashCode()
+    }
+
+    private class Entry(val supertypes: List<SimpleTypeMarker>, @Volatile var lastAccess: Long)
+
+    private val cache = ConcurrentHashMap<Key, Entry>()
+    private val clock = AtomicLong()
+    private val evicting = AtomicBoolean()
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    val hitCount: Long get() = hits.get()
+    val missCount: Long get() = misses.get()
+
+    val size: Int get() = cache.size
+
+    fun get(subConstructor: TypeConstructorMarker, superConstructor: TypeConstructorMarker): List<SimpleTypeMarker>? {
+        val entry = cache[Key(subConstructor, superConstructor)]
+        if (entry == null) {
+            misses.incrementAndGet()
+            return null
+        }
+        hits.incrementAndGet()
+        entry.lastAccess = clock.incrementAndGet()
+        return entry.supertypes
+    }
+
+    fun put(subConstructor: TypeConstructorMarker, superConstructor: TypeConstructorMarker, supertypes: List<SimpleTypeMarker>) {
+        cache[Key(subConstructor, superConstructor)] = Entry(supertypes, clock.incrementAndGet())
+        if (cache.size > maxSize) {
+            evictLeastRecentlyUsed()
+        }
+    }
+
+    // Evicts down to a fraction of maxSize, so that sorting the entries is amortized over many insertions
+    private fun evictLeastRecentlyUsed() {
+        if (!evicting.compareAndSet(false, true)) return
+        try {
+            val excess = cache.size - maxSize * EVICTION_TARGET_PERCENT / 100
+            if (excess <= 0) return
+            for ((key, _) in cache.entries.sortedBy { it.value.lastAccess }.take(excess)) {
+                cache.remove(key)
+            }
+        } finally {
+            evicting.set(false)
+        }
+    }
+
+    fun clear() {
+        cache.clear()
+        hits.set(0)
+        misses.set(0)
+    }
+
+    override fun toString(): String = "TypeCheckerSupertypesCache(size = $size, hits = $hitCount, misses = $missCount)"
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 10000
+
+        private const val EVICTION_TARGET_PERCENT = 75
+    }
+}
@@ -15,6 +15,7 @@ import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.ModificationTracker
 import com.intellij.psi.PsiElement
 import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.util.containers.ContainerUtil
 import org.jetbrains.kotlin.analyzer.AnalysisResult
 import org.jetbrains.kotlin.container.ComponentProvider
 import org.jetbrains.kotlin.container.get
@@ -45,6 +46,7 @@ import org.jetbrains.kotlin.util.slicedMap.ReadOnlySlice
 import org.jetbrains.kotlin.util.slicedMap.WritableSlice
 import org.jetbrains.kotlin.utils.checkWithAttachment
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.locks.ReentrantLock
 
 internal class PerFileAnalysisCache(val file: KtFile, componentProvider: ComponentProvider) {
@@ -54,10 +56,20 @@ internal class PerFileAnalysisCache(val file: KtFile, componentProvider: Compone
     private val codeFragmentAnalyzer = componentProvider.get<CodeFragmentAnalyzer>()
     private val bodyResolveCache = componentProvider.get<BodyResolveCache>()
 
-    private val cache = HashMap<PsiElement, AnalysisResult>()
+    // Results are published without locks, so that read actions on already analyzed declarations do not block each other.
+    // The file lock guards incremental analysis of in-block modifications, which updates the result for the whole file,
+    // and nested analysis. Different declarations are analyzed concurrently, each under its own lock
+    private val cache = ConcurrentHashMap<PsiElement, AnalysisResult>()
+    @Volatile
     private var fileResult: AnalysisResult? = null
-    private val lock = ReentrantLock()
-    private val guardLock = CancellableSimpleLock(lock) {
+    private val fileLock = ReentrantLock()
+    private val guardLock = createLock(fileLock)
+    // A lock stays in the map while its declaration is alive: were it removed after the analysis, a thread coming later would
+    //   create another lock for the same declaration, and could analyze it concurrently with a thread still waiting for the old one
+    private val declarationLocks = ContainerUtil.createConcurrentWeakMap<PsiElement, CancellableSimpleLock>()
+    private val analyzingDeclaration = ThreadLocal<Boolean>()
+
+    private fun createLock(lock: ReentrantLock = ReentrantLock()) = CancellableSimpleLock(lock) {
         ProgressIndicatorProvider.checkCanceled()
     }
 
@@ -74,16 +86,8 @@ internal class PerFileAnalysisCache(val file: KtFile, componentProvider: Compone
     internal fun fetchAnalysisResults(element: KtElement): AnalysisResult? {
         check(element)
 
-        if (lock.tryLock()) {
-            try {
-                updateFileResultFromCache()
-
-                return fileResult?.takeIf { file.inBlockModifications.isEmpty() }
-            } finally {
-                lock.unlock()
-            }
-        }
-        return null
+        val result = fileResult ?: cache[file]
+        return result?.takeIf { file.inBlockModifications.isEmpty() }
     }
 
     internal fun getAnalysisResults(element: KtElement): AnalysisResult {
@@ -91,26 +95,58 @@ internal class PerFileAnalysisCache(val file: KtFile, componentProvider: Compone
 
         val analyzableParent = KotlinResolveDataProvider.findAnalyzableParent(element) ?: return AnalysisResult.EMPTY
 
-        return guardLock.guarded {
-            // step 1: perform incremental analysis IF it is applicable
-            getIncrementalAnalysisResult()?.let { return@guarded it }
+        // step 0: return a published result for the file or for one of the parents without taking any lock
+        lookUpPublished(analyzableParent)?.let { return it }
+
+        // Analysis of a declaration may need results for other declarations of this file. Waiting for their locks could deadlock
+        //   with a thread which analyzes them and needs this declaration, so a thread which already holds a lock of this file
+        //   analyzes under the file lock only. Declaration locks are never taken while any lock of this file is held
+        if (fileLock.isHeldByCurrentThread || analyzingDeclaration.get() == true) {
+            return guardLock.guarded {
+                getIncrementalAnalysisResult()
+                    ?: lookUp(analyzableParent)
+                    ?: analyze(analyzableParent).also { cache[analyzableParent] = it }
+            }
+        }
 
+        // step 1: perform incremental analysis IF it is applicable
+        guardLock.guarded { getIncrementalAnalysisResult() }?.let { return it }
+
+        val declarationLock = declarationLocks.getOrPut(analyzableParent) { createLock() }
+        return declarationLock.guarded {
             // cache does not contain AnalysisResult per each kt/psi element
             // instead it looks up analysis for its parents - see lookUp(analyzableElement)
 
-            // step 2: return result if it is cached
+            // step 2: return result if it is cached, threads which waited for this lock find the result of the first one here
             lookUp(analyzableParent)?.let {
                 return@guarded it
             }
 
             // step 3: perform analyze of analyzableParent as nothing has been cached yet
-            val result = analyze(analyzableParent)
+            analyzingDeclaration.set(true)
+            val result = try {
+                analyze(analyzableParent)
+            } finally {
+                analyzingDeclaration.remove()
+            }
             cache[analyzableParent] = result
 
             return@guarded result
         }
     }
 
+    private fun lookUpPublished(analyzableElement: KtElement): AnalysisResult? {
+        if (file.inBlockModifications.isNotEmpty()) return null
+
+        fileResult?.let { return it }
+
+        var result: AnalysisResult? = null
+        for (current in analyzableElement.parentsWithSelf) {
+            cache[current]?.let { result = it }
+        }
+        return result
+    }
+
     private fun getIncrementalAnalysisResult(): AnalysisResult? {
         updateFileResultFromCache()
 
@@ -44,6 +44,8 @@ open class KotlinClsStubBuilder : ClsStubBuilder() {
             return null
         }
 
+        PrebuiltKotlinStubs.findStub(virtualFile, stubVersion)?.let { return it.stub }
+
         return doBuildFileStub(virtualFile, content.content)
     }
 
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.idea.decompiler.classFile
+
+import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.stubs.*
+import com.intellij.psi.tree.IElementType
+import com.intellij.util.indexing.FileContentImpl
+import com.intellij.util.io.AbstractStringEnumerator
+import org.jetbrains.kotlin.idea.caches.IDEKotlinBinaryClassCache
+import java.io.*
+import java.lang.ref.SoftReference
+import java.security.MessageDigest
+
+/**
+ * Stubs of the Kotlin class files of a library jar, built in advance and shipped next to the jar as `<jar>.kotlin-stubs`.
+ *
+ * When such a file exists and was built for a jar with the same content hash, [KotlinClsStubBuilder] reads the stubs of the jar
+ *   from it instead of decompiling the metadata of each class file. The stub indexes are then filled from these stubs as usual.
+ *
+ * The format does not depend on the IDE installation: stub serializers are referenced by their external ids,
+ *   and names are stored in a string table of the file itself.
+ */
+object PrebuiltKotlinStubs {
+    const val FILE_EXTENSION = "kotlin-stubs"
+
+    private const val MAGIC = 0x4B53544B // "KSTK"
+    private const val FORMAT_VERSION = 1
+    private const val NO_STUB = -1
+    private const val MAX_CACHED_JARS = 1000
+
+    private val LOG = Logger.getInstance(PrebuiltKotlinStubs::class.java)
+
+    class PrebuiltStub(val stub: PsiFileStub<*>?)
+
+    private data class JarKey(val jarPath: String, val length: Long, val lastModified: Long, val stubVersion: Int)
+
+    private class LoadedStubs(
+        val serializers: List<ObjectStubSerializer<*, *>>,
+        val strings: ReadOnlyStringTable,
+        val stubs: Map<String, ByteArray?>
+    )
+
+    // Jars without prebuilt stubs are cached as NOT_AVAILABLE, loaded stubs are softly referenced
+    private val loadedStubs = object : LinkedHashMap<JarKey, Any>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<JarKey, Any>) = size > MAX_CACHED_JARS
+    }
+    private val NOT_AVAILABLE = Any()
+
+    private val serializersByExternalId: Map<String, ObjectStubSerializer<*, *>> by lazy {
+        IElementType.enumerate { it is ObjectStubSerializer<*, *> }
+            .map { it as ObjectStubSerializer<*, *> }
+            .associateBy { it.externalId }
+    }
+
+    fun stubsFileFor(jar: File): File = File(jar.path + "." + FILE_EXTENSION)
+
+    /**
+     * Returns the prebuilt stub for the class [file] in a jar, or null if the jar has no prebuilt stubs or they are out of date.
+     */
+    fun findStub(file: VirtualFile, stubVersion: Int): PrebuiltStub? {
+        if (file.fileSystem.protocol != StandardFileSystems.JAR_PROTOCOL) return null
+        val path = file.path
+        val separator = path.indexOf(StandardFileSystems.JAR_SEPARATOR)
+        if (separator < 0) return null
+
+        val loaded = loadedStubs(File(path.substring(0, separator)), stubVersion) ?: return null
+
+        val entryPath = path.substring(separator + StandardFileSystems.JAR_SEPARATOR.length)
+        if (!loaded.stubs.containsKey(entryPath)) return null
+        val bytes = loaded.stubs[entryPath] ?: return PrebuiltStub(null)
+
+        return try {
+            PrebuiltStub(readStub(bytes, loaded))
+        } catch (e: IOException) {
+            LOG.warn("Could not read prebuilt stub for $path", e)
+            null
+        }
+    }
+
+    /**
+     * Builds stubs of all Kotlin class files under [jarRoot] and writes them to [output], to be shipped next to [jar].
+     */
+    fun write(
+        jarRoot: VirtualFile,
+        jar: File,
+        output: File,
+        stubBuilder: KotlinClsStubBuilder = KotlinClsStubBuilder(),
+        entryFilter: (String) -> Boolean = { true }
+    ) {
+        val strings = StringTable()
+        val serializers = LinkedHashMap<ObjectStubSerializer<*, *>, Int>()
+        val stubs = LinkedHashMap<String, ByteArray?>()
+
+        VfsUtilCore.iterateChildrenRecursively(jarRoot, null) { file ->
+            val entryPath = VfsUtilCore.getRelativePath(file, jarRoot)
+            if (!file.isDirectory && entryPath != null && entryFilter(entryPath) &&
+                IDEKotlinBinaryClassCache.getInstance().isKotlinJvmCompiledFile(file)
+            ) {
+                val stub = stubBuilder.buildFileStub(FileContentImpl.createByFile(file))
+                stubs[entryPath] = stub?.let { writeStub(it, serializers, strings) }
+            }
+            true
+        }
+
+        DataOutputStream(BufferedOutputStream(FileOutputStream(output))).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(FORMAT_VERSION)
+            out.writeInt(stubBuilder.stubVersion)
+            out.writeUTF(contentHash(jar))
+
+            out.writeInt(serializers.size)
+            for (serializer in serializers.keys) {
+                out.writeUTF(serializer.externalId)
+            }
+
+            out.writeInt(strings.values.size)
+            for (string in strings.values) {
+                out.writeUTF(string)
+            }
+
+            out.writeInt(stubs.size)
+            for ((entryPath, bytes) in stubs) {
+                out.writeUTF(entryPath)
+                if (bytes == null) {
+                    out.writeInt(NO_STUB)
+                } else {
+                    out.writeInt(bytes.size)
+                    out.write(bytes)
+                }
+            }
+        }
+
+        synchronized(loadedStubs) {
+            loadedStubs.keys.removeAll { it.jarPath == jar.path }
+        }
+    }
+
+    private fun loadedStubs(jar: File, stubVersion: Int): LoadedStubs? {
+        val key = JarKey(jar.path, jar.length(), jar.lastModified(), stubVersion)
+        synchronized(loadedStubs) {
+            val cached = loadedStubs[key]
+            if (cached === NOT_AVAILABLE) return null
+            ((cached as? SoftReference<*>)?.get() as LoadedStubs?)?.let { return it }
+        }
+
+        // The stubs file is read and the jar is hashed without the lock, a concurrent load of the same jar is harmless
+        val loaded = load(jar, stubVersion)
+        synchronized(loadedStubs) {
+            // Entries for an older stamp of the jar or another stub version are never looked up again
+            loadedStubs.keys.removeAll { it.jarPath == jar.path }
+            loadedStubs[key] = if (loaded != null) SoftReference(loaded) else NOT_AVAILABLE
+        }
+        return loaded
+    }
+
+    private fun load(jar: File, stubVersion: Int): LoadedStubs? {
+        val stubsFile = stubsFileFor(jar)
+        if (!stubsFile.isFile) return null
+
+        return try {
+            DataInputStream(BufferedInputStream(FileInputStream(stubsFile))).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || input.readInt() != stubVersion) return null
+                if (input.readUTF() != contentHash(jar)) return null
+
+                val serializers = List(input.readInt()) {
+                    val externalId = input.readUTF()
+                    serializersByExternalId[externalId] ?: return null
+                }
+                val strings = ReadOnlyStringTable(Array(input.readInt()) { input.readUTF() })
+                val stubs = HashMap<String, ByteArray?>()
+                repeat(input.readInt()) {
+                    val entryPath = input.readUTF()
+                    val size = input.readInt()
+                    stubs[entryPath] = if (size == NO_STUB) null else ByteArray(size).also { input.readFully(it) }
+                }
+                LoadedStubs(serializers, strings, stubs)
+            }
+        } catch (e: IOException) {
+            LOG.warn("Could not read prebuilt stubs from $stubsFile", e)
+            null
+        }
+    }
+
+    private fun writeStub(stub: StubElement<*>, serializers: MutableMap<ObjectStubSerializer<*, *>, Int>, strings: StringTable): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        val out = StubOutputStream(bytes, strings)
+
+        fun write(stub: StubElement<*>) {
+            val serializer = stub.serializer()
+            out.writeVarInt(serializers.getOrPut(serializer) { serializers.size })
+            serializer.serialize(stub, out)
+
+            val children = stub.childrenStubs
+            out.writeVarInt(children.size)
+            for (child in children) {
+                write(child)
+            }
+        }
+
+        write(stub)
+        out.flush()
+        return bytes.toByteArray()
+    }
+
+    private fun readStub(bytes: ByteArray, loaded: LoadedStubs): PsiFileStub<*>? {
+        val input = StubInputStream(ByteArrayInputStream(bytes), loaded.strings)
+
+        fun read(parent: StubElement<*>?): StubElement<*> {
+            @Suppress("UNCHECKED_CAST")
+            val serializer = loaded.serializers[input.readVarInt()] as ObjectStubSerializer<StubElement<*>, StubElement<*>?>
+            val stub = serializer.deserialize(input, parent)
+            repeat(input.readVarInt()) {
+                read(stub)
+            }
+            return stub
+        }
+
+        return read(null) as? PsiFileStub<*>
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun StubElement<*>.serializer(): ObjectStubSerializer<StubElement<*>, StubElement<*>?> =
+        (if (this is PsiFileStub<*>) type else stubType) as ObjectStubSerializer<StubElement<*>, StubElement<*>?>
+
+    private fun contentHash(jar: File): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        FileInputStream(jar).use { input ->
+            val buffer = ByteArray(64 * 1024)
+            while (true) {
+                val read = input.read(buffer)
+                if (read < 0) break
+                digest.update(buffer, 0, read)
+            }
+        }
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+
+    /**
+     * Names written by stub serializers. The id 0 is reserved for null.
+     */
+    private class StringTable : AbstractStringEnumerator {
+        val values = ArrayList<String>()
+        private val ids = HashMap<String, Int>()
+
+        override fun enumerate(value: String?): Int {
+            if (value == null) return 0
+            return ids.getOrPut(value) {
+                values.add(value)
+                values.size
+            }
+        }
+
+        override fun valueOf(id: Int): String? = if (id == 0) null else values[id - 1]
+
+        override fun markCorrupted() {}
+
+        override fun isDirty(): Boolean = false
+
+        override fun force() {}
+
+        override fun close() {}
+    }
+
+    /**
+     * Names of a loaded stubs file, shared by all stubs read from it. The ids are the ones of [StringTable].
+     */
+    private class ReadOnlyStringTable(private val values: Array<String>) : AbstractStringEnumerator {
+        override fun enumerate(value: String?): Int = throw UnsupportedOperationException("Prebuilt stubs are read-only")
+
+        override fun valueOf(id: Int): String? = if (id == 0) null else values[id - 1]
+
+        override fun markCorrupted() {}
+
+        override fun isDirty(): Boolean = false
+
+        override fun force() {}
+
+        override fun close() {}
+    }
+}
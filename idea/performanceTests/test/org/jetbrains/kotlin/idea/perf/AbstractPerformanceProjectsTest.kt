@@ -28,6 +28,8 @@ import com.intellij.profile.codeInspection.ProjectInspectionProfileManager
 import com.intellij.psi.PsiDocumentManager
 import com.intellij.psi.PsiFile
 import com.intellij.psi.PsiManager
+import com.intellij.psi.impl.PsiModificationTrackerImpl
+import com.intellij.psi.util.PsiModificationTracker
 import com.intellij.testFramework.*
 import com.intellij.testFramework.fixtures.impl.CodeInsightTestFixtureImpl
 import com.intellij.util.ArrayUtilRt
@@ -624,8 +626,9 @@ abstract class AbstractPerformanceProjectsTest : UsefulTestCase() {
         name: String,
         stats: Stats,
         tools: Array<InspectionProfileEntry>? = null,
-        note: String = ""
-    ): List<HighlightInfo> = perfHighlightFile(project(), name, stats, tools = tools, note = note)
+        note: String = "",
+        resetResolveCaches: Boolean = false
+    ): List<HighlightInfo> = perfHighlightFile(project(), name, stats, tools = tools, note = note, resetResolveCaches = resetResolveCaches)
 
     protected fun perfHighlightFileEmptyProfile(name: String, stats: Stats): List<HighlightInfo> =
         perfHighlightFile(project(), name, stats, tools = emptyArray(), note = "empty profile")
@@ -635,7 +638,8 @@ abstract class AbstractPerformanceProjectsTest : UsefulTestCase() {
         fileName: String,
         stats: Stats,
         tools: Array<InspectionProfileEntry>? = null,
-        note: String = ""
+        note: String = "",
+        resetResolveCaches: Boolean = false
     ): List<HighlightInfo> {
         val profileManager = ProjectInspectionProfileManager.getInstance(project)
         val currentProfile = profileManager.currentProfile
@@ -652,6 +656,11 @@ abstract class AbstractPerformanceProjectsTest : UsefulTestCase() {
                     warmUpIterations(if (isWarmUp) 1 else 3)
                     iterations(if (isWarmUp) 2 else 10)
                     setUp {
+                        if (resetResolveCaches) {
+                            // out-of-block modification drops all resolve caches of the project
+                            (PsiModificationTracker.SERVICE.getInstance(project) as PsiModificationTrackerImpl)
+                                .incOutOfCodeBlockModificationCounter()
+                        }
                         it.setUpValue = openFileInEditor(project, fileName)
                     }
                     test {
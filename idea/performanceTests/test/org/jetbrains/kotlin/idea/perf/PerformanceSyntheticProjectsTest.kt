@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.idea.perf
+
+import com.intellij.find.FindManager
+import com.intellij.find.impl.FindManagerImpl
+import com.intellij.openapi.application.runReadAction
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.usageView.UsageInfo
+import com.intellij.util.CommonProcessors
+import org.jetbrains.kotlin.idea.perf.Stats.Companion.tcSuite
+import org.jetbrains.kotlin.idea.testFramework.EditorFile
+import org.jetbrains.kotlin.idea.testFramework.Fixture.Companion.close
+import org.jetbrains.kotlin.idea.testFramework.Fixture.Companion.openFileInEditor
+import org.jetbrains.kotlin.psi.KtNamedFunction
+import org.jetbrains.kotlin.psi.psiUtil.getStrictParentOfType
+
+/**
+ * Highlighting, completion and find usages in generated projects of 1k and 10k files.
+ *
+ * Every file declares a service which uses the service of the previous file and the shared `Shared.value`,
+ *   so highlighting has to resolve declarations of other files and `Shared.value` has two usages in every file.
+ */
+class PerformanceSyntheticProjectsTest : AbstractPerformanceProjectsTest() {
+
+    companion object {
+
+        @JvmStatic
+        var warmedUp: Boolean = false
+
+        @JvmStatic
+        val warmUpStats: Stats = Stats("synthetic warm-up project")
+
+        init {
+            // there is no @AfterClass for junit3.8
+            Runtime.getRuntime().addShutdownHook(Thread { warmUpStats.close() })
+        }
+
+        private const val SHARED_PACKAGE = "synthetic.shared"
+        private const val FILES_PER_PACKAGE = 100
+    }
+
+    override fun setUp() {
+        super.setUp()
+        if (!warmedUp) {
+            warmUpProject(warmUpStats, serviceFileName(5)) {
+                openSyntheticProject(10)
+            }
+            warmedUp = true
+        }
+    }
+
+    fun testSyntheticProject1k() = doTest(1_000)
+
+    fun testSyntheticProject10k() = doTest(10_000)
+
+    private fun doTest(fileCount: Int) {
+        tcSuite("synthetic project of $fileCount files") {
+            myProject = openSyntheticProject(fileCount)
+
+            Stats("synthetic $fileCount files project").use { stats ->
+                val fileName = serviceFileName(fileCount / 2)
+                perfHighlightFile(fileName, stats, note = "cold", resetResolveCaches = true)
+                perfHighlightFile(fileName, stats, note = "warm")
+
+                perfTypeAndAutocomplete(
+                    stats,
+                    serviceFileName(fileCount - 1),
+                    "fun describe${fileCount - 1}() : String {",
+                    "val q = shared.val",
+                    lookupElements = listOf("value"),
+                    note = "member"
+                )
+
+                perfTypeAndAutocomplete(
+                    stats,
+                    serviceFileName(fileCount - 1),
+                    "fun describe${fileCount - 1}() : String {",
+                    "val q: Service1",
+                    lookupElements = listOf("Service1"),
+                    note = "class name"
+                )
+
+                perfFindUsages(stats, "src/${SHARED_PACKAGE.replace('.', '/')}/Shared.kt", "fun value", expectedUsages = 2 * fileCount)
+            }
+        }
+    }
+
+    private fun perfFindUsages(stats: Stats, fileName: String, marker: String, expectedUsages: Int) {
+        val project = project()
+        performanceTest<EditorFile, Collection<UsageInfo>> {
+            name("findUsages ${simpleFilename(fileName)}")
+            stats(stats)
+            warmUpIterations(3)
+            iterations(10)
+            setUp {
+                it.setUpValue = openFileInEditor(project, fileName)
+            }
+            test {
+                val psiFile = it.setUpValue!!.psiFile
+                val function = runReadAction {
+                    val offset = psiFile.text.indexOf(marker)
+                    assertTrue("marker '$marker' not found in $fileName", offset >= 0)
+                    psiFile.findElementAt(offset)?.getStrictParentOfType<KtNamedFunction>()
+                } ?: error("no function at '$marker' in $fileName")
+
+                val handler = (FindManager.getInstance(project) as FindManagerImpl).findUsagesManager
+                    .getFindUsagesHandler(function, false) ?: error("no find usages handler for $function")
+                val options = handler.getFindUsagesOptions(null)
+                options.searchScope = GlobalSearchScope.projectScope(project)
+
+                val processor = CommonProcessors.CollectProcessor<UsageInfo>()
+                runReadAction {
+                    handler.processElementUsages(function, processor, options)
+                }
+                it.value = processor.results
+            }
+            tearDown {
+                it.setUpValue?.let { editorFile -> close(project, editorFile.psiFile.virtualFile) }
+                assertEquals(expectedUsages, it.value?.size)
+            }
+            profilerEnabled(true)
+        }
+    }
+
+    private fun serviceFileName(index: Int) = "src/${servicePackage(index).replace('.', '/')}/Service$index.kt"
+
+    private fun servicePackage(index: Int) = "synthetic.pkg${index / FILES_PER_PACKAGE}"
+
+    private fun openSyntheticProject(fileCount: Int) = openProject {
+        name("synthetic$fileCount")
+
+        kotlinFile("Shared") {
+            pkg(SHARED_PACKAGE)
+
+            topClass("Shared") {
+                function("value") {
+                    param("x", "Int")
+                    returnType("Int")
+                    body("return x * 2")
+                }
+            }
+        }
+
+        for (index in 0 until fileCount) {
+            kotlinFile("Service$index") {
+                pkg(servicePackage(index))
+                body("import $SHARED_PACKAGE.Shared\n")
+
+                val previous = if (index > 0) "${servicePackage(index - 1)}.Service${index - 1}?" else "Any?"
+                topClass("Service$index(private val shared: Shared, private val previous: $previous)") {
+                    function("compute$index") {
+                        param("items", "List<Int>")
+                        returnType("Int")
+                        body(
+                            """
+                            var result = shared.value($index)
+                            for (item in items.filter { it % 2 == 0 }.map { it * $index }) {
+                                result += if (item > result) item - result else shared.value(item)
+                            }
+                            ${if (index > 0) "result += previous?.compute${index - 1}(items.take(3)) ?: 0" else ""}
+                            return result
+                            """.trimIndent()
+                        )
+                    }
+
+                    function("describe$index") {
+                        returnType("String")
+                        body("return \"Service$index: \${compute$index(listOf(1, 2, 3))}\"")
+                    }
+                }
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.jetbrains.kotlin.idea.testFramework.logMessage
 import org.jetbrains.kotlin.idea.testFramework.suggestOsNeutralFileName
 import org.jetbrains.kotlin.util.PerformanceCounter
 import java.io.*
+import java.lang.management.ManagementFactory
 import kotlin.system.measureNanoTime
 import java.lang.ref.WeakReference
 import kotlin.math.*
@@ -50,10 +51,14 @@ class Stats(
 
         val calcMean = calcMean(timingsMs)
 
+        val sortedTimingsMs = timingsMs.sortedArray()
         for (v in listOf(
             Triple("mean", "", calcMean.mean.toLong()),
             Triple("stdDev", " stdDev", calcMean.stdDev.toLong()),
-            Triple("geomMean", " geomMean", calcMean.geomMean.toLong())
+            Triple("geomMean", " geomMean", calcMean.geomMean.toLong()),
+            Triple("p50", " p50", percentile(sortedTimingsMs, 50)),
+            Triple("p90", " p90", percentile(sortedTimingsMs, 90)),
+            Triple("p99", " p99", percentile(sortedTimingsMs, 99))
         )) {
             val n = "$id : ${v.first}"
 
@@ -105,6 +110,11 @@ class Stats(
 
     data class Mean(val mean: Double, val stdDev: Double, val geomMean: Double)
 
+    // nearest-rank percentile
+    private fun percentile(sortedValues: LongArray, percent: Int): Long =
+        if (sortedValues.isEmpty()) 0
+        else sortedValues[(ceil(percent / 100.0 * sortedValues.size).toInt() - 1).coerceIn(0, sortedValues.size - 1)]
+
     private fun append(values: Array<Any>) {
         require(values.size == header.size) { "Expected ${header.size} values, actual ${values.size} values" }
         with(statsOutput) {
@@ -269,11 +279,19 @@ class Stats(
                 try {
 
                     phaseProfiler.start()
-                    valueMap[TEST_KEY] = measureNanoTime {
+                    val allocatedBytesBefore = allocatedBytes()
+                    val testNanos = measureNanoTime {
                         phaseData.test(testData)
                     }
+                    val allocatedBytes = allocatedBytes() - allocatedBytesBefore
+                    valueMap[TEST_KEY] = testNanos
                     phaseProfiler.stop()
 
+                    if (allocatedBytesBefore >= 0) {
+                        valueMap[ALLOCATED_KB_KEY] = allocatedBytes / 1024
+                        valueMap[ALLOCATION_RATE_KEY] = if (testNanos > 0) allocatedBytes * 1000 / testNanos else 0L
+                    }
+
                     PerformanceCounter.report { name, counter, nanos ->
                         valueMap["counter \"$name\": count"] = counter.toLong()
                         valueMap["counter \"$name\": time"] = nanos.nsToMs
@@ -349,6 +367,15 @@ class Stats(
         const val TEST_KEY = "test"
         const val ERROR_KEY = "error"
 
+        // bytes allocated by the test thread, the only thread to do work in most of the tests
+        const val ALLOCATED_KB_KEY = "allocated KB"
+        const val ALLOCATION_RATE_KEY = "allocation rate MB/s"
+
+        private val threadMXBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+
+        private fun allocatedBytes(): Long =
+            threadMXBean?.takeIf { it.isThreadAllocatedMemorySupported }?.getThreadAllocatedBytes(Thread.currentThread().id) ?: -1
+
         const val WARM_UP = "warm-up"
 
         inline fun runAndMeasure(note: String, block: () -> Unit) {
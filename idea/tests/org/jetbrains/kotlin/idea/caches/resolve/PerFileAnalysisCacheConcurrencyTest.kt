@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.idea.caches.resolve
+
+import org.jetbrains.kotlin.container.StorageComponentContainer
+import org.jetbrains.kotlin.container.useInstance
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
+import org.jetbrains.kotlin.descriptors.ModuleDescriptor
+import org.jetbrains.kotlin.extensions.StorageComponentContainerContributor
+import org.jetbrains.kotlin.idea.script.addExtensionPointInTest
+import org.jetbrains.kotlin.idea.test.KotlinLightCodeInsightFixtureTestCase
+import org.jetbrains.kotlin.idea.test.KotlinWithJdkAndRuntimeLightProjectDescriptor
+import org.jetbrains.kotlin.idea.util.runReadAction
+import org.jetbrains.kotlin.platform.TargetPlatform
+import org.jetbrains.kotlin.psi.KtDeclaration
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtNamedFunction
+import org.jetbrains.kotlin.psi.psiUtil.collectDescendantsOfType
+import org.jetbrains.kotlin.resolve.checkers.DeclarationChecker
+import org.jetbrains.kotlin.resolve.checkers.DeclarationCheckerContext
+import org.jetbrains.kotlin.test.JUnit3WithIdeaConfigurationRunner
+import org.junit.runner.RunWith
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+@RunWith(JUnit3WithIdeaConfigurationRunner::class)
+class PerFileAnalysisCacheConcurrencyTest : KotlinLightCodeInsightFixtureTestCase() {
+    override fun getProjectDescriptor() = KotlinWithJdkAndRuntimeLightProjectDescriptor.INSTANCE
+
+    fun testMutuallyDependentDeclarations() {
+        val file = myFixture.configureByText("dependent.kt", SOURCE) as KtFile
+        analyzeConcurrently(file.collectDescendantsOfType())
+    }
+
+    fun testNestedRequestsForOtherDeclarations() {
+        val nestedRequests = AtomicInteger()
+        val failedNestedRequests = AtomicInteger()
+        val inNestedRequest = ThreadLocal<Boolean>()
+        var functions = emptyList<KtNamedFunction>()
+
+        // Analysis of each function requests the analysis of the next one from a checker, so a thread which holds the lock
+        //   of a declaration enters the file lock, while other threads analyze the next functions on their own.
+        //   Requests are nested only one level deep, otherwise the functions would be analyzed around the cycle forever
+        val checker = object : DeclarationChecker {
+            override fun check(declaration: KtDeclaration, descriptor: DeclarationDescriptor, context: DeclarationCheckerContext) {
+                val index = functions.indexOf(declaration)
+                if (index < 0 || inNestedRequest.get() == true) return
+
+                nestedRequests.incrementAndGet()
+                inNestedRequest.set(true)
+                try {
+                    if (functions[(index + 1) % functions.size].analyzeWithAllCompilerChecks().isError()) {
+                        failedNestedRequests.incrementAndGet()
+                    }
+                } finally {
+                    inNestedRequest.remove()
+                }
+            }
+        }
+        addExtensionPointInTest(
+            StorageComponentContainerContributor.extensionPointName, project,
+            object : StorageComponentContainerContributor {
+                override fun registerModuleComponents(
+                    container: StorageComponentContainer, platform: TargetPlatform, moduleDescriptor: ModuleDescriptor
+                ) {
+                    container.useInstance(checker)
+                }
+            },
+            testRootDisposable
+        )
+
+        val file = myFixture.configureByText("nested.kt", NESTED_SOURCE) as KtFile
+        functions = file.collectDescendantsOfType()
+        analyzeConcurrently(functions)
+        assertTrue("No nested requests", nestedRequests.get() > 0)
+        assertEquals(0, failedNestedRequests.get())
+    }
+
+    private fun analyzeConcurrently(declarations: List<KtDeclaration>) {
+        val executor = Executors.newFixedThreadPool(THREADS)
+        try {
+            // Each thread starts from a different declaration, so that threads request each other's declarations while analyzing
+            val tasks = (0 until THREADS).map { shift ->
+                executor.submit<List<String>> {
+                    val order = declarations.drop(shift % declarations.size) + declarations.take(shift % declarations.size)
+                    order.filter { declaration ->
+                        runReadAction { declaration.analyzeWithAllCompilerChecks().isError() }
+                    }.map { it.text }
+                }
+            }
+
+            for (task in tasks) {
+                val failed = task.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                assertTrue("Analysis failed for: $failed", failed.isEmpty())
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    companion object {
+        private const val THREADS = 8
+        private const val TIMEOUT_SECONDS = 60L
+
+        private val SOURCE = """
+            fun a(n: Int): Int = if (n > 0) b(n - 1) + x else 0
+
+            fun b(n: Int) = if (n > 0) a(n - 1) * y else 1
+
+            val x = b(3)
+
+            val y get() = a(2) + D().c.value
+
+            class C(val d: D?) {
+                val value: Int get() = d?.c?.value ?: a(1)
+            }
+
+            class D {
+                val c = C(null)
+                fun next() = C(this).value + b(2)
+            }
+        """.trimIndent()
+
+        private val NESTED_SOURCE = (0 until THREADS).joinToString("\n\n") { i ->
+            "fun f$i(n: Int): Int = if (n > 0) f${(i + 1) % THREADS}(n - 1) + $i else $i"
+        }
+    }
+}
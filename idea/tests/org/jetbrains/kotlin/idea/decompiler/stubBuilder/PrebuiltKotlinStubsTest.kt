@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.idea.decompiler.stubBuilder
+
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.vfs.JarFileSystem
+import com.intellij.testFramework.LightProjectDescriptor
+import com.intellij.util.indexing.FileContentImpl
+import org.jetbrains.kotlin.codegen.forTestCompile.ForTestCompileRuntime
+import org.jetbrains.kotlin.idea.decompiler.classFile.KotlinClsStubBuilder
+import org.jetbrains.kotlin.idea.decompiler.classFile.PrebuiltKotlinStubs
+import org.jetbrains.kotlin.idea.test.KotlinLightCodeInsightFixtureTestCase
+import org.jetbrains.kotlin.idea.test.KotlinWithJdkAndRuntimeLightProjectDescriptor
+import org.jetbrains.kotlin.test.JUnit3WithIdeaConfigurationRunner
+import org.junit.runner.RunWith
+import java.io.File
+
+@RunWith(JUnit3WithIdeaConfigurationRunner::class)
+class PrebuiltKotlinStubsTest : KotlinLightCodeInsightFixtureTestCase() {
+    override fun getProjectDescriptor(): LightProjectDescriptor = KotlinWithJdkAndRuntimeLightProjectDescriptor.INSTANCE
+
+    fun testSameStubsAsDecompiled() {
+        val jar = ForTestCompileRuntime.runtimeJarForTests().copyTo(File(FileUtil.createTempDirectory("prebuiltStubs", null), "runtime.jar"))
+        val jarRoot = JarFileSystem.getInstance().refreshAndFindFileByPath(jar.path + JarFileSystem.JAR_SEPARATOR)!!
+        val classFile = jarRoot.findFileByRelativePath("kotlin/collections/CollectionsKt.class")!!
+
+        val stubBuilder = KotlinClsStubBuilder()
+        val expected = stubBuilder.buildFileStub(FileContentImpl.createByFile(classFile))!!.serializeToString()
+        assertNull(PrebuiltKotlinStubs.findStub(classFile, stubBuilder.stubVersion))
+
+        PrebuiltKotlinStubs.write(jarRoot, jar, PrebuiltKotlinStubs.stubsFileFor(jar), stubBuilder) {
+            it.startsWith("kotlin/collections/")
+        }
+
+        val prebuilt = PrebuiltKotlinStubs.findStub(classFile, stubBuilder.stubVersion)!!
+        assertEquals(expected, prebuilt.stub!!.serializeToString())
+        assertNull(PrebuiltKotlinStubs.findStub(classFile, stubBuilder.stubVersion + 1))
+        assertNotNull(PrebuiltKotlinStubs.findStub(classFile, stubBuilder.stubVersion))
+
+        assertNull(PrebuiltKotlinStubs.findStub(jarRoot.findFileByRelativePath("kotlin/text/StringsKt.class")!!, stubBuilder.stubVersion))
+    }
+}
@@ -83,4 +83,7 @@ public class JSConfigurationKeys {
 
     public static final CompilerConfigurationKey<Boolean> PRINT_REACHABILITY_INFO =
             CompilerConfigurationKey.create("print declarations' reachability info during performing DCE");
+
+    public static final CompilerConfigurationKey<Integer> IR_CODEGEN_THREADS =
+            CompilerConfigurationKey.create("number of threads used to translate IR files to JS AST in parallel");
 }
@@ -25,6 +25,8 @@ private val fullRuntimeKlib: String = System.getProperty("kotlin.js.full.stdlib.
 private val defaultRuntimeKlib = System.getProperty("kotlin.js.reduced.stdlib.path")
 private val kotlinTestKLib = System.getProperty("kotlin.js.kotlin.test.path")
 
+private const val CODEGEN_THREADS = 4
+
 abstract class BasicIrBoxTest(
     pathToTestDir: String,
     testGroupOutputDirPrefix: String,
@@ -52,6 +54,8 @@ abstract class BasicIrBoxTest(
 
     override val runIrPir: Boolean = getBoolean("kotlin.js.ir.pir", true)
 
+    private val checkCodegenThreads: Boolean = getBoolean("kotlin.js.ir.checkCodegenThreads", true)
+
     // TODO Design incremental compilation for IR and add test support
     override val incrementalCompilationChecksEnabled = false
 
@@ -134,6 +138,28 @@ abstract class BasicIrBoxTest(
                     generateDceJs = runIrDce
                 )
 
+                if (checkCodegenThreads && filesToCompile.size > 1) {
+                    val concurrentConfiguration = config.configuration.copy().apply {
+                        put(JSConfigurationKeys.IR_CODEGEN_THREADS, CODEGEN_THREADS)
+                    }
+                    val concurrentModule = compile(
+                        project = config.project,
+                        mainModule = MainModule.SourceFiles(filesToCompile),
+                        analyzer = AnalyzerWithCompilerReport(concurrentConfiguration),
+                        configuration = concurrentConfiguration,
+                        phaseConfig = phaseConfig,
+                        allDependencies = resolvedLibraries,
+                        friendDependencies = emptyList(),
+                        mainArguments = mainCallParameters.run { if (shouldBeGenerated()) arguments() else null },
+                        exportedDeclarations = setOf(FqName.fromSegments(listOfNotNull(testPackage, testFunction))),
+                        generateFullJs = true,
+                        generateDceJs = false
+                    )
+                    assertEquals(
+                        "JS code generated on $CODEGEN_THREADS threads differs", compiledModule.jsCode, concurrentModule.jsCode
+                    )
+                }
+
                 val wrappedCode =
                     wrapWithModuleEmulationMarkers(compiledModule.jsCode!!, moduleId = config.moduleId, moduleKind = config.moduleKind)
                 outputFile.write(wrappedCode)
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package kotlinx.metadata.jvm
+
+import kotlinx.metadata.ClassName
+import kotlinx.metadata.Flags
+import kotlinx.metadata.InconsistentKotlinMetadataException
+import kotlinx.metadata.jvm.impl.ClassFileHeaderReader
+import org.jetbrains.kotlin.metadata.jvm.JvmProtoBuf
+import org.jetbrains.kotlin.metadata.jvm.deserialization.BitEncoding
+import org.jetbrains.kotlin.metadata.jvm.deserialization.JvmMetadataVersion
+import org.jetbrains.kotlin.metadata.jvm.deserialization.JvmNameResolver
+import org.jetbrains.kotlin.metadata.jvm.deserialization.JvmProtoBufUtil
+import org.jetbrains.kotlin.protobuf.CodedInputStream
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.util.zip.ZipFile
+
+/**
+ * A reusable reader of the metadata of Kotlin classes, intended for tools which need only a few properties of many classes,
+ * e.g. to index or to compare the API of whole jars.
+ *
+ * Unlike [KotlinClassMetadata.Class.toKmClass], this reader neither builds the protobuf message of the class nor the [kotlinx.metadata.KmClass] tree.
+ * [read] scans the top-level fields of the class message once and remembers their values or positions in the decoded `d1` data;
+ * the members are decoded only when they are requested, and the strings from `d2` are resolved on the first access and cached
+ * for the current class. All the internal buffers are reused when the decoder is pointed to the next class.
+ *
+ * Instances are not thread-safe, use a separate decoder per thread.
+ */
+class KotlinClassMetadataDecoder {
+    private var data: ByteArray = EMPTY_BYTES
+    private var nameResolver: JvmNameResolver? = null
+    private var resolvedStrings = arrayOfNulls<String>(64)
+    private var resolvedStringCount = 0
+
+    private var classFlags: Flags = DEFAULT_CLASS_FLAGS
+    private var classNameId = -1
+    private var companionObjectNameId = -1
+
+    // Positions of repeated message fields are stored as pairs (offset, length) in the decoded data
+    private val supertypes = IntBuffer()
+    private val constructors = IntBuffer()
+    private val functions = IntBuffer()
+    private val properties = IntBuffer()
+    private val typeTableTypes = IntBuffer()
+    private val supertypeIds = IntBuffer()
+    private val nestedClassNameIds = IntBuffer()
+    private var typeTableOffset = -1
+    private var typeTableLength = 0
+    private var typeTableIndexed = false
+
+    private val classFileReader by lazy(LazyThreadSafetyMode.NONE) { ClassFileHeaderReader() }
+
+    /**
+     * Points this decoder to the metadata in the given [header].
+     *
+     * Returns `false` if the header doesn't represent a Kotlin class (see [KotlinClassHeader.CLASS_KIND]) or has an unsupported
+     * metadata version; the decoder is empty in that case.
+     *
+     * Throws [InconsistentKotlinMetadataException] if the metadata has inconsistencies which signal that it may have been
+     * modified by a separate tool.
+     */
+    fun read(header: KotlinClassHeader): Boolean {
+        clear()
+        if (header.kind != KotlinClassHeader.CLASS_KIND || !header.isCompatible()) return false
+        if (header.data1.isEmpty()) throw InconsistentKotlinMetadataException("data1 must not be empty")
+
+        try {
+            data = BitEncoding.decodeBytes(header.data1)
+            val input = CodedInputStream.newInstance(data)
+            val stringTableLimit = input.pushLimit(input.readRawVarint32())
+            nameResolver = JvmNameResolver(JvmProtoBuf.StringTableTypes.parseFrom(input, JvmProtoBufUtil.EXTENSION_REGISTRY), header.data2)
+            input.popLimit(stringTableLimit)
+            readClass(input)
+        } catch (e: InconsistentKotlinMetadataException) {
+            clear()
+            throw e
+        } catch (e: Throwable) {
+            clear()
+            throw InconsistentKotlinMetadataException("Exception occurred when reading Kotlin metadata", e)
+        }
+        return true
+    }
+
+    /**
+     * Points this decoder to the metadata of the class file with the given [bytes].
+     *
+     * Returns `false` if the class file has no [Metadata] annotation, or the metadata can't be read by this decoder (see [read]).
+     */
+    fun readClassFile(bytes: ByteArray): Boolean {
+        val header = classFileReader.read(bytes)
+        if (header == null) {
+            clear()
+            return false
+        }
+        return read(header)
+    }
+
+    /**
+     * Flags of the class, consisting of [Flag.Common], [Flag.Visibility], [Flag.Modality] and [Flag.Class] flags.
+     */
+    val flags: Flags
+        get() = classFlags.also { checkRead() }
+
+    /**
+     * Name of the class.
+     */
+    val name: ClassName
+        get() = className(classNameId.also { checkRead() })
+
+    /**
+     * Name of the companion object of this class, if it has one.
+     */
+    val companionObjectName: String?
+        get() = companionObjectNameId.takeIf { it >= 0 }?.let(::string)
+
+    /**
+     * Visits names of the classes among the supertypes of this class.
+     */
+    fun forEachSupertype(action: (ClassName) -> Unit) {
+        checkRead()
+        for (i in 0 until supertypes.size step 2) {
+            supertypeClassName(supertypes[i], supertypes[i + 1])?.let(action)
+        }
+        if (supertypeIds.size > 0) {
+            indexTypeTable()
+            for (i in 0 until supertypeIds.size) {
+                val typeIndex = supertypeIds[i] * 2
+                if (typeIndex + 1 >= typeTableTypes.size) throw InconsistentKotlinMetadataException("Unknown type id: ${supertypeIds[i]}")
+                supertypeClassName(typeTableTypes[typeIndex], typeTableTypes[typeIndex + 1])?.let(action)
+            }
+        }
+    }
+
+    /**
+     * Visits names of the nested classes of this class.
+     */
+    fun forEachNestedClass(action: (String) -> Unit) {
+        checkRead()
+        for (i in 0 until nestedClassNameIds.size) {
+            action(string(nestedClassNameIds[i]))
+        }
+    }
+
+    /**
+     * Visits flags of the constructors of this class.
+     */
+    fun forEachConstructor(action: (flags: Flags) -> Unit) {
+        checkRead()
+        for (i in 0 until constructors.size step 2) {
+            val input = messageInput(constructors[i], constructors[i + 1])
+            var flags = DEFAULT_CONSTRUCTOR_FLAGS
+            while (true) {
+                val tag = input.readTag()
+                if (tag == 0) break
+                if (tag == tag(1, WIRE_VARINT)) flags = input.readInt32() else input.skipField(tag)
+            }
+            action(flags)
+        }
+    }
+
+    /**
+     * Visits flags and names of the functions declared in this class.
+     */
+    fun forEachFunction(action: (flags: Flags, name: String) -> Unit) {
+        checkRead()
+        forEachMember(functions, FUNCTION_FLAGS_FIELD, DEFAULT_FUNCTION_FLAGS, action)
+    }
+
+    /**
+     * Visits flags and names of the properties declared in this class.
+     */
+    fun forEachProperty(action: (flags: Flags, name: String) -> Unit) {
+        checkRead()
+        forEachMember(properties, PROPERTY_FLAGS_FIELD, DEFAULT_PROPERTY_FLAGS, action)
+    }
+
+    /**
+     * Number of the functions declared in this class.
+     */
+    val functionCount: Int
+        get() = functions.size / 2
+
+    /**
+     * Number of the properties declared in this class.
+     */
+    val propertyCount: Int
+        get() = properties.size / 2
+
+    /**
+     * Number of the constructors of this class.
+     */
+    val constructorCount: Int
+        get() = constructors.size / 2
+
+    private fun readClass(input: CodedInputStream) {
+        while (true) {
+            val tag = input.readTag()
+            if (tag == 0) break
+            when (tag) {
+                tag(1, WIRE_VARINT) -> classFlags = input.readInt32()
+                tag(3, WIRE_VARINT) -> classNameId = input.readInt32()
+                tag(4, WIRE_VARINT) -> companionObjectNameId = input.readInt32()
+                tag(6, WIRE_LENGTH_DELIMITED) -> rememberMessage(input, supertypes)
+                tag(8, WIRE_LENGTH_DELIMITED) -> rememberMessage(input, constructors)
+                tag(9, WIRE_LENGTH_DELIMITED) -> rememberMessage(input, functions)
+                tag(10, WIRE_LENGTH_DELIMITED) -> rememberMessage(input, properties)
+                tag(30, WIRE_LENGTH_DELIMITED) -> {
+                    typeTableLength = input.readRawVarint32()
+                    typeTableOffset = input.totalBytesRead
+                    input.skipRawBytes(typeTableLength)
+                }
+                tag(2, WIRE_VARINT) -> supertypeIds.add(input.readInt32())
+                tag(2, WIRE_LENGTH_DELIMITED) -> readPackedInts(input, supertypeIds)
+                tag(7, WIRE_VARINT) -> nestedClassNameIds.add(input.readInt32())
+                tag(7, WIRE_LENGTH_DELIMITED) -> readPackedInts(input, nestedClassNameIds)
+                else -> input.skipField(tag)
+            }
+        }
+        if (classNameId < 0) throw InconsistentKotlinMetadataException("Class name is missing")
+    }
+
+    private fun forEachMember(members: IntBuffer, flagsField: Int, defaultFlags: Flags, action: (flags: Flags, name: String) -> Unit) {
+        for (i in 0 until members.size step 2) {
+            val input = messageInput(members[i], members[i + 1])
+            var flags = defaultFlags
+            var nameId = -1
+            while (true) {
+                val tag = input.readTag()
+                if (tag == 0) break
+                when (tag) {
+                    tag(flagsField, WIRE_VARINT) -> flags = input.readInt32()
+                    tag(2, WIRE_VARINT) -> nameId = input.readInt32()
+                    else -> input.skipField(tag)
+                }
+            }
+            if (nameId < 0) throw InconsistentKotlinMetadataException("Member name is missing")
+            action(flags, string(nameId))
+        }
+    }
+
+    private fun supertypeClassName(offset: Int, length: Int): ClassName? {
+        val input = messageInput(offset, length)
+        while (true) {
+            val tag = input.readTag()
+            if (tag == 0) return null
+            if (tag == tag(6, WIRE_VARINT)) return className(input.readInt32())
+            input.skipField(tag)
+        }
+    }
+
+    private fun indexTypeTable() {
+        if (typeTableIndexed || typeTableOffset < 0) return
+        val input = messageInput(typeTableOffset, typeTableLength)
+        while (true) {
+            val tag = input.readTag()
+            if (tag == 0) break
+            if (tag == tag(1, WIRE_LENGTH_DELIMITED)) rememberMessage(input, typeTableTypes, offsetBase = typeTableOffset)
+            else input.skipField(tag)
+        }
+        typeTableIndexed = true
+    }
+
+    private fun rememberMessage(input: CodedInputStream, buffer: IntBuffer, offsetBase: Int = 0) {
+        val length = input.readRawVarint32()
+        buffer.add(offsetBase + input.totalBytesRead)
+        buffer.add(length)
+        input.skipRawBytes(length)
+    }
+
+    private fun readPackedInts(input: CodedInputStream, buffer: IntBuffer) {
+        val limit = input.pushLimit(input.readRawVarint32())
+        while (input.bytesUntilLimit > 0) {
+            buffer.add(input.readInt32())
+        }
+        input.popLimit(limit)
+    }
+
+    private fun messageInput(offset: Int, length: Int): CodedInputStream =
+        CodedInputStream.newInstance(data, offset, length)
+
+    private fun string(index: Int): String {
+        if (index >= resolvedStrings.size) {
+            resolvedStrings = resolvedStrings.copyOf(maxOf(index + 1, resolvedStrings.size * 2))
+        }
+        resolvedStrings[index]?.let { return it }
+        return nameResolver!!.getString(index).also {
+            resolvedStrings[index] = it
+            resolvedStringCount = maxOf(resolvedStringCount, index + 1)
+        }
+    }
+
+    private fun className(index: Int): ClassName {
+        val resolver = nameResolver!!
+        val name = resolver.getQualifiedClassName(index)
+        return if (resolver.isLocalClassName(index)) ".$name" else name
+    }
+
+    private fun checkRead() {
+        if (nameResolver == null) throw IllegalStateException("No class metadata has been read by this decoder")
+    }
+
+    private fun clear() {
+        data = EMPTY_BYTES
+        nameResolver = null
+        resolvedStrings.fill(null, 0, resolvedStringCount)
+        resolvedStringCount = 0
+        classFlags = DEFAULT_CLASS_FLAGS
+        classNameId = -1
+        companionObjectNameId = -1
+        supertypes.clear()
+        constructors.clear()
+        functions.clear()
+        properties.clear()
+        typeTableTypes.clear()
+        supertypeIds.clear()
+        nestedClassNameIds.clear()
+        typeTableOffset = -1
+        typeTableLength = 0
+        typeTableIndexed = false
+    }
+
+    private class IntBuffer {
+        private var data = IntArray(16)
+
+        var size = 0
+            private set
+
+        operator fun get(index: Int): Int = data[index]
+
+        fun add(value: Int) {
+            if (size == data.size) {
+                data = data.copyOf(size * 2)
+            }
+            data[size++] = value
+        }
+
+        fun clear() {
+            size = 0
+        }
+    }
+
+    companion object {
+        private val EMPTY_BYTES = ByteArray(0)
+
+        private const val WIRE_VARINT = 0
+        private const val WIRE_LENGTH_DELIMITED = 2
+
+        // See metadata.proto
+        private const val FUNCTION_FLAGS_FIELD = 9
+        private const val PROPERTY_FLAGS_FIELD = 11
+        // Default values of the flags in metadata.proto, the serializer doesn't write them
+        private const val DEFAULT_CLASS_FLAGS = 6
+        private const val DEFAULT_CONSTRUCTOR_FLAGS = 6
+        private const val DEFAULT_FUNCTION_FLAGS = 6
+        private const val DEFAULT_PROPERTY_FLAGS = 518
+
+        private fun tag(fieldNumber: Int, wireType: Int): Int = (fieldNumber shl 3) or wireType
+
+        private fun KotlinClassHeader.isCompatible(): Boolean =
+            JvmMetadataVersion(
+                metadataVersion,
+                (extraInt and (1 shl 3)/* see JvmAnnotationNames.METADATA_STRICT_VERSION_SEMANTICS_FLAG */) != 0
+            ).isCompatible()
+
+        /**
+         * Reads all Kotlin classes from the given [jar] with a single [KotlinClassMetadataDecoder], calling [action] for each of them.
+         *
+         * The decoder passed to [action] is pointed to the current class and is only valid until [action] returns.
+         * Class files without Kotlin class metadata (see [read]) are skipped.
+         *
+         * @param jar the jar file to read
+         * @param action the callback receiving the name of the jar entry and the decoder pointed to the class in that entry
+         */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun forEachClassInJar(jar: File, action: (entryName: String, decoder: KotlinClassMetadataDecoder) -> Unit) {
+            val decoder = KotlinClassMetadataDecoder()
+            var buffer = ByteArray(8192)
+            // ZipFile is not Closeable on JDK 1.6
+            val zip = ZipFile(jar)
+            try {
+                for (entry in zip.entries()) {
+                    if (entry.isDirectory || !entry.name.endsWith(".class")) continue
+                    buffer = zip.getInputStream(entry).use { readFully(it, buffer) }
+                    if (decoder.readClassFile(buffer)) {
+                        action(entry.name, decoder)
+                    }
+                }
+            } finally {
+                zip.close()
+            }
+        }
+
+        // Reads the whole stream into [buffer] if it fits, or into a new bigger buffer; trailing bytes are never read by the class file reader
+        private fun readFully(input: InputStream, buffer: ByteArray): ByteArray {
+            var result = buffer
+            var size = 0
+            while (true) {
+                if (size == result.size) {
+                    result = result.copyOf(size * 2)
+                }
+                val read = input.read(result, size, result.size - size)
+                if (read < 0) return result
+                size += read
+            }
+        }
+    }
+}
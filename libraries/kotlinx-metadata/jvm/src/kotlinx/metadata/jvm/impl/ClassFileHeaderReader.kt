@@ -0,0 +1,260 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package kotlinx.metadata.jvm.impl
+
+import kotlinx.metadata.InconsistentKotlinMetadataException
+import kotlinx.metadata.jvm.KotlinClassHeader
+
+/**
+ * Extracts the [Metadata] annotation from the bytes of a class file without building any class file model.
+ *
+ * Only the constant pool offsets are indexed, and only the strings referenced from the annotation are decoded.
+ * The internal buffers are reused between calls, so an instance must not be shared between threads.
+ */
+internal class ClassFileHeaderReader {
+    private var bytes: ByteArray = EMPTY_BYTES
+    private var constantOffsets = IntArray(256)
+    private var chars = CharArray(256)
+
+    private var kind: Int? = null
+    private var metadataVersion: IntArray? = null
+    private var bytecodeVersion: IntArray? = null
+    private var data1: Array<String>? = null
+    private var data2: Array<String>? = null
+    private var extraString: String? = null
+    private var packageName: String? = null
+    private var extraInt: Int? = null
+
+    /**
+     * Returns the header of the class file in [bytes], or `null` if the class file has no [Metadata] annotation
+     */
+    fun read(bytes: ByteArray): KotlinClassHeader? {
+        this.bytes = bytes
+        try {
+            return readClassFile()
+        } catch (e: IndexOutOfBoundsException) {
+            throw InconsistentKotlinMetadataException("Malformed class file", e)
+        } finally {
+            this.bytes = EMPTY_BYTES
+        }
+    }
+
+    private fun readClassFile(): KotlinClassHeader? {
+        if (readInt(0) != CLASS_FILE_MAGIC) throw InconsistentKotlinMetadataException("Not a class file")
+
+        val constantCount = readUnsignedShort(8)
+        if (constantOffsets.size < constantCount) {
+            constantOffsets = IntArray(constantCount)
+        }
+        var offset = 10
+        var index = 1
+        while (index < constantCount) {
+            constantOffsets[index] = offset + 1
+            when (bytes[offset].toInt()) {
+                CONSTANT_UTF8 -> offset += 3 + readUnsignedShort(offset + 1)
+                CONSTANT_LONG, CONSTANT_DOUBLE -> {
+                    offset += 9
+                    index++
+                }
+                CONSTANT_INTEGER, CONSTANT_FLOAT, CONSTANT_FIELD_REF, CONSTANT_METHOD_REF, CONSTANT_INTERFACE_METHOD_REF,
+                CONSTANT_NAME_AND_TYPE, CONSTANT_DYNAMIC, CONSTANT_INVOKE_DYNAMIC -> offset += 5
+                CONSTANT_METHOD_HANDLE -> offset += 4
+                CONSTANT_CLASS, CONSTANT_STRING, CONSTANT_METHOD_TYPE, CONSTANT_MODULE, CONSTANT_PACKAGE -> offset += 3
+                else -> throw InconsistentKotlinMetadataException("Unknown constant pool tag at $offset")
+            }
+            index++
+        }
+
+        // access flags, this class, super class
+        offset += 6
+        offset += 2 + 2 * readUnsignedShort(offset)
+        offset = skipMembers(offset)
+        offset = skipMembers(offset)
+
+        var attributeCount = readUnsignedShort(offset)
+        offset += 2
+        while (attributeCount-- > 0) {
+            val length = readInt(offset + 2)
+            if (utf8Equals(readUnsignedShort(offset), RUNTIME_VISIBLE_ANNOTATIONS)) {
+                return readAnnotations(offset + 6)
+            }
+            offset += 6 + length
+        }
+        return null
+    }
+
+    private fun skipMembers(start: Int): Int {
+        var offset = start
+        var memberCount = readUnsignedShort(offset)
+        offset += 2
+        while (memberCount-- > 0) {
+            // access flags, name, descriptor
+            offset += 6
+            var attributeCount = readUnsignedShort(offset)
+            offset += 2
+            while (attributeCount-- > 0) {
+                offset += 6 + readInt(offset + 2)
+            }
+        }
+        return offset
+    }
+
+    private fun readAnnotations(start: Int): KotlinClassHeader? {
+        var offset = start
+        var annotationCount = readUnsignedShort(offset)
+        offset += 2
+        while (annotationCount-- > 0) {
+            if (utf8Equals(readUnsignedShort(offset), METADATA_DESC)) {
+                readMetadataArguments(offset + 2)
+                return KotlinClassHeader(kind, metadataVersion, bytecodeVersion, data1, data2, extraString, packageName, extraInt).also {
+                    clearArguments()
+                }
+            }
+            offset = skipAnnotation(offset)
+        }
+        return null
+    }
+
+    private fun readMetadataArguments(start: Int) {
+        var offset = start
+        var pairCount = readUnsignedShort(offset)
+        offset += 2
+        while (pairCount-- > 0) {
+            val nameIndex = readUnsignedShort(offset)
+            val valueOffset = offset + 2
+            when {
+                utf8Equals(nameIndex, "k") -> kind = readIntConstant(valueOffset)
+                utf8Equals(nameIndex, "mv") -> metadataVersion = readIntArray(valueOffset)
+                utf8Equals(nameIndex, "bv") -> bytecodeVersion = readIntArray(valueOffset)
+                utf8Equals(nameIndex, "d1") -> data1 = readStringArray(valueOffset)
+                utf8Equals(nameIndex, "d2") -> data2 = readStringArray(valueOffset)
+                utf8Equals(nameIndex, "xs") -> extraString = readUtf8(readUnsignedShort(valueOffset + 1))
+                utf8Equals(nameIndex, "pn") -> packageName = readUtf8(readUnsignedShort(valueOffset + 1))
+                utf8Equals(nameIndex, "xi") -> extraInt = readIntConstant(valueOffset)
+            }
+            offset = skipElementValue(valueOffset)
+        }
+    }
+
+    private fun clearArguments() {
+        kind = null
+        metadataVersion = null
+        bytecodeVersion = null
+        data1 = null
+        data2 = null
+        extraString = null
+        packageName = null
+        extraInt = null
+    }
+
+    private fun readIntConstant(valueOffset: Int): Int =
+        readInt(constantOffsets[readUnsignedShort(valueOffset + 1)])
+
+    private fun readIntArray(valueOffset: Int): IntArray {
+        val size = readUnsignedShort(valueOffset + 1)
+        return IntArray(size) { i -> readIntConstant(valueOffset + 3 + 3 * i) }
+    }
+
+    private fun readStringArray(valueOffset: Int): Array<String> {
+        val size = readUnsignedShort(valueOffset + 1)
+        return Array(size) { i -> readUtf8(readUnsignedShort(valueOffset + 3 + 3 * i + 1)) }
+    }
+
+    private fun skipAnnotation(start: Int): Int {
+        var offset = start + 2
+        var pairCount = readUnsignedShort(offset)
+        offset += 2
+        while (pairCount-- > 0) {
+            offset = skipElementValue(offset + 2)
+        }
+        return offset
+    }
+
+    private fun skipElementValue(offset: Int): Int =
+        when (bytes[offset].toChar()) {
+            'e' -> offset + 5
+            '@' -> skipAnnotation(offset + 1)
+            '[' -> {
+                var count = readUnsignedShort(offset + 1)
+                var current = offset + 3
+                while (count-- > 0) {
+                    current = skipElementValue(current)
+                }
+                current
+            }
+            else -> offset + 3
+        }
+
+    private fun utf8Equals(constantIndex: Int, expected: String): Boolean {
+        val offset = constantOffsets[constantIndex]
+        val length = readUnsignedShort(offset)
+        if (length != expected.length) return false
+        for (i in 0 until length) {
+            if (bytes[offset + 2 + i].toInt() != expected[i].toInt()) return false
+        }
+        return true
+    }
+
+    // Class files store strings in the modified UTF-8 encoding, see JVMS 4.4.7
+    private fun readUtf8(constantIndex: Int): String {
+        val offset = constantOffsets[constantIndex]
+        val length = readUnsignedShort(offset)
+        if (chars.size < length) {
+            chars = CharArray(length)
+        }
+        var current = offset + 2
+        val end = current + length
+        var size = 0
+        while (current < end) {
+            val b = bytes[current++].toInt()
+            chars[size++] = when {
+                b and 0x80 == 0 -> b.toChar()
+                b and 0xE0 == 0xC0 -> (((b and 0x1F) shl 6) or (bytes[current++].toInt() and 0x3F)).toChar()
+                else -> {
+                    val second = bytes[current++].toInt() and 0x3F
+                    val third = bytes[current++].toInt() and 0x3F
+                    (((b and 0x0F) shl 12) or (second shl 6) or third).toChar()
+                }
+            }
+        }
+        return String(chars, 0, size)
+    }
+
+    private fun readUnsignedShort(offset: Int): Int =
+        ((bytes[offset].toInt() and 0xFF) shl 8) or (bytes[offset + 1].toInt() and 0xFF)
+
+    private fun readInt(offset: Int): Int =
+        ((bytes[offset].toInt() and 0xFF) shl 24) or ((bytes[offset + 1].toInt() and 0xFF) shl 16) or
+                ((bytes[offset + 2].toInt() and 0xFF) shl 8) or (bytes[offset + 3].toInt() and 0xFF)
+
+    private companion object {
+        val EMPTY_BYTES = ByteArray(0)
+
+        const val CLASS_FILE_MAGIC = 0xCAFEBABE.toInt()
+
+        const val RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations"
+        // Simply "Lkotlin/Metadata;", but to avoid being renamed by namespace relocation (e.g., Shadow.relocate gradle plugin)
+        val METADATA_DESC = "L" + listOf('k', 'o', 't', 'l', 'i', 'n').joinToString(separator = "") + "/Metadata;"
+
+        const val CONSTANT_UTF8 = 1
+        const val CONSTANT_INTEGER = 3
+        const val CONSTANT_FLOAT = 4
+        const val CONSTANT_LONG = 5
+        const val CONSTANT_DOUBLE = 6
+        const val CONSTANT_CLASS = 7
+        const val CONSTANT_STRING = 8
+        const val CONSTANT_FIELD_REF = 9
+        const val CONSTANT_METHOD_REF = 10
+        const val CONSTANT_INTERFACE_METHOD_REF = 11
+        const val CONSTANT_NAME_AND_TYPE = 12
+        const val CONSTANT_METHOD_HANDLE = 15
+        const val CONSTANT_METHOD_TYPE = 16
+        const val CONSTANT_DYNAMIC = 17
+        const val CONSTANT_INVOKE_DYNAMIC = 18
+        const val CONSTANT_MODULE = 19
+        const val CONSTANT_PACKAGE = 20
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package kotlinx.metadata.test
+
+import kotlinx.metadata.KmClassifier
+import kotlinx.metadata.jvm.KotlinClassHeader
+import kotlinx.metadata.jvm.KotlinClassMetadata
+import kotlinx.metadata.jvm.KotlinClassMetadataDecoder
+import org.junit.Assert
+import org.junit.Assert.*
+import org.junit.Test
+
+class KotlinClassMetadataDecoderTest {
+    private fun Class<*>.readMetadata(): KotlinClassHeader {
+        return getAnnotation(Metadata::class.java).run {
+            KotlinClassHeader(kind, metadataVersion, bytecodeVersion, data1, data2, extraString, packageName, extraInt)
+        }
+    }
+
+    private fun Class<*>.readBytes(): ByteArray =
+        classLoader.getResourceAsStream(name.replace('.', '/') + ".class")!!.use { it.readBytes() }
+
+    @Suppress("unused")
+    open class Base
+
+    @Suppress("unused")
+    class Sample(val x: Int) : Base(), Comparable<Sample> {
+        constructor() : this(0)
+
+        var y: String = ""
+        private val z = 1
+
+        override fun compareTo(other: Sample): Int = x - other.x
+        internal inline fun foo(f: () -> Unit) = f()
+
+        class Nested
+        inner class Inner
+
+        companion object Factory
+    }
+
+    @Test
+    fun testSameAsKmClass() {
+        for (klass in listOf(Sample::class.java, Base::class.java, AbstractList::class.java, KotlinVersion::class.java)) {
+            val header = klass.readMetadata()
+            val kmClass = (KotlinClassMetadata.read(header) as KotlinClassMetadata.Class).toKmClass()
+
+            for (decoder in listOf(decodeHeader(header), decodeClassFile(klass))) {
+                assertEquals(kmClass.name, decoder.name)
+                assertEquals(kmClass.flags, decoder.flags)
+                assertEquals(kmClass.companionObject, decoder.companionObjectName)
+                assertEquals(
+                    kmClass.supertypes.mapNotNull { (it.classifier as? KmClassifier.Class)?.name },
+                    mutableListOf<String>().apply { decoder.forEachSupertype { add(it) } }
+                )
+                assertEquals(kmClass.nestedClasses, mutableListOf<String>().apply { decoder.forEachNestedClass { add(it) } })
+                assertEquals(kmClass.constructors.map { it.flags }, mutableListOf<Int>().apply { decoder.forEachConstructor { add(it) } })
+                assertEquals(
+                    kmClass.functions.map { it.flags to it.name },
+                    mutableListOf<Pair<Int, String>>().apply { decoder.forEachFunction { flags, name -> add(flags to name) } }
+                )
+                assertEquals(
+                    kmClass.properties.map { it.flags to it.name },
+                    mutableListOf<Pair<Int, String>>().apply { decoder.forEachProperty { flags, name -> add(flags to name) } }
+                )
+            }
+        }
+    }
+
+    @Test
+    fun testReuse() {
+        val decoder = KotlinClassMetadataDecoder()
+        assertTrue(decoder.read(Sample::class.java.readMetadata()))
+        assertEquals(2, decoder.functionCount)
+        assertEquals(3, decoder.propertyCount)
+        assertEquals("Factory", decoder.companionObjectName)
+
+        // Multi-file class parts and Java classes are not read
+        assertFalse(decoder.readClassFile(Class.forName("kotlin.collections.CollectionsKt__CollectionsKt").readBytes()))
+        assertFalse(decoder.readClassFile(Assert::class.java.readBytes()))
+
+        assertTrue(decoder.readClassFile(Base::class.java.readBytes()))
+        assertEquals(0, decoder.functionCount)
+        assertEquals(0, decoder.propertyCount)
+        assertNull(decoder.companionObjectName)
+    }
+
+    private fun decodeHeader(header: KotlinClassHeader): KotlinClassMetadataDecoder =
+        KotlinClassMetadataDecoder().also { assertTrue(it.read(header)) }
+
+    private fun decodeClassFile(klass: Class<*>): KotlinClassMetadataDecoder =
+        KotlinClassMetadataDecoder().also { assertTrue(it.readClassFile(klass.readBytes())) }
+}
@@ -27,6 +27,9 @@ internal fun PropertiesProvider.mapKotlinTaskProperties(task: AbstractKotlinComp
         usePreciseJavaTracking?.let {
             task.usePreciseJavaTracking = it
         }
+        useClasspathSnapshot?.let {
+            task.useClasspathSnapshot = it
+        }
     }
 
     if (task is Kotlin2JsCompile) {
@@ -74,6 +77,9 @@ internal class PropertiesProvider private constructor(private val project: Proje
     val usePreciseJavaTracking: Boolean?
         get() = booleanProperty("kotlin.incremental.usePreciseJavaTracking")
 
+    val useClasspathSnapshot: Boolean?
+        get() = booleanProperty("kotlin.incremental.useClasspathSnapshot")
+
     val useFallbackCompilerSearch: Boolean?
         get() = booleanProperty("kotlin.useFallbackCompilerSearch")
 
@@ -379,6 +379,17 @@ open class KotlinCompile : AbstractKotlinCompile<K2JVMCompilerArguments>(), Kotl
             logger.kotlinDebug { "Set $this.usePreciseJavaTracking=$value" }
         }
 
+    /**
+     * Find the changes of the classpath in incremental compilation by comparing ABI snapshots of its jars and directories
+     *   instead of reading build history files of other modules.
+     */
+    @get:Input
+    var useClasspathSnapshot: Boolean = false
+        set(value) {
+            field = value
+            logger.kotlinDebug { "Set $this.useClasspathSnapshot=$value" }
+        }
+
     init {
         incremental = true
     }
@@ -394,6 +405,9 @@ open class KotlinCompile : AbstractKotlinCompile<K2JVMCompilerArguments>(), Kotl
             defaultsOnly,
             ignoreClasspathResolutionErrors
         ))
+        if (!defaultsOnly) {
+            args.useClasspathSnapshots = useClasspathSnapshot
+        }
     }
 
     @get:Internal
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010-2020 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.jvm.abi
+
+import com.intellij.openapi.util.io.FileUtil
+import java.io.File
+import java.security.MessageDigest
+import java.util.*
+
+/**
+ * Content hashes of the files in an ABI output directory, keyed by the path relative to that directory.
+ *
+ * The hashes are persisted in [HASHES_FILE_NAME] between builds, so that unchanged files do not have to be rewritten.
+ * The whole-module digest, written to [DIGEST_FILE_NAME], is computed over the sorted paths and hashes only,
+ * so it is stable across builds, machines and the order in which the files were produced.
+ * Both files are kept in a separate directory given by the `hashesDir` option, so that they are not a part of the ABI.
+ */
+internal class AbiContentHashes(val hashes: SortedMap<String, String>) {
+    fun digest(): String {
+        val digest = MessageDigest.getInstance(HASH_ALGORITHM)
+        for ((path, hash) in hashes) {
+            digest.update(path.toByteArray(Charsets.UTF_8))
+            digest.update(0)
+            digest.update(hash.toByteArray(Charsets.UTF_8))
+            digest.update(0)
+        }
+        return digest.digest().toHexString()
+    }
+
+    fun write(hashesDir: File) {
+        val text = hashes.entries.joinToString("") { (path, hash) -> "$hash $path\n" }
+        writeIfChanged(File(hashesDir, HASHES_FILE_NAME), text)
+        writeIfChanged(File(hashesDir, DIGEST_FILE_NAME), digest() + "\n")
+    }
+
+    private fun writeIfChanged(file: File, text: String) {
+        if (file.isFile && file.readText() == text) return
+        FileUtil.writeToFile(file, text)
+    }
+
+    companion object {
+        const val HASHES_FILE_NAME = "abi-hashes.txt"
+        const val DIGEST_FILE_NAME = "abi-digest.txt"
+
+        // Written to the ABI output itself by previous versions
+        val LEGACY_FILE_PATHS = listOf("META-INF/abi-hashes.txt", "META-INF/abi-digest.txt")
+
+        private const val HASH_ALGORITHM = "SHA-256"
+
+        fun hash(bytes: ByteArray): String =
+            MessageDigest.getInstance(HASH_ALGORITHM).digest(bytes).toHexString()
+
+        /**
+         * Returns the hashes saved by the previous build, or empty hashes if there are none or they cannot be read
+         */
+        fun read(hashesDir: File): AbiContentHashes {
+            val hashes = TreeMap<String, String>()
+            val file = File(hashesDir, HASHES_FILE_NAME)
+            if (file.isFile) {
+                for (line in file.readLines()) {
+                    val separator = line.indexOf(' ')
+                    if (separator <= 0) return AbiContentHashes(TreeMap())
+                    hashes[line.substring(separator + 1)] = line.substring(0, separator)
+                }
+            }
+            return AbiContentHashes(hashes)
+        }
+
+        private fun ByteArray.toHexString(): String {
+            val result = StringBuilder(size * 2)
+            for (byte in this) {
+                val value = byte.toInt() and 0xFF
+                result.append(Character.forDigit(value ushr 4, 16))
+                result.append(Character.forDigit(value and 0xF, 16))
+            }
+            return result.toString()
+        }
+    }
+}
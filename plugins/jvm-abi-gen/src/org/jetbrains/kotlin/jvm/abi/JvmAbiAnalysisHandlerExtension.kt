@@ -46,6 +46,8 @@ import org.jetbrains.org.objectweb.asm.ClassWriter
 import org.jetbrains.org.objectweb.asm.Opcodes
 import java.io.File
 import java.util.*
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
 
 class JvmAbiAnalysisHandlerExtension(
     private val compilerConfiguration: CompilerConfiguration
@@ -95,10 +97,71 @@ class JvmAbiAnalysisHandlerExtension(
             OutputItemsCollector { sourceFiles, outputFile ->
                 messageCollector.report(CompilerMessageSeverity.OUTPUT, OutputMessageUtil.formatOutputMessage(sourceFiles, outputFile))
             }.takeIf { reportOutputFiles }
-        outputs.forEach { it.flush(outputItemsCollector) }
+
+        val hashesDir = compilerConfiguration.get(JvmAbiConfigurationKeys.HASHES_DIR)?.let(::File)
+        val previousHashes = hashesDir?.let(AbiContentHashes.Companion::read) ?: AbiContentHashes(TreeMap())
+        val hashes = flushInParallel(outputs, previousHashes)
+        for (legacyPath in AbiContentHashes.LEGACY_FILE_PATHS) {
+            File(outputDir, legacyPath).delete()
+        }
+        val canonicalOutputDir = outputDir.canonicalFile
+        for (stalePath in previousHashes.hashes.keys - hashes.hashes.keys) {
+            // The hashes file is not trusted: never delete anything outside of the output directory
+            val staleFile = File(outputDir, stalePath).canonicalFile
+            if (FileUtil.isAncestor(canonicalOutputDir, staleFile, true)) {
+                staleFile.delete()
+            }
+        }
+        hashesDir?.let(hashes::write)
+
+        if (outputItemsCollector != null) {
+            for (output in outputs) {
+                if (output.exists) {
+                    outputItemsCollector.add(output.sources, output.file)
+                }
+            }
+        }
         return null
     }
 
+    /**
+     * Hashes the outputs and writes those whose content differs from the previous build, in parallel.
+     * The returned hashes do not depend on the order in which the outputs are processed.
+     */
+    private fun flushInParallel(outputs: List<AbiOutput>, previousHashes: AbiContentHashes): AbiContentHashes {
+        val outputDir = compilerConfiguration.get(JVMConfigurationKeys.OUTPUT_DIRECTORY)!!
+        val threadCount = minOf(Runtime.getRuntime().availableProcessors(), outputs.size)
+        val hashes = arrayOfNulls<String>(outputs.size)
+        val flushOutput = { index: Int ->
+            val output = outputs[index]
+            hashes[index] = output.flush(previousHashes.hashes[output.relativePath(outputDir)])
+        }
+
+        if (threadCount <= 1) {
+            outputs.indices.forEach(flushOutput)
+        } else {
+            val executor = Executors.newFixedThreadPool(threadCount)
+            try {
+                outputs.indices.map { index -> executor.submit { flushOutput(index) } }.forEach { future ->
+                    try {
+                        future.get()
+                    } catch (e: ExecutionException) {
+                        throw e.cause ?: e
+                    }
+                }
+            } finally {
+                executor.shutdown()
+            }
+        }
+
+        val result = TreeMap<String, String>()
+        for ((index, output) in outputs.withIndex()) {
+            val hash = hashes[index] ?: continue
+            result[output.relativePath(outputDir)] = hash
+        }
+        return AbiContentHashes(result)
+    }
+
     /**
      * Removes private or local classes from outputs
      */
@@ -226,10 +289,22 @@ class JvmAbiAnalysisHandlerExtension(
             cr.accept(visitor, 0)
         }
 
-        fun flush(outputItemsCollector: OutputItemsCollector?) {
-            val bytes = bytes ?: return
-            FileUtil.writeToFile(file, bytes)
-            outputItemsCollector?.add(sources, file)
+        val exists: Boolean
+            get() = bytes != null
+
+        fun relativePath(outputDir: File): String =
+            FileUtil.toSystemIndependentName(file.relativeTo(outputDir).path)
+
+        /**
+         * Writes the file unless it already has the content with [previousHash], and returns the hash of the content
+         */
+        fun flush(previousHash: String?): String? {
+            val bytes = bytes ?: return null
+            val hash = AbiContentHashes.hash(bytes)
+            if (hash != previousHash || !file.isFile) {
+                FileUtil.writeToFile(file, bytes)
+            }
+            return hash
         }
     }
 }
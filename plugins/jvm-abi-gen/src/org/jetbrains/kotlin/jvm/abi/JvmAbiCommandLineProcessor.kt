@@ -17,17 +17,25 @@ class JvmAbiCommandLineProcessor : CommandLineProcessor {
 
         val OUTPUT_DIR_OPTION: CliOption =
             CliOption("outputDir", "<path>", "Output path for the generated files", required = true)
+
+        val HASHES_DIR_OPTION: CliOption =
+            CliOption(
+                "hashesDir", "<path>",
+                "Path for the content hashes and the digest of the generated files, unchanged files are not rewritten when it is set",
+                required = false
+            )
     }
 
     override val pluginId: String
         get() = COMPILER_PLUGIN_ID
 
     override val pluginOptions: Collection<CliOption>
-        get() = listOf(OUTPUT_DIR_OPTION)
+        get() = listOf(OUTPUT_DIR_OPTION, HASHES_DIR_OPTION)
 
     override fun processOption(option: AbstractCliOption, value: String, configuration: CompilerConfiguration) {
         when (option) {
             OUTPUT_DIR_OPTION -> configuration.put(JvmAbiConfigurationKeys.OUTPUT_DIR, value)
+            HASHES_DIR_OPTION -> configuration.put(JvmAbiConfigurationKeys.HASHES_DIR, value)
             else -> throw CliOptionProcessingException("Unknown option: ${option.optionName}")
         }
     }
@@ -11,4 +11,7 @@ object JvmAbiConfigurationKeys {
     val OUTPUT_DIR: CompilerConfigurationKey<String> =
         CompilerConfigurationKey.create<String>(JvmAbiCommandLineProcessor.OUTPUT_DIR_OPTION.description)
 
+    val HASHES_DIR: CompilerConfigurationKey<String> =
+        CompilerConfigurationKey.create<String>(JvmAbiCommandLineProcessor.HASHES_DIR_OPTION.description)
+
 }
\ No newline at end of file
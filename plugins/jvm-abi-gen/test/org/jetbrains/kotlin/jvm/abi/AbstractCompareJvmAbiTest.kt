@@ -13,6 +13,17 @@ abstract class AbstractCompareJvmAbiTest : BaseJvmAbiTest() {
     fun doTest(path: String) {
         val testDir = File(path)
         val base = Compilation(testDir, "base").also { make(it) }
+        val baseDigest = base.abiDigest()
+        for (legacyPath in AbiContentHashes.LEGACY_FILE_PATHS) {
+            assertFalse("Hashes are written to the ABI output: $legacyPath", base.abiDir.resolve(legacyPath).exists())
+        }
+
+        // Rebuilding unchanged sources keeps both the files and the module digest intact
+        val baseLastModified = base.abiDir.walk().filter { it.isFile }.associateWith { it.lastModified() }
+        make(base)
+        assertEquals(baseDigest, base.abiDigest())
+        assertEquals(baseLastModified, base.abiDir.walk().filter { it.isFile }.associateWith { it.lastModified() })
+
         val sameAbiDir = testDir.resolve("sameAbi")
         val differentAbiDir = testDir.resolve("differentAbi")
 
@@ -21,6 +32,7 @@ abstract class AbstractCompareJvmAbiTest : BaseJvmAbiTest() {
         if (sameAbiDir.exists()) {
             val sameAbi = Compilation(testDir, "sameAbi").also { make(it) }
             assertEqualDirectories(sameAbi.abiDir, base.abiDir, forgiveExtraFiles = false)
+            assertEquals(baseDigest, sameAbi.abiDigest())
         }
 
         if (differentAbiDir.exists()) {
@@ -28,7 +40,11 @@ abstract class AbstractCompareJvmAbiTest : BaseJvmAbiTest() {
             assertFails("$base and $differentAbi abi are equal") {
                 assertEqualDirectories(differentAbi.abiDir, base.abiDir, forgiveExtraFiles = false)
             }
+            assertFalse("$base and $differentAbi abi digests are equal", baseDigest == differentAbi.abiDigest())
         }
     }
+
+    private fun Compilation.abiDigest(): String =
+        hashesDir.resolve(AbiContentHashes.DIGEST_FILE_NAME).readText()
 }
 
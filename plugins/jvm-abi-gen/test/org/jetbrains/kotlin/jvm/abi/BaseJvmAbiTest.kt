@@ -43,6 +43,9 @@ abstract class BaseJvmAbiTest : TestCase() {
         val abiDir: File
             get() = if (name == null) workingDir.resolve("abi") else workingDir.resolve("$name/abi")
 
+        val hashesDir: File
+            get() = if (name == null) workingDir.resolve("abi-hashes") else workingDir.resolve("$name/abi-hashes")
+
         override fun toString(): String =
             "compilation '$name'"
     }
@@ -62,7 +65,10 @@ abstract class BaseJvmAbiTest : TestCase() {
             freeArgs = listOf(compilation.srcDir.canonicalPath)
             classpath = (abiDependencies + kotlinJvmStdlib).joinToString(File.pathSeparator) { it.canonicalPath }
             pluginClasspaths = arrayOf(abiPluginJar.canonicalPath)
-            pluginOptions = arrayOf(abiOption("outputDir", compilation.abiDir.canonicalPath))
+            pluginOptions = arrayOf(
+                abiOption("outputDir", compilation.abiDir.canonicalPath),
+                abiOption("hashesDir", compilation.hashesDir.canonicalPath)
+            )
             destination = compilation.destinationDir.canonicalPath
         }
         val exitCode = compiler.exec(messageCollector, Services.EMPTY, args)
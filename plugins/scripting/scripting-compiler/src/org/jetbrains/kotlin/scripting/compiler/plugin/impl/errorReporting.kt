@@ -109,7 +109,8 @@ internal fun reportArgumentsIgnoredGenerally(
         K2JVMCompilerArguments::useJavac,
         K2JVMCompilerArguments::compileJava,
         K2JVMCompilerArguments::reportPerf,
-        K2JVMCompilerArguments::dumpPerf
+        K2JVMCompilerArguments::dumpPerf,
+        K2JVMCompilerArguments::dumpTrace
     )
 }
 